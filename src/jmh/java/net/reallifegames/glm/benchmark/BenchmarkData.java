@@ -0,0 +1,192 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import net.reallifegames.glm.codec.PalettedData;
+
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+/**
+ * Builds terrain like chunk samples for the benchmarks. No real chunk samples live in the repo, so the fields are
+ * generated from smooth rolling hills with a water level, layered 3D columns and broad biome regions.
+ *
+ * @author Tyler Bucher
+ */
+final class BenchmarkData {
+
+    /**
+     * The number of samples generated for each field, benchmarks cycle through them.
+     */
+    static final int SAMPLES = 16;
+
+    /**
+     * The number of block layers in a generated 3D column.
+     */
+    static final int LAYERS = 64;
+
+    /**
+     * The block id for air.
+     */
+    private static final int AIR = 0;
+
+    /**
+     * The block id for stone.
+     */
+    private static final int STONE = 1;
+
+    /**
+     * The block id for grass.
+     */
+    private static final int GRASS = 2;
+
+    /**
+     * The block id for dirt.
+     */
+    private static final int DIRT = 3;
+
+    /**
+     * The block id for water.
+     */
+    private static final int WATER = 9;
+
+    /**
+     * The block id for sand.
+     */
+    private static final int SAND = 12;
+
+    /**
+     * The height of the water level.
+     */
+    private static final int WATER_LEVEL = 32;
+
+    /**
+     * Generates the height map of a chunk, one byte per column.
+     *
+     * @param chunkX the x position of the chunk.
+     * @param chunkZ the z position of the chunk.
+     * @return the 256 byte height map.
+     */
+    @Nonnull
+    static byte[] heights(final int chunkX, final int chunkZ) {
+        final Random random = new Random(chunkX * 31L + chunkZ);
+        final byte[] heights = new byte[256];
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                final double worldX = chunkX * 16 + x;
+                final double worldZ = chunkZ * 16 + z;
+                heights[z * 16 + x] = (byte) (WATER_LEVEL + 8 * Math.sin(worldX / 23.0) + 6 * Math.cos(worldZ / 17.0)
+                        + 3 * Math.sin((worldX + worldZ) / 7.0) + random.nextInt(2));
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Generates the top block id of every column of a chunk.
+     *
+     * @param heights the height map of the chunk.
+     * @return the 256 top block ids.
+     */
+    @Nonnull
+    static int[] topBlocks(@Nonnull final byte[] heights) {
+        final int[] blocks = new int[heights.length];
+        for (int i = 0; i < heights.length; i++) {
+            final int height = heights[i];
+            blocks[i] = height < WATER_LEVEL ? WATER : height < WATER_LEVEL + 2 ? SAND : height > WATER_LEVEL + 10 ?
+                    STONE : GRASS;
+        }
+        return blocks;
+    }
+
+    /**
+     * Generates every block id of a chunk, layer by layer.
+     *
+     * @param heights the height map of the chunk.
+     * @return the 256 * {@link #LAYERS} block ids.
+     */
+    @Nonnull
+    static int[] columns(@Nonnull final byte[] heights) {
+        final int[] blocks = new int[heights.length * LAYERS];
+        for (int y = 0; y < LAYERS; y++) {
+            for (int i = 0; i < heights.length; i++) {
+                final int height = heights[i];
+                blocks[y * heights.length + i] = y < height - 4 ? STONE : y < height ? DIRT : y == height ? GRASS :
+                        y <= WATER_LEVEL ? WATER : AIR;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Generates the biome id of every column of a chunk.
+     *
+     * @param chunkX the x position of the chunk.
+     * @param chunkZ the z position of the chunk.
+     * @return the 256 biome ids.
+     */
+    @Nonnull
+    static int[] biomes(final int chunkX, final int chunkZ) {
+        final int[] biomes = new int[256];
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                biomes[z * 16 + x] = Math.sin((chunkX * 16 + x) / 40.0 + (chunkZ * 16 + z) / 55.0) > 0.3 ? 4 : 1;
+            }
+        }
+        return biomes;
+    }
+
+    /**
+     * Generates {@link #SAMPLES} samples of a field in the form the client sends it.
+     *
+     * @param field the field to generate, one of heights, blocks_2d, blocks_3d or biomes.
+     * @return the generated samples.
+     */
+    @Nonnull
+    static byte[][] samples(@Nonnull final String field) {
+        final byte[][] samples = new byte[SAMPLES][];
+        for (int i = 0; i < SAMPLES; i++) {
+            final int chunkX = i % 4;
+            final int chunkZ = i / 4;
+            final byte[] heights = heights(chunkX, chunkZ);
+            switch (field) {
+                case "heights":
+                    samples[i] = heights;
+                    break;
+                case "blocks_2d":
+                    samples[i] = PalettedData.formatIds(topBlocks(heights));
+                    break;
+                case "blocks_3d":
+                    samples[i] = PalettedData.formatIds(columns(heights));
+                    break;
+                case "biomes":
+                    samples[i] = PalettedData.formatIds(biomes(chunkX, chunkZ));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.codec.GlmChunkCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encode and decode time of every chunk codec on generated terrain, and reports the encoded size of each
+ * field through the totalBytes and operations secondary metrics. Their ratio is the mean encoded size.
+ *
+ * @author Tyler Bucher
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    /**
+     * The codec part of the chunk type to benchmark.
+     */
+    @Param({"gzip", "deflate", "dictionary_deflate", "paeth_deflate", "palette"})
+    public String codec;
+
+    /**
+     * The chunk field to encode.
+     */
+    @Param({"heights", "blocks_2d", "blocks_3d", "biomes"})
+    public String field;
+
+    /**
+     * The codec under test.
+     */
+    private GlmChunkCodec chunkCodec;
+
+    /**
+     * The raw samples.
+     */
+    private byte[][] samples;
+
+    /**
+     * The encoded samples.
+     */
+    private byte[][] encoded;
+
+    /**
+     * The next sample to use.
+     */
+    private int next;
+
+    /**
+     * Counts the encoded bytes and the encoded samples. JMH sums event counters over the iterations, so both are
+     * plain totals and the mean encoded size is totalBytes divided by operations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+
+        /**
+         * The total encoded size in bytes of the samples encoded this iteration.
+         */
+        public long totalBytes;
+
+        /**
+         * The number of samples encoded this iteration.
+         */
+        public long operations;
+
+        /**
+         * Clears the counters before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            totalBytes = 0;
+            operations = 0;
+        }
+
+        /**
+         * Adds an encoded sample to the counters.
+         *
+         * @param length the encoded size in bytes.
+         */
+        void record(final int length) {
+            totalBytes += length;
+            operations++;
+        }
+    }
+
+    /**
+     * Builds the samples and encodes them once for the decode benchmark.
+     */
+    @Setup
+    public void setup() {
+        chunkCodec = GlmChunkTypes.fromType("two_dimensional_" + codec).getCodec();
+        samples = BenchmarkData.samples(field);
+        encoded = new byte[samples.length][];
+        for (int i = 0; i < samples.length; i++) {
+            encoded[i] = chunkCodec.encode(samples[i]);
+        }
+    }
+
+    /**
+     * @param size the size counter.
+     * @return the encoded sample.
+     */
+    @Benchmark
+    public byte[] encode(final Size size) {
+        final byte[] result = chunkCodec.encode(samples[next++ & (BenchmarkData.SAMPLES - 1)]);
+        size.record(result.length);
+        return result;
+    }
+
+    /**
+     * @return the decoded sample.
+     *
+     * @throws IOException if a sample could not be decoded.
+     */
+    @Benchmark
+    public byte[] decode() throws IOException {
+        return chunkCodec.decode(encoded[next++ & (BenchmarkData.SAMPLES - 1)]);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import net.reallifegames.glm.GlmUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link GlmUtil} bulk conversions against the original shift loop of {@link GlmUtil#intToByte(int[])}.
+ *
+ * @author Tyler Bucher
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GlmUtilBenchmark {
+
+    /**
+     * The number of ints to convert, a 2D chunk and a {@link BenchmarkData#LAYERS} layer chunk.
+     */
+    @Param({"256", "16384"})
+    public int size;
+
+    /**
+     * The ints to convert.
+     */
+    private int[] ints;
+
+    /**
+     * A reused destination array.
+     */
+    private byte[] bytes;
+
+    /**
+     * A reused big endian heap buffer.
+     */
+    private ByteBuffer heapBuffer;
+
+    /**
+     * A reused little endian direct buffer.
+     */
+    private ByteBuffer directBuffer;
+
+    /**
+     * Builds the input and the destinations.
+     */
+    @Setup
+    public void setup() {
+        ints = BenchmarkData.columns(BenchmarkData.heights(0, 0));
+        if (ints.length != size) {
+            final int[] resized = new int[size];
+            for (int i = 0; i < size; i++) {
+                resized[i] = ints[i % ints.length];
+            }
+            ints = resized;
+        }
+        bytes = new byte[size << 2];
+        heapBuffer = ByteBuffer.allocate(size << 2);
+        directBuffer = ByteBuffer.allocateDirect(size << 2).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the converted bytes.
+     */
+    @Benchmark
+    public byte[] shiftLoop() {
+        final byte[] dst = new byte[ints.length << 2];
+        int index = 0;
+        for (int anIntArray : ints) {
+            dst[index++] = (byte) (anIntArray >>> 24);
+            dst[index++] = (byte) (anIntArray >>> 16);
+            dst[index++] = (byte) (anIntArray >>> 8);
+            dst[index++] = (byte) anIntArray;
+        }
+        return dst;
+    }
+
+    /**
+     * @return the converted bytes.
+     */
+    @Benchmark
+    public byte[] intToByte() {
+        return GlmUtil.intToByte(ints);
+    }
+
+    /**
+     * @return the reused destination.
+     */
+    @Benchmark
+    public byte[] intToByteArray() {
+        GlmUtil.intToByte(ints, 0, ints.length, bytes, 0, ByteOrder.BIG_ENDIAN);
+        return bytes;
+    }
+
+    /**
+     * @return the reused destination.
+     */
+    @Benchmark
+    public ByteBuffer intToHeapBuffer() {
+        heapBuffer.clear();
+        GlmUtil.intToByte(ints, 0, ints.length, heapBuffer);
+        return heapBuffer;
+    }
+
+    /**
+     * @return the reused destination.
+     */
+    @Benchmark
+    public ByteBuffer intToDirectBuffer() {
+        directBuffer.clear();
+        GlmUtil.intToByte(ints, 0, ints.length, directBuffer);
+        return directBuffer;
+    }
+
+    /**
+     * @return the converted ints.
+     */
+    @Benchmark
+    public int[] byteToInt() {
+        return GlmUtil.byteToInt(bytes, ByteOrder.BIG_ENDIAN);
+    }
+}
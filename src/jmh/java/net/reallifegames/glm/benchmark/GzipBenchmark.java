@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import net.reallifegames.glm.GzipGlmChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares {@link GzipGlmChunk#compressString(String)} against a fresh {@link GZIPOutputStream} per call, the way
+ * chunks were compressed before the per thread pipeline.
+ *
+ * @author Tyler Bucher
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GzipBenchmark {
+
+    /**
+     * The chunk field to compress.
+     */
+    @Param({"blocks_2d", "blocks_3d", "biomes"})
+    public String field;
+
+    /**
+     * The samples as strings.
+     */
+    private String[] samples;
+
+    /**
+     * The next sample to use.
+     */
+    private int next;
+
+    /**
+     * Builds the samples.
+     */
+    @Setup
+    public void setup() {
+        final byte[][] data = BenchmarkData.samples(field);
+        samples = new String[data.length];
+        for (int i = 0; i < data.length; i++) {
+            samples[i] = new String(data[i], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return the compressed base64 sample.
+     */
+    @Benchmark
+    public String compressString() {
+        return GzipGlmChunk.compressString(samples[next++ & (BenchmarkData.SAMPLES - 1)]);
+    }
+
+    /**
+     * @return the compressed base64 sample.
+     *
+     * @throws IOException if the sample could not be compressed.
+     */
+    @Benchmark
+    public String gzipOutputStream() throws IOException {
+        final String original = samples[next++ & (BenchmarkData.SAMPLES - 1)];
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(original.length());
+        try (final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(original.getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
+}
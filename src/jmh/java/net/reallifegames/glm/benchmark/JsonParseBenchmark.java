@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.reallifegames.glm.server.GlmServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing incoming command messages with a new {@link ObjectMapper} per message, the shared reader of
+ * {@link GlmServer}, and the streaming command lookup that runs before the tree is built.
+ *
+ * @author Tyler Bucher
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonParseBenchmark {
+
+    /**
+     * The message to parse: a single chunk request, a full view request or a small status command.
+     */
+    @Param({"chunk", "view", "status"})
+    public String payload;
+
+    /**
+     * The message text.
+     */
+    private String message;
+
+    /**
+     * Builds the message.
+     */
+    @Setup
+    public void setup() {
+        final int chunks = "view".equals(payload) ? 256 : 1;
+        if ("status".equals(payload)) {
+            message = "{\"cmd\":\"server_info\"}";
+            return;
+        }
+        final StringBuilder builder = new StringBuilder("{\"cmd\":\"get_chunks\",\"worldId\":")
+                .append("\"6d4b9c2e-3f1a-4e8b-9c7d-1a2b3c4d5e6f\",\"chunkType\":\"two_dimensional_gzip\",\"positions\":[");
+        for (int i = 0; i < chunks; i++) {
+            builder.append(i % 16 - 8).append(',').append(i / 16 - 8).append(',');
+        }
+        message = builder.deleteCharAt(builder.length() - 1).append("]}").toString();
+    }
+
+    /**
+     * @return the parsed tree.
+     *
+     * @throws IOException if the message could not be parsed.
+     */
+    @Benchmark
+    public JsonNode newMapperPerMessage() throws IOException {
+        return new ObjectMapper().readTree(message);
+    }
+
+    /**
+     * @return the parsed tree.
+     *
+     * @throws IOException if the message could not be parsed.
+     */
+    @Benchmark
+    public JsonNode sharedReader() throws IOException {
+        return GlmServer.getObjectReader().readTree(message);
+    }
+
+    /**
+     * @return the command name.
+     *
+     * @throws IOException if the message could not be parsed.
+     */
+    @Benchmark
+    public String peekCommand() throws IOException {
+        return GlmServer.peekCommand(message);
+    }
+
+    /**
+     * @return the parsed tree.
+     *
+     * @throws IOException if the message could not be parsed.
+     */
+    @Benchmark
+    public JsonNode peekThenSharedReader() throws IOException {
+        GlmServer.peekCommand(message);
+        return GlmServer.getObjectReader().readTree(message);
+    }
+}
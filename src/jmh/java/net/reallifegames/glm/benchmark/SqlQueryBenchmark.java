@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import net.reallifegames.glm.module.SqlModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the position list query of {@link SqlModule#getNewGetChunks(List)} for the request sizes a client
+ * sends, from a single chunk to a full view.
+ *
+ * @author Tyler Bucher
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SqlQueryBenchmark {
+
+    /**
+     * The number of chunk positions in the request.
+     */
+    @Param({"1", "64", "1024"})
+    public int chunks;
+
+    /**
+     * The requested positions, x and z interleaved.
+     */
+    private List<Integer> positions;
+
+    /**
+     * Builds the query strings and the positions of a square view.
+     */
+    @Setup
+    public void setup() {
+        SqlModule.init("glm_");
+        final int width = (int) Math.ceil(Math.sqrt(chunks));
+        positions = new ArrayList<>(chunks * 2);
+        for (int i = 0; i < chunks; i++) {
+            positions.add(i % width - width / 2);
+            positions.add(i / width - width / 2);
+        }
+    }
+
+    /**
+     * @return the built query.
+     */
+    @Benchmark
+    public String getNewGetChunks() {
+        return SqlModule.getNewGetChunks(positions);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.benchmark;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.codec.PalettedData;
+import net.reallifegames.glm.module.WorldModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link WorldModule} cache lookups at several thread counts, and lookups racing a writer that keeps the
+ * cache at its limit. This is where read scaling is checked: lookups never lock, so with free cores the summed scores
+ * of lookup4Threads and lookup16Threads should grow close to linearly over lookup1Thread. The unit tests only check
+ * that lookups do not wait for a locked segment, since wall clock ratios fail on small or busy machines.
+ *
+ * @author Tyler Bucher
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WorldCacheBenchmark {
+
+    /**
+     * The id of the benchmark world.
+     */
+    private static final String WORLD_ID = "benchmark";
+
+    /**
+     * The width in chunks of the cached square.
+     */
+    @Param({"32", "128"})
+    public int radius;
+
+    /**
+     * The chunk every position is filled with.
+     */
+    private GlmChunk chunk;
+
+    /**
+     * Fills the cache with a square of chunks.
+     */
+    @Setup
+    public void setup() {
+        final byte[] heights = BenchmarkData.heights(0, 0);
+        chunk = BinaryGlmChunk.encode(GlmChunkTypes.TWO_DIMENSIONAL_DEFLATE, System.currentTimeMillis(),
+                PalettedData.formatIds(BenchmarkData.topBlocks(heights)), heights,
+                PalettedData.formatIds(BenchmarkData.biomes(0, 0)), new byte[0]);
+        for (int x = 0; x < radius; x++) {
+            for (int z = 0; z < radius; z++) {
+                WorldModule.cacheChunk(WORLD_ID, x, z, chunk, false, 0);
+            }
+        }
+    }
+
+    /**
+     * Empties the cache for the next trial.
+     */
+    @TearDown
+    public void tearDown() {
+        WorldModule.getChunkCache().clear();
+    }
+
+    /**
+     * @return a cached chunk.
+     */
+    private GlmChunk lookup() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return WorldModule.getCacheChunk(WORLD_ID, random.nextInt(radius), 0, random.nextInt(radius));
+    }
+
+    /**
+     * @return a cached chunk.
+     */
+    @Benchmark
+    @Threads(1)
+    public GlmChunk lookup1Thread() {
+        return lookup();
+    }
+
+    /**
+     * @return a cached chunk.
+     */
+    @Benchmark
+    @Threads(4)
+    public GlmChunk lookup4Threads() {
+        return lookup();
+    }
+
+    /**
+     * @return a cached chunk.
+     */
+    @Benchmark
+    @Threads(16)
+    public GlmChunk lookup16Threads() {
+        return lookup();
+    }
+
+    /**
+     * @return a cached chunk.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public GlmChunk mixedLookup() {
+        return lookup();
+    }
+
+    /**
+     * @return the inserted chunk.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public GlmChunk mixedInsert() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return WorldModule.cacheChunk(WORLD_ID, random.nextInt(radius * 2), random.nextInt(radius * 2), chunk, true,
+                radius * radius);
+    }
+}
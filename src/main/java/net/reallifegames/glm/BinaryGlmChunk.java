@@ -0,0 +1,337 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.codec.GlmChunkCodec;
+import net.reallifegames.glm.codec.GlmChunkCodecs;
+import net.reallifegames.glm.codec.TextCodec;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A compressed chunk representation which keeps the raw compressed bytes. The text form required by {@link GlmChunk}
+ * is only produced, as base64, when it is asked for.
+ *
+ * @author Tyler Bucher
+ */
+public class BinaryGlmChunk implements GlmChunk {
+
+    /**
+     * The id / type of this glm chunk.
+     */
+    @Nonnull
+    protected final String id;
+
+    /**
+     * The time in milliseconds when this snapshot was taken.
+     */
+    protected final long chunkGenerationTime;
+
+    /**
+     * The compressed chunk data which the client will render.
+     */
+    @Nonnull
+    protected final byte[] blockData;
+
+    /**
+     * The compressed chunk height data which the client can use for positioning.
+     */
+    @Nonnull
+    protected final byte[] blockHeightData;
+
+    /**
+     * The compressed block biome data which the client can use for rendering.
+     */
+    @Nonnull
+    protected final byte[] blockBiomeData;
+
+    /**
+     * The compressed block index data which the client can use for positioning.
+     */
+    @Nonnull
+    protected final byte[] blockIndices;
+
+    /**
+     * Creates a chunk representation for the client side gl map. The arrays are not copied.
+     *
+     * @param id                  the id / type of this glm chunk.
+     * @param chunkGenerationTime the time in milliseconds when this snapshot was taken.
+     * @param blockData           the compressed chunk data which the client will render.
+     * @param blockHeightData     the compressed height data of the chunk.
+     * @param blockBiomeData      the compressed block biome data which the client can use for rendering.
+     * @param blockIndices        the compressed block index data which the client can use for positioning.
+     */
+    public BinaryGlmChunk(@Nonnull final String id, final long chunkGenerationTime, @Nonnull final byte[] blockData,
+                          @Nonnull final byte[] blockHeightData, @Nonnull final byte[] blockBiomeData,
+                          @Nonnull final byte[] blockIndices) {
+        this.id = id;
+        this.chunkGenerationTime = chunkGenerationTime;
+        this.blockData = blockData;
+        this.blockHeightData = blockHeightData;
+        this.blockBiomeData = blockBiomeData;
+        this.blockIndices = blockIndices;
+    }
+
+    /**
+     * Encodes uncompressed chunk fields with the codec of a chunk type. Empty fields stay empty.
+     *
+     * @param type                the type of the chunk, which picks the codec.
+     * @param chunkGenerationTime the time in milliseconds when this snapshot was taken.
+     * @param blockData           the uncompressed chunk data.
+     * @param blockHeightData     the uncompressed height data.
+     * @param blockBiomeData      the uncompressed biome data.
+     * @param blockIndices        the uncompressed index data.
+     * @return the encoded chunk.
+     */
+    @Nonnull
+    public static BinaryGlmChunk encode(@Nonnull final GlmChunkTypes type, final long chunkGenerationTime,
+                                        @Nonnull final byte[] blockData, @Nonnull final byte[] blockHeightData,
+                                        @Nonnull final byte[] blockBiomeData, @Nonnull final byte[] blockIndices) {
+        final GlmChunkCodec codec = type.getCodec();
+        return new BinaryGlmChunk(type.getType(), chunkGenerationTime, encodeField(codec, blockData),
+                encodeField(codec, blockHeightData), encodeField(codec, blockBiomeData),
+                encodeField(codec, blockIndices));
+    }
+
+    /**
+     * @param codec the codec to encode with.
+     * @param data  the uncompressed field.
+     * @return the encoded field or the field itself if it is empty.
+     */
+    @Nonnull
+    private static byte[] encodeField(@Nonnull final GlmChunkCodec codec, @Nonnull final byte[] data) {
+        return data.length == 0 ? data : codec.encode(data);
+    }
+
+    /**
+     * Converts any {@link GlmChunk} to its binary form. Text fields in the base64 form of a payload written by a
+     * registered codec, which is what {@link GzipGlmChunk} and every other chunk in this library produce, are stored
+     * as that payload. Any other text is stored as a {@link TextCodec} payload and read back unchanged.
+     *
+     * @param glmChunk the chunk to convert.
+     * @return the binary form of the chunk or the chunk itself if it is already binary.
+     */
+    @Nonnull
+    public static BinaryGlmChunk fromGlmChunk(@Nonnull final GlmChunk glmChunk) {
+        if (glmChunk instanceof BinaryGlmChunk) {
+            return (BinaryGlmChunk) glmChunk;
+        }
+        return new BinaryGlmChunk(glmChunk.getId(), glmChunk.getChunkGenerationTime(),
+                decodeText(glmChunk.getBlockData()), decodeText(glmChunk.getBlockHeightData()),
+                decodeText(glmChunk.getBlockBiomeData()),
+                decodeIndices(glmChunk.getId(), glmChunk.getBlockIndices()));
+    }
+
+    @Nonnull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getChunkGenerationTime() {
+        return chunkGenerationTime;
+    }
+
+    @Nonnull
+    @Override
+    public String getBlockData() {
+        return encodeText(blockData);
+    }
+
+    @Nonnull
+    @Override
+    public String getBlockHeightData() {
+        return encodeText(blockHeightData);
+    }
+
+    @Nonnull
+    @Override
+    public String getBlockIndices() {
+        return SharedIndexData.isShared(id, blockIndices) ? SharedIndexData.getText(id) : encodeText(blockIndices);
+    }
+
+    @Nonnull
+    @Override
+    public String getBlockBiomeData() {
+        return encodeText(blockBiomeData);
+    }
+
+    /**
+     * @return the compressed chunk data, not a copy.
+     */
+    @Nonnull
+    public byte[] getBlockDataBytes() {
+        return blockData;
+    }
+
+    /**
+     * @return the compressed chunk height data, not a copy.
+     */
+    @Nonnull
+    public byte[] getBlockHeightDataBytes() {
+        return blockHeightData;
+    }
+
+    /**
+     * @return the compressed block biome data, not a copy.
+     */
+    @Nonnull
+    public byte[] getBlockBiomeDataBytes() {
+        return blockBiomeData;
+    }
+
+    /**
+     * @return the compressed block index data, not a copy.
+     */
+    @Nonnull
+    public byte[] getBlockIndicesBytes() {
+        return blockIndices;
+    }
+
+    /**
+     * @return the summed length of every compressed field.
+     */
+    public long getByteSize() {
+        return (long) blockData.length + blockHeightData.length + blockBiomeData.length + blockIndices.length;
+    }
+
+    /**
+     * Calculates the bytes a chunk holds on its own. A shared index payload is held once for every chunk of the type,
+     * not by this one, so it is not counted. Binary chunks are measured without encoding them as base64.
+     *
+     * @param chunk the chunk to measure.
+     * @return the summed size of the data, height, biome and index fields.
+     */
+    public static long getStoredSize(@Nonnull final GlmChunk chunk) {
+        if (chunk instanceof BinaryGlmChunk) {
+            final BinaryGlmChunk binaryChunk = (BinaryGlmChunk) chunk;
+            final byte[] indices = binaryChunk.getBlockIndicesBytes();
+            return binaryChunk.getByteSize() - (SharedIndexData.isShared(chunk.getId(), indices) ? indices.length : 0);
+        }
+        final String indices = chunk.getBlockIndices();
+        return (long) chunk.getBlockData().length() + chunk.getBlockHeightData().length() +
+                chunk.getBlockBiomeData().length() + (SharedIndexData.isShared(chunk.getId(), indices) ? 0 :
+                indices.length());
+    }
+
+    /**
+     * @param data the compressed bytes.
+     * @return the text stored by a {@link TextCodec} payload, otherwise the base64 text form of the bytes.
+     */
+    @Nonnull
+    private static String encodeText(@Nonnull final byte[] data) {
+        if (TextCodec.isText(data)) {
+            return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+        }
+        return data.length == 0 ? "" : Base64.getEncoder().encodeToString(data);
+    }
+
+    /**
+     * Decodes the base64 text form of a compressed payload. Text which is not the canonical base64 form of a payload
+     * written by a registered codec is kept as a {@link TextCodec} payload, so {@link #encodeText(byte[])} gives back
+     * exactly the text which was passed in.
+     *
+     * @param text the text form of the field.
+     * @return the compressed bytes, empty if the text is empty.
+     */
+    @Nonnull
+    private static byte[] decodeText(@Nonnull final String text) {
+        if (text.isEmpty()) {
+            return new byte[0];
+        }
+        if (isCanonicalBase64(text)) {
+            final byte[] data = Base64.getDecoder().decode(text);
+            final GlmChunkCodec codec = GlmChunkCodecs.detect(data);
+            // Base64 of a text payload would read back as the text it holds, so it is kept as text too
+            if (codec != null && codec != TextCodec.INSTANCE) {
+                return data;
+            }
+        }
+        final byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        return TextCodec.INSTANCE.encode(utf8, 0, utf8.length, 0);
+    }
+
+    /**
+     * Checks if text is base64 which {@link Base64.Encoder} writes back the same, padded and without stray bits in
+     * the last character.
+     *
+     * @param text the text to check.
+     * @return true if the text is canonical base64.
+     */
+    private static boolean isCanonicalBase64(@Nonnull final String text) {
+        final int length = text.length();
+        if (length % 4 != 0) {
+            return false;
+        }
+        final int padding = text.charAt(length - 1) != '=' ? 0 : text.charAt(length - 2) != '=' ? 1 : 2;
+        for (int i = 0; i < length - padding; i++) {
+            final int value = base64Value(text.charAt(i));
+            if (value < 0) {
+                return false;
+            }
+            // The last character before the padding carries 4 or 2 unused bits which must be zero
+            if (i == length - padding - 1 && (value & (padding == 2 ? 0x0f : padding == 1 ? 0x03 : 0)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param c a character.
+     * @return the value of the character in the base64 alphabet or -1 if it is not part of it.
+     */
+    private static int base64Value(final char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        return c == '+' ? 62 : c == '/' ? 63 : -1;
+    }
+
+    /**
+     * Decodes index text, handing out the shared payload of the chunk type instead of a copy when they match.
+     *
+     * @param chunkType the glm chunk type.
+     * @param text      the index text to decode.
+     * @return the shared index payload or the decoded bytes.
+     */
+    @Nonnull
+    private static byte[] decodeIndices(@Nonnull final String chunkType, @Nonnull final String text) {
+        final String sharedText = SharedIndexData.getText(chunkType);
+        if (sharedText != null && (sharedText == text || sharedText.equals(text))) {
+            return SharedIndexData.get(chunkType);
+        }
+        return SharedIndexData.fromStored(chunkType, decodeText(text));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A small pool of objects which are expensive to create or hold native memory, such as {@link java.util.zip.Deflater}
+ * and {@link java.util.zip.Inflater}. Objects are borrowed around a single call and given back afterwards. At most
+ * {@code capacity} idle objects are kept, a borrow from an empty pool creates a new object and an object given back to a
+ * full pool is disposed of right away, so threads which come and go, like virtual threads, never leave native memory
+ * behind for the garbage collector.
+ *
+ * @param <T> the type of the pooled objects.
+ * @author Tyler Bucher
+ */
+public final class BoundedPool<T> {
+
+    /**
+     * The default number of idle objects kept by a pool.
+     */
+    public static final int DEFAULT_CAPACITY = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * The idle objects.
+     */
+    private final ArrayBlockingQueue<T> idle;
+
+    /**
+     * Creates new objects when the pool is empty.
+     */
+    private final Supplier<T> factory;
+
+    /**
+     * Releases objects which do not fit in the pool.
+     */
+    private final Consumer<T> disposer;
+
+    /**
+     * Creates a new bounded pool.
+     *
+     * @param capacity the maximum number of idle objects kept.
+     * @param factory  creates new objects when the pool is empty.
+     * @param disposer releases objects which do not fit in the pool.
+     */
+    public BoundedPool(final int capacity, @Nonnull final Supplier<T> factory, @Nonnull final Consumer<T> disposer) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+        this.disposer = disposer;
+    }
+
+    /**
+     * Takes an idle object or creates a new one if none is idle.
+     *
+     * @return an object which must be given back with {@link #release(Object)}.
+     */
+    @Nonnull
+    public T borrow() {
+        final T object = idle.poll();
+        return object != null ? object : factory.get();
+    }
+
+    /**
+     * Gives a borrowed object back, disposing of it if the pool is full.
+     *
+     * @param object the borrowed object.
+     */
+    public void release(@Nonnull final T object) {
+        if (!idle.offer(object)) {
+            disposer.accept(object);
+        }
+    }
+
+    /**
+     * @return the number of idle objects in the pool.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+}
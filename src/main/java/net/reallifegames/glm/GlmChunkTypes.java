@@ -23,7 +23,16 @@
  */
 package net.reallifegames.glm;
 
+import net.reallifegames.glm.codec.DeflateCodec;
+import net.reallifegames.glm.codec.DictionaryDeflateCodec;
+import net.reallifegames.glm.codec.GlmChunkCodec;
+import net.reallifegames.glm.codec.GlmChunkCodecs;
+import net.reallifegames.glm.codec.GzipCodec;
+import net.reallifegames.glm.codec.PaethDeflateCodec;
+import net.reallifegames.glm.codec.PaletteCodec;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Holds glm chunk type constants.
@@ -35,12 +44,52 @@ public enum GlmChunkTypes {
     /**
      * The glm type for a two dimensional chunk representation.
      */
-    TWO_DIMENSIONAL_GZIP("two_dimensional_gzip"),
+    TWO_DIMENSIONAL_GZIP("two_dimensional_gzip", GzipCodec.ID),
 
     /**
      * The glm type for a three dimensional chunk representation.
      */
-    THREE_DIMENSIONAL_GZIP("three_dimensional_gzip");
+    THREE_DIMENSIONAL_GZIP("three_dimensional_gzip", GzipCodec.ID),
+
+    /**
+     * The glm type for a two dimensional chunk compressed with raw deflate.
+     */
+    TWO_DIMENSIONAL_DEFLATE("two_dimensional_deflate", DeflateCodec.ID),
+
+    /**
+     * The glm type for a three dimensional chunk compressed with raw deflate.
+     */
+    THREE_DIMENSIONAL_DEFLATE("three_dimensional_deflate", DeflateCodec.ID),
+
+    /**
+     * The glm type for a two dimensional chunk compressed with dictionary primed deflate.
+     */
+    TWO_DIMENSIONAL_DICTIONARY_DEFLATE("two_dimensional_dictionary_deflate", DictionaryDeflateCodec.ID),
+
+    /**
+     * The glm type for a three dimensional chunk compressed with dictionary primed deflate.
+     */
+    THREE_DIMENSIONAL_DICTIONARY_DEFLATE("three_dimensional_dictionary_deflate", DictionaryDeflateCodec.ID),
+
+    /**
+     * The glm type for a two dimensional chunk whose rows are paeth filtered before raw deflate.
+     */
+    TWO_DIMENSIONAL_PAETH_DEFLATE("two_dimensional_paeth_deflate", PaethDeflateCodec.ID),
+
+    /**
+     * The glm type for a three dimensional chunk whose rows are paeth filtered before raw deflate.
+     */
+    THREE_DIMENSIONAL_PAETH_DEFLATE("three_dimensional_paeth_deflate", PaethDeflateCodec.ID),
+
+    /**
+     * The glm type for a two dimensional chunk whose block and biome ids are stored as a bit packed palette.
+     */
+    TWO_DIMENSIONAL_PALETTE("two_dimensional_palette", PaletteCodec.ID),
+
+    /**
+     * The glm type for a three dimensional chunk whose block and biome ids are stored as a bit packed palette.
+     */
+    THREE_DIMENSIONAL_PALETTE("three_dimensional_palette", PaletteCodec.ID);
 
     /**
      * The id / type of the glm chunk.
@@ -48,10 +97,17 @@ public enum GlmChunkTypes {
     private final String type;
 
     /**
-     * @param type the id / type of the glm chunk.
+     * The id of the codec which encodes chunks of this type.
      */
-    GlmChunkTypes(@Nonnull final String type) {
+    private final byte codecId;
+
+    /**
+     * @param type    the id / type of the glm chunk.
+     * @param codecId the id of the codec which encodes chunks of this type.
+     */
+    GlmChunkTypes(@Nonnull final String type, final byte codecId) {
         this.type = type;
+        this.codecId = codecId;
     }
 
     /**
@@ -60,4 +116,40 @@ public enum GlmChunkTypes {
     public String getType() {
         return type;
     }
+
+    /**
+     * @return true if chunks of this type are two dimensional and share {@link GzipGlmChunk#TWO_DIMENSIONAL_INDICES}.
+     */
+    public boolean isTwoDimensional() {
+        return type.startsWith("two_dimensional");
+    }
+
+    /**
+     * Looks the codec up on every call so a codec swapped with {@link GlmChunkCodecs#replace(GlmChunkCodec)} is used
+     * right away.
+     *
+     * @return the codec which encodes chunks of this type.
+     */
+    @Nonnull
+    public GlmChunkCodec getCodec() {
+        final GlmChunkCodec codec = GlmChunkCodecs.get(codecId);
+        if (codec == null) {
+            throw new IllegalStateException("No codec registered for " + type);
+        }
+        return codec;
+    }
+
+    /**
+     * @param type the id / type of the glm chunk.
+     * @return the matching chunk type or null if there is none.
+     */
+    @Nullable
+    public static GlmChunkTypes fromType(@Nonnull final String type) {
+        for (final GlmChunkTypes chunkType : values()) {
+            if (chunkType.type.equals(type)) {
+                return chunkType;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors glm runs blocking work on. The jdk is asked for virtual threads by reflection, so glm still
+ * builds and runs on a jdk without them.
+ *
+ * @author Tyler Bucher
+ */
+public final class GlmExecutors {
+
+    /**
+     * Static class.
+     */
+    private GlmExecutors() {
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the jdk supports it, otherwise a fixed pool of daemon threads.
+     *
+     * @param threads    the number of platform threads used when virtual threads are not available.
+     * @param threadName the name prefix of the platform threads.
+     * @return the new executor.
+     */
+    @Nonnull
+    public static ExecutorService newExecutor(final int threads, @Nonnull final String threadName) {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Jdk without virtual threads
+        }
+        return newFixedExecutor(threads, threadName);
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads.
+     *
+     * @param threads    the number of threads.
+     * @param threadName the name prefix of the threads.
+     * @return the new executor.
+     */
+    @Nonnull
+    public static ExecutorService newFixedExecutor(final int threads, @Nonnull final String threadName) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable->{
+            final Thread thread = new Thread(runnable, threadName + '-' + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+    }
+}
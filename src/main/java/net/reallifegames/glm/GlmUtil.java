@@ -24,25 +24,379 @@
 package net.reallifegames.glm;
 
 import javax.annotation.Nonnull;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class GlmUtil {
 
     /**
-     * Converts an int array to a continues 4 byte array.
+     * Converts an int array to a continues 4 byte big endian array.
      *
      * @param intArray the array to convert.
      * @return the newly created byte array.
      */
     @Nonnull
     public static byte[] intToByte(@Nonnull final int[] intArray) {
-        byte[] dst = new byte[intArray.length << 2];
-        int index = 0;
-        for (int anIntArray : intArray) {
-            dst[index++] = (byte) (anIntArray >>> 24);
-            dst[index++] = (byte) (anIntArray >>> 16);
-            dst[index++] = (byte) (anIntArray >>> 8);
-            dst[index++] = (byte) anIntArray;
+        return intToByte(intArray, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Converts an int array to a continues 4 byte array.
+     *
+     * @param intArray the array to convert.
+     * @param order    the byte order to write in.
+     * @return the newly created byte array.
+     */
+    @Nonnull
+    public static byte[] intToByte(@Nonnull final int[] intArray, @Nonnull final ByteOrder order) {
+        final byte[] dst = new byte[intArray.length << 2];
+        intToByte(intArray, 0, intArray.length, dst, 0, order);
+        return dst;
+    }
+
+    /**
+     * Writes part of an int array into a caller provided byte array.
+     *
+     * @param src       the array to convert.
+     * @param srcOffset the first element to convert.
+     * @param length    the number of elements to convert.
+     * @param dst       the array to write to.
+     * @param dstOffset the first byte to write.
+     * @param order     the byte order to write in.
+     * @return the number of bytes written.
+     *
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    public static int intToByte(@Nonnull final int[] src, final int srcOffset, final int length,
+                                @Nonnull final byte[] dst, final int dstOffset, @Nonnull final ByteOrder order) {
+        ByteBuffer.wrap(dst, dstOffset, length << 2).order(order).asIntBuffer().put(src, srcOffset, length);
+        return length << 2;
+    }
+
+    /**
+     * Writes part of an int array into a buffer at its position in the buffer's byte order, moving the position past
+     * the written bytes. Heap and direct buffers are both written through a bulk view.
+     *
+     * @param src       the array to convert.
+     * @param srcOffset the first element to convert.
+     * @param length    the number of elements to convert.
+     * @param dst       the buffer to write to.
+     * @return the number of bytes written.
+     *
+     * @throws BufferOverflowException if the elements do not fit in the remaining space.
+     */
+    public static int intToByte(@Nonnull final int[] src, final int srcOffset, final int length,
+                                @Nonnull final ByteBuffer dst) {
+        final int bytes = length << 2;
+        if (bytes > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.asIntBuffer().put(src, srcOffset, length);
+        dst.position(dst.position() + bytes);
+        return bytes;
+    }
+
+    /**
+     * Converts a continues 4 byte array back to an int array.
+     *
+     * @param byteArray the array to convert.
+     * @param order     the byte order the array was written in.
+     * @return the newly created int array.
+     *
+     * @throws IllegalArgumentException if the array length is not a multiple of 4.
+     */
+    @Nonnull
+    public static int[] byteToInt(@Nonnull final byte[] byteArray, @Nonnull final ByteOrder order) {
+        if ((byteArray.length & 3) != 0) {
+            throw new IllegalArgumentException("Byte array length " + byteArray.length + " is not a multiple of 4");
+        }
+        final int[] dst = new int[byteArray.length >>> 2];
+        byteToInt(byteArray, 0, dst, 0, dst.length, order);
+        return dst;
+    }
+
+    /**
+     * Reads part of a byte array into a caller provided int array.
+     *
+     * @param src       the array to read.
+     * @param srcOffset the first byte to read.
+     * @param dst       the array to write to.
+     * @param dstOffset the first element to write.
+     * @param length    the number of elements to read.
+     * @param order     the byte order the bytes were written in.
+     *
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    public static void byteToInt(@Nonnull final byte[] src, final int srcOffset, @Nonnull final int[] dst,
+                                 final int dstOffset, final int length, @Nonnull final ByteOrder order) {
+        ByteBuffer.wrap(src, srcOffset, length << 2).order(order).asIntBuffer().get(dst, dstOffset, length);
+    }
+
+    /**
+     * Reads ints from a buffer at its position in the buffer's byte order, moving the position past the read bytes.
+     *
+     * @param src       the buffer to read.
+     * @param dst       the array to write to.
+     * @param dstOffset the first element to write.
+     * @param length    the number of elements to read.
+     *
+     * @throws BufferUnderflowException if fewer than the needed bytes remain.
+     */
+    public static void byteToInt(@Nonnull final ByteBuffer src, @Nonnull final int[] dst, final int dstOffset,
+                                 final int length) {
+        final int bytes = length << 2;
+        if (bytes > src.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        src.asIntBuffer().get(dst, dstOffset, length);
+        src.position(src.position() + bytes);
+    }
+
+    /**
+     * Converts a short array to a continues 2 byte big endian array.
+     *
+     * @param shortArray the array to convert.
+     * @return the newly created byte array.
+     */
+    @Nonnull
+    public static byte[] shortToByte(@Nonnull final short[] shortArray) {
+        return shortToByte(shortArray, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Converts a short array to a continues 2 byte array.
+     *
+     * @param shortArray the array to convert.
+     * @param order      the byte order to write in.
+     * @return the newly created byte array.
+     */
+    @Nonnull
+    public static byte[] shortToByte(@Nonnull final short[] shortArray, @Nonnull final ByteOrder order) {
+        final byte[] dst = new byte[shortArray.length << 1];
+        shortToByte(shortArray, 0, shortArray.length, dst, 0, order);
+        return dst;
+    }
+
+    /**
+     * Writes part of a short array into a caller provided byte array.
+     *
+     * @param src       the array to convert.
+     * @param srcOffset the first element to convert.
+     * @param length    the number of elements to convert.
+     * @param dst       the array to write to.
+     * @param dstOffset the first byte to write.
+     * @param order     the byte order to write in.
+     * @return the number of bytes written.
+     *
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    public static int shortToByte(@Nonnull final short[] src, final int srcOffset, final int length,
+                                  @Nonnull final byte[] dst, final int dstOffset, @Nonnull final ByteOrder order) {
+        ByteBuffer.wrap(dst, dstOffset, length << 1).order(order).asShortBuffer().put(src, srcOffset, length);
+        return length << 1;
+    }
+
+    /**
+     * Writes part of a short array into a buffer at its position in the buffer's byte order, moving the position past
+     * the written bytes. Heap and direct buffers are both written through a bulk view.
+     *
+     * @param src       the array to convert.
+     * @param srcOffset the first element to convert.
+     * @param length    the number of elements to convert.
+     * @param dst       the buffer to write to.
+     * @return the number of bytes written.
+     *
+     * @throws BufferOverflowException if the elements do not fit in the remaining space.
+     */
+    public static int shortToByte(@Nonnull final short[] src, final int srcOffset, final int length,
+                                  @Nonnull final ByteBuffer dst) {
+        final int bytes = length << 1;
+        if (bytes > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.asShortBuffer().put(src, srcOffset, length);
+        dst.position(dst.position() + bytes);
+        return bytes;
+    }
+
+    /**
+     * Converts a continues 2 byte array back to a short array.
+     *
+     * @param byteArray the array to convert.
+     * @param order     the byte order the array was written in.
+     * @return the newly created short array.
+     *
+     * @throws IllegalArgumentException if the array length is not a multiple of 2.
+     */
+    @Nonnull
+    public static short[] byteToShort(@Nonnull final byte[] byteArray, @Nonnull final ByteOrder order) {
+        if ((byteArray.length & 1) != 0) {
+            throw new IllegalArgumentException("Byte array length " + byteArray.length + " is not a multiple of 2");
+        }
+        final short[] dst = new short[byteArray.length >>> 1];
+        byteToShort(byteArray, 0, dst, 0, dst.length, order);
+        return dst;
+    }
+
+    /**
+     * Reads part of a byte array into a caller provided short array.
+     *
+     * @param src       the array to read.
+     * @param srcOffset the first byte to read.
+     * @param dst       the array to write to.
+     * @param dstOffset the first element to write.
+     * @param length    the number of elements to read.
+     * @param order     the byte order the bytes were written in.
+     *
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    public static void byteToShort(@Nonnull final byte[] src, final int srcOffset, @Nonnull final short[] dst,
+                                   final int dstOffset, final int length, @Nonnull final ByteOrder order) {
+        ByteBuffer.wrap(src, srcOffset, length << 1).order(order).asShortBuffer().get(dst, dstOffset, length);
+    }
+
+    /**
+     * Reads shorts from a buffer at its position in the buffer's byte order, moving the position past the read bytes.
+     *
+     * @param src       the buffer to read.
+     * @param dst       the array to write to.
+     * @param dstOffset the first element to write.
+     * @param length    the number of elements to read.
+     *
+     * @throws BufferUnderflowException if fewer than the needed bytes remain.
+     */
+    public static void byteToShort(@Nonnull final ByteBuffer src, @Nonnull final short[] dst, final int dstOffset,
+                                   final int length) {
+        final int bytes = length << 1;
+        if (bytes > src.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        src.asShortBuffer().get(dst, dstOffset, length);
+        src.position(src.position() + bytes);
+    }
+
+    /**
+     * Converts a long array to a continues 8 byte big endian array.
+     *
+     * @param longArray the array to convert.
+     * @return the newly created byte array.
+     */
+    @Nonnull
+    public static byte[] longToByte(@Nonnull final long[] longArray) {
+        return longToByte(longArray, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Converts a long array to a continues 8 byte array.
+     *
+     * @param longArray the array to convert.
+     * @param order     the byte order to write in.
+     * @return the newly created byte array.
+     */
+    @Nonnull
+    public static byte[] longToByte(@Nonnull final long[] longArray, @Nonnull final ByteOrder order) {
+        final byte[] dst = new byte[longArray.length << 3];
+        longToByte(longArray, 0, longArray.length, dst, 0, order);
+        return dst;
+    }
+
+    /**
+     * Writes part of a long array into a caller provided byte array.
+     *
+     * @param src       the array to convert.
+     * @param srcOffset the first element to convert.
+     * @param length    the number of elements to convert.
+     * @param dst       the array to write to.
+     * @param dstOffset the first byte to write.
+     * @param order     the byte order to write in.
+     * @return the number of bytes written.
+     *
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    public static int longToByte(@Nonnull final long[] src, final int srcOffset, final int length,
+                                 @Nonnull final byte[] dst, final int dstOffset, @Nonnull final ByteOrder order) {
+        ByteBuffer.wrap(dst, dstOffset, length << 3).order(order).asLongBuffer().put(src, srcOffset, length);
+        return length << 3;
+    }
+
+    /**
+     * Writes part of a long array into a buffer at its position in the buffer's byte order, moving the position past
+     * the written bytes. Heap and direct buffers are both written through a bulk view.
+     *
+     * @param src       the array to convert.
+     * @param srcOffset the first element to convert.
+     * @param length    the number of elements to convert.
+     * @param dst       the buffer to write to.
+     * @return the number of bytes written.
+     *
+     * @throws BufferOverflowException if the elements do not fit in the remaining space.
+     */
+    public static int longToByte(@Nonnull final long[] src, final int srcOffset, final int length,
+                                 @Nonnull final ByteBuffer dst) {
+        final int bytes = length << 3;
+        if (bytes > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.asLongBuffer().put(src, srcOffset, length);
+        dst.position(dst.position() + bytes);
+        return bytes;
+    }
+
+    /**
+     * Converts a continues 8 byte array back to a long array.
+     *
+     * @param byteArray the array to convert.
+     * @param order     the byte order the array was written in.
+     * @return the newly created long array.
+     *
+     * @throws IllegalArgumentException if the array length is not a multiple of 8.
+     */
+    @Nonnull
+    public static long[] byteToLong(@Nonnull final byte[] byteArray, @Nonnull final ByteOrder order) {
+        if ((byteArray.length & 7) != 0) {
+            throw new IllegalArgumentException("Byte array length " + byteArray.length + " is not a multiple of 8");
         }
+        final long[] dst = new long[byteArray.length >>> 3];
+        byteToLong(byteArray, 0, dst, 0, dst.length, order);
         return dst;
     }
+
+    /**
+     * Reads part of a byte array into a caller provided long array.
+     *
+     * @param src       the array to read.
+     * @param srcOffset the first byte to read.
+     * @param dst       the array to write to.
+     * @param dstOffset the first element to write.
+     * @param length    the number of elements to read.
+     * @param order     the byte order the bytes were written in.
+     *
+     * @throws IndexOutOfBoundsException if either range is outside its array.
+     */
+    public static void byteToLong(@Nonnull final byte[] src, final int srcOffset, @Nonnull final long[] dst,
+                                  final int dstOffset, final int length, @Nonnull final ByteOrder order) {
+        ByteBuffer.wrap(src, srcOffset, length << 3).order(order).asLongBuffer().get(dst, dstOffset, length);
+    }
+
+    /**
+     * Reads longs from a buffer at its position in the buffer's byte order, moving the position past the read bytes.
+     *
+     * @param src       the buffer to read.
+     * @param dst       the array to write to.
+     * @param dstOffset the first element to write.
+     * @param length    the number of elements to read.
+     *
+     * @throws BufferUnderflowException if fewer than the needed bytes remain.
+     */
+    public static void byteToLong(@Nonnull final ByteBuffer src, @Nonnull final long[] dst, final int dstOffset,
+                                  final int length) {
+        final int bytes = length << 3;
+        if (bytes > src.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        src.asLongBuffer().get(dst, dstOffset, length);
+        src.position(src.position() + bytes);
+    }
 }
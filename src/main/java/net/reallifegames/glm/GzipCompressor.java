@@ -0,0 +1,476 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip members without the stream and copy overhead of {@link java.util.zip.GZIPOutputStream}. A call borrows
+ * one raw {@link Deflater}, one {@link CRC32}, one utf-8 encoder and their scratch buffers from a {@link BoundedPool},
+ * the gzip header and trailer are written by hand and compressed bytes go straight into the destination.
+ *
+ * @author Tyler Bucher
+ */
+public final class GzipCompressor {
+
+    /**
+     * The gzip member header: magic, deflate method, no flags, no time, no extra flags and os 0, the same header the
+     * java 8 {@link java.util.zip.GZIPOutputStream} writes.
+     */
+    private static final byte[] HEADER = {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * The size of the gzip trailer holding the crc and the input size.
+     */
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * The size of the scratch buffer used for streaming output.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Scratch buffers larger than this are not kept between calls.
+     */
+    private static final int MAXIMUM_RETAINED_SIZE = 1 << 20;
+
+    /**
+     * The compression level used when none is given.
+     */
+    private static volatile int defaultLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Idle compression states, the deflater of a state which does not fit is ended right away.
+     */
+    private static final BoundedPool<State> STATES = new BoundedPool<>(BoundedPool.DEFAULT_CAPACITY, State::new,
+            State::end);
+
+    /**
+     * Static utility class.
+     */
+    private GzipCompressor() {
+    }
+
+    /**
+     * @return the compression level used when none is given.
+     */
+    public static int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    /**
+     * Sets the compression level used when none is given. Lower levels trade size for speed when rendering in bulk.
+     *
+     * @param level the new compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public static void setDefaultLevel(final int level) {
+        checkLevel(level);
+        defaultLevel = level;
+    }
+
+    /**
+     * Compresses a string encoded as utf-8 to a base64 encoded gzip member.
+     *
+     * @param original the string to compress.
+     * @param level    the compression level.
+     * @return the base64 encoded gzip member or an empty string if the input was empty.
+     */
+    @Nonnull
+    public static String compressToBase64(@Nonnull final String original, final int level) {
+        if (original.isEmpty()) {
+            return original;
+        }
+        final State state = STATES.borrow();
+        try {
+            final int length = state.encode(original);
+            return toBase64(state, state.encoded, length, level);
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Compresses bytes to a base64 encoded gzip member.
+     *
+     * @param original the bytes to compress.
+     * @param level    the compression level.
+     * @return the base64 encoded gzip member or an empty string if the input was empty.
+     */
+    @Nonnull
+    public static String compressToBase64(@Nonnull final byte[] original, final int level) {
+        if (original.length == 0) {
+            return "";
+        }
+        final State state = STATES.borrow();
+        try {
+            return toBase64(state, original, original.length, level);
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Compresses into the scratch buffer and base64 encodes straight from it.
+     *
+     * @param state  the borrowed compression state.
+     * @param src    the bytes to compress.
+     * @param length the number of bytes to compress.
+     * @param level  the compression level.
+     * @return the base64 encoded gzip member.
+     */
+    @Nonnull
+    private static String toBase64(@Nonnull final State state, @Nonnull final byte[] src, final int length,
+                                   final int level) {
+        final int size = state.compressToScratch(src, 0, length, level);
+        final ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(state.output, 0, size));
+        // Base64 output is ascii so latin-1 decodes it without a lookup
+        return new String(encoded.array(), 0, encoded.remaining(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Compresses a string encoded as utf-8 to a gzip member.
+     *
+     * @param original the string to compress.
+     * @param level    the compression level.
+     * @return the gzip member or an empty array if the input was empty.
+     */
+    @Nonnull
+    public static byte[] compress(@Nonnull final String original, final int level) {
+        if (original.isEmpty()) {
+            return new byte[0];
+        }
+        final State state = STATES.borrow();
+        try {
+            final int length = state.encode(original);
+            final int size = state.compressToScratch(state.encoded, 0, length, level);
+            return Arrays.copyOf(state.output, size);
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Compresses bytes to a gzip member.
+     *
+     * @param src    the bytes to compress.
+     * @param offset the offset of the first byte to compress.
+     * @param length the number of bytes to compress.
+     * @param level  the compression level.
+     * @return the gzip member or an empty array if the input was empty.
+     */
+    @Nonnull
+    public static byte[] compress(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        if (length == 0) {
+            return new byte[0];
+        }
+        final State state = STATES.borrow();
+        try {
+            final int size = state.compressToScratch(src, offset, length, level);
+            return Arrays.copyOf(state.output, size);
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Compresses bytes to a gzip member written into a buffer starting at its position. The position is moved past
+     * the member.
+     *
+     * @param src    the bytes to compress.
+     * @param offset the offset of the first byte to compress.
+     * @param length the number of bytes to compress.
+     * @param dst    the buffer to write to.
+     * @param level  the compression level.
+     * @return the number of bytes written.
+     *
+     * @throws BufferOverflowException if the member does not fit in the remaining space. The position is left
+     *                                 unchanged.
+     */
+    public static int compress(@Nonnull final byte[] src, final int offset, final int length,
+                               @Nonnull final ByteBuffer dst, final int level) {
+        final State state = STATES.borrow();
+        try {
+            final int start = dst.position();
+            if (dst.hasArray() && !dst.isReadOnly()) {
+                // Deflate straight into the backing array
+                final int size = state.compress(src, offset, length, level, dst.array(), dst.arrayOffset() + start,
+                        dst.remaining(), false);
+                dst.position(start + size);
+                return size;
+            }
+            final int size = state.compressToScratch(src, offset, length, level);
+            if (size > dst.remaining()) {
+                throw new BufferOverflowException();
+            }
+            dst.put(state.output, 0, size);
+            return size;
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Compresses bytes to a gzip member written to a stream in fixed size pieces.
+     *
+     * @param src    the bytes to compress.
+     * @param offset the offset of the first byte to compress.
+     * @param length the number of bytes to compress.
+     * @param out    the stream to write to, left open.
+     * @param level  the compression level.
+     * @return the number of bytes written.
+     *
+     * @throws IOException if the stream could not be written to.
+     */
+    public static long compress(@Nonnull final byte[] src, final int offset, final int length,
+                                @Nonnull final OutputStream out, final int level) throws IOException {
+        final State state = STATES.borrow();
+        try {
+            final Deflater deflater = state.begin(src, offset, length, level);
+            out.write(HEADER);
+            long written = HEADER.length;
+            final byte[] chunk = state.chunk;
+            while (!deflater.finished()) {
+                final int size = deflater.deflate(chunk, 0, chunk.length);
+                out.write(chunk, 0, size);
+                written += size;
+            }
+            writeTrailer(chunk, 0, (int) state.crc.getValue(), length);
+            out.write(chunk, 0, TRAILER_SIZE);
+            return written + TRAILER_SIZE;
+        } finally {
+            release(state);
+        }
+    }
+
+    /**
+     * Trims the scratch buffers of a state and gives it back to the pool.
+     *
+     * @param state the borrowed compression state.
+     */
+    private static void release(@Nonnull final State state) {
+        state.release();
+        STATES.release(state);
+    }
+
+    /**
+     * Writes the gzip trailer, the crc and the input size both little endian.
+     *
+     * @param dst    the array to write to.
+     * @param offset the offset to write at.
+     * @param crc    the crc32 of the input.
+     * @param size   the input size.
+     */
+    private static void writeTrailer(@Nonnull final byte[] dst, final int offset, final int crc, final int size) {
+        dst[offset] = (byte) crc;
+        dst[offset + 1] = (byte) (crc >>> 8);
+        dst[offset + 2] = (byte) (crc >>> 16);
+        dst[offset + 3] = (byte) (crc >>> 24);
+        dst[offset + 4] = (byte) size;
+        dst[offset + 5] = (byte) (size >>> 8);
+        dst[offset + 6] = (byte) (size >>> 16);
+        dst[offset + 7] = (byte) (size >>> 24);
+    }
+
+    /**
+     * @param level the compression level to check.
+     */
+    private static void checkLevel(final int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+    }
+
+    /**
+     * The compression state borrowed by each call.
+     */
+    private static final class State {
+
+        /**
+         * A raw deflater, the gzip framing is written by hand.
+         */
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        /**
+         * The crc of the current input.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Encodes strings as utf-8.
+         */
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        /**
+         * Fixed size output used for streaming.
+         */
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+
+        /**
+         * The utf-8 encoded input.
+         */
+        private byte[] encoded = new byte[CHUNK_SIZE];
+
+        /**
+         * Growable compressed output.
+         */
+        private byte[] output = new byte[CHUNK_SIZE];
+
+        /**
+         * Encodes a string as utf-8 into the encoded buffer.
+         *
+         * @param text the string to encode.
+         * @return the number of encoded bytes.
+         */
+        private int encode(@Nonnull final String text) {
+            // Utf-8 never needs more than three bytes per java char
+            final int maximum = text.length() * 3;
+            if (encoded.length < maximum) {
+                encoded = new byte[maximum];
+            }
+            final ByteBuffer out = ByteBuffer.wrap(encoded);
+            encoder.reset();
+            final CoderResult result = encoder.encode(CharBuffer.wrap(text), out, true);
+            if (!result.isUnderflow() || !encoder.flush(out).isUnderflow()) {
+                throw new IllegalStateException("Utf-8 encoding overflowed");
+            }
+            return out.position();
+        }
+
+        /**
+         * Drops scratch buffers which grew past the retained size so one huge input does not pin memory.
+         */
+        private void release() {
+            if (encoded.length > MAXIMUM_RETAINED_SIZE) {
+                encoded = new byte[CHUNK_SIZE];
+            }
+            if (output.length > MAXIMUM_RETAINED_SIZE) {
+                output = new byte[CHUNK_SIZE];
+            }
+        }
+
+        /**
+         * Frees the native memory of the deflater, the state can not be used afterwards.
+         */
+        private void end() {
+            deflater.end();
+        }
+
+        /**
+         * Prepares the deflater and crc for a new input.
+         *
+         * @param src    the bytes to compress.
+         * @param offset the offset of the first byte to compress.
+         * @param length the number of bytes to compress.
+         * @param level  the compression level.
+         * @return the prepared deflater.
+         */
+        @Nonnull
+        private Deflater begin(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+            checkLevel(level);
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            crc.reset();
+            crc.update(src, offset, length);
+            return deflater;
+        }
+
+        /**
+         * Compresses into the growable output buffer, growing it as needed.
+         *
+         * @param src    the bytes to compress.
+         * @param offset the offset of the first byte to compress.
+         * @param length the number of bytes to compress.
+         * @param level  the compression level.
+         * @return the size of the gzip member in the output buffer.
+         */
+        private int compressToScratch(@Nonnull final byte[] src, final int offset, final int length,
+                                      final int level) {
+            return compress(src, offset, length, level, null, 0, 0, true);
+        }
+
+        /**
+         * Compresses a gzip member into an array.
+         *
+         * @param src       the bytes to compress.
+         * @param offset    the offset of the first byte to compress.
+         * @param length    the number of bytes to compress.
+         * @param level     the compression level.
+         * @param dst       the array to write to, ignored if growable.
+         * @param dstOffset the offset to write at.
+         * @param capacity  the space available in the array.
+         * @param growable  true to write to the growable output buffer.
+         * @return the size of the gzip member.
+         *
+         * @throws BufferOverflowException if the array is not growable and the member does not fit.
+         */
+        private int compress(@Nonnull final byte[] src, final int offset, final int length, final int level,
+                             final byte[] dst, final int dstOffset, final int capacity, final boolean growable) {
+            byte[] out = growable ? output : dst;
+            int limit = growable ? out.length : dstOffset + capacity;
+            int position = growable ? 0 : dstOffset;
+            if (limit - position < HEADER.length + TRAILER_SIZE) {
+                if (!growable) {
+                    throw new BufferOverflowException();
+                }
+                out = output = new byte[CHUNK_SIZE];
+                limit = out.length;
+            }
+            final Deflater deflater = begin(src, offset, length, level);
+            System.arraycopy(HEADER, 0, out, position, HEADER.length);
+            position += HEADER.length;
+            while (true) {
+                position += deflater.deflate(out, position, limit - position - TRAILER_SIZE);
+                if (deflater.finished()) {
+                    break;
+                }
+                if (limit - position - TRAILER_SIZE > 0) {
+                    continue;
+                }
+                if (!growable) {
+                    throw new BufferOverflowException();
+                }
+                out = output = Arrays.copyOf(out, out.length << 1);
+                limit = out.length;
+            }
+            writeTrailer(out, position, (int) crc.getValue(), length);
+            return position + TRAILER_SIZE - (growable ? 0 : dstOffset);
+        }
+    }
+}
@@ -26,10 +26,6 @@ package net.reallifegames.glm;
 import net.reallifegames.glm.api.GlmChunk;
 
 import javax.annotation.Nonnull;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.Base64;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * A compressed chunk representation for the client side WebGl map.
@@ -148,48 +144,65 @@ public class GzipGlmChunk implements GlmChunk {
     }
 
     /**
-     * Compress a string down to save memory. Uses gzip.
+     * Compress a string down to save memory. Uses gzip over the utf-8 bytes of the string at the
+     * {@link GzipCompressor#getDefaultLevel() default level}.
      *
      * @param original the string to process.
      * @return the newly compressed string.
      */
     @Nonnull
     public static String compressString(@Nonnull final String original) {
-        // Don't compress empty string
-        if (original.length() == 0) {
-            return original;
-        }
-        // Attempt to compress string
-        try (final ByteArrayOutputStream out = new ByteArrayOutputStream(); final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
-            gzip.write(original.getBytes());
-            gzip.close();
-            // Convert to base64 string
-            return Base64.getEncoder().encodeToString(out.toByteArray());
-        } catch (IOException e) {
-            return original;
-        }
+        return GzipCompressor.compressToBase64(original, GzipCompressor.getDefaultLevel());
     }
 
     /**
-     * Attempts to stringify and compress height data. Uses gzip.
+     * Compress a string down to save memory. Uses gzip over the utf-8 bytes of the string.
+     *
+     * @param original the string to process.
+     * @param level    the compression level, 0-9 or -1 for the deflate default.
+     * @return the newly compressed string.
+     */
+    @Nonnull
+    public static String compressString(@Nonnull final String original, final int level) {
+        return GzipCompressor.compressToBase64(original, level);
+    }
+
+    /**
+     * Attempts to stringify and compress height data. Uses gzip at the {@link GzipCompressor#getDefaultLevel()
+     * default level}.
      *
      * @param heights the heights to stringify and compress.
      * @return the new height encoded string.
      */
     @Nonnull
     public static String compressByteArray(@Nonnull final byte[] heights) {
-        // Don't compress empty string
-        if (heights.length == 0) {
-            return "";
-        }
-        // Attempt to compress string
-        try (final ByteArrayOutputStream out = new ByteArrayOutputStream(); final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
-            gzip.write(heights);
-            gzip.close();
-            // Convert to base64 string
-            return Base64.getEncoder().encodeToString(out.toByteArray());
-        } catch (IOException e) {
-            return new String(heights);
+        return GzipCompressor.compressToBase64(heights, GzipCompressor.getDefaultLevel());
+    }
+
+    /**
+     * Attempts to stringify and compress height data. Uses gzip.
+     *
+     * @param heights the heights to stringify and compress.
+     * @param level   the compression level, 0-9 or -1 for the deflate default.
+     * @return the new height encoded string.
+     */
+    @Nonnull
+    public static String compressByteArray(@Nonnull final byte[] heights, final int level) {
+        return GzipCompressor.compressToBase64(heights, level);
+    }
+
+    /**
+     * Compresses bytes without any text encoding. Uses gzip.
+     *
+     * @param original the bytes to compress.
+     * @return the raw gzip bytes or a new empty array if there was nothing to compress.
+     */
+    @Nonnull
+    public static byte[] compress(@Nonnull final byte[] original) {
+        // Don't compress empty array, and never hand the caller's array back
+        if (original.length == 0) {
+            return new byte[0];
         }
+        return GzipCompressor.compress(original, 0, original.length, GzipCompressor.getDefaultLevel());
     }
 }
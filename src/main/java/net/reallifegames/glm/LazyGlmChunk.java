@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import net.reallifegames.glm.codec.GlmChunkCodecs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A chunk which holds only its encoded bytes and decodes a field the first time it is asked for. Decoded fields can
+ * be kept behind soft references, so a large cache keeps them while the heap has room and drops them under pressure
+ * instead of failing. The encoded payloads can be written straight into a {@link ByteBuffer}, such as a WebSocket
+ * frame, either raw or as base64 text, without building a String.
+ *
+ * @author Tyler Bucher
+ */
+public class LazyGlmChunk extends BinaryGlmChunk {
+
+    /**
+     * The fields of a chunk.
+     */
+    public enum Field {
+
+        /**
+         * The chunk data which the client will render.
+         */
+        BLOCK_DATA,
+
+        /**
+         * The chunk height data which the client can use for positioning.
+         */
+        HEIGHT_DATA,
+
+        /**
+         * The block biome data which the client can use for rendering.
+         */
+        BIOME_DATA,
+
+        /**
+         * The block index data which the client can use for positioning.
+         */
+        INDICES
+    }
+
+    /**
+     * The standard base64 alphabet as ascii bytes.
+     */
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * True to keep decoded fields behind soft references.
+     */
+    private final boolean cacheDecoded;
+
+    /**
+     * The soft referenced decoded fields indexed by {@link Field#ordinal()}, null until the first decode.
+     */
+    @Nullable
+    private volatile AtomicReferenceArray<SoftReference<byte[]>> decoded;
+
+    /**
+     * Creates a lazy chunk. The arrays are not copied.
+     *
+     * @param id                  the id / type of this glm chunk.
+     * @param chunkGenerationTime the time in milliseconds when this snapshot was taken.
+     * @param blockData           the encoded chunk data which the client will render.
+     * @param blockHeightData     the encoded height data of the chunk.
+     * @param blockBiomeData      the encoded block biome data which the client can use for rendering.
+     * @param blockIndices        the encoded block index data which the client can use for positioning.
+     * @param cacheDecoded        true to keep decoded fields behind soft references.
+     */
+    public LazyGlmChunk(@Nonnull final String id, final long chunkGenerationTime, @Nonnull final byte[] blockData,
+                        @Nonnull final byte[] blockHeightData, @Nonnull final byte[] blockBiomeData,
+                        @Nonnull final byte[] blockIndices, final boolean cacheDecoded) {
+        super(id, chunkGenerationTime, blockData, blockHeightData, blockBiomeData, blockIndices);
+        this.cacheDecoded = cacheDecoded;
+    }
+
+    /**
+     * Wraps a binary chunk, sharing its arrays.
+     *
+     * @param chunk        the chunk to wrap.
+     * @param cacheDecoded true to keep decoded fields behind soft references.
+     * @return the lazy chunk or the chunk itself if it already is one.
+     */
+    @Nonnull
+    public static LazyGlmChunk of(@Nonnull final BinaryGlmChunk chunk, final boolean cacheDecoded) {
+        if (chunk instanceof LazyGlmChunk) {
+            return (LazyGlmChunk) chunk;
+        }
+        return new LazyGlmChunk(chunk.getId(), chunk.getChunkGenerationTime(), chunk.getBlockDataBytes(),
+                chunk.getBlockHeightDataBytes(), chunk.getBlockBiomeDataBytes(), chunk.getBlockIndicesBytes(),
+                cacheDecoded);
+    }
+
+    /**
+     * @param field the field to get.
+     * @return the encoded bytes of the field. Must not be modified.
+     */
+    @Nonnull
+    public byte[] getEncoded(@Nonnull final Field field) {
+        switch (field) {
+            case BLOCK_DATA:
+                return blockData;
+            case HEIGHT_DATA:
+                return blockHeightData;
+            case BIOME_DATA:
+                return blockBiomeData;
+            default:
+                return blockIndices;
+        }
+    }
+
+    /**
+     * Decodes a field with whichever codec wrote it, reusing a soft cached result when there is one.
+     *
+     * @param field the field to decode.
+     * @return the decoded bytes. Must not be modified when decoded fields are cached.
+     *
+     * @throws IOException if the field is corrupt or no registered codec wrote it.
+     */
+    @Nonnull
+    public byte[] decode(@Nonnull final Field field) throws IOException {
+        final byte[] encoded = getEncoded(field);
+        if (encoded.length == 0) {
+            return encoded;
+        }
+        if (!cacheDecoded) {
+            return GlmChunkCodecs.decode(encoded);
+        }
+        AtomicReferenceArray<SoftReference<byte[]>> cache = decoded;
+        if (cache == null) {
+            // Losing this race only costs one extra array, a decode is never lost for long
+            cache = decoded = new AtomicReferenceArray<>(Field.values().length);
+        }
+        final SoftReference<byte[]> reference = cache.get(field.ordinal());
+        byte[] value = reference == null ? null : reference.get();
+        if (value == null) {
+            value = GlmChunkCodecs.decode(encoded);
+            cache.set(field.ordinal(), new SoftReference<>(value));
+        }
+        return value;
+    }
+
+    /**
+     * Drops every cached decoded field.
+     */
+    public void clearDecoded() {
+        decoded = null;
+    }
+
+    /**
+     * @param field the field to view.
+     * @return a read only buffer over the encoded bytes of the field, sharing the array.
+     */
+    @Nonnull
+    public ByteBuffer encodedView(@Nonnull final Field field) {
+        return ByteBuffer.wrap(getEncoded(field)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the encoded bytes of a field into a buffer at its position, moving the position past them.
+     *
+     * @param field the field to write.
+     * @param dst   the buffer to write to.
+     * @return the number of bytes written.
+     *
+     * @throws BufferOverflowException if the field does not fit in the remaining space.
+     */
+    public int writeEncoded(@Nonnull final Field field, @Nonnull final ByteBuffer dst) {
+        final byte[] data = getEncoded(field);
+        dst.put(data);
+        return data.length;
+    }
+
+    /**
+     * @param field the field to measure.
+     * @return the length of the field as base64 text.
+     */
+    public int getBase64Length(@Nonnull final Field field) {
+        return (getEncoded(field).length + 2) / 3 * 4;
+    }
+
+    /**
+     * Writes a field as base64 text, the form the web client reads, into a buffer at its position. Direct buffers are
+     * written to without an intermediate array.
+     *
+     * @param field the field to write.
+     * @param dst   the buffer to write to.
+     * @return the number of bytes written.
+     *
+     * @throws BufferOverflowException if the text does not fit in the remaining space. The position is left unchanged.
+     */
+    public int writeBase64(@Nonnull final Field field, @Nonnull final ByteBuffer dst) {
+        final int length = getBase64Length(field);
+        if (length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        final byte[] data = getEncoded(field);
+        final int whole = data.length - data.length % 3;
+        int i = 0;
+        while (i < whole) {
+            final int bits = (data[i++] & 0xff) << 16 | (data[i++] & 0xff) << 8 | (data[i++] & 0xff);
+            dst.put(BASE64[bits >>> 18]).put(BASE64[bits >>> 12 & 0x3f]).put(BASE64[bits >>> 6 & 0x3f])
+                    .put(BASE64[bits & 0x3f]);
+        }
+        if (i < data.length) {
+            final int bits = (data[i] & 0xff) << 16 | (i + 1 < data.length ? (data[i + 1] & 0xff) << 8 : 0);
+            dst.put(BASE64[bits >>> 18]).put(BASE64[bits >>> 12 & 0x3f])
+                    .put(i + 1 < data.length ? BASE64[bits >>> 6 & 0x3f] : (byte) '=').put((byte) '=');
+        }
+        return length;
+    }
+}
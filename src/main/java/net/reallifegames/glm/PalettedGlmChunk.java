@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import net.reallifegames.glm.codec.PaletteCodec;
+import net.reallifegames.glm.codec.PalettedData;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * A chunk whose block and biome ids are kept as bit packed palettes. The stored bytes are the {@link PaletteCodec}
+ * payloads, so the chunk can be written to the database or sent as is, while renderers can read ids straight from
+ * {@link #getBlockPalette()} and {@link #getBiomePalette()} without decoding any text.
+ *
+ * @author Tyler Bucher
+ */
+public class PalettedGlmChunk extends BinaryGlmChunk {
+
+    /**
+     * The packed block ids.
+     */
+    @Nonnull
+    protected final PalettedData blockPalette;
+
+    /**
+     * The packed biome ids.
+     */
+    @Nonnull
+    protected final PalettedData biomePalette;
+
+    /**
+     * Creates a paletted chunk from its packed and stored forms. The arrays are not copied.
+     *
+     * @param id                  the id / type of this glm chunk.
+     * @param chunkGenerationTime the time in milliseconds when this snapshot was taken.
+     * @param blockPalette        the packed block ids.
+     * @param blockData           the stored palette payload of the block ids.
+     * @param blockHeightData     the stored height data.
+     * @param biomePalette        the packed biome ids.
+     * @param blockBiomeData      the stored palette payload of the biome ids.
+     * @param blockIndices        the stored index data.
+     */
+    protected PalettedGlmChunk(@Nonnull final String id, final long chunkGenerationTime,
+                               @Nonnull final PalettedData blockPalette, @Nonnull final byte[] blockData,
+                               @Nonnull final byte[] blockHeightData, @Nonnull final PalettedData biomePalette,
+                               @Nonnull final byte[] blockBiomeData, @Nonnull final byte[] blockIndices) {
+        super(id, chunkGenerationTime, blockData, blockHeightData, blockBiomeData, blockIndices);
+        this.blockPalette = blockPalette;
+        this.biomePalette = biomePalette;
+    }
+
+    /**
+     * Packs and encodes a chunk. Empty id lists are stored as empty fields.
+     *
+     * @param type                a {@link PaletteCodec} chunk type.
+     * @param chunkGenerationTime the time in milliseconds when this snapshot was taken.
+     * @param blockIds            the block ids.
+     * @param blockHeightData     the uncompressed height data.
+     * @param biomeIds            the biome ids.
+     * @param blockIndices        the uncompressed index data.
+     * @return the new paletted chunk.
+     *
+     * @throws IllegalArgumentException if the type does not use the {@link PaletteCodec}.
+     */
+    @Nonnull
+    public static PalettedGlmChunk create(@Nonnull final GlmChunkTypes type, final long chunkGenerationTime,
+                                          @Nonnull final int[] blockIds, @Nonnull final byte[] blockHeightData,
+                                          @Nonnull final int[] biomeIds, @Nonnull final byte[] blockIndices) {
+        // The type is stored as the chunk id, so readers must see palette payloads for it
+        if (type.getCodec() != PaletteCodec.INSTANCE) {
+            throw new IllegalArgumentException("Chunk type does not use the palette codec: " + type.getType());
+        }
+        final int level = GzipCompressor.getDefaultLevel();
+        final PalettedData blockPalette = PalettedData.of(blockIds);
+        final PalettedData biomePalette = PalettedData.of(biomeIds);
+        return new PalettedGlmChunk(type.getType(), chunkGenerationTime, blockPalette,
+                blockIds.length == 0 ? new byte[0] : PaletteCodec.INSTANCE.encode(blockPalette, level),
+                blockHeightData.length == 0 ? blockHeightData : type.getCodec().encode(blockHeightData),
+                biomePalette, biomeIds.length == 0 ? new byte[0] : PaletteCodec.INSTANCE.encode(biomePalette, level),
+                blockIndices.length == 0 ? blockIndices : type.getCodec().encode(blockIndices));
+    }
+
+    /**
+     * Unpacks the palettes of a chunk read back from storage. The stored bytes are shared, not copied.
+     *
+     * @param chunk a chunk whose block and biome data are {@link PaletteCodec} payloads or empty.
+     * @return the paletted chunk.
+     *
+     * @throws IOException if the block or biome data is not a palette payload.
+     */
+    @Nonnull
+    public static PalettedGlmChunk fromBinary(@Nonnull final BinaryGlmChunk chunk) throws IOException {
+        if (chunk instanceof PalettedGlmChunk) {
+            return (PalettedGlmChunk) chunk;
+        }
+        return new PalettedGlmChunk(chunk.getId(), chunk.getChunkGenerationTime(),
+                decodePalette(chunk.getBlockDataBytes()), chunk.getBlockDataBytes(), chunk.getBlockHeightDataBytes(),
+                decodePalette(chunk.getBlockBiomeDataBytes()), chunk.getBlockBiomeDataBytes(),
+                chunk.getBlockIndicesBytes());
+    }
+
+    /**
+     * @param payload a palette payload or an empty field.
+     * @return the packed ids, empty for an empty field.
+     *
+     * @throws IOException if the payload is not a palette payload.
+     */
+    @Nonnull
+    private static PalettedData decodePalette(@Nonnull final byte[] payload) throws IOException {
+        return payload.length == 0 ? PalettedData.of(new int[0]) : PaletteCodec.INSTANCE.decodePalette(payload);
+    }
+
+    /**
+     * @return the packed block ids.
+     */
+    @Nonnull
+    public PalettedData getBlockPalette() {
+        return blockPalette;
+    }
+
+    /**
+     * @return the packed biome ids.
+     */
+    @Nonnull
+    public PalettedData getBiomePalette() {
+        return biomePalette;
+    }
+}
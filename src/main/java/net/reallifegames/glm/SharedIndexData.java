@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import net.reallifegames.glm.codec.GlmChunkCodecs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Index data which is the same for every chunk of a type, such as {@link GzipGlmChunk#TWO_DIMENSIONAL_INDICES} for
+ * two dimensional chunks. Such payloads are stored as an empty column and every chunk in memory shares one instance,
+ * so a repeated index costs no bytes per chunk. Index data which differs from the constant is kept as is.
+ * <p>
+ * Payloads are matched by their decoded content, so index data encoded at another compression level or with a replaced
+ * codec still counts as the shared payload.
+ *
+ * @author Tyler Bucher
+ */
+public final class SharedIndexData {
+
+    /**
+     * An empty index column.
+     */
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * The shared encoded index payload of each chunk type.
+     */
+    private static final ConcurrentHashMap<String, byte[]> PAYLOADS = new ConcurrentHashMap<>();
+
+    /**
+     * The shared base64 text of each payload.
+     */
+    private static final ConcurrentHashMap<String, String> TEXTS = new ConcurrentHashMap<>();
+
+    /**
+     * The decoded index data of each payload.
+     */
+    private static final ConcurrentHashMap<String, byte[]> DECODED = new ConcurrentHashMap<>();
+
+    static {
+        final byte[] indices = GzipGlmChunk.TWO_DIMENSIONAL_INDICES.getBytes(StandardCharsets.UTF_8);
+        for (final GlmChunkTypes type : GlmChunkTypes.values()) {
+            if (type.isTwoDimensional()) {
+                // A fixed level keeps the shared payload the same whenever this class is loaded
+                register(type.getType(), type.getCodec().encode(indices, 0, indices.length,
+                        Deflater.DEFAULT_COMPRESSION));
+            }
+        }
+    }
+
+    /**
+     * Static utility class.
+     */
+    private SharedIndexData() {
+    }
+
+    /**
+     * Registers the shared index payload of a chunk type, replacing any previous one.
+     *
+     * @param chunkType the glm chunk type.
+     * @param payload   the encoded index payload every chunk of the type carries.
+     *
+     * @throws IllegalArgumentException if no registered codec can decode the payload.
+     */
+    public static void register(@Nonnull final String chunkType, @Nonnull final byte[] payload) {
+        try {
+            DECODED.put(chunkType, GlmChunkCodecs.decode(payload));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Shared index payload of " + chunkType + " can not be decoded", e);
+        }
+        PAYLOADS.put(chunkType, payload);
+        TEXTS.put(chunkType, Base64.getEncoder().encodeToString(payload));
+    }
+
+    /**
+     * @param chunkType the glm chunk type.
+     * @return the shared index payload or null if the type has none.
+     */
+    @Nullable
+    public static byte[] get(@Nonnull final String chunkType) {
+        return PAYLOADS.get(chunkType);
+    }
+
+    /**
+     * @param chunkType the glm chunk type.
+     * @return the shared index payload as base64 text or null if the type has none.
+     */
+    @Nullable
+    public static String getText(@Nonnull final String chunkType) {
+        return TEXTS.get(chunkType);
+    }
+
+    /**
+     * @param chunkType the glm chunk type.
+     * @param indices   the index payload of a chunk.
+     * @return true if the payload is the shared instance of the type.
+     */
+    public static boolean isShared(@Nonnull final String chunkType, @Nonnull final byte[] indices) {
+        return indices.length > 0 && PAYLOADS.get(chunkType) == indices;
+    }
+
+    /**
+     * @param chunkType the glm chunk type.
+     * @param indices   the index text of a chunk.
+     * @return true if the text is the shared instance of the type.
+     */
+    public static boolean isShared(@Nonnull final String chunkType, @Nonnull final String indices) {
+        return !indices.isEmpty() && TEXTS.get(chunkType) == indices;
+    }
+
+    /**
+     * Converts an index payload to the form written to the database.
+     *
+     * @param chunkType the glm chunk type.
+     * @param indices   the index payload of a chunk.
+     * @return an empty column if the payload decodes to the shared index data, otherwise the payload.
+     */
+    @Nonnull
+    public static byte[] toStored(@Nonnull final String chunkType, @Nonnull final byte[] indices) {
+        return matches(chunkType, indices) ? EMPTY : indices;
+    }
+
+    /**
+     * Converts an index column read from the database back to a payload. Rows written before the payload was shared
+     * still hold a full copy, which is swapped for the shared instance too.
+     *
+     * @param chunkType the glm chunk type.
+     * @param stored    the index column.
+     * @return the shared payload if the column is empty or decodes to the shared index data, otherwise the column.
+     */
+    @Nonnull
+    public static byte[] fromStored(@Nonnull final String chunkType, @Nonnull final byte[] stored) {
+        final byte[] shared = PAYLOADS.get(chunkType);
+        return shared != null && (stored.length == 0 || matches(chunkType, stored)) ? shared : stored;
+    }
+
+    /**
+     * Swaps index text which decodes to the shared index data of its type for the shared instance.
+     *
+     * @param chunkType the glm chunk type.
+     * @param indices   the index text of a chunk.
+     * @return the shared text if the index data matches, otherwise the text.
+     */
+    @Nonnull
+    public static String intern(@Nonnull final String chunkType, @Nonnull final String indices) {
+        final String shared = TEXTS.get(chunkType);
+        if (shared == null || indices.isEmpty()) {
+            return indices;
+        }
+        if (shared.equals(indices)) {
+            return shared;
+        }
+        final byte[] payload;
+        try {
+            payload = Base64.getDecoder().decode(indices);
+        } catch (IllegalArgumentException e) {
+            return indices;
+        }
+        return matches(chunkType, payload) ? shared : indices;
+    }
+
+    /**
+     * Checks if an index payload holds the shared index data of its type. Payloads which differ from the shared bytes
+     * are decoded, since another compression level or codec writes the same data differently.
+     *
+     * @param chunkType the glm chunk type.
+     * @param indices   the index payload of a chunk.
+     * @return true if the payload decodes to the shared index data.
+     */
+    private static boolean matches(@Nonnull final String chunkType, @Nonnull final byte[] indices) {
+        final byte[] shared = PAYLOADS.get(chunkType);
+        if (shared == null || indices.length == 0) {
+            return false;
+        }
+        if (shared == indices || Arrays.equals(shared, indices)) {
+            return true;
+        }
+        if (GlmChunkCodecs.detect(indices) == null) {
+            return false;
+        }
+        try {
+            return Arrays.equals(DECODED.get(chunkType), GlmChunkCodecs.decode(indices));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import net.reallifegames.glm.api.GlmChunk;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A cached chunk, its packed position key, its weight and its clock state.
+ *
+ * @author Tyler Bucher
+ */
+final class CacheEntry {
+
+    /**
+     * The packed position of the chunk.
+     */
+    final long key;
+
+    /**
+     * The cached chunk.
+     */
+    final GlmChunk chunk;
+
+    /**
+     * The weight of the cached chunk.
+     */
+    final long weight;
+
+    /**
+     * Has the chunk been read since the clock hand last passed it. New entries start referenced so the hand passes
+     * them once before they can be evicted.
+     */
+    volatile boolean referenced = true;
+
+    /**
+     * The slot of this entry in the segment ring, guarded by the segment lock.
+     */
+    int slot;
+
+    /**
+     * @param key    the packed position of the chunk.
+     * @param chunk  the cached chunk.
+     * @param weight the weight of the cached chunk.
+     */
+    CacheEntry(final long key, @Nonnull final GlmChunk chunk, final long weight) {
+        this.key = key;
+        this.chunk = chunk;
+        this.weight = weight;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import net.reallifegames.glm.api.GlmChunk;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
+
+/**
+ * A bounded cache of {@link GlmChunk}s grouped by world. Limits can be placed on the number of chunks per world, the
+ * number of chunks across all worlds and the total weight of all chunks. The cache is safe to use from many threads and
+ * lookups never block.
+ * <p>
+ * Eviction is an approximate least recently used order per world, not across worlds. The per world limit evicts from
+ * the world being written to. The global limits evict from whichever world is currently the largest, so a small world
+ * may keep cold chunks while a large busy world loses warmer ones.
+ *
+ * @author Tyler Bucher
+ */
+public class ChunkCache {
+
+    /**
+     * The cache for each world keyed by world id.
+     */
+    @Nonnull
+    private final ConcurrentHashMap<String, WorldChunkCache> worlds;
+
+    /**
+     * The number of chunks cached across all worlds.
+     */
+    @Nonnull
+    private final AtomicLong totalSize;
+
+    /**
+     * The total weight of all chunks across all worlds.
+     */
+    @Nonnull
+    private final AtomicLong totalWeight;
+
+    /**
+     * The number of lookups which found a chunk.
+     */
+    @Nonnull
+    private final LongAdder hitCount;
+
+    /**
+     * The number of lookups which did not find a chunk.
+     */
+    @Nonnull
+    private final LongAdder missCount;
+
+    /**
+     * The number of chunks removed to make room for other chunks.
+     */
+    @Nonnull
+    private final LongAdder evictionCount;
+
+    /**
+     * The default maximum number of chunks per world or 0 for no limit.
+     */
+    private volatile int maximumChunksPerWorld;
+
+    /**
+     * The maximum number of chunks across all worlds or 0 for no limit.
+     */
+    private volatile long maximumChunks;
+
+    /**
+     * The maximum total weight across all worlds or 0 for no limit.
+     */
+    private volatile long maximumWeight;
+
+    /**
+     * Weighs chunks when weighing by the size of their data.
+     */
+    @Nonnull
+    private final ChunkWeigher weigher;
+
+    /**
+     * Should chunks be weighed by the size of their data instead of counting as 1.
+     */
+    private volatile boolean weighByBytes;
+
+    /**
+     * Creates a new unbounded chunk cache which weighs chunks by the length of their text fields.
+     */
+    public ChunkCache() {
+        this(ChunkWeigher.TEXT_LENGTH);
+    }
+
+    /**
+     * Creates a new unbounded chunk cache.
+     *
+     * @param weigher weighs chunks when weighing by the size of their data.
+     */
+    public ChunkCache(@Nonnull final ChunkWeigher weigher) {
+        this.weigher = weigher;
+        this.worlds = new ConcurrentHashMap<>();
+        this.totalSize = new AtomicLong();
+        this.totalWeight = new AtomicLong();
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+    }
+
+    /**
+     * Gets a chunk from the cache and marks it as recently used.
+     *
+     * @param worldId  the id of the world.
+     * @param chunkKey the packed position of the chunk, see WorldModule#getChunkCacheKey.
+     * @return the cached chunk or null if missing.
+     */
+    @Nullable
+    public GlmChunk get(@Nonnull final String worldId, final long chunkKey) {
+        final WorldChunkCache worldCache = worlds.get(worldId);
+        final GlmChunk chunk = worldCache == null ? null : worldCache.get(chunkKey);
+        if (chunk == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return chunk;
+    }
+
+    /**
+     * Checks for a chunk without changing its recency or the hit and miss counters.
+     *
+     * @param worldId  the id of the world.
+     * @param chunkKey the packed position of the chunk, see WorldModule#getChunkCacheKey.
+     * @return true if the chunk is in the cache false otherwise.
+     */
+    public boolean contains(@Nonnull final String worldId, final long chunkKey) {
+        final WorldChunkCache worldCache = worlds.get(worldId);
+        return worldCache != null && worldCache.contains(chunkKey);
+    }
+
+    /**
+     * Inserts a chunk using the default per world limit.
+     *
+     * @param worldId  the id of the world.
+     * @param chunkKey the packed position of the chunk, see WorldModule#getChunkCacheKey.
+     * @param chunk    the chunk to cache.
+     */
+    public void put(@Nonnull final String worldId, final long chunkKey, @Nonnull final GlmChunk chunk) {
+        put(worldId, chunkKey, chunk, maximumChunksPerWorld);
+    }
+
+    /**
+     * Inserts a chunk and evicts the least recently used chunks until every limit is respected.
+     *
+     * @param worldId    the id of the world.
+     * @param chunkKey   the packed position of the chunk, see WorldModule#getChunkCacheKey.
+     * @param chunk      the chunk to cache.
+     * @param worldLimit the maximum number of chunks for this world or 0 for no limit.
+     */
+    public void put(@Nonnull final String worldId, final long chunkKey, @Nonnull final GlmChunk chunk,
+                    final int worldLimit) {
+        final WorldChunkCache worldCache = getWorld(worldId);
+        evictionCount.add(worldCache.put(chunkKey, chunk, weigh(chunk), worldLimit));
+        enforceGlobalLimits();
+    }
+
+    /**
+     * Removes a chunk from the cache.
+     *
+     * @param worldId  the id of the world.
+     * @param chunkKey the packed position of the chunk, see WorldModule#getChunkCacheKey.
+     * @return true if a chunk was removed false otherwise.
+     */
+    public boolean remove(@Nonnull final String worldId, final long chunkKey) {
+        final WorldChunkCache worldCache = worlds.get(worldId);
+        return worldCache != null && worldCache.remove(chunkKey);
+    }
+
+    /**
+     * Removes every chunk of a world whose packed position matches a filter. Visits each cached chunk once, which is
+     * cheaper than removing positions one by one when the region is larger than the cache.
+     *
+     * @param worldId the id of the world.
+     * @param filter  tests the packed position of each chunk.
+     * @return the number of chunks removed.
+     */
+    public int removeIf(@Nonnull final String worldId, @Nonnull final LongPredicate filter) {
+        final WorldChunkCache worldCache = worlds.get(worldId);
+        return worldCache == null ? 0 : worldCache.removeIf(filter);
+    }
+
+    /**
+     * Makes sure a world has a cache.
+     *
+     * @param worldId the id of the world.
+     */
+    public void createWorld(@Nonnull final String worldId) {
+        getWorld(worldId);
+    }
+
+    /**
+     * Removes every chunk for a world.
+     *
+     * @param worldId the id of the world.
+     */
+    public void clear(@Nonnull final String worldId) {
+        final WorldChunkCache worldCache = worlds.get(worldId);
+        if (worldCache != null) {
+            worldCache.clear();
+        }
+    }
+
+    /**
+     * Removes every chunk for every world.
+     */
+    public void clear() {
+        for (final WorldChunkCache worldCache : worlds.values()) {
+            worldCache.clear();
+        }
+    }
+
+    /**
+     * @param worldId the id of the world.
+     * @return the number of chunks cached for a world.
+     */
+    public int size(@Nonnull final String worldId) {
+        final WorldChunkCache worldCache = worlds.get(worldId);
+        return worldCache == null ? 0 : worldCache.size();
+    }
+
+    /**
+     * @return the number of chunks cached across all worlds.
+     */
+    public long size() {
+        return totalSize.get();
+    }
+
+    /**
+     * @return the total weight of all chunks across all worlds.
+     */
+    public long weight() {
+        return totalWeight.get();
+    }
+
+    /**
+     * @return a snapshot of the hit, miss and eviction counters.
+     */
+    @Nonnull
+    public ChunkCacheStats getStats() {
+        return new ChunkCacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum());
+    }
+
+    /**
+     * @return the default maximum number of chunks per world or 0 for no limit.
+     */
+    public int getMaximumChunksPerWorld() {
+        return maximumChunksPerWorld;
+    }
+
+    /**
+     * @param maximumChunksPerWorld the default maximum number of chunks per world or 0 for no limit.
+     */
+    public void setMaximumChunksPerWorld(final int maximumChunksPerWorld) {
+        this.maximumChunksPerWorld = Math.max(0, maximumChunksPerWorld);
+    }
+
+    /**
+     * @return the maximum number of chunks across all worlds or 0 for no limit.
+     */
+    public long getMaximumChunks() {
+        return maximumChunks;
+    }
+
+    /**
+     * @param maximumChunks the maximum number of chunks across all worlds or 0 for no limit.
+     */
+    public void setMaximumChunks(final long maximumChunks) {
+        this.maximumChunks = Math.max(0, maximumChunks);
+        enforceGlobalLimits();
+    }
+
+    /**
+     * @return the maximum total weight across all worlds or 0 for no limit.
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @param maximumWeight the maximum total weight across all worlds or 0 for no limit.
+     */
+    public void setMaximumWeight(final long maximumWeight) {
+        this.maximumWeight = Math.max(0, maximumWeight);
+        enforceGlobalLimits();
+    }
+
+    /**
+     * @return true if chunks are weighed by the size of their data false if every chunk weighs 1.
+     */
+    public boolean isWeighByBytes() {
+        return weighByBytes;
+    }
+
+    /**
+     * Changes how newly inserted chunks are weighed. Chunks already in the cache keep their weight.
+     *
+     * @param weighByBytes true if chunks should be weighed by the size of their data false if every chunk weighs 1.
+     */
+    public void setWeighByBytes(final boolean weighByBytes) {
+        this.weighByBytes = weighByBytes;
+    }
+
+    /**
+     * Calculates the weight of a chunk.
+     *
+     * @param chunk the chunk to weigh.
+     * @return the weight given by the {@link ChunkWeigher} of this cache or 1 if not weighing by bytes.
+     */
+    public long weigh(@Nonnull final GlmChunk chunk) {
+        return weighByBytes ? weigher.weigh(chunk) : 1;
+    }
+
+    /**
+     * @param worldId the id of the world.
+     * @return the cache for a world, created if missing.
+     */
+    @Nonnull
+    private WorldChunkCache getWorld(@Nonnull final String worldId) {
+        return worlds.computeIfAbsent(worldId, k->new WorldChunkCache(this));
+    }
+
+    /**
+     * Updates the global counters, called by the world caches whenever they change.
+     *
+     * @param sizeDelta   the change in the number of chunks.
+     * @param weightDelta the change in weight.
+     */
+    void adjust(final int sizeDelta, final long weightDelta) {
+        totalSize.addAndGet(sizeDelta);
+        totalWeight.addAndGet(weightDelta);
+    }
+
+    /**
+     * Evicts chunks from the largest worlds until the global limits are respected. Each victim is the least recently
+     * used chunk of the largest world, not of the whole cache.
+     */
+    private void enforceGlobalLimits() {
+        while ((maximumChunks > 0 && size() > maximumChunks) || (maximumWeight > 0 && weight() > maximumWeight)) {
+            WorldChunkCache largest = null;
+            long largestWeight = 0;
+            for (final WorldChunkCache worldCache : worlds.values()) {
+                final long worldWeight = maximumWeight > 0 ? worldCache.weight() : worldCache.size();
+                if (worldWeight > largestWeight) {
+                    largest = worldCache;
+                    largestWeight = worldWeight;
+                }
+            }
+            if (largest == null || !largest.evictEldest()) {
+                return;
+            }
+            evictionCount.increment();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+/**
+ * An immutable snapshot of the counters kept by a {@link ChunkCache}.
+ *
+ * @author Tyler Bucher
+ */
+public final class ChunkCacheStats {
+
+    /**
+     * The number of lookups which found a chunk.
+     */
+    private final long hitCount;
+
+    /**
+     * The number of lookups which did not find a chunk.
+     */
+    private final long missCount;
+
+    /**
+     * The number of chunks removed to make room for other chunks.
+     */
+    private final long evictionCount;
+
+    /**
+     * Creates a new cache statistics snapshot.
+     *
+     * @param hitCount      the number of lookups which found a chunk.
+     * @param missCount     the number of lookups which did not find a chunk.
+     * @param evictionCount the number of chunks removed to make room for other chunks.
+     */
+    public ChunkCacheStats(final long hitCount, final long missCount, final long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * @return the number of lookups which found a chunk.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups which did not find a chunk.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of chunks removed to make room for other chunks.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the total number of lookups.
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the ratio of lookups which found a chunk or 1.0 if there were no lookups.
+     */
+    public double getHitRate() {
+        final long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkCacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" +
+                evictionCount + '}';
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import net.reallifegames.glm.api.GlmChunk;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Calculates the weight of a chunk for the weight limit of a {@link ChunkCache}.
+ *
+ * @author Tyler Bucher
+ */
+@FunctionalInterface
+public interface ChunkWeigher {
+
+    /**
+     * Weighs a chunk by the summed length of its text fields.
+     */
+    @Nonnull
+    ChunkWeigher TEXT_LENGTH = chunk->(long) chunk.getBlockData().length() + chunk.getBlockHeightData().length() +
+            chunk.getBlockBiomeData().length() + chunk.getBlockIndices().length();
+
+    /**
+     * Calculates the weight of a chunk.
+     *
+     * @param chunk the chunk to weigh.
+     * @return the weight of the chunk, never negative.
+     */
+    long weigh(@Nonnull final GlmChunk chunk);
+}
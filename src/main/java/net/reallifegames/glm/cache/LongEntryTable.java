@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An open addressing hash table of {@link CacheEntry}s keyed by their primitive packed position. Lookups allocate
+ * nothing and may run without a lock while a single writer, holding an external lock, mutates the table. Removed
+ * slots are replaced by a tombstone so concurrent probes are never cut short. Slots hold either a {@link CacheEntry} or
+ * the tombstone, which is a bare object so it can never be mistaken for an entry.
+ *
+ * @author Tyler Bucher
+ */
+final class LongEntryTable {
+
+    /**
+     * Marks a slot whose entry was removed.
+     */
+    @Nonnull
+    private static final Object TOMBSTONE = new Object();
+
+    /**
+     * The smallest table capacity, must be a power of two.
+     */
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /**
+     * The table slots. Replaced as a whole when the table is rehashed so readers always see a consistent array.
+     */
+    @Nonnull
+    private volatile AtomicReferenceArray<Object> slots;
+
+    /**
+     * The number of live entries, guarded by the writer lock.
+     */
+    private int size;
+
+    /**
+     * The number of tombstone slots, guarded by the writer lock.
+     */
+    private int tombstones;
+
+    /**
+     * Creates a new empty table.
+     */
+    LongEntryTable() {
+        this.slots = new AtomicReferenceArray<>(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Spreads the bits of a packed position so both the high and low bits of the hash are usable.
+     *
+     * @param key the packed position.
+     * @return the mixed hash of the key.
+     */
+    static long hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Gets an entry. Safe to call without the writer lock.
+     *
+     * @param key the packed position.
+     * @return the entry or null if missing.
+     */
+    @Nullable
+    CacheEntry get(final long key) {
+        final AtomicReferenceArray<Object> table = slots;
+        final int mask = table.length() - 1;
+        int index = (int) hash(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            final Object slot = table.get(index);
+            if (slot == null) {
+                return null;
+            }
+            if (slot != TOMBSTONE && ((CacheEntry) slot).key == key) {
+                return (CacheEntry) slot;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Inserts or replaces an entry. The caller must hold the writer lock.
+     *
+     * @param entry the entry to insert.
+     * @return the replaced entry or null if there was none.
+     */
+    @Nullable
+    CacheEntry put(@Nonnull final CacheEntry entry) {
+        if ((size + tombstones + 1) << 1 > slots.length()) {
+            rehash();
+        }
+        final AtomicReferenceArray<Object> table = slots;
+        final int mask = table.length() - 1;
+        int index = (int) hash(entry.key) & mask;
+        int firstTombstone = -1;
+        while (true) {
+            final Object slot = table.get(index);
+            if (slot == null) {
+                break;
+            }
+            if (slot == TOMBSTONE) {
+                if (firstTombstone < 0) {
+                    firstTombstone = index;
+                }
+            } else if (((CacheEntry) slot).key == entry.key) {
+                table.set(index, entry);
+                return (CacheEntry) slot;
+            }
+            index = (index + 1) & mask;
+        }
+        // Reuse the earliest tombstone on the probe path if there was one
+        if (firstTombstone >= 0) {
+            table.set(firstTombstone, entry);
+            tombstones--;
+        } else {
+            table.set(index, entry);
+        }
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes an entry. The caller must hold the writer lock.
+     *
+     * @param key the packed position.
+     * @return the removed entry or null if missing.
+     */
+    @Nullable
+    CacheEntry remove(final long key) {
+        final AtomicReferenceArray<Object> table = slots;
+        final int mask = table.length() - 1;
+        int index = (int) hash(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            final Object slot = table.get(index);
+            if (slot == null) {
+                return null;
+            }
+            if (slot != TOMBSTONE && ((CacheEntry) slot).key == key) {
+                table.set(index, TOMBSTONE);
+                size--;
+                tombstones++;
+                return (CacheEntry) slot;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Removes every entry. The caller must hold the writer lock.
+     */
+    void clear() {
+        slots = new AtomicReferenceArray<>(MINIMUM_CAPACITY);
+        size = 0;
+        tombstones = 0;
+    }
+
+    /**
+     * @return the number of live entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies every live entry into a new table sized for the live entries, dropping all tombstones, then publishes it.
+     */
+    private void rehash() {
+        final AtomicReferenceArray<Object> table = slots;
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < (size + 1) << 2) {
+            capacity <<= 1;
+        }
+        final AtomicReferenceArray<Object> rehashed = new AtomicReferenceArray<>(capacity);
+        final int mask = capacity - 1;
+        for (int i = 0; i < table.length(); i++) {
+            final Object slot = table.get(i);
+            if (slot != null && slot != TOMBSTONE) {
+                int index = (int) hash(((CacheEntry) slot).key) & mask;
+                while (rehashed.get(index) != null) {
+                    index = (index + 1) & mask;
+                }
+                rehashed.lazySet(index, slot);
+            }
+        }
+        tombstones = 0;
+        // The volatile write publishes every slot written above
+        slots = rehashed;
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import net.reallifegames.glm.api.GlmChunk;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+
+/**
+ * The chunk cache for a single world keyed by packed chunk positions. Chunks are spread over lock striped segments.
+ * Reads never lock or allocate, they only mark a chunk as referenced. Writes lock a single segment and evict using the
+ * clock (second chance) approximation of least recently used, with one clock hand shared by every segment.
+ *
+ * @author Tyler Bucher
+ */
+final class WorldChunkCache {
+
+    /**
+     * The number of segments per world, must be a power of two.
+     */
+    private static final int SEGMENT_COUNT = 16;
+
+    /**
+     * The cache which owns this world cache and keeps the global counters.
+     */
+    @Nonnull
+    private final ChunkCache owner;
+
+    /**
+     * The lock striped segments of this world cache.
+     */
+    @Nonnull
+    private final Segment[] segments;
+
+    /**
+     * The number of chunks in this world cache.
+     */
+    @Nonnull
+    private final AtomicInteger size;
+
+    /**
+     * The summed weight of every chunk in this world cache.
+     */
+    @Nonnull
+    private final AtomicLong weight;
+
+    /**
+     * The segment the shared clock hand is sweeping. Grows without bound and is masked on use.
+     */
+    @Nonnull
+    private final AtomicInteger evictionCursor;
+
+    /**
+     * Creates a new empty world cache.
+     *
+     * @param owner the cache which owns this world cache and keeps the global counters.
+     */
+    WorldChunkCache(@Nonnull final ChunkCache owner) {
+        this.owner = owner;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+        this.size = new AtomicInteger();
+        this.weight = new AtomicLong();
+        this.evictionCursor = new AtomicInteger();
+    }
+
+    /**
+     * Gets a chunk and marks it as referenced. Never blocks.
+     *
+     * @param chunkKey the packed position of the chunk.
+     * @return the cached chunk or null if missing.
+     */
+    @Nullable
+    GlmChunk get(final long chunkKey) {
+        final CacheEntry entry = segmentFor(chunkKey).entries.get(chunkKey);
+        if (entry == null) {
+            return null;
+        }
+        // Avoid dirtying the cache line when the flag is already set
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.chunk;
+    }
+
+    /**
+     * Checks for a chunk without changing its recency. Never blocks.
+     *
+     * @param chunkKey the packed position of the chunk.
+     * @return true if the chunk is in this world cache false otherwise.
+     */
+    boolean contains(final long chunkKey) {
+        return segmentFor(chunkKey).entries.get(chunkKey) != null;
+    }
+
+    /**
+     * Inserts or replaces a chunk and evicts chunks until the limit is respected.
+     *
+     * @param chunkKey the packed position of the chunk.
+     * @param chunk    the chunk to cache.
+     * @param weight   the weight of the chunk.
+     * @param limit    the maximum number of chunks for this world or 0 for no limit.
+     * @return the number of chunks which were evicted.
+     */
+    int put(final long chunkKey, @Nonnull final GlmChunk chunk, final long weight, final int limit) {
+        final Segment segment = segmentFor(chunkKey);
+        segment.put(new CacheEntry(chunkKey, chunk, weight));
+        int evicted = 0;
+        while (limit > 0 && size.get() > limit && evict()) {
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes a chunk from this world cache.
+     *
+     * @param chunkKey the packed position of the chunk.
+     * @return true if a chunk was removed false otherwise.
+     */
+    boolean remove(final long chunkKey) {
+        return segmentFor(chunkKey).remove(chunkKey);
+    }
+
+    /**
+     * Removes every chunk whose packed position matches a filter.
+     *
+     * @param filter tests the packed position of each chunk.
+     * @return the number of chunks removed.
+     */
+    int removeIf(@Nonnull final LongPredicate filter) {
+        int removed = 0;
+        for (final Segment segment : segments) {
+            removed += segment.removeIf(filter);
+        }
+        return removed;
+    }
+
+    /**
+     * Evicts a single chunk chosen by the shared clock hand.
+     *
+     * @return true if a chunk was removed false if the world cache was empty.
+     */
+    boolean evictEldest() {
+        return evict();
+    }
+
+    /**
+     * Removes every chunk from this world cache.
+     */
+    void clear() {
+        for (final Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of chunks in this world cache.
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the summed weight of every chunk in this world cache.
+     */
+    long weight() {
+        return weight.get();
+    }
+
+    /**
+     * Evicts a single chunk. One clock hand sweeps the segments in turn so every chunk of the world gets the same
+     * second chance no matter which segment the caller inserted into. Only one segment lock is held at a time.
+     *
+     * @return true if a chunk was removed false if the world cache was empty.
+     */
+    private boolean evict() {
+        // Two laps clear every reference flag, the third evicts regardless so racing readers cannot starve the hand
+        for (int step = 0; step < SEGMENT_COUNT * 3; step++) {
+            if (size.get() == 0) {
+                return false;
+            }
+            final int cursor = evictionCursor.get();
+            if (segments[cursor & (SEGMENT_COUNT - 1)].sweep(step >= SEGMENT_COUNT << 1)) {
+                return true;
+            }
+            // Another evictor may have moved the hand on already
+            evictionCursor.compareAndSet(cursor, cursor + 1);
+        }
+        return false;
+    }
+
+    /**
+     * @param chunkKey the packed position of the chunk.
+     * @return the segment which holds the chunk.
+     */
+    @Nonnull
+    private Segment segmentFor(final long chunkKey) {
+        // Use the high bits so the segment tables still get well spread low bits
+        return segments[(int) (LongEntryTable.hash(chunkKey) >>> 60)];
+    }
+
+    /**
+     * Updates the world and global counters.
+     *
+     * @param sizeDelta   the change in the number of chunks.
+     * @param weightDelta the change in weight.
+     */
+    private void adjust(final int sizeDelta, final long weightDelta) {
+        size.addAndGet(sizeDelta);
+        weight.addAndGet(weightDelta);
+        owner.adjust(sizeDelta, weightDelta);
+    }
+
+    /**
+     * A lock striped part of a world cache. The entry map may be read without the lock, every mutation of the map or
+     * the clock ring happens while holding it.
+     */
+    private final class Segment {
+
+        /**
+         * The chunks of this segment keyed by packed position.
+         */
+        @Nonnull
+        final LongEntryTable entries;
+
+        /**
+         * Guards every mutation of this segment.
+         */
+        @Nonnull
+        final ReentrantLock lock;
+
+        /**
+         * The clock ring in insertion order. Removed entries leave null holes until the ring is compacted.
+         */
+        @Nonnull
+        CacheEntry[] ring;
+
+        /**
+         * The next free slot in the ring.
+         */
+        int tail;
+
+        /**
+         * The slot the clock hand points at.
+         */
+        int hand;
+
+        /**
+         * The number of entries in the ring.
+         */
+        int live;
+
+        /**
+         * Creates a new empty segment.
+         */
+        Segment() {
+            this.entries = new LongEntryTable();
+            this.lock = new ReentrantLock();
+            this.ring = new CacheEntry[16];
+        }
+
+        /**
+         * Inserts or replaces an entry.
+         *
+         * @param entry the entry to insert.
+         */
+        void put(@Nonnull final CacheEntry entry) {
+            lock.lock();
+            try {
+                final CacheEntry previous = entries.put(entry);
+                if (previous != null) {
+                    unlink(previous);
+                }
+                link(entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes an entry.
+         *
+         * @param chunkKey the packed position of the chunk.
+         * @return true if an entry was removed false otherwise.
+         */
+        boolean remove(final long chunkKey) {
+            lock.lock();
+            try {
+                final CacheEntry previous = entries.remove(chunkKey);
+                if (previous == null) {
+                    return false;
+                }
+                unlink(previous);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes every entry whose packed position matches a filter.
+         *
+         * @param filter tests the packed position of each entry.
+         * @return the number of entries removed.
+         */
+        int removeIf(@Nonnull final LongPredicate filter) {
+            lock.lock();
+            try {
+                int removed = 0;
+                for (int i = 0; i < tail; i++) {
+                    final CacheEntry entry = ring[i];
+                    if (entry != null && filter.test(entry.key)) {
+                        entries.remove(entry.key);
+                        unlink(entry);
+                        removed++;
+                    }
+                }
+                return removed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Advances the clock hand to the end of the ring, giving referenced entries a second chance, and evicts the
+         * first unreferenced entry. The hand is rewound when it reaches the end so the next lap starts at the front.
+         *
+         * @param force evict the first entry found even if it is referenced.
+         * @return true if an entry was evicted false if the hand reached the end of the ring.
+         */
+        boolean sweep(final boolean force) {
+            lock.lock();
+            try {
+                while (hand < tail) {
+                    final CacheEntry entry = ring[hand++];
+                    if (entry == null) {
+                        continue;
+                    }
+                    if (entry.referenced && !force) {
+                        entry.referenced = false;
+                        continue;
+                    }
+                    entries.remove(entry.key);
+                    unlink(entry);
+                    return true;
+                }
+                hand = 0;
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes every entry.
+         */
+        void clear() {
+            lock.lock();
+            try {
+                for (int i = 0; i < tail; i++) {
+                    final CacheEntry entry = ring[i];
+                    if (entry != null) {
+                        unlink(entry);
+                    }
+                }
+                entries.clear();
+                tail = 0;
+                hand = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Appends an entry to the ring, compacting or growing the ring if it is full.
+         *
+         * @param entry the entry to append.
+         */
+        private void link(@Nonnull final CacheEntry entry) {
+            if (tail == ring.length) {
+                if (live < ring.length >>> 1) {
+                    compact();
+                } else {
+                    ring = Arrays.copyOf(ring, ring.length << 1);
+                }
+            }
+            entry.slot = tail;
+            ring[tail++] = entry;
+            live++;
+            adjust(1, entry.weight);
+        }
+
+        /**
+         * Removes an entry from the ring.
+         *
+         * @param entry the entry to remove.
+         */
+        private void unlink(@Nonnull final CacheEntry entry) {
+            ring[entry.slot] = null;
+            live--;
+            adjust(-1, -entry.weight);
+        }
+
+        /**
+         * Moves every entry to the front of the ring keeping their order and the relative hand position.
+         */
+        private void compact() {
+            int write = 0;
+            int newHand = -1;
+            for (int read = 0; read < tail; read++) {
+                if (read == hand) {
+                    newHand = write;
+                }
+                final CacheEntry entry = ring[read];
+                if (entry != null) {
+                    entry.slot = write;
+                    ring[write++] = entry;
+                }
+            }
+            Arrays.fill(ring, write, tail, null);
+            tail = write;
+            hand = newHand < 0 ? 0 : newHand;
+        }
+    }
+}
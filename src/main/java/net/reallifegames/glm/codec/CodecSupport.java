@@ -0,0 +1,268 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import net.reallifegames.glm.BoundedPool;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Shared deflate plumbing for the built in codecs. Deflaters and inflaters of each framing are borrowed from a
+ * {@link BoundedPool} around every call.
+ *
+ * @author Tyler Bucher
+ */
+final class CodecSupport {
+
+    /**
+     * The size of the codec id and the big endian decoded length written before a payload.
+     */
+    static final int PREFIX_SIZE = 5;
+
+    /**
+     * The most bytes one byte of a deflate stream can decode to. A recorded length above this many times the stream
+     * length can not be right, so it is rejected before the output is allocated.
+     */
+    static final int MAXIMUM_RATIO = 1032;
+
+    /**
+     * Raw deflaters without zlib framing.
+     */
+    private static final BoundedPool<Deflater> RAW_DEFLATERS = new BoundedPool<>(BoundedPool.DEFAULT_CAPACITY,
+            ()->new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::end);
+
+    /**
+     * Deflaters with zlib framing, needed to record the preset dictionary.
+     */
+    private static final BoundedPool<Deflater> ZLIB_DEFLATERS = new BoundedPool<>(BoundedPool.DEFAULT_CAPACITY,
+            Deflater::new, Deflater::end);
+
+    /**
+     * Raw inflaters without zlib framing.
+     */
+    private static final BoundedPool<Inflater> RAW_INFLATERS = new BoundedPool<>(BoundedPool.DEFAULT_CAPACITY,
+            ()->new Inflater(true), Inflater::end);
+
+    /**
+     * Inflaters with zlib framing.
+     */
+    private static final BoundedPool<Inflater> ZLIB_INFLATERS = new BoundedPool<>(BoundedPool.DEFAULT_CAPACITY,
+            Inflater::new, Inflater::end);
+
+    /**
+     * Static utility class.
+     */
+    private CodecSupport() {
+    }
+
+    /**
+     * Deflates bytes behind the codec prefix.
+     *
+     * @param id         the codec id.
+     * @param zlib       true for zlib framing, false for raw deflate.
+     * @param dictionary the preset dictionary or null for none.
+     * @param src        the bytes to compress.
+     * @param offset     the offset of the first byte to compress.
+     * @param length     the number of bytes to compress.
+     * @param level      the compression level.
+     * @return the codec prefix followed by the deflate stream.
+     */
+    @Nonnull
+    static byte[] deflate(final byte id, final boolean zlib, @Nullable final byte[] dictionary,
+                          @Nonnull final byte[] src, final int offset, final int length, final int level) {
+        final BoundedPool<Deflater> pool = zlib ? ZLIB_DEFLATERS : RAW_DEFLATERS;
+        final Deflater deflater = pool.borrow();
+        try {
+            deflater.reset();
+            deflater.setLevel(level);
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            byte[] out = new byte[PREFIX_SIZE + Math.max(64, length >> 1)];
+            out[0] = id;
+            writeInt(out, 1, length);
+            int position = PREFIX_SIZE;
+            while (true) {
+                position += deflater.deflate(out, position, out.length - position);
+                if (deflater.finished()) {
+                    return position == out.length ? out : Arrays.copyOf(out, position);
+                }
+                if (position == out.length) {
+                    out = Arrays.copyOf(out, out.length << 1);
+                }
+            }
+        } finally {
+            pool.release(deflater);
+        }
+    }
+
+    /**
+     * Inflates a payload written by {@link #deflate(byte, boolean, byte[], byte[], int, int, int)}.
+     *
+     * @param id           the expected codec id.
+     * @param zlib         true for zlib framing, false for raw deflate.
+     * @param dictionaries finds a preset dictionary by its adler-32 or null if the codec uses none.
+     * @param src          the encoded payload.
+     * @return the decoded bytes.
+     *
+     * @throws IOException if the payload is corrupt, has the wrong id or needs an unknown dictionary.
+     */
+    @Nonnull
+    static byte[] inflate(final byte id, final boolean zlib, @Nullable final IntFunction<byte[]> dictionaries,
+                          @Nonnull final byte[] src) throws IOException {
+        if (src.length < PREFIX_SIZE || src[0] != id) {
+            throw new IOException("Payload was not written by codec " + id);
+        }
+        final int length = readInt(src, 1);
+        checkDecodedLength(length, src.length - PREFIX_SIZE);
+        final byte[] out = new byte[length];
+        inflate(zlib, dictionaries, src, PREFIX_SIZE, src.length - PREFIX_SIZE, out);
+        return out;
+    }
+
+    /**
+     * Checks a recorded decoded length before an array of that size is allocated for it.
+     *
+     * @param length       the recorded decoded length.
+     * @param streamLength the length of the deflate stream.
+     * @throws IOException if the stream can not decode to that many bytes.
+     */
+    static void checkDecodedLength(final int length, final int streamLength) throws IOException {
+        // One extra byte covers the padding a raw stream may need to finish
+        if (length < 0 || length > ((long) streamLength + 1) * MAXIMUM_RATIO) {
+            throw new IOException("Corrupt payload length " + length);
+        }
+    }
+
+    /**
+     * Inflates a deflate stream into an array which must be filled exactly.
+     *
+     * @param zlib         true for zlib framing, false for raw deflate.
+     * @param dictionaries finds a preset dictionary by its adler-32 or null if the stream uses none.
+     * @param src          the array holding the stream.
+     * @param offset       the offset of the stream.
+     * @param length       the length of the stream.
+     * @param out          receives the decoded bytes.
+     * @throws IOException if the stream is corrupt, does not fill the array exactly or needs an unknown dictionary.
+     */
+    static void inflate(final boolean zlib, @Nullable final IntFunction<byte[]> dictionaries,
+                        @Nonnull final byte[] src, final int offset, final int length, @Nonnull final byte[] out)
+            throws IOException {
+        final BoundedPool<Inflater> pool = zlib ? ZLIB_INFLATERS : RAW_INFLATERS;
+        final Inflater inflater = pool.borrow();
+        try {
+            inflate(inflater, zlib, dictionaries, src, offset, length, out);
+        } finally {
+            pool.release(inflater);
+        }
+    }
+
+    /**
+     * Inflates a deflate stream with a borrowed inflater.
+     *
+     * @param inflater     the borrowed inflater.
+     * @param zlib         true for zlib framing, false for raw deflate.
+     * @param dictionaries finds a preset dictionary by its adler-32 or null if the stream uses none.
+     * @param src          the array holding the stream.
+     * @param offset       the offset of the stream.
+     * @param length       the length of the stream.
+     * @param out          receives the decoded bytes.
+     * @throws IOException if the stream is corrupt, does not fill the array exactly or needs an unknown dictionary.
+     */
+    private static void inflate(@Nonnull final Inflater inflater, final boolean zlib,
+                                @Nullable final IntFunction<byte[]> dictionaries, @Nonnull final byte[] src,
+                                final int offset, final int length, @Nonnull final byte[] out) throws IOException {
+        inflater.reset();
+        inflater.setInput(src, offset, length);
+        int position = 0;
+        boolean padded = false;
+        try {
+            while (!inflater.finished()) {
+                if (position < out.length) {
+                    position += inflater.inflate(out, position, out.length - position);
+                } else if (inflater.inflate(new byte[1]) > 0) {
+                    throw new IOException("Payload is larger than its recorded length");
+                }
+                if (inflater.finished() || (position < out.length && !inflater.needsInput() &&
+                        !inflater.needsDictionary())) {
+                    continue;
+                }
+                if (inflater.needsDictionary()) {
+                    final byte[] dictionary = dictionaries == null ? null : dictionaries.apply(inflater.getAdler());
+                    if (dictionary == null) {
+                        throw new IOException("Unknown preset dictionary " + Integer.toHexString(
+                                inflater.getAdler()));
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflater.needsInput() && !zlib && !padded) {
+                    // A raw stream may need one extra byte to finish
+                    inflater.setInput(new byte[1]);
+                    padded = true;
+                } else if (inflater.needsInput()) {
+                    throw new IOException("Truncated payload");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        if (position != out.length) {
+            throw new IOException("Payload is smaller than its recorded length");
+        }
+    }
+
+    /**
+     * Writes a big endian int.
+     *
+     * @param dst    the array to write to.
+     * @param offset the offset to write at.
+     * @param value  the value to write.
+     */
+    static void writeInt(@Nonnull final byte[] dst, final int offset, final int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Reads a big endian int.
+     *
+     * @param src    the array to read from.
+     * @param offset the offset to read at.
+     * @return the value read.
+     */
+    static int readInt(@Nonnull final byte[] src, final int offset) {
+        return (src[offset] & 0xff) << 24 | (src[offset + 1] & 0xff) << 16 | (src[offset + 2] & 0xff) << 8 |
+                (src[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Raw deflate without the gzip header and crc trailer. Payloads are the codec id, the decoded length as a big endian
+ * int and the deflate stream, so decoding allocates the output once.
+ *
+ * @author Tyler Bucher
+ */
+public final class DeflateCodec implements GlmChunkCodec {
+
+    /**
+     * The shared instance.
+     */
+    public static final DeflateCodec INSTANCE = new DeflateCodec();
+
+    /**
+     * The id of this codec.
+     */
+    public static final byte ID = 0x01;
+
+    /**
+     * Use {@link #INSTANCE}.
+     */
+    private DeflateCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Nonnull
+    @Override
+    public byte[] encode(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        return CodecSupport.deflate(ID, false, null, src, offset, length, level);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] decode(@Nonnull final byte[] src) throws IOException {
+        return CodecSupport.inflate(ID, false, null, src);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import net.reallifegames.glm.GzipGlmChunk;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+
+/**
+ * Deflate primed with a preset dictionary, which pays off on small payloads where plain deflate has no history to
+ * match against. Uses zlib framing so every payload records the adler-32 of its dictionary, a codec can therefore
+ * keep decoding rows written with older dictionaries after switching to a newly trained one.
+ *
+ * @author Tyler Bucher
+ */
+public final class DictionaryDeflateCodec implements GlmChunkCodec {
+
+    /**
+     * The id of this codec.
+     */
+    public static final byte ID = 0x02;
+
+    /**
+     * The largest useful dictionary, the deflate window size.
+     */
+    public static final int MAXIMUM_DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * The built in dictionary: the two dimensional index string, every number from 0 to 255 separated by commas. Block
+     * ids, heights and biome ids are written as such numbers, so it holds the tokens of every text payload. It is not
+     * trained on real chunks since a library has none to ship, see {@link #train(Collection, int)} for that. It can
+     * never change, rows written with it must stay readable.
+     */
+    @Nonnull
+    private static final byte[] DEFAULT_DICTIONARY = GzipGlmChunk.TWO_DIMENSIONAL_INDICES.getBytes(
+            StandardCharsets.UTF_8);
+
+    /**
+     * The shared instance using the {@link #getDefaultDictionary() built in dictionary}.
+     */
+    public static final DictionaryDeflateCodec INSTANCE = new DictionaryDeflateCodec(DEFAULT_DICTIONARY);
+
+    /**
+     * The length of the substrings counted when training a dictionary.
+     */
+    private static final int TRAINING_GRAM = 8;
+
+    /**
+     * The dictionary used for encoding.
+     */
+    @Nonnull
+    private final byte[] dictionary;
+
+    /**
+     * Every dictionary this codec can decode with, keyed by adler-32.
+     */
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new dictionary deflate codec.
+     *
+     * @param dictionary the dictionary used for encoding, at most {@link #MAXIMUM_DICTIONARY_SIZE} bytes are useful.
+     */
+    public DictionaryDeflateCodec(@Nonnull final byte[] dictionary) {
+        this.dictionary = dictionary.clone();
+        addDictionary(this.dictionary);
+        // Rows written by the built in codec stay readable
+        addDictionary(DEFAULT_DICTIONARY);
+    }
+
+    /**
+     * @return a copy of the built in dictionary.
+     */
+    @Nonnull
+    public static byte[] getDefaultDictionary() {
+        return DEFAULT_DICTIONARY.clone();
+    }
+
+    /**
+     * Lets this codec decode payloads written with another dictionary, such as one it replaced.
+     *
+     * @param dictionary the dictionary to accept.
+     */
+    public void addDictionary(@Nonnull final byte[] dictionary) {
+        dictionaries.put(adler32(dictionary), dictionary.clone());
+    }
+
+    /**
+     * @return the adler-32 of the dictionary used for encoding.
+     */
+    public int getDictionaryId() {
+        return adler32(dictionary);
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "dictionary_deflate";
+    }
+
+    @Nonnull
+    @Override
+    public byte[] encode(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        return CodecSupport.deflate(ID, true, dictionary, src, offset, length, level);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] decode(@Nonnull final byte[] src) throws IOException {
+        return CodecSupport.inflate(ID, true, dictionaries::get, src);
+    }
+
+    /**
+     * Trains a dictionary from sample payloads. Counts every fixed length substring of the samples and keeps the most
+     * frequent ones which are not already covered, most frequent last since deflate codes short distances cheaper.
+     *
+     * @param samples the uncompressed sample payloads.
+     * @param size    the maximum size of the dictionary.
+     * @return the trained dictionary.
+     */
+    @Nonnull
+    public static byte[] train(@Nonnull final Collection<byte[]> samples, final int size) {
+        final int limit = Math.min(size, MAXIMUM_DICTIONARY_SIZE);
+        final Map<String, int[]> counts = new HashMap<>();
+        for (final byte[] sample : samples) {
+            for (int i = 0; i + TRAINING_GRAM <= sample.length; i++) {
+                // Latin-1 maps every byte to one char so substrings round trip
+                counts.computeIfAbsent(new String(sample, i, TRAINING_GRAM, StandardCharsets.ISO_8859_1),
+                        k->new int[1])[0]++;
+            }
+        }
+        final List<Map.Entry<String, int[]>> ranked = new ArrayList<>(counts.entrySet());
+        ranked.removeIf(entry->entry.getValue()[0] < 2);
+        ranked.sort((a, b)->Integer.compare(b.getValue()[0], a.getValue()[0]));
+        final StringBuilder builder = new StringBuilder();
+        final List<String> picked = new ArrayList<>();
+        for (final Map.Entry<String, int[]> entry : ranked) {
+            if (builder.length() + TRAINING_GRAM > limit) {
+                break;
+            }
+            if (builder.indexOf(entry.getKey()) < 0) {
+                builder.append(entry.getKey());
+                picked.add(entry.getKey());
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(builder.length());
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            final byte[] gram = picked.get(i).getBytes(StandardCharsets.ISO_8859_1);
+            out.write(gram, 0, gram.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data the bytes to checksum.
+     * @return the adler-32 of the bytes, the same value zlib records for a preset dictionary.
+     */
+    private static int adler32(@Nullable final byte[] data) {
+        final Adler32 adler = new Adler32();
+        if (data != null) {
+            adler.update(data, 0, data.length);
+        }
+        return (int) adler.getValue();
+    }
+}
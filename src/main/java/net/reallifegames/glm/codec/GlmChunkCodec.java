@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import net.reallifegames.glm.GzipCompressor;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Encodes and decodes one field of a glm chunk. Encoded data is self describing, the first byte is always the
+ * {@link #getId() id} of the codec which wrote it, so {@link GlmChunkCodecs#decode(byte[])} can decode rows written
+ * by any registered codec. Implementations must be thread safe.
+ *
+ * @author Tyler Bucher
+ */
+public interface GlmChunkCodec {
+
+    /**
+     * @return the byte every encoded payload of this codec starts with.
+     */
+    byte getId();
+
+    /**
+     * @return a short readable name of this codec.
+     */
+    @Nonnull
+    String getName();
+
+    /**
+     * Encodes bytes.
+     *
+     * @param src    the bytes to encode.
+     * @param offset the offset of the first byte to encode.
+     * @param length the number of bytes to encode.
+     * @param level  the compression level, 0-9 or -1 for the codec default.
+     * @return the encoded payload, starting with the codec id.
+     */
+    @Nonnull
+    byte[] encode(@Nonnull byte[] src, int offset, int length, int level);
+
+    /**
+     * Decodes a payload written by this codec.
+     *
+     * @param src the encoded payload, starting with the codec id.
+     * @return the decoded bytes.
+     *
+     * @throws IOException if the payload is corrupt or was not written by this codec.
+     */
+    @Nonnull
+    byte[] decode(@Nonnull byte[] src) throws IOException;
+
+    /**
+     * Encodes bytes at the level set with {@link GzipCompressor#setDefaultLevel(int)}.
+     *
+     * @param src the bytes to encode.
+     * @return the encoded payload, starting with the codec id.
+     */
+    @Nonnull
+    default byte[] encode(@Nonnull final byte[] src) {
+        return encode(src, 0, src.length, GzipCompressor.getDefaultLevel());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The registry of chunk codecs, indexed by the id byte each payload starts with. The built in codecs are always
+ * registered, further codecs are picked up from {@code META-INF/services/net.reallifegames.glm.codec.GlmChunkCodec}
+ * or added with {@link #register(GlmChunkCodec)}.
+ *
+ * @author Tyler Bucher
+ */
+public final class GlmChunkCodecs {
+
+    /**
+     * Registered codecs indexed by their unsigned id.
+     */
+    private static final AtomicReferenceArray<GlmChunkCodec> CODECS = new AtomicReferenceArray<>(256);
+
+    static {
+        register(GzipCodec.INSTANCE);
+        register(DeflateCodec.INSTANCE);
+        register(DictionaryDeflateCodec.INSTANCE);
+        register(PaethDeflateCodec.INSTANCE);
+        register(PaletteCodec.INSTANCE);
+        register(TextCodec.INSTANCE);
+        final Iterator<GlmChunkCodec> iterator = ServiceLoader.load(GlmChunkCodec.class).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                register(iterator.next());
+            } catch (ServiceConfigurationError | IllegalArgumentException ignored) {
+                // A broken provider must not take the built in codecs down with it
+            }
+        }
+    }
+
+    /**
+     * Static utility class.
+     */
+    private GlmChunkCodecs() {
+    }
+
+    /**
+     * Registers a codec.
+     *
+     * @param codec the codec to register.
+     * @throws IllegalArgumentException if another codec already uses the id.
+     */
+    public static void register(@Nonnull final GlmChunkCodec codec) {
+        final int index = codec.getId() & 0xff;
+        if (!CODECS.compareAndSet(index, null, codec) && CODECS.get(index) != codec) {
+            throw new IllegalArgumentException("Codec id " + index + " is already used by " +
+                    CODECS.get(index).getName());
+        }
+    }
+
+    /**
+     * Replaces the codec registered for an id, for example with a {@link DictionaryDeflateCodec} using a newly
+     * trained dictionary.
+     *
+     * @param codec the codec to register.
+     */
+    public static void replace(@Nonnull final GlmChunkCodec codec) {
+        CODECS.set(codec.getId() & 0xff, codec);
+    }
+
+    /**
+     * @param id the id of the codec.
+     * @return the codec registered for the id or null if there is none.
+     */
+    @Nullable
+    public static GlmChunkCodec get(final byte id) {
+        return CODECS.get(id & 0xff);
+    }
+
+    /**
+     * Finds the codec which wrote a payload.
+     *
+     * @param src the encoded payload.
+     * @return the codec or null if the payload is empty or no registered codec wrote it.
+     */
+    @Nullable
+    public static GlmChunkCodec detect(@Nonnull final byte[] src) {
+        if (src.length == 0) {
+            return null;
+        }
+        final GlmChunkCodec codec = get(src[0]);
+        // Gzip claims its id through the two byte magic
+        if (codec == GzipCodec.INSTANCE && !GzipCodec.isGzip(src)) {
+            return null;
+        }
+        return codec;
+    }
+
+    /**
+     * Decodes a payload written by any registered codec.
+     *
+     * @param src the encoded payload.
+     * @return the decoded bytes, empty if the payload was empty.
+     *
+     * @throws IOException if no registered codec wrote the payload or it is corrupt.
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull final byte[] src) throws IOException {
+        if (src.length == 0) {
+            return src;
+        }
+        final GlmChunkCodec codec = detect(src);
+        if (codec == null) {
+            throw new IOException("Unknown chunk codec " + (src[0] & 0xff));
+        }
+        return codec.decode(src);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import net.reallifegames.glm.GzipCompressor;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * The gzip codec the web client understands. Its id is the first byte of the gzip magic, so plain gzip members are
+ * already self describing.
+ *
+ * @author Tyler Bucher
+ */
+public final class GzipCodec implements GlmChunkCodec {
+
+    /**
+     * The shared instance.
+     */
+    public static final GzipCodec INSTANCE = new GzipCodec();
+
+    /**
+     * The first byte of the gzip magic.
+     */
+    public static final byte ID = (byte) 0x1f;
+
+    /**
+     * The second byte of the gzip magic.
+     */
+    private static final byte MAGIC = (byte) 0x8b;
+
+    /**
+     * Gzip header flag for a header crc.
+     */
+    private static final int FHCRC = 2;
+
+    /**
+     * Gzip header flag for an extra field.
+     */
+    private static final int FEXTRA = 4;
+
+    /**
+     * Gzip header flag for a file name.
+     */
+    private static final int FNAME = 8;
+
+    /**
+     * Gzip header flag for a comment.
+     */
+    private static final int FCOMMENT = 16;
+
+    /**
+     * Use {@link #INSTANCE}.
+     */
+    private GzipCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "gzip";
+    }
+
+    @Nonnull
+    @Override
+    public byte[] encode(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        return GzipCompressor.compress(src, offset, length, level);
+    }
+
+    /**
+     * Decodes a single gzip member and checks its crc and size.
+     *
+     * @param src the gzip member.
+     * @return the decoded bytes.
+     *
+     * @throws IOException if the member is corrupt.
+     */
+    @Nonnull
+    @Override
+    public byte[] decode(@Nonnull final byte[] src) throws IOException {
+        if (!isGzip(src) || src.length < 18) {
+            throw new IOException("Not a gzip member");
+        }
+        final int flags = src[3] & 0xff;
+        int position = 10;
+        if ((flags & FEXTRA) != 0) {
+            position += 2 + ((src[position] & 0xff) | (src[position + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(src, position);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(src, position);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        final int trailer = src.length - 8;
+        if (position > trailer) {
+            throw new IOException("Truncated gzip header");
+        }
+        final int size = readIntLe(src, trailer + 4);
+        CodecSupport.checkDecodedLength(size, trailer - position);
+        final byte[] out = new byte[size];
+        CodecSupport.inflate(false, null, src, position, trailer - position, out);
+        final CRC32 crc = new CRC32();
+        crc.update(out, 0, out.length);
+        if ((int) crc.getValue() != readIntLe(src, trailer)) {
+            throw new IOException("Gzip crc mismatch");
+        }
+        return out;
+    }
+
+    /**
+     * @param src the bytes to check.
+     * @return true if the bytes start with the gzip magic.
+     */
+    public static boolean isGzip(@Nonnull final byte[] src) {
+        return src.length >= 2 && src[0] == ID && src[1] == MAGIC;
+    }
+
+    /**
+     * @param src      the array to scan.
+     * @param position the offset of the first byte of the string.
+     * @return the offset after the terminating zero.
+     *
+     * @throws IOException if there is no terminating zero.
+     */
+    private static int skipZeroTerminated(@Nonnull final byte[] src, int position) throws IOException {
+        while (position < src.length && src[position] != 0) {
+            position++;
+        }
+        if (position == src.length) {
+            throw new IOException("Truncated gzip header");
+        }
+        return position + 1;
+    }
+
+    /**
+     * @param src    the array to read from.
+     * @param offset the offset to read at.
+     * @return the little endian int at the offset.
+     */
+    private static int readIntLe(@Nonnull final byte[] src, final int offset) {
+        return (src[offset] & 0xff) | (src[offset + 1] & 0xff) << 8 | (src[offset + 2] & 0xff) << 16 |
+                (src[offset + 3] & 0xff) << 24;
+    }
+}
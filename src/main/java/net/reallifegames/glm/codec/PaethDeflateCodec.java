@@ -0,0 +1,211 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Filters data as rows of a 16 wide chunk grid before raw deflate, the way png filters scanlines. Neighbouring
+ * heights in a chunk are strongly correlated, so predicting each byte from its left, upper and upper left neighbours
+ * leaves small residuals which deflate codes far better than the heights themselves. Every row picks the filter with
+ * the smallest residual sum and records it in a leading filter byte, so data which is not a grid falls back to no
+ * filtering row by row.
+ *
+ * @author Tyler Bucher
+ */
+public final class PaethDeflateCodec implements GlmChunkCodec {
+
+    /**
+     * The shared instance.
+     */
+    public static final PaethDeflateCodec INSTANCE = new PaethDeflateCodec();
+
+    /**
+     * The id of this codec.
+     */
+    public static final byte ID = 0x03;
+
+    /**
+     * The width of a chunk row.
+     */
+    public static final int ROW_WIDTH = 16;
+
+    /**
+     * Row filter which stores bytes as they are.
+     */
+    private static final int FILTER_NONE = 0;
+
+    /**
+     * Row filter which predicts from the left neighbour.
+     */
+    private static final int FILTER_SUB = 1;
+
+    /**
+     * Row filter which predicts from the upper neighbour.
+     */
+    private static final int FILTER_UP = 2;
+
+    /**
+     * Row filter which predicts with the paeth predictor.
+     */
+    private static final int FILTER_PAETH = 3;
+
+    /**
+     * Use {@link #INSTANCE}.
+     */
+    private PaethDeflateCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "paeth_deflate";
+    }
+
+    @Nonnull
+    @Override
+    public byte[] encode(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        final byte[] filtered = filter(src, offset, length);
+        // The recorded length is the filtered length, decode derives the original from it
+        return CodecSupport.deflate(ID, false, null, filtered, 0, filtered.length, level);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] decode(@Nonnull final byte[] src) throws IOException {
+        return unfilter(CodecSupport.inflate(ID, false, null, src));
+    }
+
+    /**
+     * Filters rows, each written as its filter byte followed by its residuals.
+     *
+     * @param src    the bytes to filter.
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes.
+     * @return the filtered rows.
+     */
+    @Nonnull
+    static byte[] filter(@Nonnull final byte[] src, final int offset, final int length) {
+        final int rows = (length + ROW_WIDTH - 1) / ROW_WIDTH;
+        final byte[] out = new byte[length + rows];
+        int position = 0;
+        for (int row = 0; row < rows; row++) {
+            final int start = offset + row * ROW_WIDTH;
+            final int width = Math.min(ROW_WIDTH, offset + length - start);
+            final int previous = row == 0 ? -1 : start - ROW_WIDTH;
+            // Pick the filter with the smallest sum of absolute residuals
+            int bestFilter = FILTER_NONE;
+            int bestCost = Integer.MAX_VALUE;
+            for (int filter = FILTER_NONE; filter <= FILTER_PAETH; filter++) {
+                if (filter != FILTER_NONE && filter != FILTER_SUB && previous < 0) {
+                    continue;
+                }
+                int cost = 0;
+                for (int i = 0; i < width; i++) {
+                    cost += Math.abs((byte) (src[start + i] - predict(filter, src, start, previous, i)));
+                }
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestFilter = filter;
+                }
+            }
+            out[position++] = (byte) bestFilter;
+            for (int i = 0; i < width; i++) {
+                out[position++] = (byte) (src[start + i] - predict(bestFilter, src, start, previous, i));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Reverses {@link #filter(byte[], int, int)}.
+     *
+     * @param filtered the filtered rows.
+     * @return the original bytes.
+     *
+     * @throws IOException if a row names an unknown filter.
+     */
+    @Nonnull
+    static byte[] unfilter(@Nonnull final byte[] filtered) throws IOException {
+        // Every row of up to 16 bytes carries one filter byte
+        final int length = filtered.length - (filtered.length + ROW_WIDTH) / (ROW_WIDTH + 1);
+        final byte[] out = new byte[length];
+        int position = 0;
+        for (int start = 0; start < length; start += ROW_WIDTH) {
+            final int filter = filtered[position++];
+            if (filter < FILTER_NONE || filter > FILTER_PAETH) {
+                throw new IOException("Unknown row filter " + filter);
+            }
+            final int width = Math.min(ROW_WIDTH, length - start);
+            final int previous = start == 0 ? -1 : start - ROW_WIDTH;
+            if (previous < 0 && filter != FILTER_NONE && filter != FILTER_SUB) {
+                throw new IOException("First row can not use filter " + filter);
+            }
+            for (int i = 0; i < width; i++) {
+                out[start + i] = (byte) (filtered[position++] + predict(filter, out, start, previous, i));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Predicts a byte from its already known neighbours.
+     *
+     * @param filter   the row filter.
+     * @param data     the unfiltered data.
+     * @param start    the offset of the current row.
+     * @param previous the offset of the row above or -1 for the first row.
+     * @param i        the index in the row.
+     * @return the predicted unsigned byte value.
+     */
+    private static int predict(final int filter, @Nonnull final byte[] data, final int start, final int previous,
+                               final int i) {
+        final int left = i == 0 ? 0 : data[start + i - 1] & 0xff;
+        switch (filter) {
+            case FILTER_SUB:
+                return left;
+            case FILTER_UP:
+                return data[previous + i] & 0xff;
+            case FILTER_PAETH:
+                final int up = data[previous + i] & 0xff;
+                final int upLeft = i == 0 ? 0 : data[previous + i - 1] & 0xff;
+                final int estimate = left + up - upLeft;
+                final int distanceLeft = Math.abs(estimate - left);
+                final int distanceUp = Math.abs(estimate - up);
+                final int distanceUpLeft = Math.abs(estimate - upLeft);
+                if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+                    return left;
+                }
+                return distanceUp <= distanceUpLeft ? up : upLeft;
+            default:
+                return 0;
+        }
+    }
+}
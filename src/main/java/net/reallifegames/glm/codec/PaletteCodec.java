@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stores comma separated block or biome id lists as a {@link PalettedData} whose serialized form is raw deflated,
+ * decoding back to the same text. Fields which are not id lists, such as height maps, are written with the
+ * {@link PaethDeflateCodec} instead so every field of a palette chunk still gets a sensible encoding.
+ *
+ * @author Tyler Bucher
+ */
+public final class PaletteCodec implements GlmChunkCodec {
+
+    /**
+     * The shared instance.
+     */
+    public static final PaletteCodec INSTANCE = new PaletteCodec();
+
+    /**
+     * The id of this codec.
+     */
+    public static final byte ID = 0x04;
+
+    /**
+     * Use {@link #INSTANCE}.
+     */
+    private PaletteCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "palette";
+    }
+
+    @Nonnull
+    @Override
+    public byte[] encode(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        final int[] ids = offset == 0 && length == src.length ? PalettedData.parseIds(src) :
+                PalettedData.parseIds(Arrays.copyOfRange(src, offset, offset + length));
+        if (ids == null) {
+            return PaethDeflateCodec.INSTANCE.encode(src, offset, length, level);
+        }
+        return encode(PalettedData.of(ids), level);
+    }
+
+    /**
+     * Encodes paletted data which is already built.
+     *
+     * @param data  the paletted data.
+     * @param level the compression level.
+     * @return the encoded payload, starting with the codec id.
+     */
+    @Nonnull
+    public byte[] encode(@Nonnull final PalettedData data, final int level) {
+        final byte[] packed = data.toBytes();
+        return CodecSupport.deflate(ID, false, null, packed, 0, packed.length, level);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] decode(@Nonnull final byte[] src) throws IOException {
+        if (src.length > 0 && src[0] != ID) {
+            // Fields which were not id lists fell back to another codec
+            return GlmChunkCodecs.decode(src);
+        }
+        return PalettedData.formatIds(decodePalette(src).toArray());
+    }
+
+    /**
+     * Decodes a payload to its paletted form without producing text.
+     *
+     * @param src the encoded payload.
+     * @return the paletted data.
+     *
+     * @throws IOException if the payload is corrupt or is not a palette payload.
+     */
+    @Nonnull
+    public PalettedData decodePalette(@Nonnull final byte[] src) throws IOException {
+        return PalettedData.fromBytes(CodecSupport.inflate(ID, false, null, src));
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Block or biome ids stored as a palette of the distinct ids plus palette indices bit packed at the smallest width
+ * which fits the palette. A chunk using four distinct ids needs two bits per entry, a chunk using one id needs none.
+ * Indices may span two words so no bits are wasted.
+ *
+ * @author Tyler Bucher
+ */
+public final class PalettedData {
+
+    /**
+     * The number of entries.
+     */
+    private final int size;
+
+    /**
+     * The distinct ids, sorted ascending.
+     */
+    @Nonnull
+    private final int[] palette;
+
+    /**
+     * The number of bits per packed index.
+     */
+    private final int bitsPerEntry;
+
+    /**
+     * The packed indices, lowest bits first.
+     */
+    @Nonnull
+    private final long[] words;
+
+    /**
+     * Creates new paletted data.
+     *
+     * @param size         the number of entries.
+     * @param palette      the distinct ids, sorted ascending.
+     * @param bitsPerEntry the number of bits per packed index.
+     * @param words        the packed indices, lowest bits first.
+     */
+    private PalettedData(final int size, @Nonnull final int[] palette, final int bitsPerEntry,
+                         @Nonnull final long[] words) {
+        this.size = size;
+        this.palette = palette;
+        this.bitsPerEntry = bitsPerEntry;
+        this.words = words;
+    }
+
+    /**
+     * Builds the palette and packs the ids.
+     *
+     * @param ids the ids to pack.
+     * @return the paletted form of the ids.
+     */
+    @Nonnull
+    public static PalettedData of(@Nonnull final int[] ids) {
+        // Sorting a copy gives the palette without boxing every id into a map
+        final int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        final int[] palette = Arrays.copyOf(sorted, distinct);
+        final int bits = bitsFor(palette.length);
+        final long[] words = new long[wordCount(ids.length, bits)];
+        if (bits > 0) {
+            for (int i = 0; i < ids.length; i++) {
+                write(words, i, bits, Arrays.binarySearch(palette, ids[i]));
+            }
+        }
+        return new PalettedData(ids.length, palette, bits, words);
+    }
+
+    /**
+     * @param paletteSize the number of distinct ids.
+     * @return the number of bits needed to index the palette.
+     */
+    private static int bitsFor(final int paletteSize) {
+        return paletteSize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    /**
+     * @param size the number of entries.
+     * @param bits the number of bits per entry.
+     * @return the number of longs needed.
+     */
+    private static int wordCount(final int size, final int bits) {
+        return (int) (((long) size * bits + 63) >>> 6);
+    }
+
+    /**
+     * Writes a packed index.
+     *
+     * @param words the packed indices.
+     * @param index the entry index.
+     * @param bits  the number of bits per entry.
+     * @param value the palette index to write.
+     */
+    private static void write(@Nonnull final long[] words, final int index, final int bits, final long value) {
+        final long bit = (long) index * bits;
+        final int word = (int) (bit >>> 6);
+        final int shift = (int) (bit & 63);
+        words[word] |= value << shift;
+        if (shift + bits > 64) {
+            words[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    /**
+     * Reads a packed index.
+     *
+     * @param words the packed indices.
+     * @param bit   the first bit of the entry.
+     * @param bits  the number of bits per entry.
+     * @return the palette index.
+     */
+    private static int read(@Nonnull final long[] words, final long bit, final int bits) {
+        final int word = (int) (bit >>> 6);
+        final int shift = (int) (bit & 63);
+        long value = words[word] >>> shift;
+        if (shift + bits > 64) {
+            value |= words[word + 1] << (64 - shift);
+        }
+        return (int) (value & ((1L << bits) - 1));
+    }
+
+    /**
+     * @param index the entry index.
+     * @return the id at the index.
+     */
+    public int get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        if (bitsPerEntry == 0) {
+            return palette[0];
+        }
+        return palette[read(words, (long) index * bitsPerEntry, bitsPerEntry)];
+    }
+
+    /**
+     * @return every id in order.
+     */
+    @Nonnull
+    public int[] toArray() {
+        final int[] ids = new int[size];
+        if (bitsPerEntry == 0) {
+            if (size > 0) {
+                Arrays.fill(ids, palette[0]);
+            }
+            return ids;
+        }
+        long bit = 0;
+        for (int i = 0; i < size; i++, bit += bitsPerEntry) {
+            ids[i] = palette[read(words, bit, bitsPerEntry)];
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the distinct ids, sorted ascending.
+     */
+    @Nonnull
+    public int[] getPalette() {
+        return palette.clone();
+    }
+
+    /**
+     * @return the number of bits per packed index.
+     */
+    public int getBitsPerEntry() {
+        return bitsPerEntry;
+    }
+
+    /**
+     * @return a copy of the packed indices, lowest bits first.
+     */
+    @Nonnull
+    public long[] getPackedWords() {
+        return words.clone();
+    }
+
+    /**
+     * @return the size of {@link #toBytes()}.
+     */
+    public int getSerializedSize() {
+        return 9 + palette.length * 4 + words.length * 8;
+    }
+
+    /**
+     * Serializes as the entry count, the palette size and ids, the bit width and the packed words, all big endian.
+     *
+     * @return the serialized form.
+     */
+    @Nonnull
+    public byte[] toBytes() {
+        final ByteBuffer buffer = ByteBuffer.allocate(getSerializedSize());
+        buffer.putInt(size).putInt(palette.length);
+        for (final int id : palette) {
+            buffer.putInt(id);
+        }
+        buffer.put((byte) bitsPerEntry);
+        for (final long word : words) {
+            buffer.putLong(word);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads the form written by {@link #toBytes()}. The word count is checked against the form before anything is
+     * allocated for it, and every packed index is checked against the palette, so corrupt input never fails later in
+     * {@link #get(int)} or {@link #toArray()}.
+     *
+     * @param src the serialized form.
+     * @return the paletted data.
+     *
+     * @throws IOException if the form is corrupt.
+     */
+    @Nonnull
+    public static PalettedData fromBytes(@Nonnull final byte[] src) throws IOException {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(src);
+            final int size = buffer.getInt();
+            final int paletteSize = buffer.getInt();
+            if (size < 0 || paletteSize < 0 || paletteSize > buffer.remaining() / 4 || (size > 0) != (paletteSize >
+                    0)) {
+                throw new IOException("Corrupt palette header");
+            }
+            final int[] palette = new int[paletteSize];
+            for (int i = 0; i < paletteSize; i++) {
+                palette[i] = buffer.getInt();
+            }
+            final int bits = buffer.get();
+            if (bits != bitsFor(paletteSize)) {
+                throw new IOException("Corrupt palette bit width " + bits);
+            }
+            final int wordCount = wordCount(size, bits);
+            if (wordCount > buffer.remaining() / 8) {
+                throw new IOException("Truncated palette data, " + size + " entries need " + wordCount + " words");
+            }
+            final long[] words = new long[wordCount];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = buffer.getLong();
+            }
+            // Widths with room for more indices than the palette holds can point past it
+            if (paletteSize < 1L << bits) {
+                long bit = 0;
+                for (int i = 0; i < size; i++, bit += bits) {
+                    final int index = read(words, bit, bits);
+                    if (index >= paletteSize) {
+                        throw new IOException("Corrupt palette index " + index + " at entry " + i + ", the palette " +
+                                "holds " + paletteSize + " ids");
+                    }
+                }
+            }
+            return new PalettedData(size, palette, bits, words);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated palette data", e);
+        }
+    }
+
+    /**
+     * Parses comma separated decimal ids, the text form chunk fields are filled with.
+     *
+     * @param text the ascii text.
+     * @return the ids or null if the text is not a list of canonical comma separated ids.
+     */
+    @Nullable
+    public static int[] parseIds(@Nonnull final byte[] text) {
+        if (text.length == 0) {
+            return null;
+        }
+        int count = 1;
+        for (final byte b : text) {
+            if (b == ',') {
+                count++;
+            }
+        }
+        final int[] ids = new int[count];
+        int index = 0;
+        int i = 0;
+        while (i <= text.length) {
+            final boolean negative = i < text.length && text[i] == '-';
+            if (negative) {
+                i++;
+            }
+            final int start = i;
+            long value = 0;
+            while (i < text.length && text[i] >= '0' && text[i] <= '9') {
+                value = value * 10 + (text[i++] - '0');
+                if (value > Integer.MAX_VALUE + 1L) {
+                    return null;
+                }
+            }
+            if (i == start || (i < text.length && text[i] != ',')) {
+                return null;
+            }
+            // Only canonical numbers decode back to the same text
+            if ((text[start] == '0' && (i - start > 1 || negative))) {
+                return null;
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                return null;
+            }
+            ids[index++] = (int) value;
+            i++;
+        }
+        return ids;
+    }
+
+    /**
+     * Writes ids as comma separated decimal text.
+     *
+     * @param ids the ids to write.
+     * @return the ascii text.
+     */
+    @Nonnull
+    public static byte[] formatIds(@Nonnull final int[] ids) {
+        // At most 11 characters per id plus a comma
+        byte[] out = new byte[ids.length * 12];
+        final byte[] digits = new byte[11];
+        int position = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                out[position++] = ',';
+            }
+            long value = ids[i];
+            if (value < 0) {
+                out[position++] = '-';
+                value = -value;
+            }
+            int count = 0;
+            do {
+                digits[count++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            while (count > 0) {
+                out[position++] = digits[--count];
+            }
+        }
+        return position == out.length ? out : Arrays.copyOf(out, position);
+    }
+}
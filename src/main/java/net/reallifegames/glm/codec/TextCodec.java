@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stores bytes as they are behind the codec id. It holds chunk text which is not the base64 form of a compressed
+ * payload, such as plain index or biome text, so that text round-trips unchanged through the binary columns.
+ *
+ * @author Tyler Bucher
+ */
+public final class TextCodec implements GlmChunkCodec {
+
+    /**
+     * The shared instance.
+     */
+    public static final TextCodec INSTANCE = new TextCodec();
+
+    /**
+     * The id of this codec.
+     */
+    public static final byte ID = 0x00;
+
+    /**
+     * Use {@link #INSTANCE}.
+     */
+    private TextCodec() {
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "text";
+    }
+
+    /**
+     * Prefixes bytes with the codec id, the level is ignored.
+     *
+     * @param src    the bytes to store.
+     * @param offset the offset of the first byte to store.
+     * @param length the number of bytes to store.
+     * @param level  ignored.
+     * @return the codec id followed by the bytes.
+     */
+    @Nonnull
+    @Override
+    public byte[] encode(@Nonnull final byte[] src, final int offset, final int length, final int level) {
+        final byte[] dst = new byte[length + 1];
+        dst[0] = ID;
+        System.arraycopy(src, offset, dst, 1, length);
+        return dst;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] decode(@Nonnull final byte[] src) throws IOException {
+        if (!isText(src)) {
+            throw new IOException("Not a text payload");
+        }
+        return Arrays.copyOfRange(src, 1, src.length);
+    }
+
+    /**
+     * @param src the bytes to check.
+     * @return true if the bytes are a payload of this codec.
+     */
+    public static boolean isText(@Nonnull final byte[] src) {
+        return src.length > 0 && src[0] == ID;
+    }
+}
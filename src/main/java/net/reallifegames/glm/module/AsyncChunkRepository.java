@@ -0,0 +1,427 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.GlmExecutors;
+import net.reallifegames.glm.api.GlmChunk;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Runs {@link SqlDataAccess} calls on a dedicated executor and hands back futures, so a WebSocket handler never waits
+ * on a database round trip. Uses virtual threads when the running jdk has them and a fixed pool of daemon threads
+ * otherwise. At most {@code maximumPending} calls may be queued or running, further calls fail fast with a
+ * {@link RejectedExecutionException} so callers can shed load. Concurrent reads of the same chunk share one query. A
+ * write to a chunk detaches the reads of it which are in flight, both when it is submitted and again before its future
+ * completes, so a read made after a write completed never joins a read which began before it.
+ *
+ * @author Tyler Bucher
+ */
+public final class AsyncChunkRepository implements AutoCloseable {
+
+    /**
+     * The default number of calls which may be queued or running.
+     */
+    public static final int DEFAULT_MAXIMUM_PENDING = 1024;
+
+    /**
+     * The data access layer calls are run against.
+     */
+    private final SqlDataAccess dataAccess;
+
+    /**
+     * Runs the database calls.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Permits for queued or running calls.
+     */
+    private final Semaphore pending;
+
+    /**
+     * The maximum number of calls which may be queued or running.
+     */
+    private final int maximumPending;
+
+    /**
+     * Chunk reads which are queued or running, keyed by their position.
+     */
+    private final ConcurrentHashMap<ChunkRequest, CompletableFuture<GlmChunk>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The number of reads which joined a query already in flight.
+     */
+    private final LongAdder mergedRequests = new LongAdder();
+
+    /**
+     * The number of calls rejected because too many were pending.
+     */
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    /**
+     * Creates a new async chunk repository.
+     *
+     * @param dataAccess     the data access layer calls are run against.
+     * @param threads        the number of platform threads used when virtual threads are not available.
+     * @param maximumPending the maximum number of calls which may be queued or running.
+     */
+    public AsyncChunkRepository(@Nonnull final SqlDataAccess dataAccess, final int threads,
+                                final int maximumPending) {
+        this(dataAccess, createExecutor(threads), maximumPending);
+    }
+
+    /**
+     * Creates a new async chunk repository running on the given executor. The repository shuts the executor down when
+     * closed.
+     *
+     * @param dataAccess     the data access layer calls are run against.
+     * @param executor       runs the database calls.
+     * @param maximumPending the maximum number of calls which may be queued or running.
+     */
+    public AsyncChunkRepository(@Nonnull final SqlDataAccess dataAccess, @Nonnull final ExecutorService executor,
+                                final int maximumPending) {
+        if (maximumPending < 1) {
+            throw new IllegalArgumentException("maximumPending must be at least 1");
+        }
+        this.dataAccess = dataAccess;
+        this.executor = executor;
+        this.pending = new Semaphore(maximumPending);
+        this.maximumPending = maximumPending;
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the jdk supports it, otherwise a fixed pool of daemon threads.
+     *
+     * @param threads the number of platform threads used when virtual threads are not available.
+     * @return the new executor.
+     */
+    @Nonnull
+    public static ExecutorService createExecutor(final int threads) {
+        return GlmExecutors.newExecutor(threads, "glm-sql");
+    }
+
+    /**
+     * Gets a chunk from the sql database. Requests for a chunk which is already being read join that read.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @return a future completed with the chunk or null if there is no row for the position.
+     */
+    @Nonnull
+    public CompletableFuture<GlmChunk> getGlChunk(@Nonnull final String worldId, @Nonnull final String chunkType,
+                                                  final int x, final int z) {
+        final ChunkRequest request = new ChunkRequest(worldId, chunkType, x, z);
+        final CompletableFuture<GlmChunk> future = new CompletableFuture<>();
+        final CompletableFuture<GlmChunk> existing = inFlight.putIfAbsent(request, future);
+        if (existing != null) {
+            mergedRequests.increment();
+            // Hand out a dependent so one caller can not complete the shared future for everyone
+            return existing.thenApply(Function.identity());
+        }
+        future.whenComplete((chunk, throwable)->inFlight.remove(request, future));
+        submit(future, ()->dataAccess.getGlChunk(worldId, chunkType, x, z));
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * Gets many chunks from the sql database in one query.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param positions the list of points to get chunks for. x, z interleaved
+     * @return a future completed with the chunks which were found along with their positions.
+     */
+    @Nonnull
+    public CompletableFuture<List<PositionedChunk>> getGlChunks(@Nonnull final String worldId,
+                                                                @Nonnull final String chunkType,
+                                                                @Nonnull final List<Integer> positions) {
+        final CompletableFuture<List<PositionedChunk>> future = new CompletableFuture<>();
+        submit(future, ()->dataAccess.getGlChunks(worldId, chunkType, positions));
+        return future;
+    }
+
+    /**
+     * Gets every chunk of a world and type inside a rectangle.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x1        the top left x coordinate, inclusive.
+     * @param z1        the top left z coordinate, inclusive.
+     * @param x2        the bottom right x coordinate, exclusive.
+     * @param z2        the bottom right z coordinate, exclusive.
+     * @return a future completed with the chunks which were found along with their positions.
+     */
+    @Nonnull
+    public CompletableFuture<List<PositionedChunk>> getGlChunksInRange(@Nonnull final String worldId,
+                                                                       @Nonnull final String chunkType,
+                                                                       final int x1, final int z1, final int x2,
+                                                                       final int z2) {
+        final CompletableFuture<List<PositionedChunk>> future = new CompletableFuture<>();
+        submit(future, ()->dataAccess.getGlChunksInRange(worldId, chunkType, x1, z1, x2, z2));
+        return future;
+    }
+
+    /**
+     * Inserts or updates a chunk in the sql database.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @param glChunk   the data to write.
+     * @return a future completed once the chunk is written.
+     */
+    @Nonnull
+    public CompletableFuture<Void> updateGlChunk(@Nonnull final String worldId, @Nonnull final String chunkType,
+                                                 final int x, final int z, @Nonnull final GlmChunk glChunk) {
+        final ChunkRequest request = new ChunkRequest(worldId, chunkType, x, z);
+        inFlight.remove(request);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        submit(future, ()->{
+            dataAccess.updateGlChunk(worldId, chunkType, x, z, glChunk);
+            inFlight.remove(request);
+            return null;
+        });
+        return future;
+    }
+
+    /**
+     * Inserts or updates many chunks of a single world and type in one transaction.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param chunks    the chunks and their positions to write.
+     * @return a future completed with the number of rows written and the time it took.
+     */
+    @Nonnull
+    public CompletableFuture<SqlBatchResult> updateGlChunks(@Nonnull final String worldId,
+                                                            @Nonnull final String chunkType,
+                                                            @Nonnull final Collection<PositionedChunk> chunks) {
+        detachReads(worldId, chunkType, chunks);
+        final CompletableFuture<SqlBatchResult> future = new CompletableFuture<>();
+        submit(future, ()->{
+            final SqlBatchResult result = dataAccess.updateGlChunks(worldId, chunkType, chunks);
+            detachReads(worldId, chunkType, chunks);
+            return result;
+        });
+        return future;
+    }
+
+    /**
+     * Stops later reads of the written chunks from joining reads which are in flight.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param chunks    the chunks being written.
+     */
+    private void detachReads(@Nonnull final String worldId, @Nonnull final String chunkType,
+                             @Nonnull final Collection<PositionedChunk> chunks) {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        for (final PositionedChunk chunk : chunks) {
+            inFlight.remove(new ChunkRequest(worldId, chunkType, chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    /**
+     * Runs a call on the executor and completes the future with its outcome. Completes the future exceptionally
+     * right away when too many calls are pending.
+     *
+     * @param future the future to complete.
+     * @param call   the database call to run.
+     * @param <T>    the result type of the call.
+     */
+    private <T> void submit(@Nonnull final CompletableFuture<T> future, @Nonnull final SqlCall<T> call) {
+        if (!pending.tryAcquire()) {
+            rejectedRequests.increment();
+            future.completeExceptionally(new RejectedExecutionException("Too many pending sql requests"));
+            return;
+        }
+        try {
+            executor.execute(()->{
+                final T result;
+                try {
+                    result = call.call();
+                } catch (Throwable t) {
+                    pending.release();
+                    future.completeExceptionally(t);
+                    return;
+                }
+                // Free the permit before waking dependents so they can submit right away
+                pending.release();
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            pending.release();
+            rejectedRequests.increment();
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return the number of calls currently queued or running.
+     */
+    public int getPendingRequests() {
+        return maximumPending - pending.availablePermits();
+    }
+
+    /**
+     * @return the maximum number of calls which may be queued or running.
+     */
+    public int getMaximumPending() {
+        return maximumPending;
+    }
+
+    /**
+     * @return the number of reads which joined a query already in flight.
+     */
+    public long getMergedRequests() {
+        return mergedRequests.sum();
+    }
+
+    /**
+     * @return the number of calls rejected because too many were pending.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * Stops accepting calls and waits up to the given time for pending calls to finish.
+     *
+     * @param timeout the time to wait in milliseconds.
+     * @return true if every pending call finished.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(final long timeout) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting calls and waits for pending calls to finish.
+     */
+    @Override
+    public void close() {
+        try {
+            shutdown(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A database call which may fail with an {@link SQLException}.
+     *
+     * @param <T> the result type of the call.
+     */
+    @FunctionalInterface
+    private interface SqlCall<T> {
+
+        /**
+         * @return the result of the call.
+         *
+         * @throws SQLException if a database access error occurs.
+         */
+        T call() throws SQLException;
+    }
+
+    /**
+     * The position of a chunk read, used to merge concurrent reads.
+     */
+    private static final class ChunkRequest {
+
+        /**
+         * The id of the world.
+         */
+        private final String worldId;
+
+        /**
+         * The glm chunk type.
+         */
+        private final String chunkType;
+
+        /**
+         * The x position of the chunk.
+         */
+        private final int x;
+
+        /**
+         * The z position of the chunk.
+         */
+        private final int z;
+
+        /**
+         * Creates a new chunk request key.
+         *
+         * @param worldId   the id of the world.
+         * @param chunkType the glm chunk type.
+         * @param x         the x position of the chunk.
+         * @param z         the z position of the chunk.
+         */
+        private ChunkRequest(@Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                             final int z) {
+            this.worldId = worldId;
+            this.chunkType = chunkType;
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ChunkRequest)) {
+                return false;
+            }
+            final ChunkRequest that = (ChunkRequest) o;
+            return x == that.x && z == that.z && worldId.equals(that.worldId) && chunkType.equals(that.chunkType);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = worldId.hashCode();
+            result = 31 * result + chunkType.hashCode();
+            result = 31 * result + x;
+            return 31 * result + z;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+
+import javax.annotation.Nonnull;
+import java.sql.SQLException;
+
+/**
+ * Receives chunk rows one at a time as they are streamed from the sql database.
+ *
+ * @author Tyler Bucher
+ */
+@FunctionalInterface
+public interface ChunkRowConsumer {
+
+    /**
+     * Called for every chunk row in the result.
+     *
+     * @param x     the x position of the chunk.
+     * @param z     the z position of the chunk.
+     * @param chunk the chunk read from the row.
+     * @throws SQLException if the consumer wants to abort the query.
+     */
+    void accept(final int x, final int z, @Nonnull final BinaryGlmChunk chunk) throws SQLException;
+}
@@ -0,0 +1,321 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GzipGlmChunk;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The queries for a chunks table in an older layout which a migration is still copying rows out of. Version 1 holds
+ * base64 text columns and version 2 raw bytes, both keep the chunk position in a point column. The queries mirror the
+ * column order of the {@link SqlModule} queries so rows are read the same way. Version 1 text is converted the way
+ * {@link BinaryGlmChunk#fromGlmChunk(net.reallifegames.glm.api.GlmChunk)} converts chunk text, so rows the migration
+ * copies as they are read the same before and after the copy. Statements are prepared per call since the table only
+ * exists for the duration of a migration.
+ *
+ * @author Tyler Bucher
+ */
+final class LegacyChunkTable {
+
+    /**
+     * True if the table holds version 1 base64 text columns.
+     */
+    private final boolean text;
+
+    /**
+     * Selects the newest row of a position.
+     */
+    @Nonnull
+    private final String getChunk;
+
+    /**
+     * Checks if a position has a row.
+     */
+    @Nonnull
+    private final String chunkExists;
+
+    /**
+     * Selects every row of a world and type inside a rectangle, newest first.
+     */
+    @Nonnull
+    private final String getChunksInRange;
+
+    /**
+     * Counts every row.
+     */
+    @Nonnull
+    private final String countTotalRows;
+
+    /**
+     * Counts the rows of a world.
+     */
+    @Nonnull
+    private final String countRows;
+
+    /**
+     * Counts the rows of a world inside a rectangle.
+     */
+    @Nonnull
+    private final String countRowsInRange;
+
+    /**
+     * Deletes a bounded batch of rows of a world inside a rectangle.
+     */
+    @Nonnull
+    private final String deleteRowsInRange;
+
+    /**
+     * Creates the queries for an older chunks table.
+     *
+     * @param table   the name of the table including the prefix.
+     * @param version the sql version of the table layout, 1 or 2.
+     */
+    LegacyChunkTable(@Nonnull final String table, final int version) {
+        text = version == 1;
+        final String columns = "`chunk_data`, `height_data`, `biome_data`, `index_data`";
+        final String range = "ST_X(`position`) >= ? AND ST_X(`position`) < ? AND ST_Y(`position`) >= ? AND " +
+                "ST_Y(`position`) < ?";
+        getChunk = "SELECT `generation_time`, " + columns + " FROM `" + table + "` WHERE `world_id`=? AND " +
+                "`chunk_type` = ? AND `position` = POINT(?, ?) ORDER BY `generation_time` DESC LIMIT 1;";
+        chunkExists = "SELECT EXISTS(SELECT 1 FROM `" + table + "` WHERE `world_id` = ? AND `chunk_type`=? AND " +
+                "`position` = POINT(?, ?));";
+        getChunksInRange = "SELECT `generation_time`, ST_X(`position`), ST_Y(`position`), " + columns + " FROM `" +
+                table + "` WHERE `world_id`=? AND `chunk_type` = ? AND " + range + " ORDER BY `generation_time` DESC;";
+        countTotalRows = "SELECT COUNT(*) FROM `" + table + "`;";
+        countRows = "SELECT COUNT(*) FROM `" + table + "` WHERE `world_id` = ?;";
+        countRowsInRange = "SELECT COUNT(*) FROM `" + table + "` WHERE `world_id`=? AND " + range + ";";
+        deleteRowsInRange = "DELETE FROM `" + table + "` WHERE `world_id`=? AND " + range + " LIMIT ?;";
+    }
+
+    /**
+     * Gets the newest row of a position.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x          the x position of the chunk.
+     * @param z          the z position of the chunk.
+     * @return the chunk or null if there is no row for the position.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nullable
+    BinaryGlmChunk getChunk(@Nonnull final Connection connection, @Nonnull final String worldId,
+                            @Nonnull final String chunkType, final int x, final int z) throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(getChunk)) {
+            if (!text) {
+                return SqlModule.getGlChunk(preparedStatement, worldId, chunkType, x, z);
+            }
+            preparedStatement.setString(1, worldId);
+            preparedStatement.setString(2, chunkType);
+            preparedStatement.setInt(3, x);
+            preparedStatement.setInt(4, z);
+            try (final ResultSet results = preparedStatement.executeQuery()) {
+                return results.next() ? readTextChunk(chunkType, results, 2) : null;
+            }
+        }
+    }
+
+    /**
+     * Checks if a position has a row.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x          the x position of the chunk.
+     * @param z          the z position of the chunk.
+     * @return true if the row exists false otherwise.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    boolean chunkExists(@Nonnull final Connection connection, @Nonnull final String worldId,
+                        @Nonnull final String chunkType, final int x, final int z) throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(chunkExists)) {
+            return SqlModule.rowExists(preparedStatement, worldId, chunkType, x, z);
+        }
+    }
+
+    /**
+     * Streams every row of a world and type inside a rectangle, newest first. A position can have several rows.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @param consumer   receives every chunk row.
+     * @throws SQLException if a database access error occurs.
+     */
+    void getChunksInRange(@Nonnull final Connection connection, @Nonnull final String worldId,
+                          @Nonnull final String chunkType, final int x1, final int z1, final int x2, final int z2,
+                          @Nonnull final ChunkRowConsumer consumer) throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(getChunksInRange)) {
+            if (!text) {
+                SqlModule.getGlChunksInRange(preparedStatement, worldId, chunkType, x1, z1, x2, z2, consumer);
+                return;
+            }
+            preparedStatement.setString(1, worldId);
+            preparedStatement.setString(2, chunkType);
+            preparedStatement.setInt(3, x1);
+            preparedStatement.setInt(4, x2);
+            preparedStatement.setInt(5, z1);
+            preparedStatement.setInt(6, z2);
+            try (final ResultSet results = preparedStatement.executeQuery()) {
+                while (results.next()) {
+                    consumer.accept(results.getInt(2), results.getInt(3), readTextChunk(chunkType, results, 4));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world to count rows for or null to count every row.
+     * @return the number of rows.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    int countRows(@Nonnull final Connection connection, @Nullable final String worldId) throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(worldId == null ?
+                countTotalRows : countRows)) {
+            if (worldId != null) {
+                preparedStatement.setString(1, worldId);
+            }
+            return SqlModule.queryCount(preparedStatement);
+        }
+    }
+
+    /**
+     * Deletes every row of a world inside a rectangle, one bounded batch at a time. Every batch commits on its own.
+     *
+     * @param connection the sql database connection, in auto commit mode.
+     * @param worldId    the id of the the world.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @param limit      the maximum number of rows removed per batch.
+     * @param removed    the number of rows removed before this call, for progress.
+     * @param total      the number of rows expected to be removed, for progress.
+     * @param listener   receives progress after every batch.
+     * @return the number of rows removed by this call.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    long deleteRowsInRange(@Nonnull final Connection connection, @Nonnull final String worldId, final int x1,
+                           final int z1, final int x2, final int z2, final int limit, final long removed,
+                           final long total, @Nonnull final SqlProgressListener listener) throws SQLException {
+        long deletedRows = 0;
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(deleteRowsInRange)) {
+            setRange(preparedStatement, worldId, x1, z1, x2, z2);
+            preparedStatement.setInt(6, limit);
+            int deleted;
+            do {
+                deleted = preparedStatement.executeUpdate();
+                deletedRows += deleted;
+                listener.onProgress(removed + deletedRows, Math.max(total, removed + deletedRows));
+            } while (deleted == limit);
+        }
+        return deletedRows;
+    }
+
+    /**
+     * @param connection the sql database connection.
+     * @param worldId    the id of the the world.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @return the number of rows of the world inside the rectangle.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    long countRowsInRange(@Nonnull final Connection connection, @Nonnull final String worldId, final int x1,
+                          final int z1, final int x2, final int z2) throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(countRowsInRange)) {
+            setRange(preparedStatement, worldId, x1, z1, x2, z2);
+            return SqlModule.queryCount(preparedStatement);
+        }
+    }
+
+    /**
+     * Reads a chunk from the current row of a version 1 result set. The generation time is always the first column.
+     *
+     * @param chunkType  the type of the chunk.
+     * @param results    the result set positioned on a chunk row.
+     * @param dataColumn the column of the chunk data, followed by the height, biome and index data.
+     * @return the chunk.
+     *
+     * @throws SQLException if a column could not be read.
+     */
+    @Nonnull
+    private static BinaryGlmChunk readTextChunk(@Nonnull final String chunkType, @Nonnull final ResultSet results,
+                                                final int dataColumn) throws SQLException {
+        return BinaryGlmChunk.fromGlmChunk(new GzipGlmChunk(chunkType, results.getLong(1),
+                text(results, dataColumn), text(results, dataColumn + 1), text(results, dataColumn + 2),
+                text(results, dataColumn + 3)));
+    }
+
+    /**
+     * @param results the result set positioned on a chunk row.
+     * @param column  the column of a text field.
+     * @return the text of the field, empty if it is null.
+     *
+     * @throws SQLException if the column could not be read.
+     */
+    @Nonnull
+    private static String text(@Nonnull final ResultSet results, final int column) throws SQLException {
+        final String text = results.getString(column);
+        return text == null ? "" : text;
+    }
+
+    /**
+     * Sets the world and rectangle parameters shared by the range statements of every chunk type.
+     *
+     * @param preparedStatement the statement.
+     * @param worldId           the id of the the world.
+     * @param x1                the top left x coordinate, inclusive.
+     * @param z1                the top left z coordinate, inclusive.
+     * @param x2                the bottom right x coordinate, exclusive.
+     * @param z2                the bottom right z coordinate, exclusive.
+     * @throws SQLException if a parameter could not be set.
+     */
+    private static void setRange(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                                 final int x1, final int z1, final int x2, final int z2) throws SQLException {
+        preparedStatement.setString(1, worldId);
+        preparedStatement.setInt(2, x1);
+        preparedStatement.setInt(3, x2);
+        preparedStatement.setInt(4, z1);
+        preparedStatement.setInt(5, z2);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A connection lent out by a {@link SqlConnectionPool}. Keeps its own cache of prepared statements so fixed queries
+ * are only prepared once per physical connection. Instances are confined to a single thread while lent out and are
+ * handed back to the pool by {@link #close()}.
+ *
+ * @author Tyler Bucher
+ */
+public final class PooledSqlConnection implements AutoCloseable {
+
+    /**
+     * The pool which owns this connection.
+     */
+    private final SqlConnectionPool pool;
+
+    /**
+     * The physical connection.
+     */
+    private final Connection connection;
+
+    /**
+     * Prepared statements keyed by their sql string.
+     */
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * The nano time this connection was last handed back to the pool.
+     */
+    long lastReleased;
+
+    /**
+     * True while this connection is lent out.
+     */
+    boolean leased;
+
+    /**
+     * True if the connection failed and should not be reused.
+     */
+    private boolean broken;
+
+    /**
+     * Creates a new pooled connection.
+     *
+     * @param pool       the pool which owns this connection.
+     * @param connection the physical connection.
+     */
+    PooledSqlConnection(@Nonnull final SqlConnectionPool pool, @Nonnull final Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+        this.lastReleased = System.nanoTime();
+    }
+
+    /**
+     * @return the physical connection. Must not be closed by the caller.
+     */
+    @Nonnull
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns the cached statement for the given sql, preparing it on first use. The statement must not be closed by
+     * the caller. Only use this for fixed sql strings, dynamically built sql should be prepared directly on
+     * {@link #getConnection()}.
+     *
+     * @param sql the fixed sql string to prepare.
+     * @return the prepared statement with its parameters cleared.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nonnull
+    public PreparedStatement prepare(@Nonnull final String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            pool.statementCacheHits.increment();
+            return statement;
+        }
+        pool.statementCacheMisses.increment();
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Marks this connection as broken so it is closed instead of returned to the pool.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    /**
+     * @return true if the connection was marked broken.
+     */
+    boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Closes the cached statements and the physical connection.
+     */
+    void closePhysical() {
+        for (final PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Hands this connection back to the pool. Any open transaction is rolled back.
+     */
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
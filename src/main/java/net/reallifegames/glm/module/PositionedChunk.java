@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.api.GlmChunk;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link GlmChunk} paired with its chunk position.
+ *
+ * @author Tyler Bucher
+ */
+public final class PositionedChunk {
+
+    /**
+     * The x position of the chunk.
+     */
+    private final int x;
+
+    /**
+     * The z position of the chunk.
+     */
+    private final int z;
+
+    /**
+     * The chunk at the position.
+     */
+    @Nonnull
+    private final GlmChunk chunk;
+
+    /**
+     * Creates a new positioned chunk.
+     *
+     * @param x     the x position of the chunk.
+     * @param z     the z position of the chunk.
+     * @param chunk the chunk at the position.
+     */
+    public PositionedChunk(final int x, final int z, @Nonnull final GlmChunk chunk) {
+        this.x = x;
+        this.z = z;
+        this.chunk = chunk;
+    }
+
+    /**
+     * @return the x position of the chunk.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return the z position of the chunk.
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * @return the chunk at the position.
+     */
+    @Nonnull
+    public GlmChunk getChunk() {
+        return chunk;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a batched sql operation.
+ *
+ * @author Tyler Bucher
+ */
+public final class SqlBatchResult {
+
+    /**
+     * The number of rows written or removed.
+     */
+    private final long rowCount;
+
+    /**
+     * The time the operation took in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Creates a new batch result.
+     *
+     * @param rowCount     the number of rows written or removed.
+     * @param elapsedNanos the time the operation took in nanoseconds.
+     */
+    public SqlBatchResult(final long rowCount, final long elapsedNanos) {
+        this.rowCount = rowCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of rows written or removed.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the time the operation took in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the time the operation took in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "SqlBatchResult{rowCount=" + rowCount + ", elapsedMillis=" + getElapsedMillis() + '}';
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Opens new physical connections for a {@link SqlConnectionPool}.
+ *
+ * @author Tyler Bucher
+ */
+@FunctionalInterface
+public interface SqlConnectionFactory {
+
+    /**
+     * Opens a new connection.
+     *
+     * @return the newly opened connection.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nonnull
+    Connection createConnection() throws SQLException;
+
+    /**
+     * Creates a factory which opens connections through the {@link DriverManager}. Works with any jdbc url, including
+     * embedded databases.
+     *
+     * @param url      the jdbc url of the database.
+     * @param user     the database user.
+     * @param password the password of the database user.
+     * @return the new connection factory.
+     */
+    @Nonnull
+    static SqlConnectionFactory fromUrl(@Nonnull final String url, @Nonnull final String user,
+                                        @Nonnull final String password) {
+        return ()->DriverManager.getConnection(url, user, password);
+    }
+}
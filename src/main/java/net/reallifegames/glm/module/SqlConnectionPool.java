@@ -0,0 +1,305 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of jdbc connections. At most {@code maximumConnections} physical connections are open at any time,
+ * callers block until one is free or the acquire timeout passes. Idle connections are kept most recently used first
+ * and are validated before being lent out again when they sat idle for longer than the validation interval.
+ *
+ * @author Tyler Bucher
+ */
+public final class SqlConnectionPool implements AutoCloseable {
+
+    /**
+     * The default time to wait for a free connection in milliseconds.
+     */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT = 30_000;
+
+    /**
+     * The default idle time after which a connection is validated before use in milliseconds.
+     */
+    public static final long DEFAULT_VALIDATION_INTERVAL = 30_000;
+
+    /**
+     * The time in seconds a connection has to answer a validation check.
+     */
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    /**
+     * Opens new physical connections.
+     */
+    private final SqlConnectionFactory factory;
+
+    /**
+     * The maximum number of connections this pool may open.
+     */
+    private final int maximumConnections;
+
+    /**
+     * Permits for lending out connections.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Idle connections, most recently released first.
+     */
+    private final ArrayDeque<PooledSqlConnection> idle;
+
+    /**
+     * The time to wait for a free connection in nanoseconds.
+     */
+    private volatile long acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_ACQUIRE_TIMEOUT);
+
+    /**
+     * The idle time after which a connection is validated before use in nanoseconds.
+     */
+    private volatile long validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_VALIDATION_INTERVAL);
+
+    /**
+     * True once this pool has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The number of times a connection was lent out.
+     */
+    private final LongAdder acquireCount = new LongAdder();
+
+    /**
+     * The summed time callers waited for a connection in nanoseconds.
+     */
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    /**
+     * The longest time a caller waited for a connection in nanoseconds.
+     */
+    private final AtomicLong maximumWaitNanos = new AtomicLong();
+
+    /**
+     * The number of prepared statements reused from a connection cache.
+     */
+    final LongAdder statementCacheHits = new LongAdder();
+
+    /**
+     * The number of prepared statements which had to be prepared.
+     */
+    final LongAdder statementCacheMisses = new LongAdder();
+
+    /**
+     * Creates a new connection pool.
+     *
+     * @param factory            opens new physical connections.
+     * @param maximumConnections the maximum number of connections this pool may open.
+     */
+    public SqlConnectionPool(@Nonnull final SqlConnectionFactory factory, final int maximumConnections) {
+        if (maximumConnections < 1) {
+            throw new IllegalArgumentException("maximumConnections must be at least 1");
+        }
+        this.factory = factory;
+        this.maximumConnections = maximumConnections;
+        this.permits = new Semaphore(maximumConnections, true);
+        this.idle = new ArrayDeque<>(maximumConnections);
+    }
+
+    /**
+     * Lends out a connection, waiting up to the acquire timeout for one to become free.
+     *
+     * @return a connection which must be closed to hand it back.
+     *
+     * @throws SQLException if the pool is closed, no connection became free in time or a new connection could not be
+     *                      opened.
+     */
+    @Nonnull
+    public PooledSqlConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        final long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection", e);
+        }
+        final long waited = System.nanoTime() - start;
+        acquireCount.increment();
+        totalWaitNanos.add(waited);
+        maximumWaitNanos.accumulateAndGet(waited, Math::max);
+        try {
+            final PooledSqlConnection connection = takeValidIdle();
+            final PooledSqlConnection result = connection != null ? connection :
+                    new PooledSqlConnection(this, factory.createConnection());
+            result.leased = true;
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection which is still usable, closing any stale ones found on the way.
+     *
+     * @return a usable idle connection or null if none are left.
+     */
+    private PooledSqlConnection takeValidIdle() {
+        while (true) {
+            final PooledSqlConnection connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                return null;
+            }
+            if (System.nanoTime() - connection.lastReleased < validationIntervalNanos) {
+                return connection;
+            }
+            try {
+                if (connection.getConnection().isValid(VALIDATION_TIMEOUT)) {
+                    return connection;
+                }
+            } catch (SQLException ignored) {
+            }
+            connection.closePhysical();
+        }
+    }
+
+    /**
+     * Hands a connection back to the pool.
+     *
+     * @param connection the connection to hand back.
+     */
+    void release(@Nonnull final PooledSqlConnection connection) {
+        if (!connection.leased) {
+            return;
+        }
+        connection.leased = false;
+        boolean reusable = !closed && !connection.isBroken();
+        if (reusable) {
+            // Never hand out a connection with someone else's open transaction
+            try {
+                final Connection physical = connection.getConnection();
+                if (physical.isClosed()) {
+                    reusable = false;
+                } else if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+        if (reusable) {
+            connection.lastReleased = System.nanoTime();
+            // Checked again under the lock so a close which drained the idle connections cannot miss this one
+            synchronized (idle) {
+                reusable = !closed;
+                if (reusable) {
+                    idle.offerFirst(connection);
+                }
+            }
+        }
+        if (!reusable) {
+            connection.closePhysical();
+        }
+        permits.release();
+    }
+
+    /**
+     * @return a snapshot of the pool counters.
+     */
+    @Nonnull
+    public SqlPoolStats getStats() {
+        final int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        return new SqlPoolStats(maximumConnections, getInUseConnections(), idleCount, acquireCount.sum(),
+                totalWaitNanos.sum(), maximumWaitNanos.get(), statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    /**
+     * @return the number of connections currently lent out.
+     */
+    public int getInUseConnections() {
+        return maximumConnections - permits.availablePermits();
+    }
+
+    /**
+     * @return the maximum number of connections this pool may open.
+     */
+    public int getMaximumConnections() {
+        return maximumConnections;
+    }
+
+    /**
+     * Sets the time to wait for a free connection.
+     *
+     * @param timeout the time to wait in milliseconds.
+     */
+    public void setAcquireTimeout(final long timeout) {
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Sets the idle time after which a connection is validated before use.
+     *
+     * @param interval the idle time in milliseconds.
+     */
+    public void setValidationInterval(final long interval) {
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+    }
+
+    /**
+     * Closes all idle connections. Connections still lent out are closed when they are handed back.
+     */
+    @Override
+    public void close() {
+        synchronized (idle) {
+            closed = true;
+        }
+        while (true) {
+            final PooledSqlConnection connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                return;
+            }
+            connection.closePhysical();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.module.migration.SqlMigrator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The pooled data access layer of {@link SqlModule}. Every call borrows a connection from a bounded
+ * {@link SqlConnectionPool} and runs the fixed queries through that connection's prepared statement cache, so a
+ * statement is only prepared once per physical connection. The queries are the same ones {@link SqlModule} builds in
+ * {@link SqlModule#init(String)}, so any jdbc url, including an embedded database, can back it.
+ *
+ * @author Tyler Bucher
+ */
+public final class SqlDataAccess implements AutoCloseable {
+
+    /**
+     * The pool connections are borrowed from.
+     */
+    private final SqlConnectionPool pool;
+
+    /**
+     * Creates a new data access layer.
+     *
+     * @param pool the pool connections are borrowed from.
+     */
+    public SqlDataAccess(@Nonnull final SqlConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Borrows a connection, runs the work and hands the connection back. Connections which fail with a connection
+     * error are closed instead of being reused.
+     *
+     * @param work the work to run.
+     * @param <T>  the result type of the work.
+     * @return the result of the work.
+     *
+     * @throws SQLException if a connection could not be borrowed or the work failed.
+     */
+    public <T> T execute(@Nonnull final SqlWork<T> work) throws SQLException {
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            try {
+                return work.run(connection);
+            } catch (SQLException e) {
+                if (isConnectionError(e)) {
+                    connection.invalidate();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param e the exception to check.
+     * @return true if the exception means the connection itself is unusable.
+     */
+    private static boolean isConnectionError(@Nonnull final SQLException e) {
+        final String state = e.getSQLState();
+        return e instanceof SQLNonTransientConnectionException || (state != null && state.startsWith("08"));
+    }
+
+    /**
+     * Brings the database schema up to date, see {@link SqlMigrator#migrate(java.sql.Connection)}. The migration
+     * holds one pooled connection until it returns, chunks can be read and written through the others meanwhile.
+     *
+     * @return the sql version the database is at afterwards.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    public int migrate() throws SQLException {
+        return execute(connection->SqlMigrator.migrate(connection.getConnection()));
+    }
+
+    /**
+     * Checks if a row exists in the sql database.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @return true if the row exists false otherwise.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    public boolean rowExists(@Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                             final int z) throws SQLException {
+        return execute(connection->SqlModule.rowExists(connection.getConnection(), connection.prepare(
+                SqlModule.getChunkExistsSqlString()), worldId, chunkType, x, z));
+    }
+
+    /**
+     * Gets a chunk from the sql database.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @return the chunk or null if there is no row for the position.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nullable
+    public BinaryGlmChunk getGlChunk(@Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                                     final int z) throws SQLException {
+        return execute(connection->SqlModule.getGlChunk(connection.getConnection(), connection.prepare(
+                SqlModule.getGetChunkSqlString()), worldId, chunkType, x, z));
+    }
+
+    /**
+     * Gets many chunks from the sql database, see {@link SqlModule#getGlChunks(java.sql.Connection, String, String,
+     * List)}.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param positions the list of points to get chunks for. x, z interleaved
+     * @return the chunks which were found along with their positions.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nonnull
+    public List<PositionedChunk> getGlChunks(@Nonnull final String worldId, @Nonnull final String chunkType,
+                                             @Nonnull final List<Integer> positions) throws SQLException {
+        // The position list query is built per call so it is not worth caching
+        return execute(connection->SqlModule.getGlChunks(connection.getConnection(), worldId, chunkType, positions));
+    }
+
+    /**
+     * Streams every chunk of a world and type inside a rectangle.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x1        the top left x coordinate, inclusive.
+     * @param z1        the top left z coordinate, inclusive.
+     * @param x2        the bottom right x coordinate, exclusive.
+     * @param z2        the bottom right z coordinate, exclusive.
+     * @param consumer  receives every chunk row.
+     * @return the number of chunk rows read.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    public long getGlChunksInRange(@Nonnull final String worldId, @Nonnull final String chunkType, final int x1,
+                                   final int z1, final int x2, final int z2,
+                                   @Nonnull final ChunkRowConsumer consumer) throws SQLException {
+        return execute(connection->SqlModule.getGlChunksInRange(connection.getConnection(), connection.prepare(
+                SqlModule.getGetChunksInRangeSqlString()), worldId, chunkType, x1, z1, x2, z2, consumer));
+    }
+
+    /**
+     * Gets every chunk of a world and type inside a rectangle.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x1        the top left x coordinate, inclusive.
+     * @param z1        the top left z coordinate, inclusive.
+     * @param x2        the bottom right x coordinate, exclusive.
+     * @param z2        the bottom right z coordinate, exclusive.
+     * @return the chunks which were found along with their positions.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nonnull
+    public List<PositionedChunk> getGlChunksInRange(@Nonnull final String worldId, @Nonnull final String chunkType,
+                                                    final int x1, final int z1, final int x2, final int z2)
+            throws SQLException {
+        final List<PositionedChunk> chunks = new ArrayList<>();
+        getGlChunksInRange(worldId, chunkType, x1, z1, x2, z2, (x, z, chunk)->chunks.add(
+                new PositionedChunk(x, z, chunk)));
+        return chunks;
+    }
+
+    /**
+     * Inserts or updates a chunk in the sql database with a single upsert.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @param glChunk   the data to write.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void updateGlChunk(@Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                              final int z, @Nonnull final GlmChunk glChunk) throws SQLException {
+        execute(connection->{
+            SqlModule.upsertGlChunk(connection.prepare(SqlModule.getChunkUpsertSqlString()), worldId, chunkType, x,
+                    z, glChunk);
+            return null;
+        });
+    }
+
+    /**
+     * Inserts or updates many chunks of a single world and type in one transaction.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param chunks    the chunks and their positions to write.
+     * @return the number of rows written and the time it took.
+     *
+     * @throws SQLException if a database access error occurs. The transaction is rolled back.
+     */
+    @Nonnull
+    public SqlBatchResult updateGlChunks(@Nonnull final String worldId, @Nonnull final String chunkType,
+                                         @Nonnull final Collection<PositionedChunk> chunks) throws SQLException {
+        return execute(connection->SqlModule.updateGlChunks(connection.getConnection(), connection.prepare(
+                SqlModule.getChunkUpsertSqlString()), worldId, chunkType, chunks));
+    }
+
+    /**
+     * @return the number of rows in the chunks table.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    public int countTotalRows() throws SQLException {
+        return execute(connection->SqlModule.queryCount(connection.prepare(SqlModule.getCountTotalRowsSqlString())) +
+                SqlModule.countLegacyRows(connection.getConnection(), null));
+    }
+
+    /**
+     * @param worldId the id of the world to count rows for.
+     * @return the number of rows in the chunks table for a world id.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    public int countRowsForWorld(@Nonnull final String worldId) throws SQLException {
+        return execute(connection->{
+            final PreparedStatement preparedStatement = connection.prepare(
+                    SqlModule.getCountRowsSqlString());
+            preparedStatement.setString(1, worldId);
+            return SqlModule.queryCount(preparedStatement) + SqlModule.countLegacyRows(connection.getConnection(),
+                    worldId);
+        });
+    }
+
+    /**
+     * Removes chunks of every type inside a rectangle, see {@link SqlModule#removeChunksInRange(java.sql.Connection,
+     * String, int, int, int, int, int, SqlProgressListener)}.
+     *
+     * @param worldId   the id of the the world to check.
+     * @param x1        the top left x coordinate, inclusive.
+     * @param z1        the top left z coordinate, inclusive.
+     * @param x2        the bottom right x coordinate, exclusive.
+     * @param z2        the bottom right z coordinate, exclusive.
+     * @param batchSize the maximum number of rows removed per transaction.
+     * @param listener  receives progress after every batch.
+     * @return the number of rows removed and the time it took.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nonnull
+    public SqlBatchResult removeChunksInRange(@Nonnull final String worldId, final int x1, final int z1, final int x2,
+                                              final int z2, final int batchSize,
+                                              @Nonnull final SqlProgressListener listener) throws SQLException {
+        return execute(connection->SqlModule.removeChunksInRange(connection.getConnection(), worldId, x1, z1, x2, z2,
+                batchSize, listener));
+    }
+
+    /**
+     * Inserts a ban into the ban table.
+     *
+     * @param ipAddress the ip address of the client.
+     * @param uuid      the uuid of the client map.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void insertBan(@Nonnull final String ipAddress, @Nonnull final String uuid) throws SQLException {
+        execute(connection->{
+            SqlModule.insertBan(connection.prepare(SqlModule.getInsertBanSqlString()), ipAddress, uuid);
+            return null;
+        });
+    }
+
+    /**
+     * Removes a ban from the ban table.
+     *
+     * @param ipAddress the ip address of the client.
+     * @param uuid      the uuid of the client map.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void removeBan(@Nullable final String ipAddress, @Nullable final String uuid) throws SQLException {
+        execute(connection->{
+            SqlModule.removeBan(connection.getConnection(), ipAddress, uuid);
+            return null;
+        });
+    }
+
+    /**
+     * @return a snapshot of the pool wait time, in use and statement cache counters.
+     */
+    @Nonnull
+    public SqlPoolStats getStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * @return the pool connections are borrowed from.
+     */
+    @Nonnull
+    public SqlConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Closes the connection pool.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -23,6 +23,9 @@
  */
 package net.reallifegames.glm.module;
 
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.LazyGlmChunk;
+import net.reallifegames.glm.SharedIndexData;
 import net.reallifegames.glm.api.GlmChunk;
 
 import javax.annotation.Nonnull;
@@ -31,7 +34,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Unifies sql related operations so all implementations are on the same page.
@@ -41,9 +51,10 @@ import java.util.List;
 public final class SqlModule {
 
     /**
-     * The sql module version.
+     * The sql module version. Version 2 stores chunk columns as raw compressed bytes instead of base64 text. Version 3
+     * replaces the position point with integer x and z columns clustered under a composite primary key.
      */
-    public static final int VERSION = 1;
+    public static final int VERSION = 3;
 
     /**
      * The sql version constant.
@@ -51,6 +62,11 @@ public final class SqlModule {
     @Nonnull
     public static final String SQL_VERSION_CONSTANT = "sql_version";
 
+    /**
+     * The prefix for the glm tables.
+     */
+    private static String DATABASE_CHUNK_PREFIX;
+
     /**
      * The sql create constants table query.
      */
@@ -71,6 +87,11 @@ public final class SqlModule {
      */
     private static String INSERT_OR_DEFAULT_CONSTANTS;
 
+    /**
+     * Sql get constant query.
+     */
+    private static String GET_CONSTANT;
+
     /**
      * Sql chunk exists query.
      */
@@ -86,6 +107,16 @@ public final class SqlModule {
      */
     private static String CHUNK_UPDATE;
 
+    /**
+     * Sql chunk insert or update query.
+     */
+    private static String CHUNK_UPSERT;
+
+    /**
+     * The maximum number of statements sent to the database in a single batch.
+     */
+    private static final int BATCH_SIZE = 500;
+
     /**
      * Sql get chunk query.
      */
@@ -96,6 +127,16 @@ public final class SqlModule {
      */
     private static String GET_CHUNKS;
 
+    /**
+     * Sql get chunks in a rectangle query.
+     */
+    private static String GET_CHUNKS_IN_RANGE;
+
+    /**
+     * The number of rows the driver is asked to fetch at a time when streaming chunks.
+     */
+    private static final int FETCH_SIZE = 256;
+
     /**
      * Sql count total rows.
      */
@@ -107,10 +148,30 @@ public final class SqlModule {
     private static String COUNT_ROWS;
 
     /**
-     * Sql delete rows for world.
+     * Sql delete rows for world, only kept for {@link #getDeleteRowsSqlString()}.
      */
     private static String DELETE_ROWS;
 
+    /**
+     * Sql delete a batch of rows in a rectangle for a world and chunk type.
+     */
+    private static String DELETE_ROWS_IN_RANGE;
+
+    /**
+     * Sql count rows in a rectangle for a world and chunk type.
+     */
+    private static String COUNT_ROWS_IN_RANGE;
+
+    /**
+     * Sql get the chunk types stored for a world.
+     */
+    private static String GET_CHUNK_TYPES;
+
+    /**
+     * The default maximum number of rows removed per transaction.
+     */
+    public static final int DEFAULT_DELETE_BATCH_SIZE = 1000;
+
     /**
      * Sql ban insert.
      */
@@ -121,39 +182,89 @@ public final class SqlModule {
      */
     private static String DELETE_BAN;
 
+    /**
+     * The pooled data access layer, null until opened.
+     */
+    private static volatile SqlDataAccess dataAccess;
+
+    /**
+     * True if chunks read from the database keep their decoded fields behind soft references.
+     */
+    private static volatile boolean cacheDecodedFields = true;
+
+    /**
+     * The older chunks table a migration is still copying rows out of, null when there is none.
+     */
+    @Nullable
+    private static volatile LegacyChunkTable legacyChunkTable;
+
     /**
      * Initializes this class and the query strings.
      *
      * @param databaseChunkPrefix the prefix for yhe chunks table.
      */
     public static void init(@Nonnull final String databaseChunkPrefix) {
+        DATABASE_CHUNK_PREFIX = databaseChunkPrefix;
         CREATE_CONSTANTS_TABLE = "CREATE TABLE IF NOT EXISTS `" + databaseChunkPrefix + "glm_constants` (`kkey` " +
                 "VARCHAR(255) NOT NULL, `value` VARCHAR(255) NOT NULL, PRIMARY KEY (`kkey`)) ENGINE = InnoDB;";
-        CREATE_CHUNKS_TABLE = "CREATE TABLE IF NOT EXISTS `" + databaseChunkPrefix + "glm_chunks` " +
-                "(`world_id` CHAR(36) NOT NULL,`chunk_type` VARCHAR(32) NOT NULL,`position` POINT NOT NULL," +
-                "`generation_time` BIGINT NOT NULL,`chunk_data` longtext NOT NULL,`height_data` longtext NOT NULL," +
-                "`biome_data` longtext NOT NULL,`index_data` longtext NOT NULL,INDEX `world_id` (`world_id`)," +
-                "INDEX `position` (`position`),INDEX `chunk_type` (`chunk_type`)) ENGINE = InnoDB;";
+        CREATE_CHUNKS_TABLE = getCreateChunksTableSqlString(databaseChunkPrefix + "glm_chunks");
         CREATE_BAN_TABLE = "CREATE TABLE IF NOT EXISTS `" + databaseChunkPrefix + "glm_bans` " +
                 "(`ip_address` VARCHAR(45) NOT NULL , `client_id` CHAR(36) NOT NULL , INDEX " +
                 "(`ip_address`), INDEX (`client_id`)) ENGINE = InnoDB;";
+        INSERT_OR_DEFAULT_CONSTANTS = "INSERT INTO `" + databaseChunkPrefix + "glm_constants` (`kkey`, `value`) " +
+                "VALUES (?, ?) ON DUPLICATE KEY UPDATE `value`=VALUES(`value`);";
+        GET_CONSTANT = "SELECT `value` FROM `" + databaseChunkPrefix + "glm_constants` WHERE `kkey` = ?;";
         CHUNK_EXISTS = "SELECT EXISTS(SELECT 1 FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id` = ? AND " +
-                "`chunk_type`=? AND `position` = POINT(?, ?));";
-        CHUNK_INSERT = "INSERT INTO `" + databaseChunkPrefix + "glm_chunks` (`world_id`, `chunk_type`, `position`, " +
+                "`chunk_type`=? AND `x` = ? AND `z` = ?);";
+        CHUNK_INSERT = "INSERT INTO `" + databaseChunkPrefix + "glm_chunks` (`world_id`, `chunk_type`, `x`, `z`, " +
                 "`generation_time`, `chunk_data`, `height_data`, `biome_data`, `index_data`) VALUES " +
-                "(?, ?, POINT(?, ?), ?, ?, ?, ?, ?)";
+                "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
         CHUNK_UPDATE = "UPDATE `" + databaseChunkPrefix + "glm_chunks` SET `generation_time`=?,`chunk_data`=?," +
-                "`height_data`=?,`biome_data`=?,`index_data`=? WHERE `world_id` = ? AND `chunk_type` = ? AND `position` = POINT(?, ?);";
+                "`height_data`=?,`biome_data`=?,`index_data`=? WHERE `world_id` = ? AND `chunk_type` = ? AND `x` = ? AND `z` = ?;";
+        CHUNK_UPSERT = CHUNK_INSERT + " ON DUPLICATE KEY UPDATE `generation_time`=VALUES(`generation_time`)," +
+                "`chunk_data`=VALUES(`chunk_data`),`height_data`=VALUES(`height_data`),`biome_data`=VALUES(`biome_data`)," +
+                "`index_data`=VALUES(`index_data`);";
         GET_CHUNK = "SELECT `generation_time`, `chunk_data`, `height_data`, `biome_data`, `index_data` FROM `" + databaseChunkPrefix +
-                "glm_chunks` WHERE `world_id`=? AND `chunk_type` = ? AND `position`=POINT(?,?);";
-        GET_CHUNKS = "SELECT `generation_time`, ST_X(`position`) as X, ST_Y(`position`) as Z, `chunk_data`, `height_data`" +
+                "glm_chunks` WHERE `world_id`=? AND `chunk_type` = ? AND `x`=? AND `z`=?;";
+        GET_CHUNKS = "SELECT `generation_time`, `x`, `z`, `chunk_data`, `height_data`" +
                 ", `biome_data`, `index_data` FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id`=? AND " +
-                "`chunk_type` = ? AND `position` IN ";
+                "`chunk_type` = ? AND (`x`, `z`) IN ";
+        GET_CHUNKS_IN_RANGE = "SELECT `generation_time`, `x`, `z`, `chunk_data`, `height_data`, `biome_data`, " +
+                "`index_data` FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id`=? AND `chunk_type` = ? " +
+                "AND `x` >= ? AND `x` < ? AND `z` >= ? AND `z` < ?;";
         COUNT_TOTAL_ROWS = "SELECT COUNT(*) FROM `" + databaseChunkPrefix + "glm_chunks`";
         COUNT_ROWS = "SELECT COUNT(*) FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id` = ?;";
-        DELETE_ROWS = "DELETE FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id`=? AND `position` IN ";
+        DELETE_ROWS = "DELETE FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id`=? AND (`x`, `z`) IN ";
+        DELETE_ROWS_IN_RANGE = "DELETE FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id`=? AND " +
+                "`chunk_type` = ? AND `x` >= ? AND `x` < ? AND `z` >= ? AND `z` < ? LIMIT ?;";
+        COUNT_ROWS_IN_RANGE = "SELECT COUNT(*) FROM `" + databaseChunkPrefix + "glm_chunks` WHERE `world_id`=? AND " +
+                "`chunk_type` = ? AND `x` >= ? AND `x` < ? AND `z` >= ? AND `z` < ?;";
+        GET_CHUNK_TYPES = "SELECT DISTINCT `chunk_type` FROM `" + databaseChunkPrefix + "glm_chunks` WHERE " +
+                "`world_id` = ?;";
         INSERT_BAN = "INSERT INTO `" + databaseChunkPrefix + "glm_bans`(`ip_address`, `client_id`) VALUES (?, ?)";
         DELETE_BAN = "DELETE FROM `" + databaseChunkPrefix + "glm_bans` WHERE ";
+        legacyChunkTable = null;
+    }
+
+    /**
+     * @return the prefix for the glm tables.
+     */
+    public static String getDatabaseChunkPrefix() {
+        return DATABASE_CHUNK_PREFIX;
+    }
+
+    /**
+     * @return the name of the chunks table including the prefix.
+     */
+    public static String getChunksTableName() {
+        return DATABASE_CHUNK_PREFIX + "glm_chunks";
+    }
+
+    /**
+     * @return the name of the older chunks table a migration copies rows out of, including the prefix.
+     */
+    public static String getLegacyChunksTableName() {
+        return DATABASE_CHUNK_PREFIX + "glm_chunks_legacy";
     }
 
     /**
@@ -163,6 +274,36 @@ public final class SqlModule {
         return CREATE_CHUNKS_TABLE;
     }
 
+    /**
+     * @param tableName the name of the table including the prefix.
+     * @return the sql query which creates a table with the current chunks layout under the given name.
+     */
+    @Nonnull
+    public static String getCreateChunksTableSqlString(@Nonnull final String tableName) {
+        return "CREATE TABLE IF NOT EXISTS `" + tableName + "` (`world_id` CHAR(36) NOT NULL,`chunk_type` " +
+                "VARCHAR(32) NOT NULL,`x` INT NOT NULL,`z` INT NOT NULL,`generation_time` BIGINT NOT NULL," +
+                "`chunk_data` MEDIUMBLOB NOT NULL,`height_data` MEDIUMBLOB NOT NULL,`biome_data` MEDIUMBLOB NOT " +
+                "NULL,`index_data` MEDIUMBLOB NOT NULL,PRIMARY KEY (`world_id`, `chunk_type`, `x`, `z`)) ENGINE = " +
+                "InnoDB;";
+    }
+
+    /**
+     * Makes reads fall back to the {@link #getLegacyChunksTableName()} table, and range removals clear it too, while a
+     * migration copies its rows into the chunks table. Writes always go to the chunks table.
+     *
+     * @param version the sql version of the older table layout, 1 or 2.
+     */
+    public static void openLegacyChunkTable(final int version) {
+        legacyChunkTable = new LegacyChunkTable(getLegacyChunksTableName(), version);
+    }
+
+    /**
+     * Stops reading the older chunks table, called once a migration copied every row and before it drops the table.
+     */
+    public static void closeLegacyChunkTable() {
+        legacyChunkTable = null;
+    }
+
     /**
      * @return the sql create ban table query.
      */
@@ -191,6 +332,13 @@ public final class SqlModule {
         return CHUNK_UPDATE;
     }
 
+    /**
+     * @return the sql chunk insert or update query.
+     */
+    public static String getChunkUpsertSqlString() {
+        return CHUNK_UPSERT;
+    }
+
     /**
      * @return the sql get chunk query.
      */
@@ -205,6 +353,13 @@ public final class SqlModule {
         return GET_CHUNKS;
     }
 
+    /**
+     * @return the sql get chunks in a rectangle query.
+     */
+    public static String getGetChunksInRangeSqlString() {
+        return GET_CHUNKS_IN_RANGE;
+    }
+
     /**
      * @return the sql count total rows.
      */
@@ -220,12 +375,77 @@ public final class SqlModule {
     }
 
     /**
-     * @return the sql delete rows for world.
+     * @return the sql delete rows for world. The string ends in an open {@code (`x`, `z`) IN } clause the caller has to
+     * complete.
+     *
+     * @deprecated deleting a list of positions does not use the primary key as a range and is not used by this module
+     * anymore. Use {@link #removeChunksInRange(Connection, String, int, int, int, int, int, SqlProgressListener)}.
      */
+    @Deprecated
     public static String getDeleteRowsSqlString() {
         return DELETE_ROWS;
     }
 
+    /**
+     * @return the sql ban insert.
+     */
+    public static String getInsertBanSqlString() {
+        return INSERT_BAN;
+    }
+
+    /**
+     * Opens the pooled data access layer, closing any previously opened one. {@link #init(String)} must be called
+     * first.
+     *
+     * @param factory            opens new physical connections.
+     * @param maximumConnections the maximum number of connections the pool may open.
+     * @return the new data access layer.
+     */
+    @Nonnull
+    public static synchronized SqlDataAccess openDataAccess(@Nonnull final SqlConnectionFactory factory,
+                                                            final int maximumConnections) {
+        final SqlDataAccess previous = dataAccess;
+        dataAccess = new SqlDataAccess(new SqlConnectionPool(factory, maximumConnections));
+        if (previous != null) {
+            previous.close();
+        }
+        return dataAccess;
+    }
+
+    /**
+     * @return the pooled data access layer or null if it has not been opened.
+     */
+    @Nullable
+    public static SqlDataAccess getDataAccess() {
+        return dataAccess;
+    }
+
+    /**
+     * @return true if chunks read from the database keep their decoded fields behind soft references.
+     */
+    public static boolean isCacheDecodedFields() {
+        return cacheDecodedFields;
+    }
+
+    /**
+     * Sets whether chunks read from the database keep their decoded fields behind soft references.
+     *
+     * @param cacheDecodedFields true to soft cache decoded fields.
+     */
+    public static void setCacheDecodedFields(final boolean cacheDecodedFields) {
+        SqlModule.cacheDecodedFields = cacheDecodedFields;
+    }
+
+    /**
+     * Closes the pooled data access layer if it is open.
+     */
+    public static synchronized void closeDataAccess() {
+        if (dataAccess != null) {
+            dataAccess.close();
+            dataAccess = null;
+        }
+    }
+
     /**
      * Creates the glm constants sql table.
      *
@@ -260,7 +480,7 @@ public final class SqlModule {
      *                      the SQL statement returns a ResultSet object.
      */
     public static void createBansTable(@Nonnull final Connection connection) throws SQLException {
-        final PreparedStatement preparedStatement = connection.prepareStatement(CREATE_CHUNKS_TABLE);
+        final PreparedStatement preparedStatement = connection.prepareStatement(CREATE_BAN_TABLE);
         preparedStatement.executeUpdate();
         preparedStatement.close();
     }
@@ -273,13 +493,52 @@ public final class SqlModule {
      *                      the SQL statement returns a ResultSet object.
      */
     public static void setSqlVersion(@Nonnull final Connection connection) throws SQLException {
+        setSqlVersion(connection, VERSION);
+    }
+
+    /**
+     * Attempts to update the sql version constant.
+     *
+     * @param connection the sql database connection.
+     * @param version    the version the tables are now at.
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement returns a ResultSet object.
+     */
+    public static void setSqlVersion(@Nonnull final Connection connection, final int version) throws SQLException {
         final PreparedStatement updateStatement = connection.prepareStatement(INSERT_OR_DEFAULT_CONSTANTS);
         updateStatement.setString(1, SQL_VERSION_CONSTANT);
-        updateStatement.setString(2, String.valueOf(VERSION));
+        updateStatement.setString(2, String.valueOf(version));
         updateStatement.executeUpdate();
         updateStatement.close();
     }
 
+    /**
+     * Attempts to read the sql version constant.
+     *
+     * @param connection the sql database connection.
+     * @return the version the tables are at or 0 if the constant has never been set.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement does not return a ResultSet object.
+     */
+    public static int getSqlVersion(@Nonnull final Connection connection) throws SQLException {
+        final PreparedStatement preparedStatement = connection.prepareStatement(GET_CONSTANT);
+        preparedStatement.setString(1, SQL_VERSION_CONSTANT);
+        // Execute query
+        final ResultSet results = preparedStatement.executeQuery();
+        final String value = results.next() ? results.getString(1) : null;
+        results.close();
+        preparedStatement.close();
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Invalid " + SQL_VERSION_CONSTANT + " constant: " + value, e);
+        }
+    }
+
     /**
      * Checks to see if a row exists.
      *
@@ -295,18 +554,60 @@ public final class SqlModule {
      */
     public static boolean rowExists(@Nonnull final Connection connection, @Nonnull final String worldId,
                                     @Nonnull final String chunkType, int x, final int z) throws SQLException {
-        final PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_EXISTS);
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_EXISTS)) {
+            return rowExists(connection, preparedStatement, worldId, chunkType, x, z);
+        }
+    }
+
+    /**
+     * Checks if a row exists using an already prepared {@link #getChunkExistsSqlString()} statement, falling back to
+     * the older chunks table while a migration copies it.
+     *
+     * @param connection        the sql database connection.
+     * @param preparedStatement the prepared chunk exists statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x                 the x position of the chunk.
+     * @param z                 the z position of the chunk.
+     * @return true if the row exists false otherwise.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    static boolean rowExists(@Nonnull final Connection connection, @Nonnull final PreparedStatement preparedStatement,
+                             @Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                             final int z) throws SQLException {
+        if (rowExists(preparedStatement, worldId, chunkType, x, z)) {
+            return true;
+        }
+        final LegacyChunkTable legacy = legacyChunkTable;
+        // The migration may have moved the row between the two reads
+        return legacy != null && (legacy.chunkExists(connection, worldId, chunkType, x, z) ||
+                rowExists(preparedStatement, worldId, chunkType, x, z));
+    }
+
+    /**
+     * Checks if a row exists using an already prepared {@link #getChunkExistsSqlString()} statement.
+     *
+     * @param preparedStatement the prepared chunk exists statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x                 the x position of the chunk.
+     * @param z                 the z position of the chunk.
+     * @return true if the row exists false otherwise.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    static boolean rowExists(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                             @Nonnull final String chunkType, final int x, final int z) throws SQLException {
         // Set parameters
         preparedStatement.setString(1, worldId);
         preparedStatement.setString(2, chunkType);
         preparedStatement.setInt(3, x);
         preparedStatement.setInt(4, z);
         // Execute query
-        final ResultSet results = preparedStatement.executeQuery();
-        final boolean returnVal = results.next() && results.getBoolean(1);
-        results.close();
-        preparedStatement.close();
-        return returnVal;
+        try (final ResultSet results = preparedStatement.executeQuery()) {
+            return results.next() && results.getBoolean(1);
+        }
     }
 
     /**
@@ -324,47 +625,205 @@ public final class SqlModule {
     public static void updateGlChunk(@Nonnull final Connection connection, @Nonnull final String worldId,
                                      @Nonnull final String chunkType, final int x, final int z,
                                      @Nonnull final GlmChunk glChunk) throws SQLException {
-        PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_EXISTS);
-        // Set parameters
-        preparedStatement.setString(1, worldId);
-        preparedStatement.setString(2, chunkType);
-        preparedStatement.setInt(3, x);
-        preparedStatement.setInt(4, z);
-        // Execute query
-        ResultSet results = preparedStatement.executeQuery();
-        if (results.next()) {
-            if (results.getBoolean(1)) {
-                preparedStatement = connection.prepareStatement(CHUNK_UPDATE);
+        final BinaryGlmChunk binaryChunk = BinaryGlmChunk.fromGlmChunk(glChunk);
+        final boolean exists;
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_EXISTS)) {
+            exists = rowExists(preparedStatement, worldId, chunkType, x, z);
+        }
+        if (exists) {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_UPDATE)) {
                 // Set parameters
-                preparedStatement.setLong(1, glChunk.getChunkGenerationTime());
-                preparedStatement.setString(2, glChunk.getBlockData());
-                preparedStatement.setString(3, glChunk.getBlockHeightData());
-                preparedStatement.setString(4, glChunk.getBlockBiomeData());
-                preparedStatement.setString(5, glChunk.getBlockIndices());
+                preparedStatement.setLong(1, binaryChunk.getChunkGenerationTime());
+                setChunkData(preparedStatement, 2, chunkType, binaryChunk);
                 preparedStatement.setString(6, worldId);
                 preparedStatement.setString(7, chunkType);
                 preparedStatement.setInt(8, x);
                 preparedStatement.setInt(9, z);
                 // Execute query
                 preparedStatement.executeUpdate();
-            } else {
-                preparedStatement = connection.prepareStatement(CHUNK_INSERT);
+            }
+        } else {
+            try (final PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_INSERT)) {
                 // Set parameters
                 preparedStatement.setString(1, worldId);
                 preparedStatement.setString(2, chunkType);
                 preparedStatement.setInt(3, x);
                 preparedStatement.setInt(4, z);
-                preparedStatement.setLong(5, glChunk.getChunkGenerationTime());
-                preparedStatement.setString(6, glChunk.getBlockData());
-                preparedStatement.setString(7, glChunk.getBlockHeightData());
-                preparedStatement.setString(8, glChunk.getBlockBiomeData());
-                preparedStatement.setString(9, glChunk.getBlockIndices());
+                preparedStatement.setLong(5, binaryChunk.getChunkGenerationTime());
+                setChunkData(preparedStatement, 6, chunkType, binaryChunk);
                 // Execute query
                 preparedStatement.executeUpdate();
             }
         }
     }
 
+    /**
+     * Attempts to insert or update many chunks of a single world and type in one transaction. Rows are sent to the
+     * database in batches using a single upsert statement which relies on the primary key. The transaction is the
+     * method's own, so the connection must not be inside one of the caller's.
+     *
+     * @param connection the sql database connection, in auto commit mode.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param chunks     the chunks and their positions to write.
+     * @return the number of rows written and the time it took.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement returns a ResultSet object. The transaction is rolled back. Also thrown,
+     *                      before anything is written, if the connection is not in auto commit mode.
+     */
+    @Nonnull
+    public static SqlBatchResult updateGlChunks(@Nonnull final Connection connection, @Nonnull final String worldId,
+                                                @Nonnull final String chunkType,
+                                                @Nonnull final Collection<PositionedChunk> chunks) throws SQLException {
+        if (chunks.isEmpty()) {
+            return new SqlBatchResult(0, 0);
+        }
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(CHUNK_UPSERT)) {
+            return updateGlChunks(connection, preparedStatement, worldId, chunkType, chunks);
+        }
+    }
+
+    /**
+     * Writes many chunks in one transaction using an already prepared {@link #getChunkUpsertSqlString()} statement.
+     *
+     * @param connection        the connection the statement was prepared on, in auto commit mode.
+     * @param preparedStatement the prepared upsert statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param chunks            the chunks and their positions to write.
+     * @return the number of rows written and the time it took.
+     *
+     * @throws SQLException if a database access error occurs, the transaction is rolled back, or the connection is not
+     *                      in auto commit mode.
+     */
+    @Nonnull
+    static SqlBatchResult updateGlChunks(@Nonnull final Connection connection,
+                                         @Nonnull final PreparedStatement preparedStatement,
+                                         @Nonnull final String worldId, @Nonnull final String chunkType,
+                                         @Nonnull final Collection<PositionedChunk> chunks) throws SQLException {
+        final long startTime = System.nanoTime();
+        if (chunks.isEmpty()) {
+            return new SqlBatchResult(0, System.nanoTime() - startTime);
+        }
+        // Convert every chunk before the transaction starts so a bad chunk can not leave a batch half written
+        final BinaryGlmChunk[] binaryChunks = new BinaryGlmChunk[chunks.size()];
+        int index = 0;
+        for (final PositionedChunk positionedChunk : chunks) {
+            binaryChunks[index++] = BinaryGlmChunk.fromGlmChunk(positionedChunk.getChunk());
+        }
+        // Committing or rolling back here would end a transaction the caller still has open
+        if (!connection.getAutoCommit()) {
+            throw new SQLException("Chunks are written in their own transaction, the connection must be in auto " +
+                    "commit mode");
+        }
+        connection.setAutoCommit(false);
+        long rowsWritten = 0;
+        try {
+            int pending = 0;
+            index = 0;
+            for (final PositionedChunk positionedChunk : chunks) {
+                bindUpsert(preparedStatement, worldId, chunkType, positionedChunk.getX(), positionedChunk.getZ(),
+                        binaryChunks[index++]);
+                preparedStatement.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    rowsWritten += countWrittenRows(preparedStatement.executeBatch());
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                rowsWritten += countWrittenRows(preparedStatement.executeBatch());
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            preparedStatement.clearBatch();
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return new SqlBatchResult(rowsWritten, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Inserts or updates a single chunk using an already prepared {@link #getChunkUpsertSqlString()} statement.
+     *
+     * @param preparedStatement the prepared upsert statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x                 the x position of the chunk.
+     * @param z                 the z position of the chunk.
+     * @param glChunk           the data to write.
+     * @throws SQLException if a database access error occurs.
+     */
+    static void upsertGlChunk(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                              @Nonnull final String chunkType, final int x, final int z,
+                              @Nonnull final GlmChunk glChunk) throws SQLException {
+        bindUpsert(preparedStatement, worldId, chunkType, x, z, BinaryGlmChunk.fromGlmChunk(glChunk));
+        // Execute query
+        preparedStatement.executeUpdate();
+    }
+
+    /**
+     * Sets every parameter of the upsert statement.
+     *
+     * @param preparedStatement the prepared upsert statement.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x                 the x position of the chunk.
+     * @param z                 the z position of the chunk.
+     * @param glChunk           the data to write.
+     * @throws SQLException if a parameter index does not correspond to a parameter marker in the SQL statement.
+     */
+    private static void bindUpsert(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                                   @Nonnull final String chunkType, final int x, final int z,
+                                   @Nonnull final BinaryGlmChunk glChunk) throws SQLException {
+        // Set parameters
+        preparedStatement.setString(1, worldId);
+        preparedStatement.setString(2, chunkType);
+        preparedStatement.setInt(3, x);
+        preparedStatement.setInt(4, z);
+        preparedStatement.setLong(5, glChunk.getChunkGenerationTime());
+        setChunkData(preparedStatement, 6, chunkType, glChunk);
+    }
+
+    /**
+     * Sets the four compressed chunk columns as raw bytes, starting at the given parameter index. Index data shared
+     * by every chunk of the type is written as an empty column, see {@link SharedIndexData}.
+     *
+     * @param preparedStatement the statement to set the parameters on.
+     * @param firstIndex        the parameter index of the chunk data column.
+     * @param chunkType         the glm chunk type.
+     * @param binaryChunk       the chunk to take the data from.
+     * @throws SQLException if a parameter index does not correspond to a parameter marker in the SQL statement.
+     */
+    private static void setChunkData(@Nonnull final PreparedStatement preparedStatement, final int firstIndex,
+                                     @Nonnull final String chunkType, @Nonnull final BinaryGlmChunk binaryChunk)
+            throws SQLException {
+        preparedStatement.setBytes(firstIndex, binaryChunk.getBlockDataBytes());
+        preparedStatement.setBytes(firstIndex + 1, binaryChunk.getBlockHeightDataBytes());
+        preparedStatement.setBytes(firstIndex + 2, binaryChunk.getBlockBiomeDataBytes());
+        preparedStatement.setBytes(firstIndex + 3, SharedIndexData.toStored(chunkType,
+                binaryChunk.getBlockIndicesBytes()));
+    }
+
+    /**
+     * Counts the rows written by an upsert batch. An upsert reports 1 for an insert, 2 for an update and 0 if the row
+     * already held the same values.
+     *
+     * @param updateCounts the update counts returned by the batch.
+     * @return the number of rows the batch wrote.
+     */
+    private static int countWrittenRows(@Nonnull final int[] updateCounts) {
+        int rows = 0;
+        for (final int updateCount : updateCounts) {
+            if (updateCount > 0 || updateCount == Statement.SUCCESS_NO_INFO) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
     /**
      * Counts the total rows for the main sql table.
      *
@@ -375,13 +834,9 @@ public final class SqlModule {
      *                      the SQL statement returns a ResultSet object.
      */
     public static int countTotalRows(@Nonnull final Connection connection) throws SQLException {
-        final PreparedStatement preparedStatement = connection.prepareStatement(COUNT_TOTAL_ROWS);
-        // Execute query
-        final ResultSet results = preparedStatement.executeQuery();
-        final int returnVal = results.next() ? results.getInt(1) : 0;
-        results.close();
-        preparedStatement.close();
-        return returnVal;
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(COUNT_TOTAL_ROWS)) {
+            return queryCount(preparedStatement) + countLegacyRows(connection, null);
+        }
     }
 
     /**
@@ -396,14 +851,39 @@ public final class SqlModule {
      */
     public static int countRowsForWorld(@Nonnull final Connection connection, @Nonnull final String worldId)
             throws SQLException {
-        final PreparedStatement preparedStatement = connection.prepareStatement(COUNT_ROWS);
-        preparedStatement.setString(1, worldId);
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(COUNT_ROWS)) {
+            preparedStatement.setString(1, worldId);
+            return queryCount(preparedStatement) + countLegacyRows(connection, worldId);
+        }
+    }
+
+    /**
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world to count rows for or null to count every row.
+     * @return the number of rows a migration has not copied out of the older chunks table yet, 0 when there is none.
+     * A position written since the migration started may be counted in both tables until its old row is copied.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    static int countLegacyRows(@Nonnull final Connection connection, @Nullable final String worldId)
+            throws SQLException {
+        final LegacyChunkTable legacy = legacyChunkTable;
+        return legacy == null ? 0 : legacy.countRows(connection, worldId);
+    }
+
+    /**
+     * Runs a prepared count query whose parameters are already set.
+     *
+     * @param preparedStatement the prepared count statement, left open.
+     * @return the first column of the first row or 0 if there is no row.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    static int queryCount(@Nonnull final PreparedStatement preparedStatement) throws SQLException {
         // Execute query
-        final ResultSet results = preparedStatement.executeQuery();
-        final int returnVal = results.next() ? results.getInt(1) : 0;
-        results.close();
-        preparedStatement.close();
-        return returnVal;
+        try (final ResultSet results = preparedStatement.executeQuery()) {
+            return results.next() ? results.getInt(1) : 0;
+        }
     }
 
     /**
@@ -415,7 +895,7 @@ public final class SqlModule {
         final StringBuilder builder = new StringBuilder(GET_CHUNKS).append("(");
         int i = 0;
         while (i < positions.size()) {
-            builder.append("POINT(").append(positions.get(i++)).append(',').append(positions.get(i++)).append("),");
+            builder.append('(').append(positions.get(i++)).append(',').append(positions.get(i++)).append("),");
         }
         // Remove extra character
         builder.deleteCharAt(builder.length() - 1).append(");");
@@ -423,7 +903,321 @@ public final class SqlModule {
     }
 
     /**
-     * Attempts to remove chunks from the sql server.
+     * Attempts to get a chunk from the sql database.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x          the x position of the chunk.
+     * @param z          the z position of the chunk.
+     * @return the chunk or null if there is no row for the position.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement does not return a ResultSet object.
+     */
+    @Nullable
+    public static BinaryGlmChunk getGlChunk(@Nonnull final Connection connection, @Nonnull final String worldId,
+                                            @Nonnull final String chunkType, final int x, final int z)
+            throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(GET_CHUNK)) {
+            return getGlChunk(connection, preparedStatement, worldId, chunkType, x, z);
+        }
+    }
+
+    /**
+     * Gets a chunk using an already prepared {@link #getGetChunkSqlString()} statement, falling back to the older
+     * chunks table while a migration copies it.
+     *
+     * @param connection        the sql database connection.
+     * @param preparedStatement the prepared get chunk statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x                 the x position of the chunk.
+     * @param z                 the z position of the chunk.
+     * @return the chunk or null if there is no row for the position.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nullable
+    static BinaryGlmChunk getGlChunk(@Nonnull final Connection connection,
+                                     @Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                                     @Nonnull final String chunkType, final int x, final int z) throws SQLException {
+        final BinaryGlmChunk chunk = getGlChunk(preparedStatement, worldId, chunkType, x, z);
+        final LegacyChunkTable legacy = legacyChunkTable;
+        if (chunk != null || legacy == null) {
+            return chunk;
+        }
+        final BinaryGlmChunk legacyChunk = legacy.getChunk(connection, worldId, chunkType, x, z);
+        // The migration may have moved the row between the two reads
+        return legacyChunk != null ? legacyChunk : getGlChunk(preparedStatement, worldId, chunkType, x, z);
+    }
+
+    /**
+     * Gets a chunk using an already prepared {@link #getGetChunkSqlString()} statement.
+     *
+     * @param preparedStatement the prepared get chunk statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x                 the x position of the chunk.
+     * @param z                 the z position of the chunk.
+     * @return the chunk or null if there is no row for the position.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nullable
+    static BinaryGlmChunk getGlChunk(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                                     @Nonnull final String chunkType, final int x, final int z) throws SQLException {
+        // Set parameters
+        preparedStatement.setString(1, worldId);
+        preparedStatement.setString(2, chunkType);
+        preparedStatement.setInt(3, x);
+        preparedStatement.setInt(4, z);
+        // Execute query
+        try (final ResultSet results = preparedStatement.executeQuery()) {
+            return results.next() ? readChunk(chunkType, results, 2) : null;
+        }
+    }
+
+    /**
+     * Reads a chunk from the current row of a result set. The generation time is always the first column.
+     *
+     * @param chunkType  the type of the chunk.
+     * @param results    the result set positioned on a chunk row.
+     * @param dataColumn the column of the chunk data, followed by the height, biome and index data.
+     * @return the lazily decoded chunk.
+     *
+     * @throws SQLException if a column could not be read.
+     */
+    @Nonnull
+    private static LazyGlmChunk readChunk(@Nonnull final String chunkType, @Nonnull final ResultSet results,
+                                          final int dataColumn) throws SQLException {
+        return new LazyGlmChunk(chunkType, results.getLong(1), results.getBytes(dataColumn),
+                results.getBytes(dataColumn + 1), results.getBytes(dataColumn + 2),
+                SharedIndexData.fromStored(chunkType, results.getBytes(dataColumn + 3)), cacheDecodedFields);
+    }
+
+    /**
+     * Attempts to get many chunks from the sql database. When the positions fill most of their bounding box the
+     * rectangle is fetched with {@link #getGlChunksInRange(Connection, String, String, int, int, int, int,
+     * ChunkRowConsumer)} and unrequested rows are skipped, otherwise a position list query is built.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param positions  the list of points to get chunks for. x, z interleaved
+     * @return the chunks which were found along with their positions.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement does not return a ResultSet object.
+     */
+    @Nonnull
+    public static List<PositionedChunk> getGlChunks(@Nonnull final Connection connection, @Nonnull final String worldId,
+                                                    @Nonnull final String chunkType,
+                                                    @Nonnull final List<Integer> positions) throws SQLException {
+        final List<PositionedChunk> chunks = new ArrayList<>(positions.size() >> 1);
+        if (positions.isEmpty()) {
+            return chunks;
+        }
+        // Find the bounding box of the requested positions
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i + 1 < positions.size(); i += 2) {
+            minX = Math.min(minX, positions.get(i));
+            maxX = Math.max(maxX, positions.get(i));
+            minZ = Math.min(minZ, positions.get(i + 1));
+            maxZ = Math.max(maxZ, positions.get(i + 1));
+        }
+        final long area = ((long) maxX - minX + 1) * ((long) maxZ - minZ + 1);
+        if (area <= positions.size()) {
+            // At least half of the box was requested so a range read is cheaper than a position list
+            final Set<Long> requested = new HashSet<>(positions.size());
+            for (int i = 0; i + 1 < positions.size(); i += 2) {
+                requested.add(toRangeKey(positions.get(i), positions.get(i + 1)));
+            }
+            getGlChunksInRange(connection, worldId, chunkType, minX, minZ, maxX + 1, maxZ + 1, (x, z, chunk)->{
+                if (requested.contains(toRangeKey(x, z))) {
+                    chunks.add(new PositionedChunk(x, z, chunk));
+                }
+            });
+            return chunks;
+        }
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(getNewGetChunks(positions))) {
+            // Set parameters
+            preparedStatement.setString(1, worldId);
+            preparedStatement.setString(2, chunkType);
+            // Execute query
+            try (final ResultSet results = preparedStatement.executeQuery()) {
+                while (results.next()) {
+                    chunks.add(new PositionedChunk(results.getInt(2), results.getInt(3),
+                            readChunk(chunkType, results, 4)));
+                }
+            }
+        }
+        if (legacyChunkTable != null) {
+            // Positions the migration has not copied yet are read one at a time
+            final Set<Long> found = new HashSet<>(chunks.size());
+            for (final PositionedChunk chunk : chunks) {
+                found.add(toRangeKey(chunk.getX(), chunk.getZ()));
+            }
+            for (int i = 0; i + 1 < positions.size(); i += 2) {
+                final int x = positions.get(i);
+                final int z = positions.get(i + 1);
+                if (found.add(toRangeKey(x, z))) {
+                    final BinaryGlmChunk chunk = getGlChunk(connection, worldId, chunkType, x, z);
+                    if (chunk != null) {
+                        chunks.add(new PositionedChunk(x, z, chunk));
+                    }
+                }
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Streams every chunk of a world and type inside a rectangle. Uses a fixed prepared statement so the database can
+     * reuse its plan, and hands rows to the consumer as they arrive. With MySQL add `useCursorFetch=true` to the
+     * connection url so the driver fetches rows in pages instead of buffering the whole result.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @param consumer   receives every chunk row.
+     * @return the number of chunk rows read.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement does not return a ResultSet object.
+     */
+    public static long getGlChunksInRange(@Nonnull final Connection connection, @Nonnull final String worldId,
+                                          @Nonnull final String chunkType, final int x1, final int z1, final int x2,
+                                          final int z2, @Nonnull final ChunkRowConsumer consumer)
+            throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(GET_CHUNKS_IN_RANGE)) {
+            return getGlChunksInRange(connection, preparedStatement, worldId, chunkType, x1, z1, x2, z2, consumer);
+        }
+    }
+
+    /**
+     * Streams every chunk of a world and type inside a rectangle using an already prepared
+     * {@link #getGetChunksInRangeSqlString()} statement. While a migration copies the older chunks table its rows in
+     * the rectangle are read first and held in memory, rows of the chunks table replace them, and the rest are handed
+     * to the consumer after the chunks table rows.
+     *
+     * @param connection        the sql database connection.
+     * @param preparedStatement the prepared range statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x1                the top left x coordinate, inclusive.
+     * @param z1                the top left z coordinate, inclusive.
+     * @param x2                the bottom right x coordinate, exclusive.
+     * @param z2                the bottom right z coordinate, exclusive.
+     * @param consumer          receives every chunk row.
+     * @return the number of chunk rows read.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    static long getGlChunksInRange(@Nonnull final Connection connection,
+                                   @Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                                   @Nonnull final String chunkType, final int x1, final int z1, final int x2,
+                                   final int z2, @Nonnull final ChunkRowConsumer consumer) throws SQLException {
+        final LegacyChunkTable legacy = legacyChunkTable;
+        if (legacy == null) {
+            return getGlChunksInRange(preparedStatement, worldId, chunkType, x1, z1, x2, z2, consumer);
+        }
+        // Reading the older table first means a row copied in between is still found in the chunks table
+        final Map<Long, BinaryGlmChunk> legacyChunks = new LinkedHashMap<>();
+        // Rows arrive newest first so older duplicates of a position are skipped
+        legacy.getChunksInRange(connection, worldId, chunkType, x1, z1, x2, z2, (x, z, chunk)->legacyChunks.putIfAbsent(
+                toRangeKey(x, z), chunk));
+        long rows = getGlChunksInRange(preparedStatement, worldId, chunkType, x1, z1, x2, z2, (x, z, chunk)->{
+            legacyChunks.remove(toRangeKey(x, z));
+            consumer.accept(x, z, chunk);
+        });
+        for (final Map.Entry<Long, BinaryGlmChunk> entry : legacyChunks.entrySet()) {
+            consumer.accept((int) (entry.getKey() >> 32), (int) (long) entry.getKey(), entry.getValue());
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * @param x the x position of the chunk.
+     * @param z the z position of the chunk.
+     * @return a key holding both coordinates, x in the upper half.
+     */
+    private static long toRangeKey(final int x, final int z) {
+        return (long) x << 32 | (z & 0xffffffffL);
+    }
+
+    /**
+     * Streams every chunk of a world and type inside a rectangle using an already prepared
+     * {@link #getGetChunksInRangeSqlString()} statement.
+     *
+     * @param preparedStatement the prepared range statement, left open.
+     * @param worldId           the id of the world.
+     * @param chunkType         the glm chunk type.
+     * @param x1                the top left x coordinate, inclusive.
+     * @param z1                the top left z coordinate, inclusive.
+     * @param x2                the bottom right x coordinate, exclusive.
+     * @param z2                the bottom right z coordinate, exclusive.
+     * @param consumer          receives every chunk row.
+     * @return the number of chunk rows read.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    static long getGlChunksInRange(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String worldId,
+                                   @Nonnull final String chunkType, final int x1, final int z1, final int x2,
+                                   final int z2, @Nonnull final ChunkRowConsumer consumer) throws SQLException {
+        long rows = 0;
+        preparedStatement.setFetchSize(FETCH_SIZE);
+        // Set parameters
+        preparedStatement.setString(1, worldId);
+        preparedStatement.setString(2, chunkType);
+        preparedStatement.setInt(3, x1);
+        preparedStatement.setInt(4, x2);
+        preparedStatement.setInt(5, z1);
+        preparedStatement.setInt(6, z2);
+        // Execute query
+        try (final ResultSet results = preparedStatement.executeQuery()) {
+            while (results.next()) {
+                consumer.accept(results.getInt(2), results.getInt(3), readChunk(chunkType, results, 4));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Gets every chunk of a world and type inside a rectangle.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @return the chunks which were found along with their positions.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement does not return a ResultSet object.
+     */
+    @Nonnull
+    public static List<PositionedChunk> getGlChunksInRange(@Nonnull final Connection connection,
+                                                           @Nonnull final String worldId,
+                                                           @Nonnull final String chunkType, final int x1,
+                                                           final int z1, final int x2, final int z2)
+            throws SQLException {
+        final List<PositionedChunk> chunks = new ArrayList<>();
+        getGlChunksInRange(connection, worldId, chunkType, x1, z1, x2, z2, (x, z, chunk)->chunks.add(
+                new PositionedChunk(x, z, chunk)));
+        return chunks;
+    }
+
+    /**
+     * Attempts to remove chunks of every type from the sql server.
      *
      * @param connection the sql database connection.
      * @param worldId    the id of the the world to check.
@@ -432,21 +1226,132 @@ public final class SqlModule {
      * @param x2         the bottom right x coordinate.
      * @param z2         the bottom right z coordinate.
      * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
-     *                      the SQL statement returns a ResultSet object.
+     *                      the SQL statement returns a ResultSet object; the connection is not in auto commit mode.
      */
     public static void removeChunks(@Nonnull final Connection connection, @Nonnull final String worldId, int x1, int z1,
                                     int x2, int z2) throws SQLException {
-        final StringBuilder builder = new StringBuilder(DELETE_ROWS).append("(");
-        for (int i = x1; i < x2; i++) {
-            for (int j = z1; j < z2; j++) {
-                builder.append("POINT(").append(i).append(',').append(j).append("),");
+        deleteChunkRange(connection, worldId, x1, z1, x2, z2, DEFAULT_DELETE_BATCH_SIZE, SqlProgressListener.NONE);
+    }
+
+    /**
+     * Removes chunks of every type inside a rectangle from the sql server and from the {@link WorldModule} cache. Rows
+     * are deleted in bounded batches, each in its own transaction, so no InnoDB lock is held for long. The cache is
+     * purged even if a batch fails, since the batches before it are already committed. Rows a migration has not copied
+     * out of the older chunks table yet are removed as well.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the the world to check.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @param batchSize  the maximum number of rows removed per transaction.
+     * @param listener   receives progress after every batch.
+     * @return the number of rows removed and the time it took.
+     *
+     * @throws SQLException if a database access error occurs; this method is called on a closed PreparedStatement or
+     *                      the SQL statement returns a ResultSet object; the connection is not in auto commit mode.
+     */
+    @Nonnull
+    public static SqlBatchResult removeChunksInRange(@Nonnull final Connection connection,
+                                                     @Nonnull final String worldId, final int x1, final int z1,
+                                                     final int x2, final int z2, final int batchSize,
+                                                     @Nonnull final SqlProgressListener listener) throws SQLException {
+        final long startTime = System.nanoTime();
+        final long removed;
+        try {
+            removed = deleteChunkRange(connection, worldId, x1, z1, x2, z2, batchSize, listener);
+        } finally {
+            // Batches which committed before a failure are gone from the database as well
+            WorldModule.purgeCache(worldId, x1, z1, x2, z2);
+        }
+        return new SqlBatchResult(removed, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Deletes chunks of every type inside a rectangle, one chunk type and one bounded batch at a time. Every batch is
+     * committed on its own so the connection must be in auto commit mode, an open transaction of the caller is never
+     * committed behind its back.
+     *
+     * @param connection the sql database connection.
+     * @param worldId    the id of the the world to check.
+     * @param x1         the top left x coordinate, inclusive.
+     * @param z1         the top left z coordinate, inclusive.
+     * @param x2         the bottom right x coordinate, exclusive.
+     * @param z2         the bottom right z coordinate, exclusive.
+     * @param batchSize  the maximum number of rows removed per transaction.
+     * @param listener   receives progress after every batch.
+     * @return the number of rows removed.
+     *
+     * @throws SQLException if a database access error occurs or the connection is not in auto commit mode.
+     */
+    private static long deleteChunkRange(@Nonnull final Connection connection, @Nonnull final String worldId,
+                                         final int x1, final int z1, final int x2, final int z2, final int batchSize,
+                                         @Nonnull final SqlProgressListener listener) throws SQLException {
+        if (x1 >= x2 || z1 >= z2) {
+            return 0;
+        }
+        if (!connection.getAutoCommit()) {
+            throw new SQLException("Chunk ranges are removed in self committing batches, the connection must be in " +
+                    "auto commit mode");
+        }
+        // Counting and deleting per chunk type keeps every statement a range read on the primary key
+        final List<String> chunkTypes = new ArrayList<>();
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(GET_CHUNK_TYPES)) {
+            preparedStatement.setString(1, worldId);
+            try (final ResultSet results = preparedStatement.executeQuery()) {
+                while (results.next()) {
+                    chunkTypes.add(results.getString(1));
+                }
             }
         }
-        final PreparedStatement preparedStatement = connection.prepareStatement(DELETE_ROWS);
-        preparedStatement.setString(1, worldId);
-        // Execute query
-        preparedStatement.executeUpdate();
-        preparedStatement.close();
+        // Count first so progress can be reported against a total
+        long total = 0;
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(COUNT_ROWS_IN_RANGE)) {
+            preparedStatement.setString(1, worldId);
+            preparedStatement.setInt(3, x1);
+            preparedStatement.setInt(4, x2);
+            preparedStatement.setInt(5, z1);
+            preparedStatement.setInt(6, z2);
+            for (final String chunkType : chunkTypes) {
+                preparedStatement.setString(2, chunkType);
+                try (final ResultSet results = preparedStatement.executeQuery()) {
+                    total += results.next() ? results.getLong(1) : 0;
+                }
+            }
+        }
+        final LegacyChunkTable legacy = legacyChunkTable;
+        if (legacy != null) {
+            total += legacy.countRowsInRange(connection, worldId, x1, z1, x2, z2);
+        }
+        if (total == 0) {
+            listener.onProgress(0, 0);
+            return 0;
+        }
+        final int limit = Math.max(1, batchSize);
+        long removed = 0;
+        if (legacy != null) {
+            // Clear the older table first, a row the migration copies meanwhile is then removed from the chunks table
+            removed += legacy.deleteRowsInRange(connection, worldId, x1, z1, x2, z2, limit, removed, total, listener);
+        }
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(DELETE_ROWS_IN_RANGE)) {
+            preparedStatement.setString(1, worldId);
+            preparedStatement.setInt(3, x1);
+            preparedStatement.setInt(4, x2);
+            preparedStatement.setInt(5, z1);
+            preparedStatement.setInt(6, z2);
+            preparedStatement.setInt(7, limit);
+            for (final String chunkType : chunkTypes) {
+                preparedStatement.setString(2, chunkType);
+                int deleted;
+                do {
+                    deleted = preparedStatement.executeUpdate();
+                    removed += deleted;
+                    listener.onProgress(removed, Math.max(total, removed));
+                } while (deleted == limit);
+            }
+        }
+        return removed;
     }
 
     /**
@@ -460,12 +1365,25 @@ public final class SqlModule {
      */
     public static void insertBan(@Nonnull final Connection connection, @Nonnull final String ipAddress,
                                  @Nonnull final String uuid) throws SQLException {
-        final PreparedStatement preparedStatement = connection.prepareStatement(INSERT_BAN);
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(INSERT_BAN)) {
+            insertBan(preparedStatement, ipAddress, uuid);
+        }
+    }
+
+    /**
+     * Inserts a ban using an already prepared {@link #getInsertBanSqlString()} statement.
+     *
+     * @param preparedStatement the prepared insert ban statement, left open.
+     * @param ipAddress         the ip address of the client.
+     * @param uuid              the uuid of the client map.
+     * @throws SQLException if a database access error occurs.
+     */
+    static void insertBan(@Nonnull final PreparedStatement preparedStatement, @Nonnull final String ipAddress,
+                          @Nonnull final String uuid) throws SQLException {
         preparedStatement.setString(1, ipAddress);
         preparedStatement.setString(2, uuid);
         // Execute update
         preparedStatement.executeUpdate();
-        preparedStatement.close();
     }
 
     /**
@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the counters kept by a {@link SqlConnectionPool}.
+ *
+ * @author Tyler Bucher
+ */
+public final class SqlPoolStats {
+
+    /**
+     * The maximum number of connections the pool may open.
+     */
+    private final int maximumConnections;
+
+    /**
+     * The number of connections currently lent out.
+     */
+    private final int inUseConnections;
+
+    /**
+     * The number of open connections waiting in the pool.
+     */
+    private final int idleConnections;
+
+    /**
+     * The number of times a connection was lent out.
+     */
+    private final long acquireCount;
+
+    /**
+     * The summed time callers waited for a connection in nanoseconds.
+     */
+    private final long totalWaitNanos;
+
+    /**
+     * The longest time a caller waited for a connection in nanoseconds.
+     */
+    private final long maximumWaitNanos;
+
+    /**
+     * The number of prepared statements reused from a connection cache.
+     */
+    private final long statementCacheHits;
+
+    /**
+     * The number of prepared statements which had to be prepared.
+     */
+    private final long statementCacheMisses;
+
+    /**
+     * Creates a new pool statistics snapshot.
+     *
+     * @param maximumConnections   the maximum number of connections the pool may open.
+     * @param inUseConnections     the number of connections currently lent out.
+     * @param idleConnections      the number of open connections waiting in the pool.
+     * @param acquireCount         the number of times a connection was lent out.
+     * @param totalWaitNanos       the summed time callers waited for a connection in nanoseconds.
+     * @param maximumWaitNanos     the longest time a caller waited for a connection in nanoseconds.
+     * @param statementCacheHits   the number of prepared statements reused from a connection cache.
+     * @param statementCacheMisses the number of prepared statements which had to be prepared.
+     */
+    public SqlPoolStats(final int maximumConnections, final int inUseConnections, final int idleConnections,
+                        final long acquireCount, final long totalWaitNanos, final long maximumWaitNanos,
+                        final long statementCacheHits, final long statementCacheMisses) {
+        this.maximumConnections = maximumConnections;
+        this.inUseConnections = inUseConnections;
+        this.idleConnections = idleConnections;
+        this.acquireCount = acquireCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maximumWaitNanos = maximumWaitNanos;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    /**
+     * @return the maximum number of connections the pool may open.
+     */
+    public int getMaximumConnections() {
+        return maximumConnections;
+    }
+
+    /**
+     * @return the number of connections currently lent out.
+     */
+    public int getInUseConnections() {
+        return inUseConnections;
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool.
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * @return the number of times a connection was lent out.
+     */
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * @return the summed time callers waited for a connection in nanoseconds.
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return the longest time a caller waited for a connection in nanoseconds.
+     */
+    public long getMaximumWaitNanos() {
+        return maximumWaitNanos;
+    }
+
+    /**
+     * @return the average time a caller waited for a connection in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        return acquireCount == 0 ? 0 : (double) totalWaitNanos / acquireCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the number of prepared statements reused from a connection cache.
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    /**
+     * @return the number of prepared statements which had to be prepared.
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlPoolStats{inUse=" + inUseConnections + ", idle=" + idleConnections + ", maximum=" +
+                maximumConnections + ", acquireCount=" + acquireCount + ", averageWaitMillis=" +
+                getAverageWaitMillis() + ", maximumWaitMillis=" + TimeUnit.NANOSECONDS.toMillis(maximumWaitNanos) +
+                ", statementCacheHits=" + statementCacheHits + ", statementCacheMisses=" + statementCacheMisses + '}';
+    }
+}
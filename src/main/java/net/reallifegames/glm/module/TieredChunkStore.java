@@ -0,0 +1,599 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.cache.ChunkCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Layers the {@link WorldModule} chunk cache over the sql database. Reads go to the cache first, then to writes which
+ * were not flushed yet and finally to the database, and database rows are put in the cache on the way back. Writes go
+ * to the cache right away and are buffered, repeated writes to one chunk replace each other, and the buffer is written
+ * with {@link SqlDataAccess#updateGlChunks(String, String, java.util.Collection)} on an interval, on {@link #flush()}
+ * and on {@link #close()}. Each world and chunk type is flushed in its own transaction, so one failing group does not
+ * hold back the others. When the buffer is full a write flushes it from the calling thread before it is buffered.
+ * <p>
+ * The chunk cache is not keyed by chunk type, so a cached chunk only counts as a hit when its id matches the requested
+ * type. Writes bump a striped write generation, and a database row is only cached if no write to its stripe happened
+ * since the read began, so a slow read can not put an older chunk over a newer write.
+ *
+ * @author Tyler Bucher
+ */
+public final class TieredChunkStore implements AutoCloseable {
+
+    /**
+     * The default time between write behind flushes in milliseconds.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+
+    /**
+     * The default maximum number of distinct chunks buffered before a write flushes the buffer itself.
+     */
+    public static final int DEFAULT_MAX_PENDING_WRITES = 65536;
+
+    /**
+     * The number of write generation stripes, must be a power of two.
+     */
+    private static final int WRITE_STRIPES = 64;
+
+    /**
+     * The data access layer for the sql tier.
+     */
+    private final SqlDataAccess dataAccess;
+
+    /**
+     * The chunk cache tier.
+     */
+    private final ChunkCache cache;
+
+    /**
+     * Writes waiting to be flushed, the latest write to a chunk wins.
+     */
+    private final ConcurrentHashMap<ChunkWriteKey, BinaryGlmChunk> pendingWrites = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of distinct chunks buffered before a write flushes the buffer itself.
+     */
+    private final int maxPendingWrites;
+
+    /**
+     * The number of writes to each stripe of chunk positions.
+     */
+    private final AtomicLongArray writeGenerations = new AtomicLongArray(WRITE_STRIPES);
+
+    /**
+     * Orders cache writes of a stripe against the write generation checks.
+     */
+    private final Object[] writeLocks = new Object[WRITE_STRIPES];
+
+    /**
+     * Runs the interval flushes, null if flushing is manual.
+     */
+    @Nullable
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Guards flushes so two flushes never write the same rows.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * The number of reads answered by the chunk cache.
+     */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * The number of reads answered by writes which were not flushed yet.
+     */
+    private final LongAdder writeBufferHits = new LongAdder();
+
+    /**
+     * The number of reads answered by the sql database.
+     */
+    private final LongAdder sqlHits = new LongAdder();
+
+    /**
+     * The number of reads no tier could answer.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of writes which replaced a write that was not flushed yet.
+     */
+    private final LongAdder coalescedWrites = new LongAdder();
+
+    /**
+     * The number of rows written by flushes.
+     */
+    private final LongAdder flushedRows = new LongAdder();
+
+    /**
+     * The number of flushes which failed.
+     */
+    private final LongAdder failedFlushes = new LongAdder();
+
+    /**
+     * The number of buffered writes dropped because they could not be written.
+     */
+    private final LongAdder droppedWrites = new LongAdder();
+
+    /**
+     * The error of the last failed interval flush.
+     */
+    @Nullable
+    private volatile SQLException lastFlushError;
+
+    /**
+     * Creates a new tiered store over the {@link WorldModule} chunk cache.
+     *
+     * @param dataAccess    the data access layer for the sql tier.
+     * @param flushInterval the time between write behind flushes in milliseconds, 0 or less to only flush manually.
+     */
+    public TieredChunkStore(@Nonnull final SqlDataAccess dataAccess, final long flushInterval) {
+        this(dataAccess, WorldModule.getChunkCache(), flushInterval);
+    }
+
+    /**
+     * Creates a new tiered store.
+     *
+     * @param dataAccess    the data access layer for the sql tier.
+     * @param cache         the chunk cache tier.
+     * @param flushInterval the time between write behind flushes in milliseconds, 0 or less to only flush manually.
+     */
+    public TieredChunkStore(@Nonnull final SqlDataAccess dataAccess, @Nonnull final ChunkCache cache,
+                            final long flushInterval) {
+        this(dataAccess, cache, flushInterval, DEFAULT_MAX_PENDING_WRITES);
+    }
+
+    /**
+     * Creates a new tiered store.
+     *
+     * @param dataAccess       the data access layer for the sql tier.
+     * @param cache            the chunk cache tier.
+     * @param flushInterval    the time between write behind flushes in milliseconds, 0 or less to only flush
+     *                         manually.
+     * @param maxPendingWrites the maximum number of distinct chunks buffered before a write flushes the buffer itself.
+     */
+    public TieredChunkStore(@Nonnull final SqlDataAccess dataAccess, @Nonnull final ChunkCache cache,
+                            final long flushInterval, final int maxPendingWrites) {
+        if (maxPendingWrites < 1) {
+            throw new IllegalArgumentException("maxPendingWrites must be at least 1");
+        }
+        this.dataAccess = dataAccess;
+        this.cache = cache;
+        this.maxPendingWrites = maxPendingWrites;
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeLocks[i] = new Object();
+        }
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable->{
+                final Thread thread = new Thread(runnable, "glm-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Gets a chunk from the first tier which has it.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @return the chunk or null if no tier has it.
+     *
+     * @throws SQLException if the sql tier had to be read and failed.
+     * @throws IllegalArgumentException if a position is outside the bounds of
+     *                                  {@link WorldModule#getChunkCacheKey(int, int, int)}.
+     */
+    @Nullable
+    public GlmChunk getChunk(@Nonnull final String worldId, @Nonnull final String chunkType, final int x, final int z)
+            throws SQLException {
+        final long chunkKey = WorldModule.getChunkCacheKey(x, 0, z);
+        final int stripe = stripe(worldId, chunkKey);
+        // Read the generation before the memory tiers so any later write is seen by populate
+        final long generation = writeGenerations.get(stripe);
+        final GlmChunk cached = getFromMemory(worldId, chunkType, x, z, chunkKey);
+        if (cached != null) {
+            return cached;
+        }
+        final GlmChunk chunk = dataAccess.getGlChunk(worldId, chunkType, x, z);
+        if (chunk == null) {
+            misses.increment();
+            return null;
+        }
+        sqlHits.increment();
+        return populate(worldId, chunkType, x, z, chunkKey, stripe, generation, chunk);
+    }
+
+    /**
+     * Gets many chunks, reading every chunk the memory tiers do not have with a single sql query.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param positions the list of points to get chunks for. x, z interleaved
+     * @return the chunks which were found along with their positions.
+     *
+     * @throws SQLException if the sql tier had to be read and failed.
+     * @throws IllegalArgumentException if a position is outside the bounds of
+     *                                  {@link WorldModule#getChunkCacheKey(int, int, int)}.
+     */
+    @Nonnull
+    public List<PositionedChunk> getChunks(@Nonnull final String worldId, @Nonnull final String chunkType,
+                                           @Nonnull final List<Integer> positions) throws SQLException {
+        final List<PositionedChunk> chunks = new ArrayList<>(positions.size() >> 1);
+        final List<Integer> missing = new ArrayList<>();
+        final Map<Long, Long> generations = new HashMap<>();
+        for (int i = 0; i + 1 < positions.size(); i += 2) {
+            final int x = positions.get(i);
+            final int z = positions.get(i + 1);
+            final long chunkKey = WorldModule.getChunkCacheKey(x, 0, z);
+            final long generation = writeGenerations.get(stripe(worldId, chunkKey));
+            final GlmChunk cached = getFromMemory(worldId, chunkType, x, z, chunkKey);
+            if (cached != null) {
+                chunks.add(new PositionedChunk(x, z, cached));
+            } else {
+                missing.add(x);
+                missing.add(z);
+                generations.put(chunkKey, generation);
+            }
+        }
+        if (missing.isEmpty()) {
+            return chunks;
+        }
+        final List<PositionedChunk> loaded = dataAccess.getGlChunks(worldId, chunkType, missing);
+        sqlHits.add(loaded.size());
+        misses.add((missing.size() >> 1) - loaded.size());
+        for (final PositionedChunk positionedChunk : loaded) {
+            final int x = positionedChunk.getX();
+            final int z = positionedChunk.getZ();
+            final long chunkKey = WorldModule.getChunkCacheKey(x, 0, z);
+            final GlmChunk chunk = populate(worldId, chunkType, x, z, chunkKey, stripe(worldId, chunkKey),
+                    generations.get(chunkKey), positionedChunk.getChunk());
+            chunks.add(chunk == positionedChunk.getChunk() ? positionedChunk :
+                    new PositionedChunk(positionedChunk.getX(), positionedChunk.getZ(), chunk));
+        }
+        return chunks;
+    }
+
+    /**
+     * Looks a chunk up in the cache and in the write buffer.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @param chunkKey  the cache key of the chunk.
+     * @return the chunk or null if neither memory tier has it.
+     */
+    @Nullable
+    private GlmChunk getFromMemory(@Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                                   final int z, final long chunkKey) {
+        final GlmChunk cached = cache.get(worldId, chunkKey);
+        if (cached != null && chunkType.equals(cached.getId())) {
+            cacheHits.increment();
+            return cached;
+        }
+        // The cache may have evicted a chunk which is not flushed yet
+        final GlmChunk pending = pendingWrites.get(new ChunkWriteKey(worldId, chunkType, x, z));
+        if (pending != null) {
+            writeBufferHits.increment();
+            return pending;
+        }
+        return null;
+    }
+
+    /**
+     * Puts a chunk read from the database in the cache, unless the chunk was written since the read began.
+     *
+     * @param worldId    the id of the world.
+     * @param chunkType  the glm chunk type.
+     * @param x          the x position of the chunk.
+     * @param z          the z position of the chunk.
+     * @param chunkKey   the cache key of the chunk.
+     * @param stripe     the write stripe of the chunk.
+     * @param generation the write generation of the stripe before the read began.
+     * @param chunk      the chunk read from the database.
+     * @return the newest version of the chunk.
+     */
+    @Nonnull
+    private GlmChunk populate(@Nonnull final String worldId, @Nonnull final String chunkType, final int x, final int z,
+                              final long chunkKey, final int stripe, final long generation,
+                              @Nonnull final GlmChunk chunk) {
+        synchronized (writeLocks[stripe]) {
+            final GlmChunk pending = pendingWrites.get(new ChunkWriteKey(worldId, chunkType, x, z));
+            if (pending != null) {
+                return pending;
+            }
+            if (writeGenerations.get(stripe) == generation) {
+                cache.put(worldId, chunkKey, chunk);
+                return chunk;
+            }
+            // A write may have been flushed and evicted while the row was read, so prefer the cached chunk
+            final GlmChunk cached = cache.get(worldId, chunkKey);
+            return cached != null && chunkType.equals(cached.getId()) ? cached : chunk;
+        }
+    }
+
+    /**
+     * Finds the write stripe of a chunk.
+     *
+     * @param worldId  the id of the world.
+     * @param chunkKey the cache key of the chunk.
+     * @return the index of the stripe.
+     */
+    private static int stripe(@Nonnull final String worldId, final long chunkKey) {
+        final int hash = 31 * worldId.hashCode() + Long.hashCode(chunkKey);
+        return (hash ^ (hash >>> 16)) & (WRITE_STRIPES - 1);
+    }
+
+    /**
+     * Puts a chunk in the cache and buffers it to be written to the database. The chunk is converted to its stored
+     * form right away, so a flush only has to write it. If the buffer is full it is flushed first, blocking the caller
+     * until the flush is done.
+     *
+     * @param worldId   the id of the world.
+     * @param chunkType the glm chunk type.
+     * @param x         the x position of the chunk.
+     * @param z         the z position of the chunk.
+     * @param chunk     the chunk to write.
+     * @throws SQLException if the buffer was full and flushing it failed. The chunk is not written.
+     * @throws IllegalArgumentException if a position is outside the bounds of
+     *                                  {@link WorldModule#getChunkCacheKey(int, int, int)}.
+     */
+    public void putChunk(@Nonnull final String worldId, @Nonnull final String chunkType, final int x, final int z,
+                         @Nonnull final GlmChunk chunk) throws SQLException {
+        final BinaryGlmChunk binaryChunk = BinaryGlmChunk.fromGlmChunk(chunk);
+        final long chunkKey = WorldModule.getChunkCacheKey(x, 0, z);
+        final ChunkWriteKey key = new ChunkWriteKey(worldId, chunkType, x, z);
+        if (pendingWrites.size() >= maxPendingWrites && !pendingWrites.containsKey(key)) {
+            flush();
+        }
+        final int stripe = stripe(worldId, chunkKey);
+        synchronized (writeLocks[stripe]) {
+            writeGenerations.incrementAndGet(stripe);
+            cache.put(worldId, chunkKey, chunk);
+            if (pendingWrites.put(key, binaryChunk) != null) {
+                coalescedWrites.increment();
+            }
+        }
+    }
+
+    /**
+     * Writes every buffered chunk to the database, one transaction per world and chunk type. Chunks which were
+     * written again while the flush ran stay buffered for the next flush. A group which fails does not stop the
+     * other groups from being written. A group which fails with anything but a {@link SQLException} can never be
+     * written and is dropped from the buffer.
+     *
+     * @return the number of rows written.
+     *
+     * @throws SQLException if any group failed, with the errors of later groups suppressed. Chunks of groups which
+     *                      failed with a database access error stay buffered.
+     */
+    public long flush() throws SQLException {
+        synchronized (flushLock) {
+            if (pendingWrites.isEmpty()) {
+                return 0;
+            }
+            // Group a snapshot of the buffer by world and chunk type
+            final Map<String, Map<String, Map<ChunkWriteKey, BinaryGlmChunk>>> groups = new HashMap<>();
+            for (final Map.Entry<ChunkWriteKey, BinaryGlmChunk> entry : pendingWrites.entrySet()) {
+                final ChunkWriteKey key = entry.getKey();
+                groups.computeIfAbsent(key.worldId, k->new HashMap<>()).computeIfAbsent(key.chunkType,
+                        k->new HashMap<>()).put(key, entry.getValue());
+            }
+            long rows = 0;
+            SQLException error = null;
+            for (final Map.Entry<String, Map<String, Map<ChunkWriteKey, BinaryGlmChunk>>> world : groups.entrySet()) {
+                for (final Map.Entry<String, Map<ChunkWriteKey, BinaryGlmChunk>> type : world.getValue().entrySet()) {
+                    final Map<ChunkWriteKey, BinaryGlmChunk> group = type.getValue();
+                    final List<PositionedChunk> chunks = new ArrayList<>(group.size());
+                    for (final Map.Entry<ChunkWriteKey, BinaryGlmChunk> entry : group.entrySet()) {
+                        chunks.add(new PositionedChunk(entry.getKey().x, entry.getKey().z, entry.getValue()));
+                    }
+                    SQLException groupError = null;
+                    try {
+                        rows += dataAccess.updateGlChunks(world.getKey(), type.getKey(), chunks).getRowCount();
+                    } catch (SQLException e) {
+                        error = addError(error, e);
+                        continue;
+                    } catch (RuntimeException e) {
+                        groupError = new SQLException("Dropped " + group.size() + " " + type.getKey() +
+                                " chunks of world " + world.getKey() + " which can not be written", e);
+                    }
+                    // Only drop writes which were not replaced while flushing
+                    for (final Map.Entry<ChunkWriteKey, BinaryGlmChunk> entry : group.entrySet()) {
+                        if (pendingWrites.remove(entry.getKey(), entry.getValue()) && groupError != null) {
+                            droppedWrites.increment();
+                        }
+                    }
+                    if (groupError != null) {
+                        error = addError(error, groupError);
+                    }
+                }
+            }
+            flushedRows.add(rows);
+            if (error != null) {
+                throw error;
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Keeps the first error of a flush and suppresses the later ones in it.
+     *
+     * @param first the first error or null if there was none.
+     * @param error the error to add.
+     * @return the first error.
+     */
+    @Nonnull
+    private static SQLException addError(@Nullable final SQLException first, @Nonnull final SQLException error) {
+        if (first == null) {
+            return error;
+        }
+        first.addSuppressed(error);
+        return first;
+    }
+
+    /**
+     * Flushes from the interval thread, keeping the error instead of throwing it.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            failedFlushes.increment();
+            lastFlushError = e;
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            lastFlushError = new SQLException(e);
+        }
+    }
+
+    /**
+     * @return the error of the last failed interval flush or null if none failed.
+     */
+    @Nullable
+    public SQLException getLastFlushError() {
+        return lastFlushError;
+    }
+
+    /**
+     * @return the number of writes waiting to be flushed.
+     */
+    public int getPendingWrites() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * @return a snapshot of the per tier counters.
+     */
+    @Nonnull
+    public TieredChunkStoreStats getStats() {
+        return new TieredChunkStoreStats(cacheHits.sum(), writeBufferHits.sum(), sqlHits.sum(), misses.sum(),
+                pendingWrites.size(), coalescedWrites.sum(), flushedRows.sum(), failedFlushes.sum(),
+                droppedWrites.sum());
+    }
+
+    /**
+     * Stops the interval flushes and writes every buffered chunk.
+     *
+     * @throws SQLException if the final flush failed. Chunks which were not written stay buffered.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * The position of a buffered write. It keeps the chunk coordinates themselves since the cache key only holds
+     * their low bits.
+     */
+    private static final class ChunkWriteKey {
+
+        /**
+         * The id of the world.
+         */
+        private final String worldId;
+
+        /**
+         * The glm chunk type.
+         */
+        private final String chunkType;
+
+        /**
+         * The x position of the chunk.
+         */
+        private final int x;
+
+        /**
+         * The z position of the chunk.
+         */
+        private final int z;
+
+        /**
+         * Creates a new write key.
+         *
+         * @param worldId   the id of the world.
+         * @param chunkType the glm chunk type.
+         * @param x         the x position of the chunk.
+         * @param z         the z position of the chunk.
+         */
+        private ChunkWriteKey(@Nonnull final String worldId, @Nonnull final String chunkType, final int x,
+                              final int z) {
+            this.worldId = worldId;
+            this.chunkType = chunkType;
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ChunkWriteKey)) {
+                return false;
+            }
+            final ChunkWriteKey that = (ChunkWriteKey) o;
+            return x == that.x && z == that.z && worldId.equals(that.worldId) && chunkType.equals(that.chunkType);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = worldId.hashCode();
+            result = 31 * result + chunkType.hashCode();
+            result = 31 * result + x;
+            return 31 * result + z;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+/**
+ * An immutable snapshot of the per tier counters kept by a {@link TieredChunkStore}.
+ *
+ * @author Tyler Bucher
+ */
+public final class TieredChunkStoreStats {
+
+    /**
+     * The number of reads answered by the chunk cache.
+     */
+    private final long cacheHits;
+
+    /**
+     * The number of reads answered by writes which were not flushed yet.
+     */
+    private final long writeBufferHits;
+
+    /**
+     * The number of reads answered by the sql database.
+     */
+    private final long sqlHits;
+
+    /**
+     * The number of reads no tier could answer.
+     */
+    private final long misses;
+
+    /**
+     * The number of writes waiting to be flushed.
+     */
+    private final int pendingWrites;
+
+    /**
+     * The number of writes which replaced a write that was not flushed yet.
+     */
+    private final long coalescedWrites;
+
+    /**
+     * The number of rows written by flushes.
+     */
+    private final long flushedRows;
+
+    /**
+     * The number of flushes which failed.
+     */
+    private final long failedFlushes;
+
+    /**
+     * The number of buffered writes dropped because they could not be written.
+     */
+    private final long droppedWrites;
+
+    /**
+     * Creates a new tiered store statistics snapshot.
+     *
+     * @param cacheHits       the number of reads answered by the chunk cache.
+     * @param writeBufferHits the number of reads answered by writes which were not flushed yet.
+     * @param sqlHits         the number of reads answered by the sql database.
+     * @param misses          the number of reads no tier could answer.
+     * @param pendingWrites   the number of writes waiting to be flushed.
+     * @param coalescedWrites the number of writes which replaced a write that was not flushed yet.
+     * @param flushedRows     the number of rows written by flushes.
+     * @param failedFlushes   the number of flushes which failed.
+     * @param droppedWrites   the number of buffered writes dropped because they could not be written.
+     */
+    public TieredChunkStoreStats(final long cacheHits, final long writeBufferHits, final long sqlHits,
+                                 final long misses, final int pendingWrites, final long coalescedWrites,
+                                 final long flushedRows, final long failedFlushes, final long droppedWrites) {
+        this.cacheHits = cacheHits;
+        this.writeBufferHits = writeBufferHits;
+        this.sqlHits = sqlHits;
+        this.misses = misses;
+        this.pendingWrites = pendingWrites;
+        this.coalescedWrites = coalescedWrites;
+        this.flushedRows = flushedRows;
+        this.failedFlushes = failedFlushes;
+        this.droppedWrites = droppedWrites;
+    }
+
+    /**
+     * @return the number of reads answered by the chunk cache.
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return the number of reads answered by writes which were not flushed yet.
+     */
+    public long getWriteBufferHits() {
+        return writeBufferHits;
+    }
+
+    /**
+     * @return the number of reads answered by the sql database.
+     */
+    public long getSqlHits() {
+        return sqlHits;
+    }
+
+    /**
+     * @return the number of reads no tier could answer.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the total number of reads.
+     */
+    public long getRequestCount() {
+        return cacheHits + writeBufferHits + sqlHits + misses;
+    }
+
+    /**
+     * @return the share of all reads answered by the chunk cache, 1 if there were no reads.
+     */
+    public double getCacheHitRate() {
+        final long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) cacheHits / requests;
+    }
+
+    /**
+     * @return the share of reads which reached the sql database that found a row, 1 if none reached it.
+     */
+    public double getSqlHitRate() {
+        final long requests = sqlHits + misses;
+        return requests == 0 ? 1.0 : (double) sqlHits / requests;
+    }
+
+    /**
+     * @return the share of all reads answered by any tier, 1 if there were no reads.
+     */
+    public double getHitRate() {
+        final long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) (requests - misses) / requests;
+    }
+
+    /**
+     * @return the number of writes waiting to be flushed.
+     */
+    public int getPendingWrites() {
+        return pendingWrites;
+    }
+
+    /**
+     * @return the number of writes which replaced a write that was not flushed yet.
+     */
+    public long getCoalescedWrites() {
+        return coalescedWrites;
+    }
+
+    /**
+     * @return the number of rows written by flushes.
+     */
+    public long getFlushedRows() {
+        return flushedRows;
+    }
+
+    /**
+     * @return the number of flushes which failed.
+     */
+    public long getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    /**
+     * @return the number of buffered writes dropped because they could not be written.
+     */
+    public long getDroppedWrites() {
+        return droppedWrites;
+    }
+
+    @Override
+    public String toString() {
+        return "TieredChunkStoreStats{cacheHits=" + cacheHits + ", writeBufferHits=" + writeBufferHits + ", sqlHits=" +
+                sqlHits + ", misses=" + misses + ", cacheHitRate=" + getCacheHitRate() + ", sqlHitRate=" +
+                getSqlHitRate() + ", pendingWrites=" + pendingWrites + ", coalescedWrites=" + coalescedWrites +
+                ", flushedRows=" + flushedRows + ", failedFlushes=" + failedFlushes +
+                ", droppedWrites=" + droppedWrites + '}';
+    }
+}
@@ -23,14 +23,15 @@
  */
 package net.reallifegames.glm.module;
 
+import net.reallifegames.glm.BinaryGlmChunk;
 import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.SharedIndexData;
 import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.cache.ChunkCache;
+import net.reallifegames.glm.cache.ChunkCacheStats;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Helps with getting info from server and transforming it into data to be sent to the client.
@@ -43,11 +44,31 @@ public class WorldModule {
      * The cache of {@link GlmChunk}s. So we do not need to poll the server every time.
      */
     @Nonnull
-    protected static final ConcurrentHashMap<String, HashMap<String, GlmChunk>> cache = new ConcurrentHashMap<>();
+    protected static final ChunkCache cache = new ChunkCache(BinaryGlmChunk::getStoredSize);
+
+    /**
+     * The smallest x or z chunk position a cache key holds.
+     */
+    public static final int MINIMUM_CHUNK_XZ = -(1 << 25);
+
+    /**
+     * The largest x or z chunk position a cache key holds.
+     */
+    public static final int MAXIMUM_CHUNK_XZ = (1 << 25) - 1;
+
+    /**
+     * The smallest y chunk position a cache key holds.
+     */
+    public static final int MINIMUM_CHUNK_Y = -(1 << 11);
+
+    /**
+     * The largest y chunk position a cache key holds.
+     */
+    public static final int MAXIMUM_CHUNK_Y = (1 << 11) - 1;
 
     /**
      * Attempts to build a {@link GlmChunk} from the following information. Bypasses config checks and directly inserts
-     * the chunk into the cache.
+     * the chunk into the cache. Only the global cache limits are respected.
      *
      * @param worldId         the id of the world for the chunk.
      * @param x               the x position.
@@ -59,20 +80,25 @@ public class WorldModule {
      * @param blockBiomeData  the block biome data which the client can use for rendering.
      * @param blockIndexData  the block index data which the client can use for positioning.
      * @return the newly created {@link GlmChunk}.
+     *
+     * @throws IllegalArgumentException if the position is outside the bounds of {@link #getChunkCacheKey(int, int,
+     *                                  int)}.
      */
     @Nonnull
     public static GlmChunk buildFromParametersUnsafe(@Nonnull final String worldId, int x, int z, long generationTime,
                                                      @Nonnull final String glmChunkId, @Nonnull final String chunkData,
                                                      @Nonnull final String chunkHeightData, @Nonnull final String blockBiomeData,
                                                      @Nonnull final String blockIndexData) {
-        final String chunkId = getChunkCacheId(x, 0, z);
-        final GlmChunk glChunk = new GzipGlmChunk(glmChunkId, generationTime, chunkData, chunkHeightData, blockBiomeData, blockIndexData);
-        cache.get(worldId).put(chunkId, glChunk);
+        final long chunkKey = getChunkCacheKey(x, 0, z);
+        final GlmChunk glChunk = new GzipGlmChunk(glmChunkId, generationTime, chunkData, chunkHeightData, blockBiomeData,
+                SharedIndexData.intern(glmChunkId, blockIndexData));
+        cache.put(worldId, chunkKey, glChunk, 0);
         return glChunk;
     }
 
     /**
-     * Attempts to build a {@link GlmChunk} from the following information.
+     * Attempts to build a {@link GlmChunk} from the following information. If the cache is limited the least recently
+     * used chunks of the world are evicted to make room.
      *
      * @param worldId              the id of the world for the chunk.
      * @param x                    the x position.
@@ -86,6 +112,9 @@ public class WorldModule {
      * @param isCacheLimited       is the cache size limited.
      * @param maximumChunksInCache if the cache size is limited what is the size.
      * @return the newly created {@link GlmChunk}.
+     *
+     * @throws IllegalArgumentException if the position is outside the bounds of {@link #getChunkCacheKey(int, int,
+     *                                  int)}.
      */
     @Nonnull
     public static GlmChunk buildFromParameters(@Nonnull final String worldId, int x, int z, long generationTime,
@@ -93,21 +122,45 @@ public class WorldModule {
                                                @Nonnull final String chunkHeightData, @Nonnull final String blockBiomeData,
                                                @Nonnull final String blockIndexData, final boolean isCacheLimited,
                                                final int maximumChunksInCache) {
-        final String chunkId = getChunkCacheId(x, 0, z);
-        final GlmChunk glChunk = new GzipGlmChunk(glmChunkId, generationTime, chunkData, chunkHeightData, blockBiomeData, blockIndexData);
+        final GlmChunk glChunk = new GzipGlmChunk(glmChunkId, generationTime, chunkData, chunkHeightData, blockBiomeData,
+                SharedIndexData.intern(glmChunkId, blockIndexData));
+        return cacheChunk(worldId, x, z, glChunk, isCacheLimited, maximumChunksInCache);
+    }
+
+    /**
+     * Inserts an already built {@link GlmChunk}, such as a {@link net.reallifegames.glm.BinaryGlmChunk} read from the
+     * sql database, into the cache. If the cache is limited the least recently used chunks of the world are evicted to
+     * make room.
+     *
+     * @param worldId              the id of the world for the chunk.
+     * @param x                    the x position.
+     * @param z                    the z position.
+     * @param glChunk              the chunk to cache.
+     * @param isCacheLimited       is the cache size limited.
+     * @param maximumChunksInCache if the cache size is limited what is the size.
+     * @return the supplied {@link GlmChunk}.
+     *
+     * @throws IllegalArgumentException if the position is outside the bounds of {@link #getChunkCacheKey(int, int,
+     *                                  int)}.
+     */
+    @Nonnull
+    public static GlmChunk cacheChunk(@Nonnull final String worldId, int x, int z, @Nonnull final GlmChunk glChunk,
+                                      final boolean isCacheLimited, final int maximumChunksInCache) {
+        final long chunkKey = getChunkCacheKey(x, 0, z);
         if (isCacheLimited) {
-            // Check if there is room in the cache
-            if (cache.get(worldId).size() < maximumChunksInCache) {
-                cache.get(worldId).put(chunkId, glChunk);
+            // A limit of zero or less leaves no room in the cache
+            if (maximumChunksInCache > 0) {
+                cache.put(worldId, chunkKey, glChunk, maximumChunksInCache);
             }
         } else {
-            cache.get(worldId).put(chunkId, glChunk);
+            cache.put(worldId, chunkKey, glChunk);
         }
         return glChunk;
     }
 
     /**
-     * Gets a chunk id from the supplied information.
+     * Gets a chunk id from the supplied information. The cache is keyed by {@link #getChunkCacheKey(int, int, int)},
+     * this string form is kept for compatibility.
      *
      * @param x the x position of a chunk.
      * @param y the y position of a chunk.
@@ -119,6 +172,51 @@ public class WorldModule {
         return x + ":" + y + ":" + z;
     }
 
+    /**
+     * Packs a chunk position into a single cache key. The x and z positions are held in 26 bits each and the y
+     * position in 12 bits, so they must lie within {@link #MINIMUM_CHUNK_XZ} to {@link #MAXIMUM_CHUNK_XZ} and
+     * {@link #MINIMUM_CHUNK_Y} to {@link #MAXIMUM_CHUNK_Y}. That covers every chunk of a Minecraft world, whose
+     * border ends at chunk 1,875,000.
+     *
+     * @param x the x position of a chunk.
+     * @param y the y position of a chunk.
+     * @param z the z position of a chunk.
+     * @return the packed key of the chunk position.
+     *
+     * @throws IllegalArgumentException if a position is outside the bounds, it would share a key with another one.
+     */
+    public static long getChunkCacheKey(int x, int y, int z) {
+        if (x < MINIMUM_CHUNK_XZ || x > MAXIMUM_CHUNK_XZ || z < MINIMUM_CHUNK_XZ || z > MAXIMUM_CHUNK_XZ ||
+                y < MINIMUM_CHUNK_Y || y > MAXIMUM_CHUNK_Y) {
+            throw new IllegalArgumentException("Chunk position " + getChunkCacheId(x, y, z) + " can not be cached");
+        }
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * @param chunkKey the packed key of a chunk position.
+     * @return the x position of the chunk.
+     */
+    public static int getChunkCacheKeyX(final long chunkKey) {
+        return (int) (chunkKey >> 38);
+    }
+
+    /**
+     * @param chunkKey the packed key of a chunk position.
+     * @return the z position of the chunk.
+     */
+    public static int getChunkCacheKeyZ(final long chunkKey) {
+        return (int) (chunkKey << 26 >> 38);
+    }
+
+    /**
+     * @param chunkKey the packed key of a chunk position.
+     * @return the y position of the chunk.
+     */
+    public static int getChunkCacheKeyY(final long chunkKey) {
+        return (int) (chunkKey << 52 >> 52);
+    }
+
     /**
      * Returns the status of a chunk in cache.
      *
@@ -127,10 +225,12 @@ public class WorldModule {
      * @param y         the y position of the chunk.
      * @param z         the z position of the chunk.
      * @return true if the world and the chunk are in the cache false otherwise.
+     *
+     * @throws IllegalArgumentException if the position is outside the bounds of {@link #getChunkCacheKey(int, int,
+     *                                  int)}.
      */
     public static boolean chunkInCache(@Nonnull final String worldUuid, int x, int y, int z) {
-        final HashMap<String, GlmChunk> worldCache = cache.get(worldUuid);
-        return worldCache != null && worldCache.containsKey(getChunkCacheId(x, y, z));
+        return cache.contains(worldUuid, getChunkCacheKey(x, y, z));
     }
 
     /**
@@ -141,11 +241,25 @@ public class WorldModule {
      * @param y         the y position of the chunk.
      * @param z         the z position of the chunk.
      * @return the {@link GlmChunk} from the cache if it is present or null if missing.
+     *
+     * @throws IllegalArgumentException if the position is outside the bounds of {@link #getChunkCacheKey(int, int,
+     *                                  int)}.
      */
     @Nullable
     public static GlmChunk getCacheChunk(@Nonnull final String worldUuid, int x, int y, int z) {
-        final HashMap<String, GlmChunk> worldCache = cache.get(worldUuid);
-        return worldCache == null ? null : worldCache.get(getChunkCacheId(x, y, z));
+        return cache.get(worldUuid, getChunkCacheKey(x, y, z));
+    }
+
+    /**
+     * Gets the {@link GlmChunk} from the cache.
+     *
+     * @param worldUuid the string version of the worlds uuid.
+     * @param chunkKey  the packed key of the chunk position, see {@link #getChunkCacheKey(int, int, int)}.
+     * @return the {@link GlmChunk} from the cache if it is present or null if missing.
+     */
+    @Nullable
+    public static GlmChunk getCacheChunk(@Nonnull final String worldUuid, final long chunkKey) {
+        return cache.get(worldUuid, chunkKey);
     }
 
     /**
@@ -156,8 +270,8 @@ public class WorldModule {
      * @return true if the cache is less than the provided value.
      */
     public static boolean isRoomInCache(@Nonnull final String worldId, int max) {
-        cache.computeIfAbsent(worldId, k->new HashMap<>());
-        return cache.get(worldId).size() < max;
+        cache.createWorld(worldId);
+        return cache.size(worldId) < max;
     }
 
     /**
@@ -165,19 +279,30 @@ public class WorldModule {
      * @return the size of the cache for a world.
      */
     public static int getCacheSize(@Nonnull final String worldId) {
-        final HashMap<String, GlmChunk> worldCache = cache.get(worldId);
-        return worldCache == null ? 0 : worldCache.size();
+        return cache.size(worldId);
     }
 
     /**
      * @return the total entry's for the entire cache.
      */
     public static int getTotalCacheSize() {
-        int size = 0;
-        for (Map.Entry<String, HashMap<String, GlmChunk>> stringHashMapEntry : cache.entrySet()) {
-            size += stringHashMapEntry.getValue().size();
-        }
-        return size;
+        return (int) Math.min(Integer.MAX_VALUE, cache.size());
+    }
+
+    /**
+     * @return a snapshot of the cache hit, miss and eviction counters.
+     */
+    @Nonnull
+    public static ChunkCacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * @return the cache of {@link GlmChunk}s, used to configure limits and weighing.
+     */
+    @Nonnull
+    public static ChunkCache getChunkCache() {
+        return cache;
     }
 
     /**
@@ -190,13 +315,26 @@ public class WorldModule {
      * @param z2      the bottom right z coordinate.
      */
     public static void purgeCache(@Nonnull final String worldId, int x1, int z1, int x2, int z2) {
-        HashMap<String, GlmChunk> worldCache;
-        for (int i = x1; i < x2; i++) {
-            for (int j = z1; j < z2; j++) {
-                worldCache = cache.get(worldId);
-                if (worldCache != null) {
-                    worldCache.remove(getChunkCacheId(i, 0, j));
-                }
+        // Only positions within the cache key bounds can be cached
+        final int minX = Math.max(x1, MINIMUM_CHUNK_XZ);
+        final int minZ = Math.max(z1, MINIMUM_CHUNK_XZ);
+        final int maxX = Math.min(x2, MAXIMUM_CHUNK_XZ + 1);
+        final int maxZ = Math.min(z2, MAXIMUM_CHUNK_XZ + 1);
+        if (minX >= maxX || minZ >= maxZ) {
+            return;
+        }
+        // Large regions are cheaper to purge by walking the cached chunks
+        if (((long) maxX - minX) * ((long) maxZ - minZ) > cache.size(worldId)) {
+            cache.removeIf(worldId, chunkKey->{
+                final int x = getChunkCacheKeyX(chunkKey);
+                final int z = getChunkCacheKeyZ(chunkKey);
+                return x >= minX && x < maxX && z >= minZ && z < maxZ;
+            });
+            return;
+        }
+        for (int i = minX; i < maxX; i++) {
+            for (int j = minZ; j < maxZ; j++) {
+                cache.remove(worldId, getChunkCacheKey(i, 0, j));
             }
         }
     }
@@ -0,0 +1,241 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module.migration;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.SharedIndexData;
+import net.reallifegames.glm.module.SqlModule;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Moves the chunks of sql version 1 or 2 into the current layout without taking the map server offline. An empty
+ * table with the current layout is swapped in under the chunks table name in a single rename, so writes go to it
+ * straight away, and the old table is kept as {@link SqlModule#getLegacyChunksTableName()}. Its rows are then copied
+ * over in bounded transactions which also delete them from the old table, so an interrupted migration resumes with
+ * whatever is left. Until the old table is dropped {@link SqlModule} reads fall back to it, see
+ * {@link SqlModule#openLegacyChunkTable(int)}.
+ * <p>
+ * The newest generation time of a position wins, so a chunk the map server wrote during the migration is not replaced
+ * by an older copied row, and of several rows which version 1 kept for one position only the newest survives. Version
+ * 1 text columns are converted the way {@link BinaryGlmChunk#fromGlmChunk(net.reallifegames.glm.api.GlmChunk)}
+ * converts chunk text, so text which is not base64 of a compressed payload is copied as it is instead of stopping the
+ * copy.
+ *
+ * @author Tyler Bucher
+ */
+public final class ChunkTableCopyMigration extends SqlMigration {
+
+    /**
+     * The stage which copies rows, progress counts copied rows.
+     */
+    @Nonnull
+    private static final String COPY_STAGE = "Copying chunks";
+
+    /**
+     * The names of the chunk data columns.
+     */
+    @Nonnull
+    private static final String[] DATA_COLUMNS = {"chunk_data", "height_data", "biome_data", "index_data"};
+
+    /**
+     * Creates a migration from an older chunks layout to the current version.
+     *
+     * @param fromVersion the sql version this migration upgrades from, 1 or 2.
+     */
+    public ChunkTableCopyMigration(final int fromVersion) {
+        super(fromVersion, SqlModule.VERSION, "Copy chunks into a table keyed by (world_id, chunk_type, x, z)");
+    }
+
+    @Override
+    public void migrate(@Nonnull final Connection connection, final int batchSize,
+                        @Nonnull final MigrationProgressListener listener) throws SQLException {
+        final String table = SqlModule.getChunksTableName();
+        final String legacyTable = SqlModule.getLegacyChunksTableName();
+        if (!tableExists(connection, legacyTable)) {
+            // Already converted, the table was created with the current layout
+            if (columnType(connection, table, "position") == null) {
+                listener.onProgress(this, "Already migrated", 0, 0);
+                return;
+            }
+            listener.onProgress(this, "Swapping tables", 0, 0);
+            final String nextTable = SqlModule.getDatabaseChunkPrefix() + "glm_chunks_next";
+            execute(connection, SqlModule.getCreateChunksTableSqlString(nextTable));
+            execute(connection, "RENAME TABLE `" + table + "` TO `" + legacyTable + "`, `" + nextTable + "` TO `" +
+                    table + "`;");
+        }
+        // The version constant may lag behind the layout, so ask the old table what it holds
+        final String chunkDataType = columnType(connection, legacyTable, "chunk_data");
+        final boolean base64 = chunkDataType == null || !chunkDataType.toUpperCase(Locale.ROOT).contains("BLOB");
+        SqlModule.openLegacyChunkTable(base64 ? 1 : 2);
+        copyRows(connection, legacyTable, base64, batchSize, listener);
+        listener.onProgress(this, "Dropping the old table", 0, 0);
+        SqlModule.closeLegacyChunkTable();
+        execute(connection, "DROP TABLE IF EXISTS `" + legacyTable + "`;");
+    }
+
+    /**
+     * Copies the rows of the old table in bounded transactions until it is empty. Every transaction upserts a batch
+     * into the chunks table and deletes the copied rows, and any older rows of the same positions, from the old table.
+     *
+     * @param connection  the sql database connection, in auto commit mode.
+     * @param legacyTable the name of the old table.
+     * @param base64      true if the old table holds base64 text columns.
+     * @param batchSize   the maximum number of rows copied per transaction.
+     * @param listener    receives progress updates.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void copyRows(@Nonnull final Connection connection, @Nonnull final String legacyTable,
+                          final boolean base64, final int batchSize,
+                          @Nonnull final MigrationProgressListener listener) throws SQLException {
+        final long total = queryLong(connection, "SELECT COUNT(*) FROM `" + legacyTable + "`;");
+        long completed = 0;
+        listener.onProgress(this, COPY_STAGE, completed, total);
+        connection.setAutoCommit(false);
+        try (final PreparedStatement selectStatement = connection.prepareStatement("SELECT `generation_time`, " +
+                "`world_id`, `chunk_type`, ST_X(`position`), ST_Y(`position`), `chunk_data`, `height_data`, " +
+                "`biome_data`, `index_data` FROM `" + legacyTable + "` LIMIT ?;");
+             final PreparedStatement upsertStatement = connection.prepareStatement(upsertSql());
+             final PreparedStatement deleteStatement = connection.prepareStatement("DELETE FROM `" + legacyTable +
+                     "` WHERE `world_id` = ? AND `chunk_type` = ? AND `position` = POINT(?, ?) AND " +
+                     "`generation_time` <= ?;")) {
+            selectStatement.setInt(1, batchSize);
+            while (true) {
+                int rows = 0;
+                try (final ResultSet results = selectStatement.executeQuery()) {
+                    while (results.next()) {
+                        addRow(results, base64, upsertStatement, deleteStatement);
+                        rows++;
+                    }
+                }
+                if (rows == 0) {
+                    break;
+                }
+                upsertStatement.executeBatch();
+                deleteStatement.executeBatch();
+                connection.commit();
+                completed += rows;
+                listener.onProgress(this, COPY_STAGE, completed, Math.max(total, completed));
+            }
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Adds the upsert and delete of the current row of the old table to their batches.
+     *
+     * @param results         the old table rows, positioned on a row.
+     * @param base64          true if the old table holds base64 text columns.
+     * @param upsertStatement the upsert into the chunks table.
+     * @param deleteStatement the delete from the old table.
+     * @throws SQLException if a database access error occurs.
+     */
+    private static void addRow(@Nonnull final ResultSet results, final boolean base64,
+                               @Nonnull final PreparedStatement upsertStatement,
+                               @Nonnull final PreparedStatement deleteStatement) throws SQLException {
+        final long generationTime = results.getLong(1);
+        final String worldId = results.getString(2);
+        final String chunkType = results.getString(3);
+        final int x = results.getInt(4);
+        final int z = results.getInt(5);
+        upsertStatement.setString(1, worldId);
+        upsertStatement.setString(2, chunkType);
+        upsertStatement.setInt(3, x);
+        upsertStatement.setInt(4, z);
+        upsertStatement.setLong(5, generationTime);
+        if (base64) {
+            final BinaryGlmChunk chunk = BinaryGlmChunk.fromGlmChunk(new GzipGlmChunk(chunkType, generationTime,
+                    text(results, 6), text(results, 7), text(results, 8), text(results, 9)));
+            upsertStatement.setBytes(6, chunk.getBlockDataBytes());
+            upsertStatement.setBytes(7, chunk.getBlockHeightDataBytes());
+            upsertStatement.setBytes(8, chunk.getBlockBiomeDataBytes());
+            upsertStatement.setBytes(9, SharedIndexData.toStored(chunkType, chunk.getBlockIndicesBytes()));
+        } else {
+            for (int i = 0; i < DATA_COLUMNS.length; i++) {
+                final byte[] data = bytes(results, 6 + i);
+                upsertStatement.setBytes(6 + i, i == DATA_COLUMNS.length - 1 ? SharedIndexData.toStored(chunkType,
+                        data) : data);
+            }
+        }
+        upsertStatement.addBatch();
+        deleteStatement.setString(1, worldId);
+        deleteStatement.setString(2, chunkType);
+        deleteStatement.setInt(3, x);
+        deleteStatement.setInt(4, z);
+        deleteStatement.setLong(5, generationTime);
+        deleteStatement.addBatch();
+    }
+
+    /**
+     * @param results the old table rows, positioned on a row.
+     * @param column  the column of a version 1 text field.
+     * @return the text of the field, empty if it is null.
+     *
+     * @throws SQLException if the column could not be read.
+     */
+    @Nonnull
+    private static String text(@Nonnull final ResultSet results, final int column) throws SQLException {
+        final String text = results.getString(column);
+        return text == null ? "" : text;
+    }
+
+    /**
+     * @param results the old table rows, positioned on a row.
+     * @param column  the column of a version 2 binary field.
+     * @return the bytes of the field, empty if it is null.
+     *
+     * @throws SQLException if the column could not be read.
+     */
+    @Nonnull
+    private static byte[] bytes(@Nonnull final ResultSet results, final int column) throws SQLException {
+        final byte[] data = results.getBytes(column);
+        return data == null ? new byte[0] : data;
+    }
+
+    /**
+     * @return an upsert into the chunks table which keeps the row with the newest generation time.
+     */
+    @Nonnull
+    private static String upsertSql() {
+        final StringBuilder builder = new StringBuilder(SqlModule.getChunkInsertSqlString())
+                .append(" ON DUPLICATE KEY UPDATE ");
+        for (final String column : DATA_COLUMNS) {
+            builder.append('`').append(column).append("` = CASE WHEN VALUES(`generation_time`) > `generation_time` ")
+                    .append("THEN VALUES(`").append(column).append("`) ELSE `").append(column).append("` END, ");
+        }
+        // MySQL assigns in order, so the generation time the data columns compare against is replaced last
+        return builder.append("`generation_time` = GREATEST(`generation_time`, VALUES(`generation_time`));")
+                .toString();
+    }
+}
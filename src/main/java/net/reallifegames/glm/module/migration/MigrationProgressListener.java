@@ -0,0 +1,53 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module.migration;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives progress updates while a {@link SqlMigration} runs.
+ *
+ * @author Tyler Bucher
+ */
+@FunctionalInterface
+public interface MigrationProgressListener {
+
+    /**
+     * A listener which ignores every update.
+     */
+    @Nonnull
+    MigrationProgressListener NONE = (migration, stage, completed, total)->{
+    };
+
+    /**
+     * Called whenever a migration starts a stage or finishes a batch.
+     *
+     * @param migration the migration which is running.
+     * @param stage     a short description of what the migration is doing.
+     * @param completed the number of rows processed so far in this stage.
+     * @param total     the number of rows this stage expects to process or 0 if unknown.
+     */
+    void onProgress(@Nonnull final SqlMigration migration, @Nonnull final String stage, final long completed,
+                    final long total);
+}
@@ -0,0 +1,246 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module.migration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A single step which upgrades the glm tables from one sql version to the next. Every step must be idempotent so a
+ * migration which was interrupted can simply be run again.
+ *
+ * @author Tyler Bucher
+ */
+public abstract class SqlMigration {
+
+    /**
+     * The sql version this migration upgrades from.
+     */
+    private final int fromVersion;
+
+    /**
+     * The sql version this migration upgrades to.
+     */
+    private final int toVersion;
+
+    /**
+     * A short description of the migration.
+     */
+    @Nonnull
+    private final String description;
+
+    /**
+     * Creates a new migration step.
+     *
+     * @param fromVersion the sql version this migration upgrades from.
+     * @param toVersion   the sql version this migration upgrades to.
+     * @param description a short description of the migration.
+     */
+    protected SqlMigration(final int fromVersion, final int toVersion, @Nonnull final String description) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.description = description;
+    }
+
+    /**
+     * Applies or resumes this migration.
+     *
+     * @param connection the sql database connection, in auto commit mode.
+     * @param batchSize  the maximum number of rows touched per statement.
+     * @param listener   receives progress updates.
+     * @throws SQLException if a database access error occurs.
+     */
+    public abstract void migrate(@Nonnull final Connection connection, final int batchSize,
+                                 @Nonnull final MigrationProgressListener listener) throws SQLException;
+
+    /**
+     * @return the sql version this migration upgrades from.
+     */
+    public int getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * @return the sql version this migration upgrades to.
+     */
+    public int getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * @return a short description of the migration.
+     */
+    @Nonnull
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return "v" + fromVersion + " -> v" + toVersion + ": " + description;
+    }
+
+    /**
+     * Repeats a bounded update until it no longer changes any rows. Each statement commits on its own so no lock is
+     * held for longer than a single batch.
+     *
+     * @param connection  the sql database connection, in auto commit mode.
+     * @param stage       a short description of the batches.
+     * @param prepareSql  a statement to run before every batch or null.
+     * @param batchSql    the update to repeat, its only parameter is the row limit.
+     * @param batchSize   the maximum number of rows touched per statement.
+     * @param total       the number of rows expected to change or 0 if unknown.
+     * @param listener    receives progress updates.
+     * @return the number of rows changed.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    protected final long runBatches(@Nonnull final Connection connection, @Nonnull final String stage,
+                                    @Nullable final String prepareSql, @Nonnull final String batchSql,
+                                    final int batchSize, final long total,
+                                    @Nonnull final MigrationProgressListener listener) throws SQLException {
+        long completed = 0;
+        listener.onProgress(this, stage, completed, total);
+        try (final PreparedStatement batchStatement = connection.prepareStatement(batchSql)) {
+            batchStatement.setInt(1, batchSize);
+            while (true) {
+                if (prepareSql != null) {
+                    execute(connection, prepareSql);
+                }
+                final int changed = batchStatement.executeUpdate();
+                if (changed == 0) {
+                    return completed;
+                }
+                completed += changed;
+                listener.onProgress(this, stage, completed, total);
+            }
+        }
+    }
+
+    /**
+     * Executes a statement which returns nothing.
+     *
+     * @param connection the sql database connection.
+     * @param sql        the statement to execute.
+     * @throws SQLException if a database access error occurs.
+     */
+    protected static void execute(@Nonnull final Connection connection, @Nonnull final String sql) throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.execute();
+        }
+    }
+
+    /**
+     * Executes a query which returns a single number.
+     *
+     * @param connection the sql database connection.
+     * @param sql        the query to execute.
+     * @return the number in the first column of the first row or 0 if there were no rows.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    protected static long queryLong(@Nonnull final Connection connection, @Nonnull final String sql)
+            throws SQLException {
+        try (final PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             final ResultSet results = preparedStatement.executeQuery()) {
+            return results.next() ? results.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * @param connection the sql database connection.
+     * @param table      the name of the table.
+     * @return true if the table exists in the current database.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    public static boolean tableExists(@Nonnull final Connection connection, @Nonnull final String table)
+            throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        try (final ResultSet results = metaData.getTables(connection.getCatalog(), null, escape(metaData, table),
+                new String[]{"TABLE"})) {
+            return results.next();
+        }
+    }
+
+    /**
+     * @param connection the sql database connection.
+     * @param table      the name of the table.
+     * @param column     the name of the column.
+     * @return the database type name of the column or null if the column does not exist.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nullable
+    protected static String columnType(@Nonnull final Connection connection, @Nonnull final String table,
+                                       @Nonnull final String column) throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        try (final ResultSet results = metaData.getColumns(connection.getCatalog(), null, escape(metaData, table),
+                escape(metaData, column))) {
+            return results.next() ? results.getString("TYPE_NAME") : null;
+        }
+    }
+
+    /**
+     * @param connection the sql database connection.
+     * @param table      the name of the table.
+     * @param index      the name of the index.
+     * @return true if the table has an index with the given name.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    protected static boolean indexExists(@Nonnull final Connection connection, @Nonnull final String table,
+                                         @Nonnull final String index) throws SQLException {
+        try (final ResultSet results = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table,
+                false, true)) {
+            while (results.next()) {
+                if (index.equalsIgnoreCase(results.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Escapes the pattern characters of a name so it can be used as a meta data search pattern.
+     *
+     * @param metaData the meta data of the connection.
+     * @param name     the name to escape.
+     * @return the escaped name.
+     *
+     * @throws SQLException if a database access error occurs.
+     */
+    @Nonnull
+    private static String escape(@Nonnull final DatabaseMetaData metaData, @Nonnull final String name)
+            throws SQLException {
+        final String escape = metaData.getSearchStringEscape();
+        return name.replace("_", escape + "_").replace("%", escape + "%");
+    }
+}
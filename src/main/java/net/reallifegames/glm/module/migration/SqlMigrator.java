@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module.migration;
+
+import net.reallifegames.glm.module.SqlModule;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Brings the glm tables up to {@link SqlModule#VERSION}. The current version is read from the `sql_version` constant
+ * and every migration step from that version onwards is applied in order. The constant is written after each step so
+ * an interrupted migration resumes at the step it was in. Large steps work in bounded batches so the database stays
+ * responsive for other clients.
+ * <p>
+ * The map server keeps serving chunks while the tables are migrated, see {@link ChunkTableCopyMigration}. Run the
+ * migration in the map server process, for example through
+ * {@link net.reallifegames.glm.module.SqlDataAccess#migrate()}, since that is where {@link SqlModule} learns which
+ * older table its reads fall back to.
+ *
+ * @author Tyler Bucher
+ */
+public final class SqlMigrator {
+
+    /**
+     * The default maximum number of rows touched per statement.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Every migration step in version order.
+     */
+    @Nonnull
+    private static final List<SqlMigration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            new ChunkTableCopyMigration(1),
+            new ChunkTableCopyMigration(2)
+    ));
+
+    /**
+     * Creates, or migrates, the glm tables using the default batch size.
+     *
+     * @param connection the sql database connection.
+     * @return the sql version the tables are now at.
+     *
+     * @throws SQLException if a database access error occurs or the tables are newer than this module.
+     */
+    public static int migrate(@Nonnull final Connection connection) throws SQLException {
+        return migrate(connection, DEFAULT_BATCH_SIZE, null);
+    }
+
+    /**
+     * Creates, or migrates, the glm tables. {@link SqlModule#init(String)} must have been called first.
+     *
+     * @param connection the sql database connection.
+     * @param batchSize  the maximum number of rows touched per statement.
+     * @param listener   receives progress updates or null.
+     * @return the sql version the tables are now at.
+     *
+     * @throws SQLException if a database access error occurs or the tables are newer than this module.
+     */
+    public static int migrate(@Nonnull final Connection connection, final int batchSize,
+                              @Nullable final MigrationProgressListener listener) throws SQLException {
+        final MigrationProgressListener progressListener = listener == null ? MigrationProgressListener.NONE : listener;
+        SqlModule.createConstantsTable(connection);
+        int version = SqlModule.getSqlVersion(connection);
+        if (version == 0) {
+            if (!SqlMigration.tableExists(connection, SqlModule.getChunksTableName())) {
+                // Fresh database, create everything at the current version
+                SqlModule.createChunksTable(connection);
+                SqlModule.createBansTable(connection);
+                SqlModule.setSqlVersion(connection);
+                return SqlModule.VERSION;
+            }
+            // Tables created before the version constant was written
+            version = 1;
+        }
+        if (version > SqlModule.VERSION) {
+            throw new SQLException("The glm tables are at sql version " + version + " but this module only supports " +
+                    "up to " + SqlModule.VERSION);
+        }
+        final boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(true);
+        try {
+            for (final SqlMigration migration : MIGRATIONS) {
+                if (migration.getFromVersion() == version) {
+                    migration.migrate(connection, Math.max(1, batchSize), progressListener);
+                    version = migration.getToVersion();
+                    SqlModule.setSqlVersion(connection, version);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        if (version != SqlModule.VERSION) {
+            throw new SQLException("No migration from sql version " + version + " to " + SqlModule.VERSION);
+        }
+        SqlModule.createBansTable(connection);
+        return version;
+    }
+
+    /**
+     * @return every migration step in version order.
+     */
+    @Nonnull
+    public static List<SqlMigration> getMigrations() {
+        return MIGRATIONS;
+    }
+}
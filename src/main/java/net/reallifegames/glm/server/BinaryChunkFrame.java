@@ -0,0 +1,293 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.SharedIndexData;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.module.PositionedChunk;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Encodes chunks into the binary frames of {@link GlmProtocol#BINARY}. Chunk fields are sent as the compressed bytes
+ * the server already holds instead of base64 text. All numbers are big endian:
+ * <pre>
+ * u8  frame type, {@link #CHUNKS}
+ * u16 chunk count
+ * per chunk:
+ *   i32 x, i32 z, i64 generation time
+ *   u8  type length, type as ascii
+ *   i32 length and bytes of the block, height, biome and index data
+ * </pre>
+ * An index length of 0 means the shared index of the chunk type, which clients already know. {@link #decode(ByteBuffer)}
+ * reads a frame back the way a client does.
+ *
+ * @author Tyler Bucher
+ */
+public final class BinaryChunkFrame {
+
+    /**
+     * The frame type of a chunk frame.
+     */
+    public static final byte CHUNKS = 1;
+
+    /**
+     * The most chunks a single frame can hold.
+     */
+    public static final int MAXIMUM_CHUNKS = 0xffff;
+
+    /**
+     * The size of the frame header.
+     */
+    private static final int HEADER_SIZE = 3;
+
+    /**
+     * The fixed size of each chunk entry: position, time, type length and four field lengths.
+     */
+    private static final int ENTRY_SIZE = 4 + 4 + 8 + 1 + 4 * 4;
+
+    /**
+     * Static utility class.
+     */
+    private BinaryChunkFrame() {
+    }
+
+    /**
+     * Encodes a frame holding every chunk of the collection.
+     *
+     * @param chunks the chunks to send.
+     * @return the frame, ready to send.
+     *
+     * @throws IllegalArgumentException if there are more than {@link #MAXIMUM_CHUNKS} chunks or a chunk type is
+     *                                  longer than 255 characters.
+     */
+    @Nonnull
+    public static ByteBuffer encode(@Nonnull final Collection<PositionedChunk> chunks) {
+        if (chunks.size() > MAXIMUM_CHUNKS) {
+            throw new IllegalArgumentException("A frame holds at most " + MAXIMUM_CHUNKS + " chunks");
+        }
+        final BinaryGlmChunk[] binaryChunks = new BinaryGlmChunk[chunks.size()];
+        final byte[][] storedIndices = new byte[chunks.size()][];
+        int size = HEADER_SIZE;
+        int i = 0;
+        for (PositionedChunk chunk : chunks) {
+            binaryChunks[i] = BinaryGlmChunk.fromGlmChunk(chunk.getChunk());
+            storedIndices[i] = getStoredIndices(binaryChunks[i]);
+            size += getEncodedSize(binaryChunks[i], storedIndices[i]);
+            i++;
+        }
+        final ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.put(CHUNKS).putShort((short) chunks.size());
+        i = 0;
+        for (PositionedChunk chunk : chunks) {
+            write(frame, chunk.getX(), chunk.getZ(), binaryChunks[i], storedIndices[i]);
+            i++;
+        }
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Encodes a frame holding a single chunk.
+     *
+     * @param x     the x position of the chunk.
+     * @param z     the z position of the chunk.
+     * @param chunk the chunk to send.
+     * @return the frame, ready to send.
+     *
+     * @throws IllegalArgumentException if the chunk type is longer than 255 characters.
+     */
+    @Nonnull
+    public static ByteBuffer encode(final int x, final int z, @Nonnull final GlmChunk chunk) {
+        final BinaryGlmChunk binaryChunk = BinaryGlmChunk.fromGlmChunk(chunk);
+        final byte[] storedIndices = getStoredIndices(binaryChunk);
+        final ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + getEncodedSize(binaryChunk, storedIndices));
+        frame.put(CHUNKS).putShort((short) 1);
+        write(frame, x, z, binaryChunk, storedIndices);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Decodes a frame written by {@link #encode(Collection)}. An empty index field is swapped for the shared index of
+     * the chunk type, see {@link SharedIndexData#fromStored(String, byte[])}.
+     *
+     * @param frame the frame, read from its position to its limit whatever the buffer's byte order. The position is
+     *              left untouched.
+     * @return the chunks of the frame in the order they were written.
+     *
+     * @throws IOException if the frame is not a chunk frame, is cut short or has bytes past its last chunk.
+     */
+    @Nonnull
+    public static List<PositionedChunk> decode(@Nonnull final ByteBuffer frame) throws IOException {
+        // A slice reads big endian from the frame's position without moving it
+        final ByteBuffer src = frame.slice();
+        require(src, HEADER_SIZE);
+        final byte frameType = src.get();
+        if (frameType != CHUNKS) {
+            throw new IOException("Unknown frame type " + frameType);
+        }
+        final int count = src.getShort() & 0xffff;
+        final List<PositionedChunk> chunks = new ArrayList<>(Math.min(count, src.remaining() / ENTRY_SIZE + 1));
+        for (int i = 0; i < count; i++) {
+            require(src, ENTRY_SIZE);
+            final int x = src.getInt();
+            final int z = src.getInt();
+            final long generationTime = src.getLong();
+            final byte[] type = new byte[src.get() & 0xff];
+            require(src, type.length);
+            src.get(type);
+            final String chunkType = new String(type, StandardCharsets.US_ASCII);
+            final byte[] blockData = getField(src);
+            final byte[] heightData = getField(src);
+            final byte[] biomeData = getField(src);
+            final byte[] indices = SharedIndexData.fromStored(chunkType, getField(src));
+            chunks.add(new PositionedChunk(x, z, new BinaryGlmChunk(chunkType, generationTime, blockData, heightData,
+                    biomeData, indices)));
+        }
+        if (src.hasRemaining()) {
+            throw new IOException(src.remaining() + " bytes past the last chunk of the frame");
+        }
+        return chunks;
+    }
+
+    /**
+     * Converts the index data of a chunk to the form sent in a frame. Recognising the shared index may decode the
+     * payload, so a chunk which is both measured and written should convert once and pass the result to
+     * {@link #getEncodedSize(BinaryGlmChunk, byte[])} and {@link #write(ByteBuffer, int, int, BinaryGlmChunk, byte[])}.
+     *
+     * @param chunk the chunk to convert the index data of.
+     * @return an empty field if the chunk holds the shared index of its type, otherwise the index data.
+     */
+    @Nonnull
+    public static byte[] getStoredIndices(@Nonnull final BinaryGlmChunk chunk) {
+        return SharedIndexData.toStored(chunk.getId(), chunk.getBlockIndicesBytes());
+    }
+
+    /**
+     * @param chunk the chunk to measure.
+     * @return the size of the chunk entry in a frame.
+     */
+    public static int getEncodedSize(@Nonnull final BinaryGlmChunk chunk) {
+        return getEncodedSize(chunk, getStoredIndices(chunk));
+    }
+
+    /**
+     * @param chunk         the chunk to measure.
+     * @param storedIndices the index data of the chunk from {@link #getStoredIndices(BinaryGlmChunk)}.
+     * @return the size of the chunk entry in a frame.
+     */
+    public static int getEncodedSize(@Nonnull final BinaryGlmChunk chunk, @Nonnull final byte[] storedIndices) {
+        return ENTRY_SIZE + chunk.getId().length() + chunk.getBlockDataBytes().length +
+                chunk.getBlockHeightDataBytes().length + chunk.getBlockBiomeDataBytes().length + storedIndices.length;
+    }
+
+    /**
+     * Writes a chunk entry into a frame at its position.
+     *
+     * @param dst   the frame to write to.
+     * @param x     the x position of the chunk.
+     * @param z     the z position of the chunk.
+     * @param chunk the chunk to write.
+     *
+     * @throws IllegalArgumentException if the chunk type is longer than 255 characters.
+     */
+    public static void write(@Nonnull final ByteBuffer dst, final int x, final int z,
+                             @Nonnull final BinaryGlmChunk chunk) {
+        write(dst, x, z, chunk, getStoredIndices(chunk));
+    }
+
+    /**
+     * Writes a chunk entry into a frame at its position.
+     *
+     * @param dst           the frame to write to.
+     * @param x             the x position of the chunk.
+     * @param z             the z position of the chunk.
+     * @param chunk         the chunk to write.
+     * @param storedIndices the index data of the chunk from {@link #getStoredIndices(BinaryGlmChunk)}.
+     *
+     * @throws IllegalArgumentException if the chunk type is longer than 255 characters.
+     */
+    public static void write(@Nonnull final ByteBuffer dst, final int x, final int z,
+                             @Nonnull final BinaryGlmChunk chunk, @Nonnull final byte[] storedIndices) {
+        final byte[] type = chunk.getId().getBytes(StandardCharsets.US_ASCII);
+        if (type.length > 0xff) {
+            throw new IllegalArgumentException("Chunk type is longer than 255 characters: " + chunk.getId());
+        }
+        dst.putInt(x).putInt(z).putLong(chunk.getChunkGenerationTime()).put((byte) type.length).put(type);
+        putField(dst, chunk.getBlockDataBytes());
+        putField(dst, chunk.getBlockHeightDataBytes());
+        putField(dst, chunk.getBlockBiomeDataBytes());
+        putField(dst, storedIndices);
+    }
+
+    /**
+     * Writes a length prefixed field.
+     *
+     * @param dst  the frame to write to.
+     * @param data the field to write.
+     */
+    private static void putField(@Nonnull final ByteBuffer dst, @Nonnull final byte[] data) {
+        dst.putInt(data.length).put(data);
+    }
+
+    /**
+     * Reads a length prefixed field.
+     *
+     * @param src the frame to read from.
+     * @return the field.
+     *
+     * @throws IOException if the length is negative or the frame ends inside the field.
+     */
+    @Nonnull
+    private static byte[] getField(@Nonnull final ByteBuffer src) throws IOException {
+        require(src, 4);
+        final int length = src.getInt();
+        if (length < 0) {
+            throw new IOException("Negative field length " + length);
+        }
+        require(src, length);
+        final byte[] data = new byte[length];
+        src.get(data);
+        return data;
+    }
+
+    /**
+     * @param src   the frame being read.
+     * @param bytes the number of bytes the next read needs.
+     * @throws IOException if fewer bytes remain.
+     */
+    private static void require(@Nonnull final ByteBuffer src, final int bytes) throws IOException {
+        if (src.remaining() < bytes) {
+            throw new IOException("Frame ends " + (bytes - src.remaining()) + " bytes early");
+        }
+    }
+}
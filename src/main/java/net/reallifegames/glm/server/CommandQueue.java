@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The bounded command queue of a single connection. Commands run one at a time in arrival order, each on its own
+ * executor, so a client's messages stay ordered while different clients run in parallel. A command is handed to its
+ * executor by the thread which finished the command before it, so a command whose executor runs tasks on the calling
+ * thread runs on that thread.
+ *
+ * @author Tyler Bucher
+ */
+final class CommandQueue {
+
+    /**
+     * The queued commands, the head is the running command.
+     */
+    @Nonnull
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    /**
+     * True if a command is running or handed to its executor.
+     */
+    private boolean running;
+
+    /**
+     * True once the connection closed, no more commands are accepted.
+     */
+    private boolean closed;
+
+    /**
+     * Queues a command and starts it if nothing else is running.
+     *
+     * @param executor the executor to run the command on.
+     * @param task     the command.
+     * @param rejected run instead of the command if the executor rejects it.
+     * @param maximum  the maximum number of queued commands, including the running one.
+     * @return the queue depth including the new command, 0 if the queue is full or closed, or -1 if the executor
+     * rejected the command straight away, in which case the rejected callback already ran.
+     */
+    int offer(@Nonnull final Executor executor, @Nonnull final Runnable task, @Nonnull final Runnable rejected,
+              final int maximum) {
+        final Entry entry = new Entry(executor, task, rejected);
+        final int depth;
+        synchronized (this) {
+            if (closed || entries.size() >= maximum) {
+                return 0;
+            }
+            entries.add(entry);
+            depth = entries.size();
+            if (running) {
+                return depth;
+            }
+            running = true;
+        }
+        return submit(entry) ? depth : -1;
+    }
+
+    /**
+     * Closes the queue and drops every command which has not started.
+     *
+     * @param dropped run for each dropped command.
+     */
+    void close(@Nonnull final Runnable dropped) {
+        final Entry[] pending;
+        synchronized (this) {
+            closed = true;
+            // Keep the running head so it can finish
+            final Entry head = running ? entries.poll() : null;
+            pending = entries.toArray(new Entry[0]);
+            entries.clear();
+            if (head != null) {
+                entries.add(head);
+            }
+        }
+        for (int i = 0; i < pending.length; i++) {
+            dropped.run();
+        }
+    }
+
+    /**
+     * @return the number of queued commands, including the running one.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Hands a command to its executor.
+     *
+     * @param entry the command to start.
+     * @return false if the executor rejected the command.
+     */
+    private boolean submit(@Nonnull final Entry entry) {
+        try {
+            entry.executor.execute(()->run(entry));
+            return true;
+        } catch (RejectedExecutionException e) {
+            entry.rejected.run();
+            next();
+            return false;
+        }
+    }
+
+    /**
+     * Runs a command and starts the next one.
+     *
+     * @param entry the command to run.
+     */
+    private void run(@Nonnull final Entry entry) {
+        try {
+            entry.task.run();
+        } finally {
+            next();
+        }
+    }
+
+    /**
+     * Removes the finished head and starts the next command if there is one.
+     */
+    private void next() {
+        final Entry next;
+        synchronized (this) {
+            entries.poll();
+            next = entries.peek();
+            if (next == null) {
+                running = false;
+                return;
+            }
+        }
+        submit(next);
+    }
+
+    /**
+     * A queued command.
+     */
+    private static final class Entry {
+
+        /**
+         * The executor to run the command on.
+         */
+        @Nonnull
+        private final Executor executor;
+
+        /**
+         * The command.
+         */
+        @Nonnull
+        private final Runnable task;
+
+        /**
+         * Run instead of the command if the executor rejects it.
+         */
+        @Nonnull
+        private final Runnable rejected;
+
+        /**
+         * Creates a new queued command.
+         *
+         * @param executor the executor to run the command on.
+         * @param task     the command.
+         * @param rejected run instead of the command if the executor rejects it.
+         */
+        private Entry(@Nonnull final Executor executor, @Nonnull final Runnable task,
+                      @Nonnull final Runnable rejected) {
+            this.executor = executor;
+            this.task = task;
+            this.rejected = rejected;
+        }
+    }
+}
@@ -24,24 +24,42 @@
 package net.reallifegames.glm.server;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import net.reallifegames.glm.GlmExecutors;
 import net.reallifegames.glm.api.server.WsCommandRegistrar;
 import net.reallifegames.glm.api.server.WsServerCommand;
 import org.java_websocket.WebSocket;
 
 import javax.annotation.Nonnull;
-import java.net.InetSocketAddress;
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.Nullable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Maintains control over all web socket server commands.
+ * Maintains control over all web socket server commands. Commands run on a configurable executor through a bounded
+ * queue per connection, so a slow command only holds up its own client. A command without an executor, neither its
+ * own nor a default one, runs on the thread which delivered the message when the connection's queue is idle. When it
+ * is queued behind a command with an executor it runs on the thread which ran that command, once it finished.
  *
  * @author Tyler Bucher
  */
 public abstract class CommandRegistrar implements WsCommandRegistrar {
 
+    /**
+     * The default maximum number of queued commands per connection.
+     */
+    public static final int DEFAULT_MAXIMUM_QUEUED_COMMANDS = 64;
+
+    /**
+     * Runs commands on the calling thread.
+     */
+    @Nonnull
+    private static final Executor DIRECT = Runnable::run;
+
     /**
      * The map of commands to command handler objects.
      */
@@ -49,17 +67,107 @@ public abstract class CommandRegistrar implements WsCommandRegistrar {
     protected final ConcurrentMap<String, WsServerCommand> commandMap;
 
     /**
-     * The map of commands to command handler objects.
+     * Limits how often each connection may call each command.
+     */
+    @Nonnull
+    protected final RateLimiter rateLimiter;
+
+    /**
+     * The map of commands to the executors which run them instead of the default executor.
+     */
+    @Nonnull
+    private final ConcurrentMap<String, Executor> commandExecutors = new ConcurrentHashMap<>();
+
+    /**
+     * The command queue of each open connection.
      */
     @Nonnull
-    protected final ConcurrentMap<InetSocketAddress, Map<String, Long>> callMap;
+    private final ConcurrentMap<WebSocket, CommandQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * The executor commands run on or null to run them on the delivering thread.
+     */
+    @Nullable
+    private volatile Executor executor;
+
+    /**
+     * The maximum number of queued commands per connection, including the running one.
+     */
+    private volatile int maximumQueuedCommands = DEFAULT_MAXIMUM_QUEUED_COMMANDS;
+
+    /**
+     * The number of commands accepted into a connection queue.
+     */
+    private final LongAdder submittedCommands = new LongAdder();
+
+    /**
+     * The number of commands which ran to completion, including failed ones.
+     */
+    private final LongAdder completedCommands = new LongAdder();
+
+    /**
+     * The number of commands which threw.
+     */
+    private final LongAdder failedCommands = new LongAdder();
+
+    /**
+     * The number of commands turned away by a full queue or a rejecting executor.
+     */
+    private final LongAdder rejectedCommands = new LongAdder();
+
+    /**
+     * The number of commands currently queued or running over every connection.
+     */
+    private final AtomicInteger queuedCommands = new AtomicInteger();
+
+    /**
+     * The deepest a single connection queue has been.
+     */
+    private final AtomicInteger maximumQueueDepth = new AtomicInteger();
+
+    /**
+     * The summed time commands waited in a queue in nanoseconds.
+     */
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    /**
+     * The summed time commands ran in nanoseconds.
+     */
+    private final LongAdder totalRunNanos = new LongAdder();
+
+    /**
+     * The longest time a command ran in nanoseconds.
+     */
+    private final AtomicLong maximumRunNanos = new AtomicLong();
 
     /**
      * Creates a new gl server command registrar.
      */
     protected CommandRegistrar() {
         this.commandMap = new ConcurrentHashMap<>();
-        this.callMap = new ConcurrentHashMap<>();
+        this.rateLimiter = new RateLimiter();
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the jdk supports it, otherwise a fixed pool of daemon threads.
+     *
+     * @param threads the number of platform threads used when virtual threads are not available.
+     * @return the new executor.
+     */
+    @Nonnull
+    public static ExecutorService createExecutor(final int threads) {
+        return GlmExecutors.newExecutor(threads, "glm-command");
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads.
+     *
+     * @param threads the number of threads.
+     * @return the new executor.
+     */
+    @Nonnull
+    public static ExecutorService createFixedExecutor(final int threads) {
+        return GlmExecutors.newFixedExecutor(threads, "glm-command");
     }
 
     @Override
@@ -71,6 +179,14 @@ public abstract class CommandRegistrar implements WsCommandRegistrar {
         return true;
     }
 
+    /**
+     * @param commandName the name of the command.
+     * @return true if a handler is registered for the command.
+     */
+    public boolean hasCommand(@Nonnull final String commandName) {
+        return commandMap.containsKey(commandName);
+    }
+
     @Override
     public void handleCommand(@Nonnull final WebSocket connection, @Nonnull final JsonNode commandNode) {
         // Create command var
@@ -79,7 +195,7 @@ public abstract class CommandRegistrar implements WsCommandRegistrar {
         // If at neither then send error to client
         if (commandNode.get("cmd") == null) {
             if (commandNode.get("command") == null) {
-                connection.send("{\"error\": \"No command node found\"}");
+                GlmSession.send(connection, "{\"error\": \"No command node found\"}");
                 return;
             } else {
                 command = commandNode.get("command").asText();
@@ -88,30 +204,227 @@ public abstract class CommandRegistrar implements WsCommandRegistrar {
             command = commandNode.get("cmd").asText();
         }
         // Check if handler exists
-        if (!commandMap.containsKey(command)) {
-            connection.send("{\"error\": \"Unknown command\"}");
+        final WsServerCommand wsServerCommand = commandMap.get(command);
+        if (wsServerCommand == null) {
+            GlmSession.send(connection, "{\"error\": \"Unknown command\"}");
             return;
         }
-        // Check if command mapping exists
-        callMap.computeIfAbsent(connection.getRemoteSocketAddress(), k->new HashMap<>());
-        // Avoid double map lookup.
-        final WsServerCommand wsServerCommand = commandMap.get(command);
-        // punish client for not respecting settings
-        if (wsServerCommand.getInterval() > 0) {
-            // Check if command entry exists for connection
-            callMap.get(connection.getRemoteSocketAddress()).putIfAbsent(command, 0L);
-            // Setup vars for checking.
-            final long currentTime = System.currentTimeMillis();
-            final long pastTime = callMap.get(connection.getRemoteSocketAddress()).get(command);
-            if (currentTime - pastTime < wsServerCommand.getInterval()) {
-                punishClient(connection, command, commandNode);
-                return;
-            }
+        // punish client for not respecting settings, the session saves a lookup when the server attached one
+        final GlmSession session = GlmSession.of(connection);
+        final boolean allowed = session == null ?
+                rateLimiter.tryAcquire(connection, command, wsServerCommand.getInterval(), getBurst(wsServerCommand)) :
+                rateLimiter.tryAcquire(session.getRateLimitState(), command, wsServerCommand.getInterval(),
+                        getBurst(wsServerCommand));
+        if (!allowed) {
+            punishClient(connection, command, commandNode);
+            return;
+        }
+        // Queue the command behind the connection's earlier commands
+        dispatch(connection, command, commandNode, wsServerCommand);
+    }
+
+    /**
+     * Queues a command on its connection and starts it when the commands before it finished.
+     *
+     * @param connection      the {@link WebSocket} instance this event is occurring on.
+     * @param command         the name of the command.
+     * @param commandNode     the {@link JsonNode} for the command and parameters.
+     * @param wsServerCommand the handler of the command.
+     */
+    private void dispatch(@Nonnull final WebSocket connection, @Nonnull final String command,
+                          @Nonnull final JsonNode commandNode, @Nonnull final WsServerCommand wsServerCommand) {
+        final Executor commandExecutor = getExecutor(command);
+        final CommandQueue queue = queues.computeIfAbsent(connection, k->new CommandQueue());
+        if (!connection.isOpen()) {
+            // Closed while this message was in flight, do not leave a queue behind
+            queues.remove(connection, queue);
+            return;
         }
-        // Update client call times
-        callMap.get(connection.getRemoteSocketAddress()).put(command, System.currentTimeMillis());
-        // Get command handler
-        wsServerCommand.handle(connection, commandNode);
+        final long queuedAt = System.nanoTime();
+        queuedCommands.incrementAndGet();
+        final int depth = queue.offer(commandExecutor == null ? DIRECT : commandExecutor,
+                ()->execute(connection, command, commandNode, wsServerCommand, queuedAt),
+                ()->reject(connection, "{\"error\": \"Server busy\"}"), maximumQueuedCommands);
+        // A close between the check above and the offer may have missed this queue, close it here instead
+        if (!connection.isOpen() && queues.remove(connection, queue)) {
+            queue.close(queuedCommands::decrementAndGet);
+        }
+        if (depth == 0) {
+            reject(connection, "{\"error\": \"Too many pending commands\"}");
+            return;
+        }
+        if (depth < 0) {
+            // The executor turned it away and the queue already reported it as rejected
+            return;
+        }
+        submittedCommands.increment();
+        maximumQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * Runs a queued command and records its timings.
+     *
+     * @param connection      the {@link WebSocket} instance this event is occurring on.
+     * @param command         the name of the command.
+     * @param commandNode     the {@link JsonNode} for the command and parameters.
+     * @param wsServerCommand the handler of the command.
+     * @param queuedAt        the {@link System#nanoTime()} the command was queued at.
+     */
+    private void execute(@Nonnull final WebSocket connection, @Nonnull final String command,
+                         @Nonnull final JsonNode commandNode, @Nonnull final WsServerCommand wsServerCommand,
+                         final long queuedAt) {
+        final long startedAt = System.nanoTime();
+        totalWaitNanos.add(startedAt - queuedAt);
+        try {
+            wsServerCommand.handle(connection, commandNode);
+        } catch (RuntimeException e) {
+            failedCommands.increment();
+            commandFailed(connection, command, e);
+        } finally {
+            final long runNanos = System.nanoTime() - startedAt;
+            totalRunNanos.add(runNanos);
+            maximumRunNanos.accumulateAndGet(runNanos, Math::max);
+            completedCommands.increment();
+            queuedCommands.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param wsServerCommand the command handler.
+     * @return the number of calls the command allows back to back.
+     */
+    private static int getBurst(@Nonnull final WsServerCommand wsServerCommand) {
+        return wsServerCommand instanceof RateLimitedCommand ? ((RateLimitedCommand) wsServerCommand).getBurst() : 1;
+    }
+
+    /**
+     * Turns a command away.
+     *
+     * @param connection the {@link WebSocket} instance this event is occurring on.
+     * @param error      the error message to send.
+     */
+    private void reject(@Nonnull final WebSocket connection, @Nonnull final String error) {
+        rejectedCommands.increment();
+        queuedCommands.decrementAndGet();
+        if (connection.isOpen()) {
+            GlmSession.send(connection, error);
+        }
+    }
+
+    /**
+     * Called when a command handler throws. Tells the client the command failed.
+     *
+     * @param connection the {@link WebSocket} instance this event is occurring on.
+     * @param command    the name of the command.
+     * @param throwable  what the handler threw.
+     */
+    protected void commandFailed(@Nonnull final WebSocket connection, @Nonnull final String command,
+                                 @Nonnull final Throwable throwable) {
+        if (connection.isOpen()) {
+            GlmSession.send(connection, "{\"error\": \"Command failed\"}");
+        }
+    }
+
+    /**
+     * Drops the rate limit state and queued commands of a closed connection. A command which already started is left
+     * to finish.
+     *
+     * @param connection the {@link WebSocket} instance which closed.
+     */
+    public void connectionClosed(@Nonnull final WebSocket connection) {
+        rateLimiter.remove(connection);
+        final CommandQueue queue = queues.remove(connection);
+        if (queue != null) {
+            queue.close(queuedCommands::decrementAndGet);
+        }
+    }
+
+    /**
+     * @param command the name of the command.
+     * @return the executor the command runs on or null to run it on the delivering thread.
+     */
+    @Nullable
+    public Executor getExecutor(@Nonnull final String command) {
+        final Executor commandExecutor = commandExecutors.get(command);
+        return commandExecutor != null ? commandExecutor : executor;
+    }
+
+    /**
+     * @return the executor commands run on or null if they run on the delivering thread.
+     */
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor commands run on. The registrar does not shut it down.
+     *
+     * @param executor the executor commands run on or null to run them on the delivering thread.
+     */
+    public void setExecutor(@Nullable final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Gives a command its own executor, for example so slow sql backed commands can not starve quick ones. The
+     * registrar does not shut it down.
+     *
+     * @param command  the name of the command.
+     * @param executor the executor the command runs on or null to use the default executor again.
+     */
+    public void setCommandExecutor(@Nonnull final String command, @Nullable final Executor executor) {
+        if (executor == null) {
+            commandExecutors.remove(command);
+        } else {
+            commandExecutors.put(command, executor);
+        }
+    }
+
+    /**
+     * @return the maximum number of queued commands per connection, including the running one.
+     */
+    public int getMaximumQueuedCommands() {
+        return maximumQueuedCommands;
+    }
+
+    /**
+     * Sets the maximum number of queued commands per connection. Commands past it are turned away.
+     *
+     * @param maximumQueuedCommands the maximum number of queued commands per connection, including the running one.
+     */
+    public void setMaximumQueuedCommands(final int maximumQueuedCommands) {
+        if (maximumQueuedCommands < 1) {
+            throw new IllegalArgumentException("maximumQueuedCommands must be at least 1");
+        }
+        this.maximumQueuedCommands = maximumQueuedCommands;
+    }
+
+    /**
+     * @param connection the connection to check.
+     * @return the number of queued commands of the connection, including the running one.
+     */
+    public int getQueueDepth(@Nonnull final WebSocket connection) {
+        final CommandQueue queue = queues.get(connection);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the rate limiter, for its throttled call counters.
+     */
+    @Nonnull
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return a snapshot of the command dispatch counters.
+     */
+    @Nonnull
+    public CommandStats getStats() {
+        return new CommandStats(submittedCommands.sum(), completedCommands.sum(), failedCommands.sum(),
+                rejectedCommands.sum(), queuedCommands.get(), maximumQueueDepth.get(), totalWaitNanos.sum(),
+                totalRunNanos.sum(), maximumRunNanos.get());
     }
 
     /**
@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the command dispatch counters kept by a {@link CommandRegistrar}.
+ *
+ * @author Tyler Bucher
+ */
+public final class CommandStats {
+
+    /**
+     * The number of commands accepted into a connection queue.
+     */
+    private final long submittedCommands;
+
+    /**
+     * The number of commands which ran to completion, including failed ones.
+     */
+    private final long completedCommands;
+
+    /**
+     * The number of commands which threw.
+     */
+    private final long failedCommands;
+
+    /**
+     * The number of commands turned away by a full queue or a rejecting executor.
+     */
+    private final long rejectedCommands;
+
+    /**
+     * The number of commands currently queued or running over every connection.
+     */
+    private final int queuedCommands;
+
+    /**
+     * The deepest a single connection queue has been.
+     */
+    private final int maximumQueueDepth;
+
+    /**
+     * The summed time commands waited in a queue in nanoseconds.
+     */
+    private final long totalWaitNanos;
+
+    /**
+     * The summed time commands ran in nanoseconds.
+     */
+    private final long totalRunNanos;
+
+    /**
+     * The longest time a command ran in nanoseconds.
+     */
+    private final long maximumRunNanos;
+
+    /**
+     * Creates a new command statistics snapshot.
+     *
+     * @param submittedCommands the number of commands accepted into a connection queue.
+     * @param completedCommands the number of commands which ran to completion, including failed ones.
+     * @param failedCommands    the number of commands which threw.
+     * @param rejectedCommands  the number of commands turned away by a full queue or a rejecting executor.
+     * @param queuedCommands    the number of commands currently queued or running over every connection.
+     * @param maximumQueueDepth the deepest a single connection queue has been.
+     * @param totalWaitNanos    the summed time commands waited in a queue in nanoseconds.
+     * @param totalRunNanos     the summed time commands ran in nanoseconds.
+     * @param maximumRunNanos   the longest time a command ran in nanoseconds.
+     */
+    public CommandStats(final long submittedCommands, final long completedCommands, final long failedCommands,
+                        final long rejectedCommands, final int queuedCommands, final int maximumQueueDepth,
+                        final long totalWaitNanos, final long totalRunNanos, final long maximumRunNanos) {
+        this.submittedCommands = submittedCommands;
+        this.completedCommands = completedCommands;
+        this.failedCommands = failedCommands;
+        this.rejectedCommands = rejectedCommands;
+        this.queuedCommands = queuedCommands;
+        this.maximumQueueDepth = maximumQueueDepth;
+        this.totalWaitNanos = totalWaitNanos;
+        this.totalRunNanos = totalRunNanos;
+        this.maximumRunNanos = maximumRunNanos;
+    }
+
+    /**
+     * @return the number of commands accepted into a connection queue.
+     */
+    public long getSubmittedCommands() {
+        return submittedCommands;
+    }
+
+    /**
+     * @return the number of commands which ran to completion, including failed ones.
+     */
+    public long getCompletedCommands() {
+        return completedCommands;
+    }
+
+    /**
+     * @return the number of commands which threw.
+     */
+    public long getFailedCommands() {
+        return failedCommands;
+    }
+
+    /**
+     * @return the number of commands turned away by a full queue or a rejecting executor.
+     */
+    public long getRejectedCommands() {
+        return rejectedCommands;
+    }
+
+    /**
+     * @return the number of commands currently queued or running over every connection.
+     */
+    public int getQueuedCommands() {
+        return queuedCommands;
+    }
+
+    /**
+     * @return the deepest a single connection queue has been.
+     */
+    public int getMaximumQueueDepth() {
+        return maximumQueueDepth;
+    }
+
+    /**
+     * @return the summed time commands waited in a queue in nanoseconds.
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return the summed time commands ran in nanoseconds.
+     */
+    public long getTotalRunNanos() {
+        return totalRunNanos;
+    }
+
+    /**
+     * @return the longest time a command ran in nanoseconds.
+     */
+    public long getMaximumRunNanos() {
+        return maximumRunNanos;
+    }
+
+    /**
+     * @return the average time a command waited in a queue in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        return completedCommands == 0 ? 0 :
+                (double) totalWaitNanos / completedCommands / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the average time a command ran in milliseconds.
+     */
+    public double getAverageRunMillis() {
+        return completedCommands == 0 ? 0 :
+                (double) totalRunNanos / completedCommands / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "CommandStats{submitted=" + submittedCommands + ", completed=" + completedCommands + ", failed=" +
+                failedCommands + ", rejected=" + rejectedCommands + ", queued=" + queuedCommands +
+                ", maximumQueueDepth=" + maximumQueueDepth + ", averageWaitMillis=" + getAverageWaitMillis() +
+                ", averageRunMillis=" + getAverageRunMillis() + ", maximumRunMillis=" +
+                TimeUnit.NANOSECONDS.toMillis(maximumRunNanos) + '}';
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The protocols a client can speak. Clients pick one with the Sec-WebSocket-Protocol header when connecting; clients
+ * which do not send the header get {@link #TEXT}, so older clients keep working unchanged. Errors are always sent as
+ * json text frames.
+ *
+ * @author Tyler Bucher
+ */
+public enum GlmProtocol {
+
+    /**
+     * Json text frames with base64 chunk data.
+     */
+    TEXT(""),
+
+    /**
+     * Json text frames for commands and errors, {@link BinaryChunkFrame} binary frames for chunks.
+     */
+    BINARY("glm.binary.v1");
+
+    /**
+     * The sub protocol name of this protocol, empty for none.
+     */
+    @Nonnull
+    private final String name;
+
+    /**
+     * Creates a new protocol entry.
+     *
+     * @param name the sub protocol name of this protocol, empty for none.
+     */
+    GlmProtocol(@Nonnull final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the sub protocol name of this protocol, empty for none.
+     */
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the drafts a server should accept, offering every protocol with {@link #BINARY} preferred.
+     */
+    @Nonnull
+    public static List<Draft> drafts() {
+        final List<IProtocol> protocols = Arrays.asList(new Protocol(BINARY.name), new Protocol(TEXT.name));
+        return Collections.singletonList(new Draft_6455(Collections.emptyList(), protocols));
+    }
+
+    /**
+     * Gets the protocol a connection settled on during its handshake.
+     *
+     * @param draft the draft of the connection.
+     * @return the negotiated protocol, {@link #TEXT} if none was negotiated.
+     */
+    @Nonnull
+    public static GlmProtocol fromDraft(@Nullable final Draft draft) {
+        if (draft instanceof Draft_6455) {
+            final IProtocol protocol = ((Draft_6455) draft).getProtocol();
+            if (protocol != null && BINARY.name.equals(protocol.getProvidedProtocol())) {
+                return BINARY;
+            }
+        }
+        return TEXT;
+    }
+}
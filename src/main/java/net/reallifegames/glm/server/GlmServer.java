@@ -23,17 +23,31 @@
  */
 package net.reallifegames.glm.server;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import net.reallifegames.glm.api.server.WsCommandRegistrar;
 import net.reallifegames.glm.api.server.WsServer;
+import net.reallifegames.glm.module.PositionedChunk;
 import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The web socket server which handles communications with web socket clients.
@@ -42,6 +56,24 @@ import java.net.InetSocketAddress;
  */
 public abstract class GlmServer extends WebSocketServer implements WsServer {
 
+    /**
+     * The shared json mapper. Mappers are thread safe once configured and expensive to create.
+     */
+    @Nonnull
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The shared reader for incoming messages.
+     */
+    @Nonnull
+    private static final ObjectReader READER = MAPPER.reader();
+
+    /**
+     * The factory for streaming parsers over incoming messages.
+     */
+    @Nonnull
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
     /**
      * Handles all incoming commands.
      */
@@ -49,9 +81,45 @@ public abstract class GlmServer extends WebSocketServer implements WsServer {
     private final WsCommandRegistrar registrar;
 
     /**
-     * The current number if connected clients.
+     * The current number of admitted clients, see {@link #incrementCurrentConnections()}.
+     */
+    @Nonnull
+    private final AtomicInteger currentConnections = new AtomicInteger();
+
+    /**
+     * The maximum number of admitted clients or 0 for no limit.
+     */
+    private volatile int maximumConnections;
+
+    /**
+     * The id handed to the next admitted client.
      */
-    protected int currentConnections;
+    @Nonnull
+    private final AtomicLong nextClientId = new AtomicLong();
+
+    /**
+     * The number of connections admitted.
+     */
+    @Nonnull
+    private final LongAdder acceptedConnections = new LongAdder();
+
+    /**
+     * The number of connections turned away by the connection limit.
+     */
+    @Nonnull
+    private final LongAdder rejectedConnections = new LongAdder();
+
+    /**
+     * The payload bytes received by connections which have closed.
+     */
+    @Nonnull
+    private final LongAdder closedBytesIn = new LongAdder();
+
+    /**
+     * The payload bytes sent to connections which have closed.
+     */
+    @Nonnull
+    private final LongAdder closedBytesOut = new LongAdder();
 
     /**
      * Creates a new Gl server.
@@ -60,40 +128,348 @@ public abstract class GlmServer extends WebSocketServer implements WsServer {
      * @param wsCommandRegistrar the handler for all incoming commands.
      */
     public GlmServer(@Nonnull final InetSocketAddress address, @Nonnull final WsCommandRegistrar wsCommandRegistrar) {
-        super(address);
+        super(address, GlmProtocol.drafts());
         registrar = wsCommandRegistrar;
     }
 
+    /**
+     * Admits the connection and attaches its {@link GlmSession}, or closes it with
+     * {@link CloseFrame#TRY_AGAIN_LATER} when the server is full. Subclasses which override this should check
+     * {@link GlmSession#of(WebSocket)} after calling it; a rejected connection has no session.
+     *
+     * @param conn      the {@link WebSocket} instance this event is occurring on.
+     * @param handshake the handshake of the websocket instance.
+     */
     @Override
     public void onOpen(@Nonnull final WebSocket conn, @Nonnull final ClientHandshake handshake) {
-        currentConnections++;
+        final int maximum = maximumConnections;
+        if (incrementCurrentConnections() > maximum && maximum > 0) {
+            // Shed load before any work is done for the connection
+            decrementCurrentConnections();
+            rejectedConnections.increment();
+            conn.close(CloseFrame.TRY_AGAIN_LATER, "Server full");
+            return;
+        }
+        acceptedConnections.increment();
+        conn.setAttachment(new GlmSession(nextClientId.incrementAndGet(), GlmProtocol.fromDraft(conn.getDraft())));
     }
 
     @Override
     public void onClose(@Nonnull final WebSocket conn, int code, @Nonnull final String reason, boolean remote) {
-        currentConnections--;
+        final GlmSession session = GlmSession.of(conn);
+        // Rejected connections were never counted, and a connection is only uncounted once
+        if (session != null && session.markClosed()) {
+            decrementCurrentConnections();
+            closedBytesIn.add(session.getBytesIn());
+            closedBytesOut.add(session.getBytesOut());
+        }
+        if (registrar instanceof CommandRegistrar) {
+            ((CommandRegistrar) registrar).connectionClosed(conn);
+        }
     }
 
     @Override
     public void onMessage(@Nonnull final WebSocket conn, @Nonnull final String message) {
-        // Attempt to parse json
+        final GlmSession session = GlmSession.of(conn);
+        if (session != null) {
+            session.recordIn(GlmSession.utf8Length(message));
+        }
+        handleMessage(conn, ()->FACTORY.createParser(message));
+    }
+
+    @Override
+    public void onMessage(@Nonnull final WebSocket conn, @Nonnull final ByteBuffer message) {
+        final GlmSession session = GlmSession.of(conn);
+        if (session != null) {
+            session.recordIn(message.remaining());
+        }
+        // Binary frames carry the same utf-8 json commands as text frames
+        if (message.hasArray()) {
+            final int offset = message.arrayOffset() + message.position();
+            handleMessage(conn, ()->FACTORY.createParser(message.array(), offset, message.remaining()));
+        } else {
+            final byte[] data = new byte[message.remaining()];
+            message.get(data);
+            handleMessage(conn, ()->FACTORY.createParser(data));
+        }
+    }
+
+    /**
+     * Parses a message once and hands it to the registrar. The tokens read while looking for the command are buffered
+     * and replayed in front of the rest of the message when the tree is built.
+     *
+     * @param conn   the connection the message arrived on.
+     * @param source opens a parser over the message.
+     */
+    private void handleMessage(@Nonnull final WebSocket conn, @Nonnull final ParserSource source) {
         JsonNode node = null;
-        try {
-            node = new ObjectMapper().readTree(message);
+        try (final JsonParser parser = source.open()) {
+            // Find the command without building a tree
+            final TokenBuffer buffer = new TokenBuffer(parser);
+            final String command = peekCommand(parser, buffer);
+            // Reject what the registrar would reject before paying for the tree
+            if (registrar instanceof CommandRegistrar) {
+                if (command == null) {
+                    GlmSession.send(conn, "{\"error\": \"No command node found\"}");
+                    return;
+                }
+                if (!((CommandRegistrar) registrar).hasCommand(command)) {
+                    GlmSession.send(conn, "{\"error\": \"Unknown command\"}");
+                    return;
+                }
+            }
+            // Attempt to parse json
+            node = READER.readTree(JsonParserSequence.createFlattened(false, buffer.asParser(), parser));
         } catch (IOException e) {
-            conn.send("{\"error\": \"Invalid data format\"}");
+            // Handled below
         }
         // Handle json object
         if (node != null) {
             registrar.handleCommand(conn, node);
         } else {
-            conn.send("{\"error\": \"Invalid data format\"}");
+            GlmSession.send(conn, "{\"error\": \"Invalid data format\"}");
         }
     }
 
+    /**
+     * Sends chunks as a {@link BinaryChunkFrame} if the connection negotiated {@link GlmProtocol#BINARY}. Text
+     * connections are left to the caller, which sends its usual json response.
+     *
+     * @param conn   the connection to send to.
+     * @param chunks the chunks to send.
+     * @return true if the chunks were sent, false if the connection speaks {@link GlmProtocol#TEXT}.
+     */
+    public boolean sendChunks(@Nonnull final WebSocket conn, @Nonnull final Collection<PositionedChunk> chunks) {
+        if (getProtocol(conn) != GlmProtocol.BINARY) {
+            return false;
+        }
+        GlmSession.send(conn, BinaryChunkFrame.encode(chunks));
+        return true;
+    }
+
+    /**
+     * @param conn the connection to check.
+     * @return the protocol the connection negotiated when it opened.
+     */
+    @Nonnull
+    public GlmProtocol getProtocol(@Nonnull final WebSocket conn) {
+        final GlmSession session = GlmSession.of(conn);
+        return session == null ? GlmProtocol.TEXT : session.getProtocol();
+    }
+
+    /**
+     * Streams over a message and pulls out the command name the way {@link CommandRegistrar#handleCommand} reads it:
+     * the text of the top level 'cmd' field, otherwise of the 'command' field. No tree is built and reading stops at
+     * the 'cmd' field, so clients which send it first are answered after a few tokens. Anything past that point is
+     * only validated by the tree parse that follows for known commands.
+     *
+     * @param message the json message.
+     * @return the command name or null if the message is not an object or has neither field.
+     *
+     * @throws IOException if the message is not valid json up to the command.
+     */
+    @Nullable
+    public static String peekCommand(@Nonnull final String message) throws IOException {
+        try (final JsonParser parser = FACTORY.createParser(message)) {
+            return peekCommand(parser, null);
+        }
+    }
+
+    /**
+     * Pulls out the command name from a parser positioned before a message, see {@link #peekCommand(String)}.
+     *
+     * @param parser the parser over the message.
+     * @param buffer receives every token read so they can be replayed, or null to skip them.
+     * @return the command name or null if the message is not an object or has neither field.
+     *
+     * @throws IOException if the message is not valid json up to the command.
+     */
+    @Nullable
+    private static String peekCommand(@Nonnull final JsonParser parser, @Nullable final TokenBuffer buffer)
+            throws IOException {
+        final JsonToken first = parser.nextToken();
+        if (first != JsonToken.START_OBJECT) {
+            // Arrays and scalars carry no command
+            if (first != null) {
+                skip(parser, buffer);
+            }
+            return null;
+        }
+        copy(parser, buffer);
+        String command = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            copy(parser, buffer);
+            final String name = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("cmd".equals(name)) {
+                return valueText(parser, value, buffer);
+            } else if ("command".equals(name)) {
+                command = valueText(parser, value, buffer);
+            } else {
+                skip(parser, buffer);
+            }
+        }
+        if (token != null) {
+            copy(parser, buffer);
+        }
+        return command;
+    }
+
+    /**
+     * Reads the current value as {@link JsonNode#asText()} would render it, skipping containers.
+     *
+     * @param parser the parser positioned on a value.
+     * @param value  the current value token.
+     * @param buffer receives the value, or null.
+     * @return the text of the value.
+     *
+     * @throws IOException if the value is not valid json.
+     */
+    @Nonnull
+    private static String valueText(@Nonnull final JsonParser parser, @Nullable final JsonToken value,
+                                    @Nullable final TokenBuffer buffer) throws IOException {
+        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+            skip(parser, buffer);
+            return "";
+        }
+        final String text = parser.getText();
+        copy(parser, buffer);
+        return text;
+    }
+
+    /**
+     * Moves past the current value, copying it whole into the buffer if there is one.
+     *
+     * @param parser the parser positioned on a value.
+     * @param buffer receives the value, or null.
+     * @throws IOException if the value is not valid json.
+     */
+    private static void skip(@Nonnull final JsonParser parser, @Nullable final TokenBuffer buffer)
+            throws IOException {
+        if (buffer == null) {
+            parser.skipChildren();
+        } else {
+            buffer.copyCurrentStructure(parser);
+        }
+    }
+
+    /**
+     * Copies the current token into the buffer if there is one.
+     *
+     * @param parser the parser positioned on a token.
+     * @param buffer receives the token, or null.
+     * @throws IOException if the token could not be copied.
+     */
+    private static void copy(@Nonnull final JsonParser parser, @Nullable final TokenBuffer buffer)
+            throws IOException {
+        if (buffer != null) {
+            buffer.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Opens a json parser over a message.
+     */
+    @FunctionalInterface
+    private interface ParserSource {
+
+        /**
+         * @return a new parser positioned before the message.
+         *
+         * @throws IOException if the parser could not be created.
+         */
+        @Nonnull
+        JsonParser open() throws IOException;
+    }
+
+    /**
+     * @return the shared reader used for incoming messages.
+     */
+    @Nonnull
+    public static ObjectReader getObjectReader() {
+        return READER;
+    }
+
     @Override
     public int getCurrentConnections() {
-        return currentConnections;
+        return currentConnections.get();
+    }
+
+    /**
+     * Counts an admitted client. {@link #onOpen(WebSocket, ClientHandshake)} calls this for every connection, a
+     * subclass only needs it when it admits connections without calling the super method. Safe to call from any
+     * thread.
+     *
+     * @return the number of admitted clients including the new one.
+     */
+    protected int incrementCurrentConnections() {
+        return currentConnections.incrementAndGet();
+    }
+
+    /**
+     * Stops counting an admitted client. {@link #onClose(WebSocket, int, String, boolean)} calls this for every
+     * connection which was given a {@link GlmSession}, a subclass only needs it to undo its own
+     * {@link #incrementCurrentConnections()}. Safe to call from any thread.
+     *
+     * @return the number of admitted clients left.
+     */
+    protected int decrementCurrentConnections() {
+        return currentConnections.decrementAndGet();
+    }
+
+    /**
+     * @return the maximum number of admitted clients or 0 for no limit.
+     */
+    public int getMaximumConnections() {
+        return maximumConnections;
+    }
+
+    /**
+     * Sets the maximum number of admitted clients. Connections past it are closed as soon as they open.
+     *
+     * @param maximumConnections the maximum number of admitted clients or 0 for no limit.
+     */
+    public void setMaximumConnections(final int maximumConnections) {
+        this.maximumConnections = Math.max(0, maximumConnections);
+    }
+
+    /**
+     * @return the number of connections admitted.
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    /**
+     * @return the number of connections turned away by the connection limit.
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    /**
+     * @return the payload bytes received over every connection since the server started.
+     */
+    public long getBytesIn() {
+        long bytes = closedBytesIn.sum();
+        for (WebSocket connection : getConnections()) {
+            final GlmSession session = GlmSession.of(connection);
+            bytes += session == null ? 0 : session.getBytesIn();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the payload bytes sent over every connection since the server started.
+     */
+    public long getBytesOut() {
+        long bytes = closedBytesOut.sum();
+        for (WebSocket connection : getConnections()) {
+            final GlmSession session = GlmSession.of(connection);
+            bytes += session == null ? 0 : session.getBytesOut();
+        }
+        return bytes;
     }
 
     /**
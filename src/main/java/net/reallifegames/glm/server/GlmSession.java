@@ -0,0 +1,246 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.java_websocket.WebSocket;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a single client connection, attached to its {@link WebSocket} when {@link GlmServer} admits it.
+ * Holds the negotiated protocol, the rate limit state and the traffic counters of the connection.
+ *
+ * @author Tyler Bucher
+ */
+public final class GlmSession {
+
+    /**
+     * The id of the client, unique for the life of the server.
+     */
+    private final long clientId;
+
+    /**
+     * The protocol the connection negotiated.
+     */
+    @Nonnull
+    private final GlmProtocol protocol;
+
+    /**
+     * The rate limit state of the connection.
+     */
+    @Nonnull
+    private final RateLimitState rateLimitState = new RateLimitState();
+
+    /**
+     * The time in milliseconds the connection was opened.
+     */
+    private final long openedAt = System.currentTimeMillis();
+
+    /**
+     * The number of messages received.
+     */
+    private final AtomicLong messagesIn = new AtomicLong();
+
+    /**
+     * The number of payload bytes received.
+     */
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    /**
+     * The number of messages sent.
+     */
+    private final AtomicLong messagesOut = new AtomicLong();
+
+    /**
+     * The number of payload bytes sent.
+     */
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * Set once the server stopped counting the connection.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates a new session.
+     *
+     * @param clientId the id of the client, unique for the life of the server.
+     * @param protocol the protocol the connection negotiated.
+     */
+    public GlmSession(final long clientId, @Nonnull final GlmProtocol protocol) {
+        this.clientId = clientId;
+        this.protocol = protocol;
+    }
+
+    /**
+     * @param connection the connection.
+     * @return the session attached to the connection or null if it was never admitted.
+     */
+    @Nullable
+    public static GlmSession of(@Nonnull final WebSocket connection) {
+        final Object attachment = connection.getAttachment();
+        return attachment instanceof GlmSession ? (GlmSession) attachment : null;
+    }
+
+    /**
+     * Sends a text message and counts it against the connection's session.
+     *
+     * @param connection the connection to send to.
+     * @param message    the message to send.
+     */
+    public static void send(@Nonnull final WebSocket connection, @Nonnull final String message) {
+        final GlmSession session = of(connection);
+        if (session != null) {
+            session.recordOut(utf8Length(message));
+        }
+        connection.send(message);
+    }
+
+    /**
+     * Sends a binary message and counts it against the connection's session.
+     *
+     * @param connection the connection to send to.
+     * @param message    the message to send.
+     */
+    public static void send(@Nonnull final WebSocket connection, @Nonnull final ByteBuffer message) {
+        final GlmSession session = of(connection);
+        if (session != null) {
+            session.recordOut(message.remaining());
+        }
+        connection.send(message);
+    }
+
+    /**
+     * @param text the text to measure.
+     * @return the length of the text encoded as utf-8.
+     */
+    public static int utf8Length(@Nonnull final CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Surrogate pairs count 2 + 2, all other chars 2 or 3
+                length += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Counts a received message.
+     *
+     * @param bytes the payload size of the message.
+     */
+    public void recordIn(final int bytes) {
+        messagesIn.incrementAndGet();
+        bytesIn.addAndGet(bytes);
+    }
+
+    /**
+     * Counts a sent message.
+     *
+     * @param bytes the payload size of the message.
+     */
+    public void recordOut(final int bytes) {
+        messagesOut.incrementAndGet();
+        bytesOut.addAndGet(bytes);
+    }
+
+    /**
+     * Marks the connection closed, so a close reported twice is only counted once.
+     *
+     * @return true the first time, false if the connection was already marked closed.
+     */
+    public boolean markClosed() {
+        return closed.compareAndSet(false, true);
+    }
+
+    /**
+     * @return the id of the client, unique for the life of the server.
+     */
+    public long getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return the protocol the connection negotiated.
+     */
+    @Nonnull
+    public GlmProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return the rate limit state of the connection.
+     */
+    @Nonnull
+    public RateLimitState getRateLimitState() {
+        return rateLimitState;
+    }
+
+    /**
+     * @return the time in milliseconds the connection was opened.
+     */
+    public long getOpenedAt() {
+        return openedAt;
+    }
+
+    /**
+     * @return the number of messages received.
+     */
+    public long getMessagesIn() {
+        return messagesIn.get();
+    }
+
+    /**
+     * @return the number of payload bytes received.
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * @return the number of messages sent.
+     */
+    public long getMessagesOut() {
+        return messagesOut.get();
+    }
+
+    /**
+     * @return the number of payload bytes sent.
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GlmSession{clientId=" + clientId + ", protocol=" + protocol + ", messagesIn=" + messagesIn +
+                ", bytesIn=" + bytesIn + ", messagesOut=" + messagesOut + ", bytesOut=" + bytesOut + '}';
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rate limit state of a single connection: the theoretical arrival time of the next call for each command, as
+ * used by the generic cell rate algorithm. Each command is one {@link AtomicLong} updated with compare and set, so
+ * checks never lock.
+ *
+ * @author Tyler Bucher
+ */
+public final class RateLimitState {
+
+    /**
+     * The theoretical arrival time of the next call in {@link System#nanoTime()} units, keyed by command.
+     */
+    @Nonnull
+    private final ConcurrentMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+
+    /**
+     * Tries to take a call for a command. A command allows burst calls back to back, then one per interval.
+     *
+     * @param command       the name of the command.
+     * @param intervalNanos the time between calls in nanoseconds.
+     * @param burst         the number of calls allowed back to back, at least 1.
+     * @param now           the current {@link System#nanoTime()}.
+     * @return true if the call is allowed, false if it came too soon.
+     */
+    public boolean tryAcquire(@Nonnull final String command, final long intervalNanos, final int burst,
+                              final long now) {
+        AtomicLong arrival = arrivals.get(command);
+        if (arrival == null) {
+            arrival = arrivals.computeIfAbsent(command, k->new AtomicLong(now));
+        }
+        final long tolerance = intervalNanos * (Math.max(1, burst) - 1);
+        while (true) {
+            final long expected = arrival.get();
+            // Compare as a difference, nanoTime may wrap
+            if (now - (expected - tolerance) < 0) {
+                return false;
+            }
+            final long next = (now - expected > 0 ? now : expected) + intervalNanos;
+            if (arrival.compareAndSet(expected, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of commands this connection has called.
+     */
+    public int size() {
+        return arrivals.size();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.java_websocket.WebSocket;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how often each connection may call each command with a token bucket, see {@link RateLimitState}. State is
+ * kept per connection and dropped when the connection closes.
+ *
+ * @author Tyler Bucher
+ */
+public class RateLimiter {
+
+    /**
+     * The rate limit state of each open connection.
+     */
+    @Nonnull
+    private final ConcurrentMap<WebSocket, RateLimitState> states = new ConcurrentHashMap<>();
+
+    /**
+     * The number of calls allowed.
+     */
+    private final LongAdder allowedCalls = new LongAdder();
+
+    /**
+     * The number of calls throttled.
+     */
+    private final LongAdder throttledCalls = new LongAdder();
+
+    /**
+     * The number of calls throttled keyed by command.
+     */
+    @Nonnull
+    private final ConcurrentMap<String, LongAdder> throttledCommands = new ConcurrentHashMap<>();
+
+    /**
+     * Tries to take a call for a command on a connection.
+     *
+     * @param connection     the connection making the call.
+     * @param command        the name of the command.
+     * @param intervalMillis the time between calls in milliseconds, 0 or less for no limit.
+     * @param burst          the number of calls allowed back to back.
+     * @return true if the call is allowed, false if it was throttled.
+     */
+    public boolean tryAcquire(@Nonnull final WebSocket connection, @Nonnull final String command,
+                              final long intervalMillis, final int burst) {
+        if (intervalMillis <= 0) {
+            allowedCalls.increment();
+            return true;
+        }
+        return tryAcquire(getState(connection), command, intervalMillis, burst);
+    }
+
+    /**
+     * Tries to take a call for a command against already looked up connection state.
+     *
+     * @param state          the rate limit state of the connection making the call.
+     * @param command        the name of the command.
+     * @param intervalMillis the time between calls in milliseconds, 0 or less for no limit.
+     * @param burst          the number of calls allowed back to back.
+     * @return true if the call is allowed, false if it was throttled.
+     */
+    public boolean tryAcquire(@Nonnull final RateLimitState state, @Nonnull final String command,
+                              final long intervalMillis, final int burst) {
+        return tryAcquire(state, command, intervalMillis, burst, System.nanoTime());
+    }
+
+    /**
+     * Tries to take a call for a command against already looked up connection state at a given time.
+     *
+     * @param state          the rate limit state of the connection making the call.
+     * @param command        the name of the command.
+     * @param intervalMillis the time between calls in milliseconds, 0 or less for no limit.
+     * @param burst          the number of calls allowed back to back.
+     * @param now            the current {@link System#nanoTime()}.
+     * @return true if the call is allowed, false if it was throttled.
+     */
+    public boolean tryAcquire(@Nonnull final RateLimitState state, @Nonnull final String command,
+                              final long intervalMillis, final int burst, final long now) {
+        if (intervalMillis <= 0 || state.tryAcquire(command, TimeUnit.MILLISECONDS.toNanos(intervalMillis), burst,
+                now)) {
+            allowedCalls.increment();
+            return true;
+        }
+        throttledCalls.increment();
+        throttledCommands.computeIfAbsent(command, k->new LongAdder()).increment();
+        return false;
+    }
+
+    /**
+     * @param connection the connection.
+     * @return the rate limit state of the connection, created if needed.
+     */
+    @Nonnull
+    public RateLimitState getState(@Nonnull final WebSocket connection) {
+        final RateLimitState state = states.get(connection);
+        return state != null ? state : states.computeIfAbsent(connection, k->new RateLimitState());
+    }
+
+    /**
+     * Drops the state of a closed connection.
+     *
+     * @param connection the connection which closed.
+     */
+    public void remove(@Nonnull final WebSocket connection) {
+        states.remove(connection);
+    }
+
+    /**
+     * @return the number of connections with rate limit state.
+     */
+    public int getTrackedConnections() {
+        return states.size();
+    }
+
+    /**
+     * @return the number of calls allowed.
+     */
+    public long getAllowedCalls() {
+        return allowedCalls.sum();
+    }
+
+    /**
+     * @return the number of calls throttled.
+     */
+    public long getThrottledCalls() {
+        return throttledCalls.sum();
+    }
+
+    /**
+     * @param command the name of the command.
+     * @return the number of calls to the command throttled.
+     */
+    public long getThrottledCalls(@Nonnull final String command) {
+        final LongAdder throttled = throttledCommands.get(command);
+        return throttled == null ? 0 : throttled.sum();
+    }
+}
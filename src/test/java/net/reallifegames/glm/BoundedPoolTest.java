@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link BoundedPool}.
+ *
+ * @author Tyler Bucher
+ */
+public class BoundedPoolTest {
+
+    /**
+     * Objects given back are borrowed again and the ones which do not fit are disposed of.
+     */
+    @Test
+    public void idleObjectsAreReusedUpToTheCapacity() {
+        final AtomicInteger created = new AtomicInteger();
+        final List<Integer> disposed = new ArrayList<>();
+        final BoundedPool<Integer> pool = new BoundedPool<>(2, created::incrementAndGet, disposed::add);
+        final Integer first = pool.borrow();
+        final Integer second = pool.borrow();
+        final Integer third = pool.borrow();
+        assertEquals(3, created.get());
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(1, disposed.size());
+        assertSame(third, disposed.get(0));
+        assertSame(first, pool.borrow());
+        assertEquals(3, created.get());
+    }
+}
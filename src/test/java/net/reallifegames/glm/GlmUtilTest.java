@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the bulk conversions of {@link GlmUtil}.
+ *
+ * @author Tyler Bucher
+ */
+public class GlmUtilTest {
+
+    /**
+     * Ints with every byte distinct plus the edge values, an odd number of them.
+     */
+    private static final int[] INTS = {0x01020304, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0};
+
+    /**
+     * Shorts with both bytes distinct plus the edge values, an odd number of them.
+     */
+    private static final short[] SHORTS = {0x0102, Short.MIN_VALUE, Short.MAX_VALUE, -1, 0};
+
+    /**
+     * Longs with every byte distinct plus the edge values, an odd number of them.
+     */
+    private static final long[] LONGS = {0x0102030405060708L, Long.MIN_VALUE, Long.MAX_VALUE, -1L, 0L};
+
+    /**
+     * The byte orders every conversion is tested in.
+     */
+    private static final ByteOrder[] ORDERS = {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN};
+
+    /**
+     * Values are written in the asked for byte order, big endian by default.
+     */
+    @Test
+    public void valuesAreWrittenInTheirByteOrder() {
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, GlmUtil.intToByte(new int[]{0x01020304}));
+        assertArrayEquals(new byte[]{4, 3, 2, 1}, GlmUtil.intToByte(new int[]{0x01020304}, ByteOrder.LITTLE_ENDIAN));
+        assertArrayEquals(new byte[]{1, 2}, GlmUtil.shortToByte(new short[]{0x0102}));
+        assertArrayEquals(new byte[]{2, 1}, GlmUtil.shortToByte(new short[]{0x0102}, ByteOrder.LITTLE_ENDIAN));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, GlmUtil.longToByte(new long[]{0x0102030405060708L}));
+        assertArrayEquals(new byte[]{8, 7, 6, 5, 4, 3, 2, 1},
+                GlmUtil.longToByte(new long[]{0x0102030405060708L}, ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Whole arrays convert back to the values they were written from in either byte order.
+     */
+    @Test
+    public void arraysRoundTrip() {
+        for (final ByteOrder order : ORDERS) {
+            assertArrayEquals(INTS, GlmUtil.byteToInt(GlmUtil.intToByte(INTS, order), order));
+            assertArrayEquals(SHORTS, GlmUtil.byteToShort(GlmUtil.shortToByte(SHORTS, order), order));
+            assertArrayEquals(LONGS, GlmUtil.byteToLong(GlmUtil.longToByte(LONGS, order), order));
+            assertArrayEquals(new int[0], GlmUtil.byteToInt(GlmUtil.intToByte(new int[0], order), order));
+        }
+        assertArrayEquals(GlmUtil.intToByte(INTS), GlmUtil.intToByte(INTS, ByteOrder.BIG_ENDIAN));
+    }
+
+    /**
+     * Byte arrays which do not hold a whole number of values are refused.
+     */
+    @Test
+    public void partialValuesAreRefused() {
+        for (int length = 1; length < 8; length++) {
+            final byte[] bytes = new byte[length];
+            if ((length & 3) != 0) {
+                assertRefused(()->GlmUtil.byteToInt(bytes, ByteOrder.BIG_ENDIAN));
+            }
+            if ((length & 1) != 0) {
+                assertRefused(()->GlmUtil.byteToShort(bytes, ByteOrder.BIG_ENDIAN));
+            }
+            assertRefused(()->GlmUtil.byteToLong(bytes, ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    /**
+     * Ranges at odd offsets of both arrays round trip and leave the bytes around them alone.
+     */
+    @Test
+    public void arrayRangesRoundTripAtOddOffsets() {
+        for (final ByteOrder order : ORDERS) {
+            final byte[] bytes = filled(3 + (3 << 3) + 2);
+            assertEquals(3 << 2, GlmUtil.intToByte(INTS, 1, 3, bytes, 3, order));
+            assertUntouched(bytes, 3, 3 << 2);
+            final int[] ints = new int[5];
+            GlmUtil.byteToInt(bytes, 3, ints, 1, 3, order);
+            assertArrayEquals(new int[]{0, INTS[1], INTS[2], INTS[3], 0}, ints);
+
+            final byte[] shortBytes = filled(3 + (3 << 3) + 2);
+            assertEquals(3 << 1, GlmUtil.shortToByte(SHORTS, 1, 3, shortBytes, 3, order));
+            assertUntouched(shortBytes, 3, 3 << 1);
+            final short[] shorts = new short[5];
+            GlmUtil.byteToShort(shortBytes, 3, shorts, 1, 3, order);
+            assertArrayEquals(new short[]{0, SHORTS[1], SHORTS[2], SHORTS[3], 0}, shorts);
+
+            final byte[] longBytes = filled(3 + (3 << 3) + 2);
+            assertEquals(3 << 3, GlmUtil.longToByte(LONGS, 1, 3, longBytes, 3, order));
+            assertUntouched(longBytes, 3, 3 << 3);
+            final long[] longs = new long[5];
+            GlmUtil.byteToLong(longBytes, 3, longs, 1, 3, order);
+            assertArrayEquals(new long[]{0, LONGS[1], LONGS[2], LONGS[3], 0}, longs);
+        }
+    }
+
+    /**
+     * Heap and direct buffers round trip in their own byte order from a non zero position, and their positions move
+     * past exactly the converted bytes.
+     */
+    @Test
+    public void buffersRoundTripFromTheirPosition() {
+        for (final ByteOrder order : ORDERS) {
+            for (final boolean direct : new boolean[]{false, true}) {
+                final int start = 5;
+                final int length = (INTS.length << 2) + (SHORTS.length << 1) + (LONGS.length << 3);
+                final ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect(start + length + 3) :
+                        ByteBuffer.allocate(start + length + 3)).order(order);
+                buffer.position(start);
+                assertEquals(INTS.length << 2, GlmUtil.intToByte(INTS, 0, INTS.length, buffer));
+                assertEquals(SHORTS.length << 1, GlmUtil.shortToByte(SHORTS, 0, SHORTS.length, buffer));
+                assertEquals(LONGS.length << 3, GlmUtil.longToByte(LONGS, 0, LONGS.length, buffer));
+                assertEquals(start + length, buffer.position());
+                // The buffer holds what the array conversions write in the same order
+                final byte[] written = new byte[INTS.length << 2];
+                buffer.position(start);
+                buffer.get(written);
+                assertArrayEquals(GlmUtil.intToByte(INTS, order), written);
+
+                buffer.position(start);
+                final int[] ints = new int[INTS.length];
+                final short[] shorts = new short[SHORTS.length];
+                final long[] longs = new long[LONGS.length];
+                GlmUtil.byteToInt(buffer, ints, 0, ints.length);
+                GlmUtil.byteToShort(buffer, shorts, 0, shorts.length);
+                GlmUtil.byteToLong(buffer, longs, 0, longs.length);
+                assertEquals(start + length, buffer.position());
+                assertArrayEquals(INTS, ints);
+                assertArrayEquals(SHORTS, shorts);
+                assertArrayEquals(LONGS, longs);
+            }
+        }
+    }
+
+    /**
+     * Buffers without room for every value are refused without moving their position.
+     */
+    @Test
+    public void shortBuffersAreRefused() {
+        final ByteBuffer buffer = ByteBuffer.allocate(7);
+        buffer.position(1);
+        try {
+            GlmUtil.intToByte(INTS, 0, 2, buffer);
+            fail("Expected a buffer overflow");
+        } catch (BufferOverflowException expected) {
+            assertEquals(1, buffer.position());
+        }
+        try {
+            GlmUtil.byteToLong(buffer, new long[1], 0, 1);
+            fail("Expected a buffer underflow");
+        } catch (BufferUnderflowException expected) {
+            assertEquals(1, buffer.position());
+        }
+        GlmUtil.byteToShort(buffer, new short[3], 0, 3);
+        assertEquals(7, buffer.position());
+    }
+
+    /**
+     * @param length the length of the array.
+     * @return an array of the given length filled with a marker byte.
+     */
+    private static byte[] filled(final int length) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 0x5A);
+        return bytes;
+    }
+
+    /**
+     * Asserts only the given range of a {@link #filled(int)} array was written.
+     *
+     * @param bytes  the array.
+     * @param offset the first written byte.
+     * @param length the number of written bytes.
+     */
+    private static void assertUntouched(final byte[] bytes, final int offset, final int length) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (i < offset || i >= offset + length) {
+                assertEquals("Byte " + i, 0x5A, bytes[i]);
+            }
+        }
+    }
+
+    /**
+     * Asserts the conversion throws an {@link IllegalArgumentException}.
+     *
+     * @param conversion the conversion to run.
+     */
+    private static void assertRefused(final Runnable conversion) {
+        try {
+            conversion.run();
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Refused
+        }
+    }
+}
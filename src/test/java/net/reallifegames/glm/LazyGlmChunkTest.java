@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the base64 output of {@link LazyGlmChunk}.
+ *
+ * @author Tyler Bucher
+ */
+public class LazyGlmChunkTest {
+
+    /**
+     * Every tail length, including no tail and one or two trailing bytes, matches the jdk encoder and its padding.
+     */
+    @Test
+    public void base64MatchesTheJdkForEveryTail() {
+        final Random random = new Random(42);
+        for (int length = 0; length <= 9; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertBase64(data, false);
+            assertBase64(data, true);
+        }
+    }
+
+    /**
+     * Bytes with the high bit set index the alphabet as unsigned values.
+     */
+    @Test
+    public void base64ReadsBytesUnsigned() {
+        assertBase64(new byte[]{-1, -1, -1, -128, 0x7f}, false);
+        assertBase64(new byte[]{-2}, true);
+    }
+
+    /**
+     * Text which does not fit is not partly written.
+     */
+    @Test
+    public void base64OverflowLeavesThePositionUnchanged() {
+        final LazyGlmChunk chunk = chunk(new byte[]{1, 2, 3, 4});
+        final ByteBuffer dst = ByteBuffer.allocate(9);
+        dst.position(2);
+        try {
+            chunk.writeBase64(LazyGlmChunk.Field.BLOCK_DATA, dst);
+            fail("Text larger than the buffer was written");
+        } catch (BufferOverflowException expected) {
+            assertEquals(2, dst.position());
+        }
+    }
+
+    /**
+     * Writes a field as base64 after a marker byte and checks it against the jdk encoder.
+     *
+     * @param data   the encoded field.
+     * @param direct true to write to a direct buffer.
+     */
+    private static void assertBase64(@Nonnull final byte[] data, final boolean direct) {
+        final LazyGlmChunk chunk = chunk(data);
+        final String expected = Base64.getEncoder().encodeToString(data);
+        assertEquals(expected.length(), chunk.getBase64Length(LazyGlmChunk.Field.BLOCK_DATA));
+        final ByteBuffer dst = direct ? ByteBuffer.allocateDirect(expected.length() + 2) :
+                ByteBuffer.allocate(expected.length() + 2);
+        dst.put((byte) '#');
+        assertEquals(expected.length(), chunk.writeBase64(LazyGlmChunk.Field.BLOCK_DATA, dst));
+        assertEquals(expected.length() + 1, dst.position());
+        final byte[] text = new byte[expected.length()];
+        dst.flip().position(1);
+        dst.get(text);
+        assertEquals(expected, new String(text, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param blockData the encoded block data.
+     * @return a chunk holding the block data and empty other fields.
+     */
+    @Nonnull
+    private static LazyGlmChunk chunk(@Nonnull final byte[] blockData) {
+        return new LazyGlmChunk(GlmChunkTypes.TWO_DIMENSIONAL_GZIP.getType(), 0, blockData, new byte[0],
+                new byte[0], new byte[0], false);
+    }
+}
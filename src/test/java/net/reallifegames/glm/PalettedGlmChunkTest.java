@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import net.reallifegames.glm.codec.PaletteCodec;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link PalettedGlmChunk}.
+ *
+ * @author Tyler Bucher
+ */
+public class PalettedGlmChunkTest {
+
+    /**
+     * Block ids with a few distinct values.
+     */
+    private static final int[] BLOCK_IDS = {1, 1, 2, 7, 7, 7, 0, 2};
+
+    /**
+     * Biome ids with a single value.
+     */
+    private static final int[] BIOME_IDS = {4, 4, 4, 4};
+
+    /**
+     * Height data as comma separated text.
+     */
+    private static final byte[] HEIGHTS = "64,65,65,66,70,70,71,63".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Chunks of a type whose codec is not the palette codec are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void createRejectsNonPaletteTypes() {
+        PalettedGlmChunk.create(GlmChunkTypes.TWO_DIMENSIONAL_GZIP, 0, BLOCK_IDS, HEIGHTS, BIOME_IDS, new byte[0]);
+    }
+
+    /**
+     * A created chunk survives being stored and read back as plain bytes.
+     */
+    @Test
+    public void createdChunkReadsBackFromBinary() throws IOException {
+        final PalettedGlmChunk chunk = PalettedGlmChunk.create(GlmChunkTypes.THREE_DIMENSIONAL_PALETTE, 42, BLOCK_IDS,
+                HEIGHTS, BIOME_IDS, new byte[0]);
+        final PalettedGlmChunk read = PalettedGlmChunk.fromBinary(new BinaryGlmChunk(chunk.getId(), 42,
+                chunk.getBlockDataBytes(), chunk.getBlockHeightDataBytes(), chunk.getBlockBiomeDataBytes(),
+                chunk.getBlockIndicesBytes()));
+        assertEquals(GlmChunkTypes.THREE_DIMENSIONAL_PALETTE.getType(), read.getId());
+        assertArrayEquals(BLOCK_IDS, read.getBlockPalette().toArray());
+        assertArrayEquals(BIOME_IDS, read.getBiomePalette().toArray());
+        assertArrayEquals(HEIGHTS, PaletteCodec.INSTANCE.decode(read.getBlockHeightDataBytes()));
+        assertEquals(0, read.getBlockIndicesBytes().length);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link SharedIndexData}.
+ *
+ * @author Tyler Bucher
+ */
+public class SharedIndexDataTest {
+
+    /**
+     * A two dimensional chunk type with a shared index payload.
+     */
+    private static final String TYPE = GlmChunkTypes.TWO_DIMENSIONAL_GZIP.getType();
+
+    /**
+     * The uncompressed two dimensional index data.
+     */
+    private static final byte[] INDICES = GzipGlmChunk.TWO_DIMENSIONAL_INDICES.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Restores the default compression level.
+     */
+    @After
+    public void tearDown() {
+        GzipCompressor.setDefaultLevel(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Index data encoded at another default level still matches the shared payload.
+     */
+    @Test
+    public void payloadsAtOtherLevelsMatch() {
+        for (final int level : new int[]{Deflater.NO_COMPRESSION, Deflater.BEST_SPEED}) {
+            GzipCompressor.setDefaultLevel(level);
+            final byte[] indices = BinaryGlmChunk.encode(GlmChunkTypes.TWO_DIMENSIONAL_GZIP, 0, new byte[0],
+                    new byte[0], new byte[0], INDICES).getBlockIndicesBytes();
+            assertFalse(Arrays.equals(SharedIndexData.get(TYPE), indices));
+            assertEquals(0, SharedIndexData.toStored(TYPE, indices).length);
+            assertSame(SharedIndexData.get(TYPE), SharedIndexData.fromStored(TYPE, indices));
+            final String text = Base64.getEncoder().encodeToString(indices);
+            assertSame(SharedIndexData.getText(TYPE), SharedIndexData.intern(TYPE, text));
+        }
+    }
+
+    /**
+     * Other index data, other chunk types and text which is not a payload are left alone.
+     */
+    @Test
+    public void otherDataDoesNotMatch() {
+        final byte[] other = GlmChunkTypes.TWO_DIMENSIONAL_GZIP.getCodec().encode("1,2,3".getBytes(
+                StandardCharsets.US_ASCII));
+        assertSame(other, SharedIndexData.toStored(TYPE, other));
+        assertSame(other, SharedIndexData.fromStored(TYPE, other));
+        final byte[] shared = SharedIndexData.get(TYPE);
+        final String threeDimensional = GlmChunkTypes.THREE_DIMENSIONAL_GZIP.getType();
+        assertSame(shared, SharedIndexData.toStored(threeDimensional, shared));
+        final String text = "not base64!";
+        assertSame(text, SharedIndexData.intern(TYPE, text));
+        final String plain = Base64.getEncoder().encodeToString(INDICES);
+        assertNotSame(SharedIndexData.getText(TYPE), SharedIndexData.intern(TYPE, plain));
+        assertEquals(0, SharedIndexData.fromStored(threeDimensional, new byte[0]).length);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.api.GlmChunk;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests for concurrent inserts and lookups on a {@link ChunkCache}.
+ *
+ * @author Tyler Bucher
+ */
+public class ChunkCacheConcurrencyTest {
+
+    /**
+     * The number of threads inserting and reading at once.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * The number of chunks each thread inserts.
+     */
+    private static final int CHUNKS_PER_THREAD = 20_000;
+
+    /**
+     * The world every test uses.
+     */
+    private static final String WORLD = "world";
+
+    /**
+     * Concurrent inserts of distinct chunks into an unbounded cache must all be readable afterwards.
+     */
+    @Test
+    public void concurrentInsertsAreNeverLost() throws Exception {
+        final ChunkCache cache = new ChunkCache();
+        final GlmChunk[] chunks = new GlmChunk[THREADS];
+        runConcurrently(thread->{
+            final GlmChunk chunk = chunk(thread);
+            chunks[thread] = chunk;
+            for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+                final long key = key(thread, i);
+                cache.put(WORLD, key, chunk, 0);
+                // A thread must always see its own insert
+                assertSame(chunk, cache.get(WORLD, key));
+            }
+            return null;
+        });
+        assertEquals(THREADS * CHUNKS_PER_THREAD, cache.size(WORLD));
+        assertEquals(THREADS * CHUNKS_PER_THREAD, cache.size());
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+                assertSame(chunks[thread], cache.get(WORLD, key(thread, i)));
+            }
+        }
+        assertEquals(0, cache.getStats().getEvictionCount());
+    }
+
+    /**
+     * Concurrent inserts into a bounded cache must respect the limit and keep the counters consistent.
+     */
+    @Test
+    public void concurrentInsertsRespectTheWorldLimit() throws Exception {
+        final ChunkCache cache = new ChunkCache();
+        final int limit = 1024;
+        runConcurrently(thread->{
+            final GlmChunk chunk = chunk(thread);
+            for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+                cache.put(WORLD, key(thread, i), chunk, limit);
+            }
+            return null;
+        });
+        assertTrue(cache.size(WORLD) <= limit);
+        int present = 0;
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+                if (cache.contains(WORLD, key(thread, i))) {
+                    present++;
+                }
+            }
+        }
+        assertEquals(cache.size(WORLD), present);
+        assertEquals(THREADS * CHUNKS_PER_THREAD - present, cache.getStats().getEvictionCount());
+    }
+
+    /**
+     * A chunk which was just inserted must survive the eviction its own insert triggers.
+     */
+    @Test
+    public void insertedChunkSurvivesItsOwnEviction() {
+        final ChunkCache cache = new ChunkCache();
+        final GlmChunk chunk = chunk(0);
+        for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+            cache.put(WORLD, key(0, i), chunk, 32);
+            assertNotNull("chunk " + i + " was evicted by its own insert", cache.get(WORLD, key(0, i)));
+        }
+        assertEquals(32, cache.size(WORLD));
+    }
+
+    /**
+     * A chunk which is read between every insert must never be evicted.
+     */
+    @Test
+    public void referencedChunkIsKept() {
+        final ChunkCache cache = new ChunkCache();
+        final GlmChunk chunk = chunk(0);
+        final long hot = key(1, 0);
+        cache.put(WORLD, hot, chunk, 32);
+        for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+            cache.put(WORLD, key(0, i), chunk, 32);
+            assertNotNull("hot chunk evicted after insert " + i, cache.get(WORLD, hot));
+        }
+    }
+
+    /**
+     * Lookups never lock, so they complete while another thread holds a segment lock.
+     */
+    @Test
+    public void readsDoNotWaitForSegmentLocks() throws Exception {
+        final ChunkCache cache = new ChunkCache();
+        final GlmChunk chunk = chunk(0);
+        for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+            cache.put(WORLD, key(0, i), chunk, 0);
+        }
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The filter runs while its segment is locked, so this parks a writer inside the lock
+            final Future<Integer> writer = executor.submit(()->cache.removeIf(WORLD, key->{
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }));
+            assertTrue(locked.await(1, TimeUnit.MINUTES));
+            final Future<Integer> reader = executor.submit(()->{
+                int found = 0;
+                for (int i = 0; i < CHUNKS_PER_THREAD; i++) {
+                    if (cache.get(WORLD, key(0, i)) != null && cache.contains(WORLD, key(0, i))) {
+                        found++;
+                    }
+                }
+                return found;
+            });
+            // Every segment, including the locked one, answers while the writer still holds the lock
+            assertEquals(CHUNKS_PER_THREAD, (int) reader.get(1, TimeUnit.MINUTES));
+            assertFalse(writer.isDone());
+            release.countDown();
+            assertEquals(0, (int) writer.get(1, TimeUnit.MINUTES));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a task on every test thread at the same time.
+     *
+     * @param task the task to run, given the index of its thread.
+     */
+    private static void runConcurrently(@Nonnull final ThreadTask<Void> task) throws Exception {
+        runConcurrently(THREADS, task);
+    }
+
+    /**
+     * Runs a task on a number of threads at the same time and rethrows the first failure.
+     *
+     * @param threads the number of threads.
+     * @param task    the task to run, given the index of its thread.
+     * @param <T>     the result type of the task.
+     * @return the result of every thread in thread order.
+     */
+    @Nonnull
+    private static <T> List<T> runConcurrently(final int threads, @Nonnull final ThreadTask<T> task)
+            throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CyclicBarrier start = new CyclicBarrier(threads);
+            final List<Future<T>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                futures.add(executor.submit((Callable<T>) ()->{
+                    start.await();
+                    return task.run(thread);
+                }));
+            }
+            final List<T> results = new ArrayList<>(threads);
+            for (final Future<T> future : futures) {
+                results.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param thread the index of the inserting thread.
+     * @param index  the index of the chunk within the thread.
+     * @return a packed chunk position unique to the thread and index.
+     */
+    private static long key(final int thread, final int index) {
+        return ((long) thread << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param thread the index of the inserting thread.
+     * @return a chunk owned by the thread.
+     */
+    @Nonnull
+    private static GlmChunk chunk(final int thread) {
+        return new GzipGlmChunk("chunk" + thread, thread, "", "", "", "");
+    }
+
+    /**
+     * A task run on a single test thread.
+     *
+     * @param <T> the result type of the task.
+     */
+    @FunctionalInterface
+    private interface ThreadTask<T> {
+
+        /**
+         * @param thread the index of the thread running the task.
+         * @return the result of the task.
+         */
+        T run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.cache;
+
+import net.reallifegames.glm.GzipGlmChunk;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link LongEntryTable}.
+ *
+ * @author Tyler Bucher
+ */
+public class LongEntryTableTest {
+
+    /**
+     * Removed slots never answer a lookup, also for the key 0 and for keys probed past a removed slot.
+     */
+    @Test
+    public void removedEntriesAreNeverFound() {
+        final LongEntryTable table = new LongEntryTable();
+        final CacheEntry zero = entry(0);
+        table.put(zero);
+        assertSame(zero, table.get(0));
+        assertSame(zero, table.remove(0));
+        assertNull(table.get(0));
+        assertNull(table.remove(0));
+        for (long key = 1; key <= 12; key++) {
+            table.put(entry(key));
+        }
+        for (long key = 1; key <= 12; key += 2) {
+            table.remove(key);
+        }
+        for (long key = 1; key <= 12; key++) {
+            final CacheEntry entry = table.get(key);
+            if ((key & 1) == 0) {
+                assertEquals(key, entry.key);
+            } else {
+                assertNull(entry);
+            }
+        }
+        assertEquals(6, table.size());
+    }
+
+    /**
+     * Putting a removed key back reuses a slot, replacing returns the old entry and rehashing drops the removed
+     * slots.
+     */
+    @Test
+    public void slotsAreReusedAndRehashed() {
+        final LongEntryTable table = new LongEntryTable();
+        for (int round = 0; round < 1000; round++) {
+            final long key = round % 5;
+            final CacheEntry entry = entry(key);
+            table.put(entry);
+            assertSame(entry, table.remove(key));
+        }
+        assertEquals(0, table.size());
+        final CacheEntry first = entry(-1);
+        final CacheEntry second = entry(-1);
+        assertNull(table.put(first));
+        assertSame(first, table.put(second));
+        for (long key = 0; key < 1000; key++) {
+            table.put(entry(key));
+        }
+        assertEquals(1001, table.size());
+        assertSame(second, table.get(-1));
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(key, table.get(key).key);
+        }
+    }
+
+    /**
+     * @param key the packed position.
+     * @return an entry for the position.
+     */
+    @Nonnull
+    private static CacheEntry entry(final long key) {
+        return new CacheEntry(key, new GzipGlmChunk("", 0, "", "", "", ""), 0);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip and dictionary selection tests for {@link DictionaryDeflateCodec}.
+ *
+ * @author Tyler Bucher
+ */
+public class DictionaryDeflateCodecTest {
+
+    /**
+     * A small id payload.
+     */
+    private static final byte[] PAYLOAD = "1,1,2,3,5,8,13,21,34,55,89,144,233".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Payloads round trip with the built in dictionary, empty payloads included.
+     */
+    @Test
+    public void defaultDictionaryRoundTrips() throws IOException {
+        for (final byte[] data : new byte[][]{new byte[0], new byte[]{7}, PAYLOAD,
+                DictionaryDeflateCodec.getDefaultDictionary()}) {
+            final byte[] encoded = DictionaryDeflateCodec.INSTANCE.encode(data);
+            assertEquals(DictionaryDeflateCodec.ID, encoded[0]);
+            assertArrayEquals(data, DictionaryDeflateCodec.INSTANCE.decode(encoded));
+        }
+    }
+
+    /**
+     * The payload records the adler-32 of the dictionary it was written with.
+     */
+    @Test
+    public void payloadRecordsItsDictionary() {
+        final byte[] encoded = DictionaryDeflateCodec.INSTANCE.encode(PAYLOAD);
+        // The zlib header is two bytes, then the dictionary id when the preset flag is set
+        assertTrue((encoded[CodecSupport.PREFIX_SIZE + 1] & 0x20) != 0);
+        assertEquals(DictionaryDeflateCodec.INSTANCE.getDictionaryId(),
+                CodecSupport.readInt(encoded, CodecSupport.PREFIX_SIZE + 2));
+    }
+
+    /**
+     * The built in dictionary is handed out as a copy, so changing it does not change what the shared codec writes.
+     */
+    @Test
+    public void defaultDictionaryIsCopied() {
+        final byte[] dictionary = DictionaryDeflateCodec.getDefaultDictionary();
+        dictionary[0] ^= 1;
+        assertEquals(DictionaryDeflateCodec.INSTANCE.getDictionaryId(), new DictionaryDeflateCodec(
+                DictionaryDeflateCodec.getDefaultDictionary()).getDictionaryId());
+        assertNotEquals(DictionaryDeflateCodec.INSTANCE.getDictionaryId(), new DictionaryDeflateCodec(dictionary)
+                .getDictionaryId());
+    }
+
+    /**
+     * A codec with a trained dictionary still reads rows written with the built in dictionary, while the built in
+     * codec only reads trained rows once the dictionary is added.
+     */
+    @Test
+    public void dictionaryIsSelectedById() throws IOException {
+        final byte[] trained = DictionaryDeflateCodec.train(samples(), 1024);
+        final DictionaryDeflateCodec codec = new DictionaryDeflateCodec(trained);
+        assertNotEquals(DictionaryDeflateCodec.INSTANCE.getDictionaryId(), codec.getDictionaryId());
+        assertArrayEquals(PAYLOAD, codec.decode(DictionaryDeflateCodec.INSTANCE.encode(PAYLOAD)));
+        final byte[] encoded = codec.encode(PAYLOAD);
+        assertArrayEquals(PAYLOAD, codec.decode(encoded));
+        final DictionaryDeflateCodec reader = new DictionaryDeflateCodec(
+                DictionaryDeflateCodec.getDefaultDictionary());
+        try {
+            reader.decode(encoded);
+            fail("Payload with an unknown dictionary was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+        reader.addDictionary(trained);
+        assertArrayEquals(PAYLOAD, reader.decode(encoded));
+    }
+
+    /**
+     * Training keeps within the size limit and keeps substrings which repeat across samples.
+     */
+    @Test
+    public void trainingKeepsRepeatedSubstrings() {
+        final byte[] trained = DictionaryDeflateCodec.train(samples(), 64);
+        assertTrue(trained.length > 0 && trained.length <= 64);
+        final String text = new String(trained, StandardCharsets.ISO_8859_1);
+        assertTrue(text, text.contains("100,101,"));
+        assertEquals(0, DictionaryDeflateCodec.train(new ArrayList<>(), 64).length);
+    }
+
+    /**
+     * Truncated payloads and payloads of another codec are rejected.
+     */
+    @Test
+    public void corruptPayloadsAreRejected() {
+        final byte[] encoded = DictionaryDeflateCodec.INSTANCE.encode(PAYLOAD);
+        final byte[] truncated = new byte[encoded.length - 3];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        assertDecodeFails(truncated);
+        final byte[] wrongId = encoded.clone();
+        wrongId[0] = PaethDeflateCodec.ID;
+        assertDecodeFails(wrongId);
+        final byte[] checksum = encoded.clone();
+        checksum[checksum.length - 1] ^= 1;
+        assertDecodeFails(checksum);
+        // A recorded length the stream can not decode to is rejected before anything is allocated for it
+        final byte[] huge = encoded.clone();
+        CodecSupport.writeInt(huge, 1, Integer.MAX_VALUE);
+        assertDecodeFails(huge);
+        final byte[] negative = encoded.clone();
+        CodecSupport.writeInt(negative, 1, -1);
+        assertDecodeFails(negative);
+    }
+
+    /**
+     * @return sample payloads sharing a run of ids.
+     */
+    @Nonnull
+    private static List<byte[]> samples() {
+        final List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            samples.add(("100,101,102,103," + i + "," + (i * 31) + ",100,101,102,103").getBytes(
+                    StandardCharsets.US_ASCII));
+        }
+        return samples;
+    }
+
+    /**
+     * @param encoded a payload which must be rejected.
+     */
+    private static void assertDecodeFails(@Nonnull final byte[] encoded) {
+        try {
+            DictionaryDeflateCodec.INSTANCE.decode(encoded);
+            fail("Corrupt payload was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+}
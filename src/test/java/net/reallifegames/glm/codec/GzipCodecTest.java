@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip and corruption tests for {@link GzipCodec}.
+ *
+ * @author Tyler Bucher
+ */
+public class GzipCodecTest {
+
+    /**
+     * A small text payload.
+     */
+    private static final byte[] PAYLOAD = "64,64,65,66,66,66,67,70".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Encoded members are plain gzip which the jdk reads, and they decode back. Empty fields stay empty.
+     */
+    @Test
+    public void membersRoundTrip() throws IOException {
+        assertEquals(0, GzipCodec.INSTANCE.encode(new byte[0]).length);
+        final byte[] random = new byte[5000];
+        new Random(42).nextBytes(random);
+        for (final byte[] data : new byte[][]{new byte[]{1}, PAYLOAD, random}) {
+            final byte[] encoded = GzipCodec.INSTANCE.encode(data);
+            assertTrue(GzipCodec.isGzip(encoded));
+            assertArrayEquals(data, GzipCodec.INSTANCE.decode(encoded));
+            assertArrayEquals(data, gunzip(encoded));
+        }
+    }
+
+    /**
+     * Members written by the jdk decode, including ones with optional header fields.
+     */
+    @Test
+    public void jdkMembersDecode() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(PAYLOAD);
+        }
+        final byte[] member = out.toByteArray();
+        assertArrayEquals(PAYLOAD, GzipCodec.INSTANCE.decode(member));
+        // Add a file name and a comment to the header
+        final byte[] named = new byte[member.length + 8];
+        System.arraycopy(member, 0, named, 0, 10);
+        named[3] = 8 | 16;
+        System.arraycopy(new byte[]{'a', '.', 't', 0, 'h', 'i', '!', 0}, 0, named, 10, 8);
+        System.arraycopy(member, 10, named, 18, member.length - 10);
+        assertArrayEquals(PAYLOAD, GzipCodec.INSTANCE.decode(named));
+    }
+
+    /**
+     * A flipped crc or a wrong recorded size is rejected.
+     */
+    @Test
+    public void trailerChecksAreEnforced() {
+        final byte[] encoded = GzipCodec.INSTANCE.encode(PAYLOAD);
+        final byte[] crc = encoded.clone();
+        crc[crc.length - 8] ^= 1;
+        assertDecodeFails(crc);
+        final byte[] larger = encoded.clone();
+        larger[larger.length - 4]++;
+        assertDecodeFails(larger);
+        final byte[] smaller = encoded.clone();
+        smaller[smaller.length - 4]--;
+        assertDecodeFails(smaller);
+        final byte[] negative = encoded.clone();
+        negative[negative.length - 1] = (byte) 0x80;
+        assertDecodeFails(negative);
+        final byte[] huge = encoded.clone();
+        huge[huge.length - 1] = (byte) 0x7f;
+        assertDecodeFails(huge);
+    }
+
+    /**
+     * Truncated members, unterminated header strings and other data are rejected.
+     */
+    @Test
+    public void corruptMembersAreRejected() {
+        final byte[] encoded = GzipCodec.INSTANCE.encode(PAYLOAD);
+        final byte[] truncated = new byte[encoded.length - 9];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        assertDecodeFails(truncated);
+        assertDecodeFails(new byte[]{GzipCodec.ID, (byte) 0x8b, 8, 0});
+        final byte[] unterminated = encoded.clone();
+        unterminated[3] = 8;
+        for (int i = 10; i < unterminated.length; i++) {
+            unterminated[i] = 'a';
+        }
+        assertDecodeFails(unterminated);
+        assertFalse(GzipCodec.isGzip(PAYLOAD));
+        assertDecodeFails(PAYLOAD);
+    }
+
+    /**
+     * @param member a gzip member.
+     * @return the member decoded by the jdk.
+     */
+    @Nonnull
+    private static byte[] gunzip(@Nonnull final byte[] member) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(member))) {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param encoded a member which must be rejected.
+     */
+    private static void assertDecodeFails(@Nonnull final byte[] encoded) {
+        try {
+            GzipCodec.INSTANCE.decode(encoded);
+            fail("Corrupt member was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+}
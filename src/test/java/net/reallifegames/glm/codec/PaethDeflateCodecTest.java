@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip and corruption tests for {@link PaethDeflateCodec}.
+ *
+ * @author Tyler Bucher
+ */
+public class PaethDeflateCodecTest {
+
+    /**
+     * Every length around the row width round trips, including empty data and partial last rows.
+     */
+    @Test
+    public void partialRowsRoundTrip() throws IOException {
+        final Random random = new Random(42);
+        for (int length = 0; length <= 3 * PaethDeflateCodec.ROW_WIDTH + 2; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertRoundTrip(data);
+        }
+    }
+
+    /**
+     * A smooth height map picks predicting filters and round trips through them, wrapping bytes included.
+     */
+    @Test
+    public void heightGridRoundTrips() throws IOException {
+        final byte[] heights = new byte[PaethDeflateCodec.ROW_WIDTH * PaethDeflateCodec.ROW_WIDTH];
+        for (int z = 0; z < PaethDeflateCodec.ROW_WIDTH; z++) {
+            for (int x = 0; x < PaethDeflateCodec.ROW_WIDTH; x++) {
+                // Climbs past 255 so residuals wrap around
+                heights[z * PaethDeflateCodec.ROW_WIDTH + x] = (byte) (240 + x * 2 + z);
+            }
+        }
+        final byte[] filtered = PaethDeflateCodec.filter(heights, 0, heights.length);
+        for (int row = 1; row < PaethDeflateCodec.ROW_WIDTH; row++) {
+            assertTrue("Row " + row + " was stored unfiltered",
+                    filtered[row * (PaethDeflateCodec.ROW_WIDTH + 1)] != 0);
+        }
+        assertRoundTrip(heights);
+    }
+
+    /**
+     * Filtering a slice of a larger array only reads the slice.
+     */
+    @Test
+    public void offsetSliceRoundTrips() throws IOException {
+        final byte[] data = new byte[100];
+        new Random(7).nextBytes(data);
+        final byte[] encoded = PaethDeflateCodec.INSTANCE.encode(data, 13, 50, 6);
+        final byte[] expected = new byte[50];
+        System.arraycopy(data, 13, expected, 0, 50);
+        assertArrayEquals(expected, PaethDeflateCodec.INSTANCE.decode(encoded));
+    }
+
+    /**
+     * Rows naming an unknown filter, or a first row predicting from a row above, are rejected.
+     */
+    @Test
+    public void corruptFiltersAreRejected() {
+        final byte[] filtered = PaethDeflateCodec.filter(new byte[40], 0, 40);
+        final byte[] unknown = filtered.clone();
+        unknown[PaethDeflateCodec.ROW_WIDTH + 1] = 4;
+        assertCorrupt(unknown);
+        final byte[] negative = filtered.clone();
+        negative[0] = -1;
+        assertCorrupt(negative);
+        final byte[] firstRowUp = filtered.clone();
+        firstRowUp[0] = 2;
+        assertCorrupt(firstRowUp);
+    }
+
+    /**
+     * Truncated payloads and payloads of another codec are rejected.
+     */
+    @Test
+    public void corruptPayloadsAreRejected() {
+        final byte[] data = new byte[300];
+        new Random(3).nextBytes(data);
+        final byte[] encoded = PaethDeflateCodec.INSTANCE.encode(data);
+        final byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        assertDecodeFails(truncated);
+        final byte[] wrongId = encoded.clone();
+        wrongId[0] = DeflateCodec.ID;
+        assertDecodeFails(wrongId);
+        final byte[] wrongLength = encoded.clone();
+        wrongLength[4]++;
+        assertDecodeFails(wrongLength);
+    }
+
+    /**
+     * @param data the bytes which must survive encoding.
+     */
+    private static void assertRoundTrip(@Nonnull final byte[] data) throws IOException {
+        final byte[] filtered = PaethDeflateCodec.filter(data, 0, data.length);
+        assertEquals(data.length + (data.length + PaethDeflateCodec.ROW_WIDTH - 1) / PaethDeflateCodec.ROW_WIDTH,
+                filtered.length);
+        assertArrayEquals(data, PaethDeflateCodec.unfilter(filtered));
+        final byte[] encoded = PaethDeflateCodec.INSTANCE.encode(data);
+        assertEquals(PaethDeflateCodec.ID, encoded[0]);
+        assertArrayEquals(data, PaethDeflateCodec.INSTANCE.decode(encoded));
+    }
+
+    /**
+     * @param filtered filtered rows which must be rejected.
+     */
+    private static void assertCorrupt(@Nonnull final byte[] filtered) {
+        try {
+            PaethDeflateCodec.unfilter(filtered);
+            fail("Corrupt rows were accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * @param encoded a payload which must be rejected.
+     */
+    private static void assertDecodeFails(@Nonnull final byte[] encoded) {
+        try {
+            PaethDeflateCodec.INSTANCE.decode(encoded);
+            fail("Corrupt payload was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.codec;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip and corruption tests for {@link PalettedData} and {@link PaletteCodec}.
+ *
+ * @author Tyler Bucher
+ */
+public class PalettedDataTest {
+
+    /**
+     * No entries pack to no words and read back empty.
+     */
+    @Test
+    public void emptyIdsRoundTrip() throws IOException {
+        final PalettedData data = assertRoundTrip(new int[0]);
+        assertEquals(0, data.getBitsPerEntry());
+        assertEquals(0, data.getPackedWords().length);
+    }
+
+    /**
+     * A palette of one id needs no bits per entry.
+     */
+    @Test
+    public void singleEntryPaletteNeedsNoBits() throws IOException {
+        assertEquals(0, assertRoundTrip(new int[]{7}).getBitsPerEntry());
+        final PalettedData data = assertRoundTrip(filled(4096, 3));
+        assertEquals(0, data.getBitsPerEntry());
+        assertEquals(0, data.getPackedWords().length);
+    }
+
+    /**
+     * Palettes of exactly 2^n ids use n bits, one more id needs another bit.
+     */
+    @Test
+    public void powerOfTwoPalettesUseTheSmallestWidth() throws IOException {
+        for (int bits = 1; bits <= 12; bits++) {
+            assertEquals(bits, assertRoundTrip(cycle(1 << bits, 1 << bits)).getBitsPerEntry());
+            assertEquals(bits + 1, assertRoundTrip(cycle((1 << bits) + 1, (1 << bits) + 1)).getBitsPerEntry());
+        }
+    }
+
+    /**
+     * Widths which do not divide 64 put entries across two words, which must read back from both.
+     */
+    @Test
+    public void entriesSpanningTwoWordsRoundTrip() throws IOException {
+        for (final int bits : new int[]{3, 5, 7, 11, 13}) {
+            // Entry 64 / bits starts in the first word and ends in the second
+            final int[] ids = cycle(Math.max(200, 1 << bits), 1 << bits);
+            final PalettedData data = assertRoundTrip(ids);
+            assertEquals(bits, data.getBitsPerEntry());
+            final int spanning = 64 / bits;
+            assertEquals(ids[spanning], data.get(spanning));
+        }
+    }
+
+    /**
+     * Negative and extreme ids keep their values.
+     */
+    @Test
+    public void extremeIdsRoundTrip() throws IOException {
+        assertRoundTrip(new int[]{Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE, -1, Integer.MIN_VALUE});
+        final Random random = new Random(42);
+        final int[] ids = new int[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt();
+        }
+        assertRoundTrip(ids);
+    }
+
+    /**
+     * Headers which do not match the data are rejected.
+     */
+    @Test
+    public void corruptFormsAreRejected() {
+        final byte[] bytes = PalettedData.of(cycle(100, 5)).toBytes();
+        // Truncated words
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1));
+        // Wrong bit width
+        final byte[] width = bytes.clone();
+        width[8 + 5 * 4]++;
+        assertCorrupt(width);
+        // A palette larger than the form
+        final byte[] palette = bytes.clone();
+        ByteBuffer.wrap(palette).putInt(4, Integer.MAX_VALUE);
+        assertCorrupt(palette);
+        // An index past the end of the palette
+        final byte[] index = bytes.clone();
+        ByteBuffer.wrap(index).putLong(9 + 5 * 4, -1L);
+        assertCorrupt(index);
+        // More entries than the words in the form can hold
+        assertCorrupt(ByteBuffer.allocate(17).putInt(Integer.MAX_VALUE).putInt(2).putInt(0).putInt(1).put((byte) 1)
+                .array());
+        // Entries without a palette
+        assertCorrupt(ByteBuffer.allocate(9).putInt(1).putInt(0).array());
+        assertCorrupt(new byte[3]);
+    }
+
+    /**
+     * Canonical id lists parse and format back to the same text.
+     */
+    @Test
+    public void idTextRoundTrips() {
+        for (final String text : new String[]{"0", "1,2,3", "-5,0,12", "2147483647,-2147483648", "0,0,0"}) {
+            final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            assertArrayEquals(text, bytes, PalettedData.formatIds(PalettedData.parseIds(bytes)));
+        }
+    }
+
+    /**
+     * Text which would not format back to itself is not treated as an id list.
+     */
+    @Test
+    public void nonCanonicalIdTextIsRejected() {
+        for (final String text : new String[]{"", ",", "1,", ",1", "01", "-0", "1,,2", "1 ,2", "2147483648",
+                "-2147483649", "1.5", "a"}) {
+            assertNull(text, PalettedData.parseIds(text.getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    /**
+     * The palette codec stores id lists paletted and falls back to another codec for other text.
+     */
+    @Test
+    public void paletteCodecRoundTrips() throws IOException {
+        final byte[] ids = PalettedData.formatIds(cycle(256, 9));
+        final byte[] encoded = PaletteCodec.INSTANCE.encode(ids);
+        assertEquals(PaletteCodec.ID, encoded[0]);
+        assertArrayEquals(ids, PaletteCodec.INSTANCE.decode(encoded));
+        final byte[] text = "not,an id list".getBytes(StandardCharsets.US_ASCII);
+        final byte[] fallback = PaletteCodec.INSTANCE.encode(text);
+        assertEquals(PaethDeflateCodec.ID, fallback[0]);
+        assertArrayEquals(text, PaletteCodec.INSTANCE.decode(fallback));
+    }
+
+    /**
+     * Packs ids, checks every read path and the serialized form give them back.
+     *
+     * @param ids the ids to pack.
+     * @return the packed ids.
+     */
+    @Nonnull
+    private static PalettedData assertRoundTrip(@Nonnull final int[] ids) throws IOException {
+        final PalettedData data = PalettedData.of(ids);
+        assertEquals(ids.length, data.size());
+        assertArrayEquals(ids, data.toArray());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], data.get(i));
+        }
+        final byte[] bytes = data.toBytes();
+        assertEquals(data.getSerializedSize(), bytes.length);
+        final PalettedData read = PalettedData.fromBytes(bytes);
+        assertArrayEquals(ids, read.toArray());
+        assertArrayEquals(data.getPackedWords(), read.getPackedWords());
+        assertArrayEquals(ids, PaletteCodec.INSTANCE.decodePalette(PaletteCodec.INSTANCE.encode(data, 6))
+                .toArray());
+        return data;
+    }
+
+    /**
+     * @param form a serialized form which must be rejected.
+     */
+    private static void assertCorrupt(@Nonnull final byte[] form) {
+        try {
+            PalettedData.fromBytes(form);
+            fail("Corrupt form was accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * @param size the number of ids.
+     * @param id   the id to repeat.
+     * @return the id repeated.
+     */
+    @Nonnull
+    private static int[] filled(final int size, final int id) {
+        final int[] ids = new int[size];
+        Arrays.fill(ids, id);
+        return ids;
+    }
+
+    /**
+     * @param size     the number of ids.
+     * @param distinct the number of distinct ids, at most the number of ids.
+     * @return ids cycling through the distinct values, scattered so neighbours differ.
+     */
+    @Nonnull
+    private static int[] cycle(final int size, final int distinct) {
+        final int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = (i * 7919 % distinct) * 3 - 100;
+        }
+        return ids;
+    }
+}
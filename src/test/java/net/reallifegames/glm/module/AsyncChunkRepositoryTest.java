@@ -0,0 +1,283 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.api.GlmChunk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link AsyncChunkRepository} against an in memory H2 database in MySQL mode. Calls are queued on an
+ * executor the tests run by hand, so their order is exact.
+ *
+ * @author Tyler Bucher
+ */
+public class AsyncChunkRepositoryTest {
+
+    /**
+     * Gives every test its own database.
+     */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /**
+     * The world every test reads.
+     */
+    private static final String WORLD = "3a1f5c7e-9b2d-4e6f-8a0c-2d4f6b8a0c1e";
+
+    /**
+     * The chunk type every test reads.
+     */
+    private static final String TYPE = GlmChunkTypes.THREE_DIMENSIONAL_GZIP.getType();
+
+    /**
+     * The data access layer of the repository.
+     */
+    private SqlDataAccess dataAccess;
+
+    /**
+     * Holds the calls of the repository until a test runs them.
+     */
+    private ManualExecutor executor;
+
+    /**
+     * The repository under test, allowing three pending calls.
+     */
+    private AsyncChunkRepository repository;
+
+    /**
+     * Opens a repository over a fresh database holding version 1 of the chunk at 0, 0.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        SqlModule.init("test_");
+        dataAccess = new SqlDataAccess(new SqlConnectionPool(SqlConnectionFactory.fromUrl("jdbc:h2:mem:async" +
+                DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", ""), 2));
+        dataAccess.migrate();
+        dataAccess.updateGlChunk(WORLD, TYPE, 0, 0, chunk(1));
+        executor = new ManualExecutor();
+        repository = new AsyncChunkRepository(dataAccess, executor, 3);
+    }
+
+    /**
+     * Closes the repository and the data access layer.
+     */
+    @After
+    public void tearDown() {
+        executor.runAll();
+        repository.close();
+        dataAccess.close();
+    }
+
+    /**
+     * Reads of a chunk which is already being read share its query and each get their own future.
+     */
+    @Test
+    public void concurrentReadsShareOneQuery() throws Exception {
+        final CompletableFuture<GlmChunk> first = repository.getGlChunk(WORLD, TYPE, 0, 0);
+        final CompletableFuture<GlmChunk> second = repository.getGlChunk(WORLD, TYPE, 0, 0);
+        assertNotSame(first, second);
+        assertEquals(1, executor.size());
+        assertEquals(1, repository.getMergedRequests());
+        assertEquals(1, repository.getPendingRequests());
+        executor.runAll();
+        assertEquals(1, first.get(10, TimeUnit.SECONDS).getChunkGenerationTime());
+        assertEquals(1, second.get(10, TimeUnit.SECONDS).getChunkGenerationTime());
+        assertEquals(0, repository.getPendingRequests());
+        // The finished read is not joined again
+        repository.getGlChunk(WORLD, TYPE, 0, 0);
+        assertEquals(1, executor.size());
+    }
+
+    /**
+     * Calls past the pending limit fail right away and the permits come back once the calls ran.
+     */
+    @Test
+    public void callsPastTheLimitAreRejected() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            repository.getGlChunk(WORLD, TYPE, i, 0);
+        }
+        final CompletableFuture<GlmChunk> rejected = repository.getGlChunk(WORLD, TYPE, 3, 0);
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail("Ran a call past the pending limit");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, repository.getRejectedRequests());
+        assertEquals(3, repository.getPendingRequests());
+        executor.runAll();
+        assertEquals(0, repository.getPendingRequests());
+        final CompletableFuture<GlmChunk> accepted = repository.getGlChunk(WORLD, TYPE, 3, 0);
+        assertFalse(accepted.isDone());
+        executor.runAll();
+        assertEquals(null, accepted.get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A read made after a write completed does not join a read which was queued before the write.
+     */
+    @Test
+    public void readAfterWriteDoesNotJoinAnOlderRead() throws Exception {
+        final CompletableFuture<GlmChunk> before = repository.getGlChunk(WORLD, TYPE, 0, 0);
+        final CompletableFuture<Void> write = repository.updateGlChunk(WORLD, TYPE, 0, 0, chunk(2));
+        executor.run(1);
+        write.get(10, TimeUnit.SECONDS);
+        final CompletableFuture<GlmChunk> after = repository.getGlChunk(WORLD, TYPE, 0, 0);
+        assertEquals(0, repository.getMergedRequests());
+        executor.runAll();
+        assertEquals(2, after.get(10, TimeUnit.SECONDS).getChunkGenerationTime());
+        before.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The batched write detaches older reads of every chunk it writes.
+     */
+    @Test
+    public void readAfterBatchWriteDoesNotJoinAnOlderRead() throws Exception {
+        repository.getGlChunk(WORLD, TYPE, 0, 0);
+        final CompletableFuture<SqlBatchResult> write = repository.updateGlChunks(WORLD, TYPE,
+                Collections.singletonList(new PositionedChunk(0, 0, chunk(2))));
+        executor.run(1);
+        assertEquals(1, write.get(10, TimeUnit.SECONDS).getRowCount());
+        final CompletableFuture<GlmChunk> after = repository.getGlChunk(WORLD, TYPE, 0, 0);
+        assertEquals(0, repository.getMergedRequests());
+        executor.runAll();
+        assertEquals(2, after.get(10, TimeUnit.SECONDS).getChunkGenerationTime());
+    }
+
+    /**
+     * @param version the version of the chunk, stored as its generation time.
+     * @return a chunk whose fields are derived from the version.
+     */
+    @Nonnull
+    private static BinaryGlmChunk chunk(final long version) {
+        final byte[] data = ("version " + version).getBytes(StandardCharsets.UTF_8);
+        return BinaryGlmChunk.encode(GlmChunkTypes.THREE_DIMENSIONAL_GZIP, version, data, data, data, data);
+    }
+
+    /**
+     * An executor which only runs its tasks when asked to, on the asking thread.
+     */
+    private static final class ManualExecutor extends AbstractExecutorService {
+
+        /**
+         * The tasks which have not run yet, in submission order.
+         */
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        /**
+         * True once the executor was shut down.
+         */
+        private boolean shutdown;
+
+        /**
+         * @return the number of tasks which have not run yet.
+         */
+        private synchronized int size() {
+            return tasks.size();
+        }
+
+        /**
+         * Runs a single queued task.
+         *
+         * @param index the position of the task in the queue.
+         */
+        private void run(final int index) {
+            final Runnable task;
+            synchronized (this) {
+                task = tasks.remove(index);
+            }
+            task.run();
+        }
+
+        /**
+         * Runs queued tasks in order until none are left.
+         */
+        private void runAll() {
+            while (size() > 0) {
+                run(0);
+            }
+        }
+
+        @Override
+        public synchronized void execute(@Nonnull final Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Shut down");
+            }
+            tasks.add(command);
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            shutdown = true;
+        }
+
+        @Nonnull
+        @Override
+        public synchronized List<Runnable> shutdownNow() {
+            shutdown = true;
+            final List<Runnable> remaining = new ArrayList<>(tasks);
+            tasks.clear();
+            return remaining;
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return shutdown && tasks.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, @Nonnull final TimeUnit unit) {
+            return isTerminated();
+        }
+    }
+}
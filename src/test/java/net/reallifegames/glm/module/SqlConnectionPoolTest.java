@@ -0,0 +1,256 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SqlConnectionPool} and {@link PooledSqlConnection} against an in memory H2 database.
+ *
+ * @author Tyler Bucher
+ */
+public class SqlConnectionPoolTest {
+
+    /**
+     * Gives every test its own database.
+     */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /**
+     * The number of physical connections opened by the pool under test.
+     */
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /**
+     * The pool under test.
+     */
+    private SqlConnectionPool pool;
+
+    /**
+     * Opens a pool of two connections over a fresh database with a single table.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        final SqlConnectionFactory factory = SqlConnectionFactory.fromUrl("jdbc:h2:mem:pool" +
+                DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        pool = new SqlConnectionPool(()->{
+            opened.incrementAndGet();
+            return factory.createConnection();
+        }, 2);
+        try (final PooledSqlConnection connection = pool.acquire();
+             final Statement statement = connection.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE `rows` (`id` INT NOT NULL, PRIMARY KEY (`id`))");
+        }
+    }
+
+    /**
+     * Closes the pool.
+     */
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Released connections are reused, most recently released first, and counted as idle.
+     */
+    @Test
+    public void releasedConnectionsAreReused() throws SQLException {
+        final PooledSqlConnection first = pool.acquire();
+        final PooledSqlConnection second = pool.acquire();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getInUseConnections());
+        second.close();
+        first.close();
+        assertEquals(0, pool.getInUseConnections());
+        assertEquals(2, pool.getStats().getIdleConnections());
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            assertSame(first, connection);
+        }
+        assertEquals(2, opened.get());
+        // Closing twice must not hand out the same connection twice
+        first.close();
+        assertEquals(0, pool.getInUseConnections());
+    }
+
+    /**
+     * A caller blocks while every connection is lent out and the wait is recorded.
+     */
+    @Test
+    public void acquireWaitsForAFreeConnection() throws Exception {
+        final PooledSqlConnection first = pool.acquire();
+        final PooledSqlConnection second = pool.acquire();
+        final long acquiresBefore = pool.getStats().getAcquireCount();
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final Thread releaser = new Thread(()->{
+            try {
+                waiting.await();
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            second.close();
+        });
+        releaser.start();
+        waiting.countDown();
+        try (final PooledSqlConnection third = pool.acquire()) {
+            assertSame(second, third);
+        }
+        releaser.join();
+        first.close();
+        final SqlPoolStats stats = pool.getStats();
+        assertEquals(acquiresBefore + 1, stats.getAcquireCount());
+        assertTrue(stats.getMaximumWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(stats.getTotalWaitNanos() >= stats.getMaximumWaitNanos());
+        assertEquals(2, stats.getMaximumConnections());
+        assertEquals(0, stats.getInUseConnections());
+    }
+
+    /**
+     * A caller gives up once the acquire timeout passes and the permit count is left intact.
+     */
+    @Test
+    public void acquireTimesOut() throws SQLException {
+        pool.setAcquireTimeout(50);
+        final PooledSqlConnection first = pool.acquire();
+        final PooledSqlConnection second = pool.acquire();
+        try {
+            pool.acquire();
+            fail("Acquired more connections than the pool allows");
+        } catch (SQLException e) {
+            assertEquals(2, pool.getInUseConnections());
+        }
+        first.close();
+        second.close();
+        assertEquals(0, pool.getInUseConnections());
+    }
+
+    /**
+     * Statements are prepared once per physical connection and handed out again with cleared parameters.
+     */
+    @Test
+    public void statementsAreCachedPerConnection() throws SQLException {
+        final String sql = "SELECT COUNT(*) FROM `rows` WHERE `id` = ?";
+        final long hitsBefore = pool.getStats().getStatementCacheHits();
+        final long missesBefore = pool.getStats().getStatementCacheMisses();
+        final PreparedStatement statement;
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            statement = connection.prepare(sql);
+            statement.setInt(1, 1);
+            statement.executeQuery().close();
+        }
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            assertSame(statement, connection.prepare(sql));
+        }
+        final SqlPoolStats stats = pool.getStats();
+        assertEquals(hitsBefore + 1, stats.getStatementCacheHits());
+        assertEquals(missesBefore + 1, stats.getStatementCacheMisses());
+        // The parameters were cleared so executing without setting them fails
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            connection.prepare(sql).executeQuery().close();
+            fail("Cached statement kept its parameters");
+        } catch (SQLException expected) {
+            // Parameter 1 is not set
+        }
+    }
+
+    /**
+     * An open transaction is rolled back when the connection is handed back.
+     */
+    @Test
+    public void releaseRollsBackOpenTransactions() throws SQLException {
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            connection.getConnection().setAutoCommit(false);
+            try (final Statement statement = connection.getConnection().createStatement()) {
+                statement.executeUpdate("INSERT INTO `rows` (`id`) VALUES (1)");
+            }
+        }
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            final Connection physical = connection.getConnection();
+            assertTrue(physical.getAutoCommit());
+            try (final Statement statement = physical.createStatement();
+                 final ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM `rows`")) {
+                assertTrue(results.next());
+                assertEquals(0, results.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Invalidated connections are closed instead of being reused.
+     */
+    @Test
+    public void invalidatedConnectionsAreClosed() throws SQLException {
+        final PooledSqlConnection broken = pool.acquire();
+        final Connection physical = broken.getConnection();
+        broken.invalidate();
+        broken.close();
+        assertTrue(physical.isClosed());
+        assertEquals(0, pool.getStats().getIdleConnections());
+        try (final PooledSqlConnection connection = pool.acquire()) {
+            assertNotSame(broken, connection);
+            assertFalse(connection.getConnection().isClosed());
+        }
+    }
+
+    /**
+     * Connections handed back after the pool closed are closed instead of kept idle.
+     */
+    @Test
+    public void connectionsReleasedAfterCloseAreClosed() throws SQLException {
+        final PooledSqlConnection connection = pool.acquire();
+        pool.close();
+        connection.close();
+        assertTrue(connection.getConnection().isClosed());
+        assertEquals(0, pool.getStats().getIdleConnections());
+        assertEquals(0, pool.getInUseConnections());
+    }
+
+    /**
+     * A closed pool lends out nothing.
+     */
+    @Test(expected = SQLException.class)
+    public void closedPoolRejectsAcquire() throws SQLException {
+        pool.close();
+        pool.acquire();
+    }
+}
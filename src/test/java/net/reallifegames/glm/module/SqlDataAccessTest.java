@@ -0,0 +1,449 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.module.migration.MigrationProgressListener;
+import net.reallifegames.glm.module.migration.SqlMigration;
+import net.reallifegames.glm.module.migration.SqlMigrator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SqlDataAccess}, the {@link SqlModule} queries it runs and the {@link SqlMigrator} against an in
+ * memory H2 database in MySQL mode.
+ *
+ * @author Tyler Bucher
+ */
+public class SqlDataAccessTest {
+
+    /**
+     * Gives every test its own database.
+     */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /**
+     * The world every test writes to.
+     */
+    private static final String WORLD = "6d4b9c2e-3f1a-4e8b-9c7d-1a2b3c4d5e6f";
+
+    /**
+     * The chunk type most tests write.
+     */
+    private static final String TYPE = GlmChunkTypes.THREE_DIMENSIONAL_GZIP.getType();
+
+    /**
+     * A second chunk type sharing positions with {@link #TYPE}.
+     */
+    private static final String OTHER_TYPE = GlmChunkTypes.THREE_DIMENSIONAL_DEFLATE.getType();
+
+    /**
+     * The data access layer under test.
+     */
+    private SqlDataAccess dataAccess;
+
+    /**
+     * Opens a data access layer over a fresh database and creates the tables.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        SqlModule.init("test_");
+        // Keep identifiers lower case like MySQL so the migration meta data lookups find the tables
+        dataAccess = new SqlDataAccess(new SqlConnectionPool(SqlConnectionFactory.fromUrl("jdbc:h2:mem:glm" +
+                DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", ""), 2));
+        assertEquals(SqlModule.VERSION, dataAccess.migrate());
+    }
+
+    /**
+     * Closes the data access layer.
+     */
+    @After
+    public void tearDown() {
+        dataAccess.close();
+    }
+
+    /**
+     * A fresh database is created at the current version and migrating again changes nothing.
+     */
+    @Test
+    public void migrateCreatesTablesAtTheCurrentVersion() throws SQLException {
+        dataAccess.execute(connection->{
+            final Connection physical = connection.getConnection();
+            assertTrue(SqlMigration.tableExists(physical, SqlModule.getChunksTableName()));
+            assertEquals(SqlModule.VERSION, SqlModule.getSqlVersion(physical));
+            return null;
+        });
+        assertEquals(SqlModule.VERSION, dataAccess.migrate());
+    }
+
+    /**
+     * Steps whose work is already done are skipped and the version constant still advances.
+     */
+    @Test
+    public void migrateSkipsStepsWhichAreAlreadyApplied() throws SQLException {
+        final List<String> stages = new ArrayList<>();
+        final MigrationProgressListener listener = (migration, stage, completed, total)->stages.add(
+                migration.getFromVersion() + ": " + stage);
+        final int version = dataAccess.execute(connection->{
+            SqlModule.setSqlVersion(connection.getConnection(), 1);
+            return SqlMigrator.migrate(connection.getConnection(), 10, listener);
+        });
+        assertEquals(SqlModule.VERSION, version);
+        assertEquals(Collections.singletonList("1: Already migrated"), stages);
+        assertEquals(SqlModule.VERSION, (int) dataAccess.execute(connection->SqlModule.getSqlVersion(
+                connection.getConnection())));
+    }
+
+    /**
+     * Tables newer than this module are never touched.
+     */
+    @Test
+    public void migrateRejectsNewerTables() throws SQLException {
+        dataAccess.execute(connection->{
+            SqlModule.setSqlVersion(connection.getConnection(), SqlModule.VERSION + 1);
+            return null;
+        });
+        try {
+            dataAccess.migrate();
+            fail("Migrated tables newer than the module");
+        } catch (SQLException expected) {
+            // The version is left alone
+        }
+        assertEquals(SqlModule.VERSION + 1, (int) dataAccess.execute(connection->SqlModule.getSqlVersion(
+                connection.getConnection())));
+    }
+
+    /**
+     * The primary key makes an upsert of the same position replace the row, other chunk types are separate rows.
+     */
+    @Test
+    public void upsertReplacesTheRowAtAPosition() throws SQLException {
+        dataAccess.updateGlChunk(WORLD, TYPE, 3, -4, chunk(1, "first"));
+        dataAccess.updateGlChunk(WORLD, TYPE, 3, -4, chunk(2, "second"));
+        dataAccess.updateGlChunk(WORLD, OTHER_TYPE, 3, -4, chunk(3, "other"));
+        assertEquals(2, dataAccess.countTotalRows());
+        assertEquals(2, dataAccess.countRowsForWorld(WORLD));
+        assertTrue(dataAccess.rowExists(WORLD, TYPE, 3, -4));
+        assertFalse(dataAccess.rowExists(WORLD, TYPE, -4, 3));
+        final BinaryGlmChunk read = dataAccess.getGlChunk(WORLD, TYPE, 3, -4);
+        assertNotNull(read);
+        assertEquals(2, read.getChunkGenerationTime());
+        assertChunk(chunk(2, "second"), read);
+        assertNull(dataAccess.getGlChunk(WORLD, TYPE, 4, -4));
+    }
+
+    /**
+     * A batch of chunks is written in one transaction and read back unchanged.
+     */
+    @Test
+    public void batchWritesRoundTrip() throws SQLException {
+        final List<PositionedChunk> chunks = grid(0, 0, 8, 8);
+        assertEquals(64, dataAccess.updateGlChunks(WORLD, TYPE, chunks).getRowCount());
+        assertEquals(64, dataAccess.countRowsForWorld(WORLD));
+        for (final PositionedChunk chunk : chunks) {
+            final BinaryGlmChunk read = dataAccess.getGlChunk(WORLD, TYPE, chunk.getX(), chunk.getZ());
+            assertNotNull(read);
+            assertChunk((BinaryGlmChunk) chunk.getChunk(), read);
+        }
+    }
+
+    /**
+     * Text which is not the base64 form of a compressed payload is stored and read back unchanged, in a batch and on
+     * its own.
+     */
+    @Test
+    public void plainTextChunksRoundTrip() throws SQLException {
+        final GzipGlmChunk plain = new GzipGlmChunk(TYPE, 7, "not base64!", "64,64,65", "1,1,2", "0,1,2,3");
+        // Base64 of text, padded the way the jdk does not write it, and text which only looks like base64
+        final GzipGlmChunk lookalike = new GzipGlmChunk(TYPE, 8, "AAAA", "MSwyLDM", "QR==", "");
+        final List<PositionedChunk> chunks = grid(0, 0, 4, 4);
+        chunks.add(new PositionedChunk(-1, -1, plain));
+        assertEquals(17, dataAccess.updateGlChunks(WORLD, TYPE, chunks).getRowCount());
+        dataAccess.updateGlChunk(WORLD, TYPE, -2, -2, lookalike);
+        for (final PositionedChunk chunk : Arrays.asList(new PositionedChunk(-1, -1, plain),
+                new PositionedChunk(-2, -2, lookalike))) {
+            final BinaryGlmChunk read = dataAccess.getGlChunk(WORLD, TYPE, chunk.getX(), chunk.getZ());
+            assertNotNull(read);
+            assertEquals(chunk.getChunk().getChunkGenerationTime(), read.getChunkGenerationTime());
+            assertEquals(chunk.getChunk().getBlockData(), read.getBlockData());
+            assertEquals(chunk.getChunk().getBlockHeightData(), read.getBlockHeightData());
+            assertEquals(chunk.getChunk().getBlockBiomeData(), read.getBlockBiomeData());
+            assertEquals(chunk.getChunk().getBlockIndices(), read.getBlockIndices());
+        }
+    }
+
+    /**
+     * Range reads include the top left corner, exclude the bottom right one and only return the asked chunk type.
+     */
+    @Test
+    public void rangeReadsHonourTheBounds() throws SQLException {
+        dataAccess.updateGlChunks(WORLD, TYPE, grid(-4, -4, 8, 8));
+        dataAccess.updateGlChunks(WORLD, OTHER_TYPE, grid(-4, -4, 8, 8));
+        final List<PositionedChunk> chunks = dataAccess.getGlChunksInRange(WORLD, TYPE, -2, -1, 1, 3);
+        assertEquals(positions(-2, -1, 1, 3), positionsOf(chunks));
+        for (final PositionedChunk chunk : chunks) {
+            assertChunk(chunk(chunk.getX(), chunk.getZ()), (BinaryGlmChunk) chunk.getChunk());
+        }
+        final AtomicLong streamed = new AtomicLong();
+        assertEquals(12, dataAccess.getGlChunksInRange(WORLD, TYPE, -2, -1, 1, 3, (x, z, chunk)->
+                streamed.incrementAndGet()));
+        assertEquals(12, streamed.get());
+        assertTrue(dataAccess.getGlChunksInRange(WORLD, TYPE, 1, 1, 1, 3).isEmpty());
+        assertTrue(dataAccess.getGlChunksInRange("missing", TYPE, -4, -4, 4, 4).isEmpty());
+    }
+
+    /**
+     * Position list reads return exactly the requested chunks, through both the range and the position list query.
+     */
+    @Test
+    public void positionReadsReturnTheRequestedChunks() throws SQLException {
+        dataAccess.updateGlChunks(WORLD, TYPE, grid(0, 0, 16, 16));
+        // Dense requests are answered with a range read
+        final List<Integer> dense = Arrays.asList(0, 0, 0, 1, 1, 0, 1, 1, 20, 20);
+        assertEquals(new HashSet<>(Arrays.asList(0L, 1L, 1L << 32, (1L << 32) | 1)),
+                positionsOf(dataAccess.getGlChunks(WORLD, TYPE, dense)));
+        // Sparse requests use the position list
+        final List<Integer> sparse = Arrays.asList(0, 0, 15, 15, 7, 3);
+        assertEquals(new HashSet<>(Arrays.asList(0L, (15L << 32) | 15, (7L << 32) | 3)),
+                positionsOf(dataAccess.getGlChunks(WORLD, TYPE, sparse)));
+        assertTrue(dataAccess.getGlChunks(WORLD, TYPE, Collections.emptyList()).isEmpty());
+    }
+
+    /**
+     * Range deletes remove every chunk type inside the rectangle in bounded batches and report progress against a
+     * total counted the same way.
+     */
+    @Test
+    public void rangeDeletesRemoveEveryChunkType() throws SQLException {
+        dataAccess.updateGlChunks(WORLD, TYPE, grid(0, 0, 6, 6));
+        dataAccess.updateGlChunks(WORLD, OTHER_TYPE, grid(0, 0, 6, 6));
+        dataAccess.updateGlChunks("other-world", TYPE, grid(0, 0, 6, 6));
+        final List<long[]> progress = new ArrayList<>();
+        final SqlBatchResult result = dataAccess.removeChunksInRange(WORLD, 1, 1, 4, 5, 5, (completed, total)->
+                progress.add(new long[]{completed, total}));
+        assertEquals(24, result.getRowCount());
+        assertFalse(progress.isEmpty());
+        for (final long[] update : progress) {
+            assertEquals(24, update[1]);
+        }
+        assertEquals(24, progress.get(progress.size() - 1)[0]);
+        assertEquals(72 - 24, dataAccess.countRowsForWorld(WORLD));
+        assertEquals(36, dataAccess.countRowsForWorld("other-world"));
+        assertTrue(dataAccess.getGlChunksInRange(WORLD, OTHER_TYPE, 1, 1, 4, 5).isEmpty());
+        assertEquals(36 - 12, dataAccess.getGlChunksInRange(WORLD, TYPE, 0, 0, 6, 6).size());
+        // An empty rectangle removes nothing
+        assertEquals(0, dataAccess.removeChunksInRange(WORLD, 4, 4, 4, 6, 5, SqlProgressListener.NONE)
+                .getRowCount());
+    }
+
+    /**
+     * A range delete which fails after a batch committed still purges the cache of the rectangle.
+     */
+    @Test
+    public void failedRangeDeletePurgesTheCache() throws SQLException {
+        dataAccess.updateGlChunks(WORLD, TYPE, grid(0, 0, 4, 4));
+        WorldModule.cacheChunk(WORLD, 1, 1, chunk(1, 1), false, 0);
+        try {
+            dataAccess.removeChunksInRange(WORLD, 0, 0, 4, 4, 4, (completed, total)->{
+                throw new IllegalStateException("Stopped after " + completed + " of " + total);
+            });
+            fail("The listener did not stop the delete");
+        } catch (IllegalStateException expected) {
+            // The first batch is committed
+        }
+        assertEquals(12, dataAccess.countRowsForWorld(WORLD));
+        assertNull(WorldModule.getCacheChunk(WORLD, 1, 0, 1));
+    }
+
+    /**
+     * Range deletes commit every batch, so they refuse to run inside a transaction of the caller.
+     */
+    @Test
+    public void rangeDeletesRefuseOpenTransactions() throws SQLException {
+        dataAccess.updateGlChunks(WORLD, TYPE, grid(0, 0, 4, 4));
+        dataAccess.execute(connection->{
+            final Connection physical = connection.getConnection();
+            physical.setAutoCommit(false);
+            try {
+                SqlModule.removeChunksInRange(physical, WORLD, 0, 0, 4, 4, 2, SqlProgressListener.NONE);
+                fail("Removed chunks inside an open transaction");
+            } catch (SQLException expected) {
+                assertFalse(physical.getAutoCommit());
+            }
+            physical.rollback();
+            return null;
+        });
+        assertEquals(16, dataAccess.countRowsForWorld(WORLD));
+    }
+
+    /**
+     * Batch writes refuse a connection inside the caller's transaction instead of committing it.
+     */
+    @Test
+    public void batchWritesRefuseOpenTransactions() throws SQLException {
+        dataAccess.execute(connection->{
+            final Connection physical = connection.getConnection();
+            physical.setAutoCommit(false);
+            SqlModule.insertBan(physical, "127.0.0.1", WORLD);
+            try {
+                SqlModule.updateGlChunks(physical, WORLD, TYPE, grid(0, 0, 4, 4));
+                fail("Wrote chunks inside an open transaction");
+            } catch (SQLException expected) {
+                assertFalse(physical.getAutoCommit());
+            }
+            // The caller's work is still uncommitted and can be rolled back
+            physical.rollback();
+            return null;
+        });
+        assertEquals(0, dataAccess.countRowsForWorld(WORLD));
+        assertEquals(0, countBans());
+    }
+
+    /**
+     * Bans are written and removed through the pooled statements.
+     */
+    @Test
+    public void bansAreInsertedAndRemoved() throws SQLException {
+        dataAccess.insertBan("127.0.0.1", WORLD);
+        assertEquals(1, countBans());
+        dataAccess.removeBan("127.0.0.1", WORLD);
+        assertEquals(0, countBans());
+    }
+
+    /**
+     * @return the number of rows in the ban table.
+     */
+    private int countBans() throws SQLException {
+        return dataAccess.execute(connection->SqlModule.queryCount(connection.prepare("SELECT COUNT(*) FROM `" +
+                SqlModule.getDatabaseChunkPrefix() + "glm_bans`")));
+    }
+
+    /**
+     * @param x      the x position of the chunk.
+     * @param marker data unique to the chunk.
+     * @return a chunk whose fields are all derived from the marker.
+     */
+    @Nonnull
+    private static BinaryGlmChunk chunk(final long x, @Nonnull final String marker) {
+        final byte[] data = marker.getBytes(StandardCharsets.UTF_8);
+        return BinaryGlmChunk.encode(GlmChunkTypes.THREE_DIMENSIONAL_GZIP, x, data, data, data, data);
+    }
+
+    /**
+     * @param x the x position of the chunk.
+     * @param z the z position of the chunk.
+     * @return the chunk {@link #grid(int, int, int, int)} writes at the position.
+     */
+    @Nonnull
+    private static BinaryGlmChunk chunk(final int x, final int z) {
+        return chunk(x, x + "," + z);
+    }
+
+    /**
+     * @param x     the first x position.
+     * @param z     the first z position.
+     * @param sizeX the number of columns.
+     * @param sizeZ the number of rows.
+     * @return a chunk for every position of the rectangle.
+     */
+    @Nonnull
+    private static List<PositionedChunk> grid(final int x, final int z, final int sizeX, final int sizeZ) {
+        final List<PositionedChunk> chunks = new ArrayList<>(sizeX * sizeZ);
+        for (int i = x; i < x + sizeX; i++) {
+            for (int j = z; j < z + sizeZ; j++) {
+                chunks.add(new PositionedChunk(i, j, chunk(i, j)));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @param x1 the top left x coordinate, inclusive.
+     * @param z1 the top left z coordinate, inclusive.
+     * @param x2 the bottom right x coordinate, exclusive.
+     * @param z2 the bottom right z coordinate, exclusive.
+     * @return the packed positions inside the rectangle.
+     */
+    @Nonnull
+    private static Set<Long> positions(final int x1, final int z1, final int x2, final int z2) {
+        final Set<Long> positions = new HashSet<>();
+        for (int i = x1; i < x2; i++) {
+            for (int j = z1; j < z2; j++) {
+                positions.add(((long) i << 32) | (j & 0xFFFFFFFFL));
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * @param chunks the chunks to collect.
+     * @return the packed positions of the chunks.
+     */
+    @Nonnull
+    private static Set<Long> positionsOf(@Nonnull final List<PositionedChunk> chunks) {
+        final Set<Long> positions = new HashSet<>();
+        for (final PositionedChunk chunk : chunks) {
+            assertTrue("duplicate chunk", positions.add(((long) chunk.getX() << 32) | (chunk.getZ() & 0xFFFFFFFFL)));
+        }
+        return positions;
+    }
+
+    /**
+     * Checks that every compressed field of a chunk read back matches the chunk written.
+     *
+     * @param expected the chunk written.
+     * @param actual   the chunk read back.
+     */
+    private static void assertChunk(@Nonnull final BinaryGlmChunk expected, @Nonnull final BinaryGlmChunk actual) {
+        assertEquals(expected.getChunkGenerationTime(), actual.getChunkGenerationTime());
+        assertArrayEquals(expected.getBlockDataBytes(), actual.getBlockDataBytes());
+        assertArrayEquals(expected.getBlockHeightDataBytes(), actual.getBlockHeightDataBytes());
+        assertArrayEquals(expected.getBlockBiomeDataBytes(), actual.getBlockBiomeDataBytes());
+        assertArrayEquals(expected.getBlockIndicesBytes(), actual.getBlockIndicesBytes());
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.cache.ChunkCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link TieredChunkStore} against an in memory H2 database in MySQL mode. Chunk reads can be held after
+ * their query ran to interleave them with writes and flushes.
+ *
+ * @author Tyler Bucher
+ */
+public class TieredChunkStoreTest {
+
+    /**
+     * Gives every test its own database.
+     */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /**
+     * The world every test writes to.
+     */
+    private static final String WORLD = "0f3e2d1c-4b5a-4978-8a6b-5c4d3e2f1a0b";
+
+    /**
+     * The chunk type every test writes.
+     */
+    private static final String TYPE = GlmChunkTypes.THREE_DIMENSIONAL_GZIP.getType();
+
+    /**
+     * The cache key of the chunk every test reads.
+     */
+    private static final long KEY = WorldModule.getChunkCacheKey(2, 0, 5);
+
+    /**
+     * Counted down when a held read has run its query.
+     */
+    private final CountDownLatch readQueried = new CountDownLatch(1);
+
+    /**
+     * Counted down to let a held read return.
+     */
+    private final CountDownLatch readRelease = new CountDownLatch(1);
+
+    /**
+     * True if the next chunk read should be held.
+     */
+    private volatile boolean holdNextRead;
+
+    /**
+     * The data access layer of the store.
+     */
+    private SqlDataAccess dataAccess;
+
+    /**
+     * The cache tier of the store.
+     */
+    private ChunkCache cache;
+
+    /**
+     * The store under test, flushed manually.
+     */
+    private TieredChunkStore store;
+
+    /**
+     * Opens a store over a fresh database holding version 1 of the chunk.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        SqlModule.init("test_");
+        final SqlConnectionFactory factory = SqlConnectionFactory.fromUrl("jdbc:h2:mem:tiered" +
+                DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        dataAccess = new SqlDataAccess(new SqlConnectionPool(()->holdingReads(factory.createConnection()), 2));
+        dataAccess.migrate();
+        dataAccess.updateGlChunk(WORLD, TYPE, 2, 5, chunk(1));
+        cache = new ChunkCache();
+        store = new TieredChunkStore(dataAccess, cache, 0);
+    }
+
+    /**
+     * Closes the store and the data access layer.
+     */
+    @After
+    public void tearDown() throws SQLException {
+        readRelease.countDown();
+        store.close();
+        dataAccess.close();
+    }
+
+    /**
+     * A row read from the database is put in the cache.
+     */
+    @Test
+    public void readsPopulateTheCache() throws SQLException {
+        assertEquals(1, store.getChunk(WORLD, TYPE, 2, 5).getChunkGenerationTime());
+        final GlmChunk cached = cache.get(WORLD, KEY);
+        assertNotNull(cached);
+        assertEquals(1, cached.getChunkGenerationTime());
+    }
+
+    /**
+     * A read which queried the old row while a newer write was put, flushed and evicted does not cache the old row.
+     */
+    @Test
+    public void slowReadDoesNotCacheAnOlderChunk() throws Exception {
+        interleaveWrite(()->store.getChunk(WORLD, TYPE, 2, 5));
+        assertNewestChunk();
+    }
+
+    /**
+     * The batched read path does not cache the old row either.
+     */
+    @Test
+    public void slowBatchReadDoesNotCacheAnOlderChunk() throws Exception {
+        interleaveWrite(()->store.getChunks(WORLD, TYPE, Arrays.asList(2, 5)));
+        assertNewestChunk();
+    }
+
+    /**
+     * A chunk with plain text fields is flushed and read back from the database unchanged.
+     */
+    @Test
+    public void plainTextChunksAreWrittenUnchanged() throws SQLException {
+        store.putChunk(WORLD, TYPE, 2, 5, new GzipGlmChunk(TYPE, 2, "not base64!", "64,64", "1,2", "0,1"));
+        assertEquals(1, store.flush());
+        final BinaryGlmChunk read = dataAccess.getGlChunk(WORLD, TYPE, 2, 5);
+        assertNotNull(read);
+        assertEquals(2, read.getChunkGenerationTime());
+        assertEquals("not base64!", read.getBlockData());
+        assertEquals("64,64", read.getBlockHeightData());
+        assertEquals("1,2", read.getBlockBiomeData());
+        assertEquals("0,1", read.getBlockIndices());
+    }
+
+    /**
+     * A group the database refuses stays buffered without holding back the other groups.
+     */
+    @Test
+    public void failingGroupDoesNotBlockTheOthers() throws SQLException {
+        final String badType = "a chunk type longer than the column allows";
+        store.putChunk(WORLD, badType, 0, 0, chunk(3));
+        store.putChunk(WORLD, TYPE, 2, 5, chunk(2));
+        try {
+            store.flush();
+            fail("Flushed a chunk type longer than the column");
+        } catch (SQLException expected) {
+            // The other group is still written
+        }
+        assertEquals(1, store.getPendingWrites());
+        assertEquals(2, dataAccess.getGlChunk(WORLD, TYPE, 2, 5).getChunkGenerationTime());
+        assertEquals(0, store.getStats().getDroppedWrites());
+        // Replace the store so tear down does not flush the refused group again
+        store = new TieredChunkStore(dataAccess, cache, 0);
+    }
+
+    /**
+     * A write to a full buffer flushes it from the calling thread first.
+     */
+    @Test
+    public void fullBufferIsFlushedByTheWriter() throws SQLException {
+        store = new TieredChunkStore(dataAccess, cache, 0, 2);
+        store.putChunk(WORLD, TYPE, 0, 0, chunk(2));
+        store.putChunk(WORLD, TYPE, 0, 1, chunk(2));
+        // Writing a buffered chunk again does not need room
+        store.putChunk(WORLD, TYPE, 0, 1, chunk(3));
+        assertEquals(2, store.getPendingWrites());
+        store.putChunk(WORLD, TYPE, 0, 2, chunk(2));
+        assertEquals(1, store.getPendingWrites());
+        assertEquals(3, dataAccess.getGlChunk(WORLD, TYPE, 0, 1).getChunkGenerationTime());
+        assertNull(dataAccess.getGlChunk(WORLD, TYPE, 0, 2));
+    }
+
+    /**
+     * Holds a read after its query ran, then writes version 2 of the chunk, flushes it and evicts it from the cache
+     * before letting the read finish.
+     *
+     * @param read the read to hold.
+     */
+    private void interleaveWrite(@Nonnull final Callable<?> read) throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            holdNextRead = true;
+            final Future<?> reader = executor.submit(read);
+            assertTrue(readQueried.await(10, TimeUnit.SECONDS));
+            store.putChunk(WORLD, TYPE, 2, 5, chunk(2));
+            assertEquals(1, store.flush());
+            cache.remove(WORLD, KEY);
+            readRelease.countDown();
+            reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks neither the cache nor a later read return version 1 of the chunk.
+     */
+    private void assertNewestChunk() throws SQLException {
+        final GlmChunk cached = cache.get(WORLD, KEY);
+        assertTrue(cached == null || cached.getChunkGenerationTime() == 2);
+        assertEquals(2, store.getChunk(WORLD, TYPE, 2, 5).getChunkGenerationTime());
+        final List<PositionedChunk> chunks = store.getChunks(WORLD, TYPE, Arrays.asList(2, 5));
+        assertEquals(1, chunks.size());
+        assertEquals(2, chunks.get(0).getChunk().getChunkGenerationTime());
+    }
+
+    /**
+     * Wraps a connection so the next chunk read is held after its query ran, see {@link #holdNextRead}.
+     *
+     * @param connection the connection to wrap.
+     * @return the wrapped connection.
+     */
+    @Nonnull
+    private Connection holdingReads(@Nonnull final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args)->{
+                    final Object result = invoke(connection, method, args);
+                    if (method.getName().equals("prepareStatement") && isChunkRead((String) args[0])) {
+                        return holdingQueries((PreparedStatement) result);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Wraps a chunk read statement so its query is held when {@link #holdNextRead} is set.
+     *
+     * @param statement the statement to wrap.
+     * @return the wrapped statement.
+     */
+    @Nonnull
+    private PreparedStatement holdingQueries(@Nonnull final PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args)->{
+                    final Object result = invoke(statement, method, args);
+                    if (method.getName().equals("executeQuery") && holdNextRead) {
+                        // H2 reads the whole result while executing, so the old row is already in hand
+                        holdNextRead = false;
+                        readQueried.countDown();
+                        readRelease.await();
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * @param sql the sql string being prepared.
+     * @return true if the sql reads chunk rows.
+     */
+    private static boolean isChunkRead(@Nonnull final String sql) {
+        return sql.trim().toUpperCase().startsWith("SELECT") && sql.contains(SqlModule.getChunksTableName());
+    }
+
+    /**
+     * Invokes a method on the wrapped object, rethrowing what the method threw.
+     *
+     * @param target the wrapped object.
+     * @param method the method to invoke.
+     * @param args   the method arguments.
+     * @return the method result.
+     *
+     * @throws Throwable the exception the method threw.
+     */
+    private static Object invoke(@Nonnull final Object target, @Nonnull final Method method,
+                                 final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param version the version of the chunk, stored as its generation time.
+     * @return a chunk whose fields are derived from the version.
+     */
+    @Nonnull
+    private static BinaryGlmChunk chunk(final long version) {
+        final byte[] data = ("version " + version).getBytes(StandardCharsets.UTF_8);
+        return BinaryGlmChunk.encode(GlmChunkTypes.THREE_DIMENSIONAL_GZIP, version, data, data, data, data);
+    }
+}
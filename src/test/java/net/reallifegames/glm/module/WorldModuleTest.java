@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module;
+
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.api.GlmChunk;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the packed chunk cache keys of {@link WorldModule}.
+ *
+ * @author Tyler Bucher
+ */
+public class WorldModuleTest {
+
+    /**
+     * The world every test caches chunks in.
+     */
+    private static final String WORLD = "8e2f4a6c-1b3d-4e5f-9a7b-0c1d2e3f4a5b";
+
+    /**
+     * Positions at and next to the bounds of the key, and around zero.
+     */
+    private static final int[] XZ = {WorldModule.MINIMUM_CHUNK_XZ, WorldModule.MINIMUM_CHUNK_XZ + 1, -1_875_000, -1,
+            0, 1, 1_875_000, WorldModule.MAXIMUM_CHUNK_XZ - 1, WorldModule.MAXIMUM_CHUNK_XZ};
+
+    /**
+     * Y positions at and next to the bounds of the key, and around zero.
+     */
+    private static final int[] Y = {WorldModule.MINIMUM_CHUNK_Y, -1, 0, 1, WorldModule.MAXIMUM_CHUNK_Y};
+
+    /**
+     * Clears the chunks a test cached.
+     */
+    @After
+    public void tearDown() {
+        WorldModule.purgeCache(WORLD, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Negative and boundary positions unpack to themselves and every one gets its own key.
+     */
+    @Test
+    public void keysRoundTrip() {
+        final Set<Long> keys = new HashSet<>();
+        for (final int x : XZ) {
+            for (final int z : XZ) {
+                for (final int y : Y) {
+                    final long key = WorldModule.getChunkCacheKey(x, y, z);
+                    assertEquals(x, WorldModule.getChunkCacheKeyX(key));
+                    assertEquals(y, WorldModule.getChunkCacheKeyY(key));
+                    assertEquals(z, WorldModule.getChunkCacheKeyZ(key));
+                    assertTrue(keys.add(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * A position just outside the bounds, which would share a key with one inside, is refused.
+     */
+    @Test
+    public void positionsOutsideTheBoundsAreRefused() {
+        assertOutOfBounds(WorldModule.MAXIMUM_CHUNK_XZ + 1, 0, 0);
+        assertOutOfBounds(WorldModule.MINIMUM_CHUNK_XZ - 1, 0, 0);
+        assertOutOfBounds(0, 0, WorldModule.MAXIMUM_CHUNK_XZ + 1);
+        assertOutOfBounds(0, 0, Integer.MIN_VALUE);
+        assertOutOfBounds(0, WorldModule.MAXIMUM_CHUNK_Y + 1, 0);
+        assertOutOfBounds(0, WorldModule.MINIMUM_CHUNK_Y - 1, 0);
+    }
+
+    /**
+     * Chunks at the bounds are cached and found, while caching or looking up a chunk past them fails instead of
+     * reaching the chunk it would alias.
+     */
+    @Test
+    public void cacheEnforcesTheBounds() {
+        final GlmChunk chunk = new GzipGlmChunk(GlmChunkTypes.TWO_DIMENSIONAL_GZIP.getType(), 1, "", "", "", "");
+        WorldModule.cacheChunk(WORLD, WorldModule.MAXIMUM_CHUNK_XZ, WorldModule.MINIMUM_CHUNK_XZ, chunk, false, 0);
+        assertSame(chunk, WorldModule.getCacheChunk(WORLD, WorldModule.MAXIMUM_CHUNK_XZ, 0,
+                WorldModule.MINIMUM_CHUNK_XZ));
+        assertNull(WorldModule.getCacheChunk(WORLD, WorldModule.MINIMUM_CHUNK_XZ, 0, WorldModule.MINIMUM_CHUNK_XZ));
+        try {
+            WorldModule.getCacheChunk(WORLD, WorldModule.MINIMUM_CHUNK_XZ - 1, 0, WorldModule.MINIMUM_CHUNK_XZ);
+            fail("Looked up a chunk past the bounds");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        try {
+            WorldModule.cacheChunk(WORLD, 1 << 26, 0, chunk, false, 0);
+            fail("Cached a chunk past the bounds");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        assertFalse(WorldModule.chunkInCache(WORLD, 0, 0, 0));
+        assertEquals(1, WorldModule.getCacheSize(WORLD));
+    }
+
+    /**
+     * @param x the x position.
+     * @param y the y position.
+     * @param z the z position.
+     */
+    private static void assertOutOfBounds(final int x, final int y, final int z) {
+        try {
+            WorldModule.getChunkCacheKey(x, y, z);
+            fail("Packed " + WorldModule.getChunkCacheId(x, y, z));
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+}
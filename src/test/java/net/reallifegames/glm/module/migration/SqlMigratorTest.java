@@ -0,0 +1,626 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.module.migration;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.GzipCompressor;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.codec.GlmChunkCodecs;
+import net.reallifegames.glm.module.PositionedChunk;
+import net.reallifegames.glm.module.SqlConnectionFactory;
+import net.reallifegames.glm.module.SqlConnectionPool;
+import net.reallifegames.glm.module.SqlDataAccess;
+import net.reallifegames.glm.module.SqlModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Migrates a seeded sql version 1 chunks table to the current version on an in memory H2 database in MySQL mode.
+ * <p>
+ * H2 lacks a few MySQL features the migrations use, so connections go through a small shim: POINT, ST_X and ST_Y are
+ * java functions over a text point column and a rename of several tables is run one table at a time.
+ *
+ * @author Tyler Bucher
+ */
+public class SqlMigratorTest {
+
+    /**
+     * Gives every test its own database.
+     */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /**
+     * The world every row belongs to.
+     */
+    private static final String WORLD = "3c9d1e7a-5b2f-4a6c-8d0e-9f1a2b3c4d5e";
+
+    /**
+     * The chunk type every row has.
+     */
+    private static final String TYPE = GlmChunkTypes.THREE_DIMENSIONAL_GZIP.getType();
+
+    /**
+     * The seeded x positions, from 0 inclusive.
+     */
+    private static final int SIZE_X = 5;
+
+    /**
+     * The seeded z positions, from -2 inclusive.
+     */
+    private static final int SIZE_Z = 4;
+
+    /**
+     * The batch size the migrations run with, small so every step takes several batches.
+     */
+    private static final int BATCH_SIZE = 3;
+
+    /**
+     * Matches a rename of several tables.
+     */
+    private static final Pattern RENAME_TABLE = Pattern.compile("RENAME TABLE (.+?);?", Pattern.DOTALL);
+
+    /**
+     * Matches a single table of a rename.
+     */
+    private static final Pattern RENAMED_TABLE = Pattern.compile("(`\\w+`) TO (`\\w+`)");
+
+    /**
+     * The data access layer over the shimmed database.
+     */
+    private SqlDataAccess dataAccess;
+
+    /**
+     * Creates a fresh database holding a version 1 chunks table.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        SqlModule.init("test_");
+        final SqlConnectionFactory factory = SqlConnectionFactory.fromUrl("jdbc:h2:mem:migration" +
+                DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        dataAccess = new SqlDataAccess(new SqlConnectionPool(()->mysqlShim(factory.createConnection()), 1));
+        dataAccess.execute(connection->{
+            final Connection physical = connection.getConnection();
+            final String name = SqlMigratorTest.class.getName();
+            execute(physical, "CREATE ALIAS POINT FOR \"" + name + ".point\";");
+            execute(physical, "CREATE ALIAS ST_X FOR \"" + name + ".pointX\";");
+            execute(physical, "CREATE ALIAS ST_Y FOR \"" + name + ".pointY\";");
+            // The version 1 layout, with the point column held as text
+            execute(physical, "CREATE TABLE `" + SqlModule.getChunksTableName() + "` (`world_id` CHAR(36) NOT " +
+                    "NULL,`chunk_type` VARCHAR(32) NOT NULL,`position` VARCHAR(32) NOT NULL,`generation_time` " +
+                    "BIGINT NOT NULL,`chunk_data` longtext NOT NULL,`height_data` longtext NOT NULL,`biome_data` " +
+                    "longtext NOT NULL,`index_data` longtext NOT NULL,INDEX `world_id` (`world_id`),INDEX " +
+                    "`position` (`position`),INDEX `chunk_type` (`chunk_type`));");
+            seed(physical);
+            return null;
+        });
+    }
+
+    /**
+     * Closes the data access layer.
+     */
+    @After
+    public void tearDown() {
+        dataAccess.close();
+    }
+
+    /**
+     * Every position survives with its coordinates and payloads, stale duplicates are removed.
+     */
+    @Test
+    public void migratesVersion1ToTheCurrentVersion() throws SQLException, IOException {
+        final List<String> stages = new ArrayList<>();
+        assertEquals(SqlModule.VERSION, migrate((migration, stage, completed, total)->{
+            if (stages.isEmpty() || !stages.get(stages.size() - 1).equals(stage)) {
+                stages.add(stage);
+            }
+        }));
+        assertEquals(Arrays.asList("Swapping tables", "Copying chunks", "Dropping the old table"), stages);
+        assertMigrated();
+    }
+
+    /**
+     * A migration interrupted while copying chunks resumes where it stopped.
+     */
+    @Test
+    public void resumesInterruptedCopy() throws SQLException, IOException {
+        interrupt("Copying chunks");
+        assertEquals(0, version());
+        assertEquals(SqlModule.VERSION, migrate(null));
+        assertMigrated();
+    }
+
+    /**
+     * While rows are still being copied every chunk can be read, written and removed, and the rest of the copy keeps
+     * what was written meanwhile.
+     */
+    @Test
+    public void servesChunksWhileCopying() throws SQLException, IOException {
+        interrupt("Copying chunks");
+        assertTrue(legacyRows() > 0);
+        assertChunks(SIZE_X);
+        assertTrue(dataAccess.rowExists(WORLD, TYPE, 0, -2));
+        assertEquals(4, dataAccess.getGlChunks(WORLD, TYPE, Arrays.asList(0, -2, 4, 1, 2, 0, 3, -1)).size());
+        // Overwrite every position, then remove the last column, while some rows still wait in the old table
+        for (int x = 0; x < SIZE_X; x++) {
+            for (int z = -2; z < SIZE_Z - 2; z++) {
+                final byte[] data = field("rewritten", x, z).getBytes(StandardCharsets.UTF_8);
+                dataAccess.updateGlChunk(WORLD, TYPE, x, z, BinaryGlmChunk.encode(GlmChunkTypes.THREE_DIMENSIONAL_GZIP,
+                        200, data, data, data, data));
+            }
+        }
+        dataAccess.removeChunksInRange(WORLD, SIZE_X - 1, -10, SIZE_X, 10, BATCH_SIZE, (removed, total)->{
+        });
+        assertRewritten();
+        assertEquals(SqlModule.VERSION, migrate(null));
+        assertEquals((SIZE_X - 1) * SIZE_Z, dataAccess.countTotalRows());
+        assertRewritten();
+    }
+
+    /**
+     * A version 2 table, raw bytes under a point position, is copied as it is.
+     */
+    @Test
+    public void migratesVersion2ToTheCurrentVersion() throws SQLException, IOException {
+        dataAccess.execute(connection->{
+            final Connection physical = connection.getConnection();
+            execute(physical, "DROP TABLE `" + SqlModule.getChunksTableName() + "`;");
+            execute(physical, "CREATE TABLE `" + SqlModule.getChunksTableName() + "` (`world_id` CHAR(36) NOT " +
+                    "NULL,`chunk_type` VARCHAR(32) NOT NULL,`position` VARCHAR(32) NOT NULL,`generation_time` " +
+                    "BIGINT NOT NULL,`chunk_data` MEDIUMBLOB NOT NULL,`height_data` MEDIUMBLOB NOT NULL," +
+                    "`biome_data` MEDIUMBLOB NOT NULL,`index_data` MEDIUMBLOB NOT NULL,UNIQUE INDEX `chunk_position` " +
+                    "(`world_id`, `chunk_type`, `position`));");
+            try (final PreparedStatement statement = physical.prepareStatement("INSERT INTO `" +
+                    SqlModule.getChunksTableName() + "` VALUES (?, ?, POINT(?, ?), 100, ?, ?, ?, ?);")) {
+                for (int x = 0; x < SIZE_X; x++) {
+                    for (int z = -2; z < SIZE_Z - 2; z++) {
+                        statement.setString(1, WORLD);
+                        statement.setString(2, TYPE);
+                        statement.setInt(3, x);
+                        statement.setInt(4, z);
+                        statement.setBytes(5, fromBase64(text(field("blocks", x, z))));
+                        statement.setBytes(6, fromBase64(text(field("heights", x, z))));
+                        statement.setBytes(7, fromBase64(text(field("biomes", x, z))));
+                        statement.setBytes(8, (x + z) % 3 == 0 ? new byte[0] : fromBase64(text(field("indices", x,
+                                z))));
+                        statement.executeUpdate();
+                    }
+                }
+            }
+            SqlModule.createConstantsTable(physical);
+            SqlModule.setSqlVersion(physical, 2);
+            return null;
+        });
+        assertEquals(SqlModule.VERSION, migrate(null));
+        assertMigrated();
+    }
+
+    /**
+     * Version 1 rows holding text which is not base64 gzip are copied as they are next to the gzip rows, and read the
+     * same before and after the copy.
+     */
+    @Test
+    public void copiesTextWhichIsNotBase64Gzip() throws SQLException, IOException {
+        // Plain text, base64 of something which is not a compressed payload and unpadded base64
+        final String[][] rows = {{"not base64!", "64,64,65", "1,1,2", "0,1,2,3"}, {"AAAA", "", "QR==", "MSwyLDM"}};
+        dataAccess.execute(connection->{
+            try (final PreparedStatement statement = connection.getConnection().prepareStatement("INSERT INTO `" +
+                    SqlModule.getChunksTableName() + "` VALUES (?, ?, POINT(?, 50), 100, ?, ?, ?, ?);")) {
+                for (int i = 0; i < rows.length; i++) {
+                    statement.setString(1, WORLD);
+                    statement.setString(2, TYPE);
+                    statement.setInt(3, 50 + i);
+                    for (int field = 0; field < 4; field++) {
+                        statement.setString(4 + field, rows[i][field]);
+                    }
+                    statement.executeUpdate();
+                }
+            }
+            return null;
+        });
+        interrupt("Copying chunks");
+        assertTrue(legacyRows() > 0);
+        assertPlainText(rows);
+        assertEquals(SqlModule.VERSION, migrate(null));
+        assertEquals(SIZE_X * SIZE_Z + rows.length, dataAccess.countTotalRows());
+        assertChunks(SIZE_X);
+        assertPlainText(rows);
+    }
+
+    /**
+     * Migrating a migrated table changes nothing.
+     */
+    @Test
+    public void migratingAgainIsANoOp() throws SQLException, IOException {
+        assertEquals(SqlModule.VERSION, migrate(null));
+        assertEquals(SqlModule.VERSION, migrate(null));
+        assertMigrated();
+    }
+
+    /**
+     * Runs the migration until the first batch of a stage completed, then stops it.
+     *
+     * @param stage the stage to stop in.
+     */
+    private void interrupt(@Nonnull final String stage) throws SQLException {
+        try {
+            migrate((migration, current, completed, total)->{
+                if (current.equals(stage) && completed > 0) {
+                    throw new IllegalStateException("Interrupted");
+                }
+            });
+            fail("The migration was not interrupted");
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * @param listener receives progress updates or null.
+     * @return the sql version after migrating.
+     */
+    private int migrate(@Nullable final MigrationProgressListener listener) throws SQLException {
+        return dataAccess.execute(connection->SqlMigrator.migrate(connection.getConnection(), BATCH_SIZE,
+                listener));
+    }
+
+    /**
+     * @return the sql version constant.
+     */
+    private int version() throws SQLException {
+        return dataAccess.execute(connection->SqlModule.getSqlVersion(connection.getConnection()));
+    }
+
+    /**
+     * @return the number of rows left in the old table.
+     */
+    private long legacyRows() throws SQLException {
+        return dataAccess.execute(connection->{
+            try (final Statement statement = connection.getConnection().createStatement();
+                 final ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM `" +
+                         SqlModule.getLegacyChunksTableName() + "`;")) {
+                return results.next() ? results.getLong(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * Checks the table is at the current version, the old table is gone and the newest row of every seeded position
+     * is there.
+     */
+    private void assertMigrated() throws SQLException, IOException {
+        assertEquals(SqlModule.VERSION, version());
+        assertFalse(dataAccess.execute(connection->SqlMigration.tableExists(connection.getConnection(),
+                SqlModule.getLegacyChunksTableName())));
+        assertEquals(SIZE_X * SIZE_Z, dataAccess.countTotalRows());
+        assertChunks(SIZE_X);
+    }
+
+    /**
+     * Checks the newest seeded row of every position below an x position can be read.
+     *
+     * @param sizeX the x positions to check, from 0 inclusive.
+     */
+    private void assertChunks(final int sizeX) throws SQLException, IOException {
+        final Set<Long> positions = new HashSet<>();
+        for (final PositionedChunk chunk : dataAccess.getGlChunksInRange(WORLD, TYPE, -10, -10, 10, 10)) {
+            assertTrue(positions.add((long) chunk.getX() << 32 | (chunk.getZ() & 0xffffffffL)));
+            assertEquals(100, chunk.getChunk().getChunkGenerationTime());
+        }
+        assertEquals(sizeX * SIZE_Z, positions.size());
+        for (int x = 0; x < sizeX; x++) {
+            for (int z = -2; z < SIZE_Z - 2; z++) {
+                assertTrue(positions.contains((long) x << 32 | (z & 0xffffffffL)));
+                final BinaryGlmChunk chunk = dataAccess.getGlChunk(WORLD, TYPE, x, z);
+                assertNotNull(chunk);
+                assertEquals(100, chunk.getChunkGenerationTime());
+                assertEquals(field("blocks", x, z), decode(chunk.getBlockDataBytes()));
+                assertEquals(field("heights", x, z), decode(chunk.getBlockHeightDataBytes()));
+                assertEquals(field("biomes", x, z), decode(chunk.getBlockBiomeDataBytes()));
+                // Every third chunk was seeded without index data
+                assertEquals((x + z) % 3 == 0 ? "" : field("indices", x, z), decode(chunk.getBlockIndicesBytes()));
+            }
+        }
+    }
+
+    /**
+     * Checks the rows of {@link #copiesTextWhichIsNotBase64Gzip()} read back unchanged, one by one and by range.
+     *
+     * @param rows the fields of the rows at x 50 and up, z 50.
+     */
+    private void assertPlainText(@Nonnull final String[][] rows) throws SQLException {
+        final List<PositionedChunk> range = dataAccess.getGlChunksInRange(WORLD, TYPE, 50, 50, 50 + rows.length, 51);
+        assertEquals(rows.length, range.size());
+        for (final PositionedChunk positioned : range) {
+            final BinaryGlmChunk chunk = dataAccess.getGlChunk(WORLD, TYPE, positioned.getX(), 50);
+            assertNotNull(chunk);
+            for (final GlmChunk read : Arrays.asList(positioned.getChunk(), chunk)) {
+                final String[] row = rows[positioned.getX() - 50];
+                assertEquals(100, read.getChunkGenerationTime());
+                assertEquals(row[0], read.getBlockData());
+                assertEquals(row[1], read.getBlockHeightData());
+                assertEquals(row[2], read.getBlockBiomeData());
+                assertEquals(row[3], read.getBlockIndices());
+            }
+        }
+    }
+
+    /**
+     * Checks every position but the removed last column holds the chunk written during the migration.
+     */
+    private void assertRewritten() throws SQLException, IOException {
+        assertEquals((SIZE_X - 1) * SIZE_Z, dataAccess.getGlChunksInRange(WORLD, TYPE, -10, -10, 10, 10).size());
+        for (int x = 0; x < SIZE_X; x++) {
+            for (int z = -2; z < SIZE_Z - 2; z++) {
+                final BinaryGlmChunk chunk = dataAccess.getGlChunk(WORLD, TYPE, x, z);
+                if (x == SIZE_X - 1) {
+                    assertNull(chunk);
+                } else {
+                    assertNotNull(chunk);
+                    assertEquals(200, chunk.getChunkGenerationTime());
+                    assertEquals(field("rewritten", x, z), decode(chunk.getBlockDataBytes()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a row for every position, plus older rows for some positions which the migration must drop.
+     *
+     * @param connection the physical connection.
+     */
+    private static void seed(@Nonnull final Connection connection) throws SQLException {
+        try (final PreparedStatement statement = connection.prepareStatement("INSERT INTO `" +
+                SqlModule.getChunksTableName() + "` VALUES (?, ?, POINT(?, ?), ?, ?, ?, ?, ?);")) {
+            for (int x = 0; x < SIZE_X; x++) {
+                for (int z = -2; z < SIZE_Z - 2; z++) {
+                    if (x == z + 2) {
+                        insert(statement, x, z, 50, "stale");
+                    }
+                    insert(statement, x, z, 100, "");
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a version 1 row.
+     *
+     * @param statement      the insert statement.
+     * @param x              the x position.
+     * @param z              the z position.
+     * @param generationTime the generation time of the row.
+     * @param marker         text added to every field.
+     */
+    private static void insert(@Nonnull final PreparedStatement statement, final int x, final int z,
+                               final long generationTime, @Nonnull final String marker) throws SQLException {
+        statement.setString(1, WORLD);
+        statement.setString(2, TYPE);
+        statement.setInt(3, x);
+        statement.setInt(4, z);
+        statement.setLong(5, generationTime);
+        statement.setString(6, text(marker + field("blocks", x, z)));
+        statement.setString(7, text(marker + field("heights", x, z)));
+        statement.setString(8, text(marker + field("biomes", x, z)));
+        statement.setString(9, (x + z) % 3 == 0 ? "" : text(marker + field("indices", x, z)));
+        statement.executeUpdate();
+    }
+
+    /**
+     * @param name the name of the field.
+     * @param x    the x position.
+     * @param z    the z position.
+     * @return the uncompressed field text of the position.
+     */
+    @Nonnull
+    private static String field(@Nonnull final String name, final int x, final int z) {
+        return name + " of " + x + "," + z;
+    }
+
+    /**
+     * @param field the uncompressed field text.
+     * @return the base64 gzip text version 1 stores.
+     */
+    @Nonnull
+    private static String text(@Nonnull final String field) {
+        return GzipCompressor.compressToBase64(field, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param payload a stored payload.
+     * @return the decoded payload as text, empty for an empty payload.
+     */
+    @Nonnull
+    private static String decode(@Nonnull final byte[] payload) throws IOException {
+        return payload.length == 0 ? "" : new String(GlmChunkCodecs.decode(payload), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Executes a statement on a connection.
+     *
+     * @param connection the connection.
+     * @param sql        the statement.
+     */
+    private static void execute(@Nonnull final Connection connection, @Nonnull final String sql)
+            throws SQLException {
+        try (final Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * @param text base64 text.
+     * @return the decoded bytes.
+     */
+    @Nonnull
+    private static byte[] fromBase64(@Nonnull final String text) {
+        return Base64.getDecoder().decode(text);
+    }
+
+    /**
+     * The H2 stand in for the MySQL function.
+     *
+     * @param x the x coordinate.
+     * @param y the y coordinate.
+     * @return the point as text.
+     */
+    @Nonnull
+    public static String point(final int x, final int y) {
+        return x + " " + y;
+    }
+
+    /**
+     * The H2 stand in for the MySQL function.
+     *
+     * @param point the point as text.
+     * @return the x coordinate.
+     */
+    public static int pointX(@Nonnull final String point) {
+        return Integer.parseInt(point.substring(0, point.indexOf(' ')));
+    }
+
+    /**
+     * The H2 stand in for the MySQL function.
+     *
+     * @param point the point as text.
+     * @return the y coordinate.
+     */
+    public static int pointY(@Nonnull final String point) {
+        return Integer.parseInt(point.substring(point.indexOf(' ') + 1));
+    }
+
+    /**
+     * Wraps a connection so statements are rewritten into forms H2 runs, see the class documentation.
+     *
+     * @param connection the connection to wrap.
+     * @return the wrapped connection.
+     */
+    @Nonnull
+    private static Connection mysqlShim(@Nonnull final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SqlMigratorTest.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args)->{
+                    if (method.getName().equals("prepareStatement") && args.length == 1) {
+                        final List<String> statements = rewrite((String) args[0]);
+                        if (statements.size() > 1) {
+                            return sequence(connection, statements);
+                        }
+                        args[0] = statements.get(0);
+                    }
+                    return invoke(connection, method, args);
+                });
+    }
+
+    /**
+     * @param sql a MySQL statement.
+     * @return the H2 statements doing the same.
+     */
+    @Nonnull
+    private static List<String> rewrite(@Nonnull final String sql) {
+        final List<String> statements = new ArrayList<>();
+        final Matcher rename = RENAME_TABLE.matcher(sql);
+        if (!rename.matches()) {
+            statements.add(sql);
+            return statements;
+        }
+        final Matcher table = RENAMED_TABLE.matcher(rename.group(1));
+        while (table.find()) {
+            statements.add("ALTER TABLE " + table.group(1) + " RENAME TO " + table.group(2));
+        }
+        return statements;
+    }
+
+    /**
+     * @param connection the physical connection.
+     * @param statements parameterless statements.
+     * @return a prepared statement which runs every statement in order when executed.
+     */
+    @Nonnull
+    private static PreparedStatement sequence(@Nonnull final Connection connection,
+                                              @Nonnull final List<String> statements) {
+        return (PreparedStatement) Proxy.newProxyInstance(SqlMigratorTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args)->{
+                    switch (method.getName()) {
+                        case "execute":
+                            for (final String sql : statements) {
+                                execute(connection, sql);
+                            }
+                            return false;
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Invokes a method on the wrapped object, rethrowing what the method threw.
+     *
+     * @param target the wrapped object.
+     * @param method the method to invoke.
+     * @param args   the method arguments.
+     * @return the method result.
+     *
+     * @throws Throwable the exception the method threw.
+     */
+    private static Object invoke(@Nonnull final Object target, @Nonnull final Method method, final Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import net.reallifegames.glm.BinaryGlmChunk;
+import net.reallifegames.glm.GlmChunkTypes;
+import net.reallifegames.glm.GzipGlmChunk;
+import net.reallifegames.glm.SharedIndexData;
+import net.reallifegames.glm.api.GlmChunk;
+import net.reallifegames.glm.module.PositionedChunk;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link BinaryChunkFrame} and the binary chunk frames of {@link GlmServer#sendChunks}.
+ *
+ * @author Tyler Bucher
+ */
+public class BinaryChunkFrameTest {
+
+    /**
+     * A two dimensional chunk carrying the shared index of its type, which is sent as an empty field.
+     */
+    private static final PositionedChunk SHARED_INDEX = new PositionedChunk(-5, 7, BinaryGlmChunk.encode(
+            GlmChunkTypes.TWO_DIMENSIONAL_GZIP, 1234L, bytes("1,2,3,4"), bytes("64,65"), bytes("1"),
+            GzipGlmChunk.TWO_DIMENSIONAL_INDICES.getBytes(StandardCharsets.UTF_8)));
+
+    /**
+     * A three dimensional chunk at the far corners of the int range with its own index and an empty field.
+     */
+    private static final PositionedChunk OWN_INDEX = new PositionedChunk(Integer.MIN_VALUE, Integer.MAX_VALUE,
+            BinaryGlmChunk.encode(GlmChunkTypes.THREE_DIMENSIONAL_GZIP, Long.MAX_VALUE, bytes("9,8,7"),
+                    bytes("12"), new byte[0], bytes("0,0,1")));
+
+    /**
+     * Chunks survive a frame unchanged and the shared index comes back as the shared instance.
+     */
+    @Test
+    public void framesRoundTrip() throws IOException {
+        final List<PositionedChunk> chunks = Arrays.asList(SHARED_INDEX, OWN_INDEX);
+        final ByteBuffer frame = BinaryChunkFrame.encode(chunks);
+        // The shared index costs no bytes
+        assertEquals(3 + BinaryChunkFrame.getEncodedSize(binary(SHARED_INDEX)) +
+                BinaryChunkFrame.getEncodedSize(binary(OWN_INDEX)), frame.remaining());
+        assertEquals(0, BinaryChunkFrame.getStoredIndices(binary(SHARED_INDEX)).length);
+        final List<PositionedChunk> decoded = BinaryChunkFrame.decode(frame);
+        assertEquals(0, frame.position());
+        assertChunks(chunks, decoded);
+        assertSame(SharedIndexData.get(SHARED_INDEX.getChunk().getId()),
+                binary(decoded.get(0)).getBlockIndicesBytes());
+
+        final ByteBuffer single = BinaryChunkFrame.encode(OWN_INDEX.getX(), OWN_INDEX.getZ(), OWN_INDEX.getChunk());
+        assertChunks(Collections.singletonList(OWN_INDEX), BinaryChunkFrame.decode(single));
+        assertTrue(BinaryChunkFrame.decode(BinaryChunkFrame.encode(Collections.emptyList())).isEmpty());
+    }
+
+    /**
+     * A frame is read from its position whatever the byte order of the buffer holding it.
+     */
+    @Test
+    public void framesAreReadFromTheirPosition() throws IOException {
+        final ByteBuffer frame = BinaryChunkFrame.encode(Arrays.asList(SHARED_INDEX, OWN_INDEX));
+        final ByteBuffer buffer = ByteBuffer.allocate(frame.remaining() + 5).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(3);
+        buffer.put(frame);
+        buffer.limit(buffer.position()).position(3);
+        assertChunks(Arrays.asList(SHARED_INDEX, OWN_INDEX), BinaryChunkFrame.decode(buffer));
+        assertEquals(3, buffer.position());
+    }
+
+    /**
+     * A frame cut short anywhere is rejected.
+     */
+    @Test
+    public void truncatedFramesAreRejected() {
+        final ByteBuffer frame = BinaryChunkFrame.encode(Arrays.asList(SHARED_INDEX, OWN_INDEX));
+        for (int length = 0; length < frame.remaining(); length++) {
+            final ByteBuffer truncated = frame.duplicate();
+            truncated.limit(length);
+            assertRejected(truncated);
+        }
+    }
+
+    /**
+     * Frames of another type, with a bad field length, more chunks announced than sent or bytes past the last chunk
+     * are rejected.
+     */
+    @Test
+    public void malformedFramesAreRejected() {
+        final byte[] frame = toArray(BinaryChunkFrame.encode(Collections.singletonList(OWN_INDEX)));
+        final byte[] otherType = frame.clone();
+        otherType[0] = 2;
+        assertRejected(ByteBuffer.wrap(otherType));
+
+        final byte[] moreChunks = frame.clone();
+        moreChunks[2] = 2;
+        assertRejected(ByteBuffer.wrap(moreChunks));
+
+        // The block data length follows the header, position, time, type length and type
+        final int blockLength = 3 + 4 + 4 + 8 + 1 + OWN_INDEX.getChunk().getId().length();
+        final byte[] negativeLength = frame.clone();
+        ByteBuffer.wrap(negativeLength).putInt(blockLength, -1);
+        assertRejected(ByteBuffer.wrap(negativeLength));
+        final byte[] longLength = frame.clone();
+        ByteBuffer.wrap(longLength).putInt(blockLength, Integer.MAX_VALUE);
+        assertRejected(ByteBuffer.wrap(longLength));
+
+        assertRejected(ByteBuffer.wrap(Arrays.copyOf(frame, frame.length + 1)));
+    }
+
+    /**
+     * Binary connections are sent one frame holding the chunks, text connections are left to the caller.
+     */
+    @Test
+    public void chunksAreSentAsFramesToBinaryConnections() throws IOException {
+        final RecordingServer server = new RecordingServer();
+        final List<PositionedChunk> chunks = Arrays.asList(SHARED_INDEX, OWN_INDEX);
+
+        final FakeConnection text = FakeConnection.speaking(GlmProtocol.TEXT);
+        server.onOpen(text, FakeConnection.handshake(GlmProtocol.TEXT));
+        assertFalse(server.sendChunks(text, chunks));
+        assertTrue(text.getSent().isEmpty());
+
+        final FakeConnection binary = FakeConnection.speaking(GlmProtocol.BINARY);
+        server.onOpen(binary, FakeConnection.handshake(GlmProtocol.BINARY));
+        assertSame(GlmProtocol.BINARY, server.getProtocol(binary));
+        assertTrue(server.sendChunks(binary, chunks));
+        assertEquals(1, binary.getSent().size());
+        final ByteBuffer frame = (ByteBuffer) binary.getSent().get(0);
+        assertEquals(frame.remaining(), GlmSession.of(binary).getBytesOut());
+        assertChunks(chunks, BinaryChunkFrame.decode(frame));
+    }
+
+    /**
+     * @param text the text to convert.
+     * @return the text as ascii bytes.
+     */
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param chunk a chunk.
+     * @return the chunk as a binary chunk.
+     */
+    private static BinaryGlmChunk binary(final PositionedChunk chunk) {
+        return BinaryGlmChunk.fromGlmChunk(chunk.getChunk());
+    }
+
+    /**
+     * @param buffer a buffer.
+     * @return the remaining bytes of the buffer.
+     */
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Asserts two lists hold the same chunks at the same positions.
+     *
+     * @param expected the chunks which were encoded.
+     * @param actual   the chunks which were decoded.
+     */
+    private static void assertChunks(final List<PositionedChunk> expected, final List<PositionedChunk> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getX(), actual.get(i).getX());
+            assertEquals(expected.get(i).getZ(), actual.get(i).getZ());
+            final GlmChunk expectedChunk = expected.get(i).getChunk();
+            final BinaryGlmChunk actualChunk = binary(actual.get(i));
+            assertEquals(expectedChunk.getId(), actualChunk.getId());
+            assertEquals(expectedChunk.getChunkGenerationTime(), actualChunk.getChunkGenerationTime());
+            final BinaryGlmChunk expectedBinary = binary(expected.get(i));
+            assertArrayEquals(expectedBinary.getBlockDataBytes(), actualChunk.getBlockDataBytes());
+            assertArrayEquals(expectedBinary.getBlockHeightDataBytes(), actualChunk.getBlockHeightDataBytes());
+            assertArrayEquals(expectedBinary.getBlockBiomeDataBytes(), actualChunk.getBlockBiomeDataBytes());
+            assertArrayEquals(expectedBinary.getBlockIndicesBytes(), actualChunk.getBlockIndicesBytes());
+        }
+    }
+
+    /**
+     * Asserts a frame is rejected.
+     *
+     * @param frame the frame.
+     */
+    private static void assertRejected(final ByteBuffer frame) {
+        try {
+            BinaryChunkFrame.decode(frame);
+            fail("Expected the frame to be rejected");
+        } catch (IOException expected) {
+            // Rejected
+        }
+    }
+}
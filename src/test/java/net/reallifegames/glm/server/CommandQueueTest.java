@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CommandQueue}. Most tests hand commands to an executor they run by hand, so the order in which
+ * commands start is exact.
+ *
+ * @author Tyler Bucher
+ */
+public class CommandQueueTest {
+
+    /**
+     * The queue limit of tests which do not test the limit.
+     */
+    private static final int MAXIMUM = 64;
+
+    /**
+     * Runs nothing.
+     */
+    private static final Runnable NOTHING = ()->{
+    };
+
+    /**
+     * Only one command is handed to an executor at a time and they start in arrival order.
+     */
+    @Test
+    public void commandsRunOneAtATimeInArrivalOrder() {
+        final CommandQueue queue = new CommandQueue();
+        final ManualExecutor executor = new ManualExecutor();
+        final List<Integer> ran = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int command = i;
+            assertEquals(i + 1, queue.offer(executor, ()->ran.add(command), NOTHING, MAXIMUM));
+        }
+        assertEquals(1, executor.size());
+        executor.runNext();
+        assertEquals(Collections.singletonList(0), ran);
+        assertEquals(1, executor.size());
+        executor.runAll();
+        assertEquals(Arrays.asList(0, 1, 2), ran);
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Commands of one connection never overlap on a pool and keep their order.
+     */
+    @Test
+    public void commandsStayOrderedOnAPool() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final CommandQueue queue = new CommandQueue();
+        final List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final int commands = 2000;
+        final CountDownLatch finished = new CountDownLatch(commands);
+        try {
+            for (int i = 0; i < commands; i++) {
+                final int command = i;
+                assertTrue(queue.offer(pool, ()->{
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    ran.add(command);
+                    running.decrementAndGet();
+                    finished.countDown();
+                }, NOTHING, commands) > 0);
+            }
+            // Later commands are handed to the pool as earlier ones finish, so wait before shutting it down
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, overlaps.get());
+        assertEquals(commands, ran.size());
+        for (int i = 0; i < commands; i++) {
+            assertEquals(i, (int) ran.get(i));
+        }
+    }
+
+    /**
+     * Commands past the limit are turned away without running.
+     */
+    @Test
+    public void fullQueueTurnsCommandsAway() {
+        final CommandQueue queue = new CommandQueue();
+        final ManualExecutor executor = new ManualExecutor();
+        assertEquals(1, queue.offer(executor, NOTHING, NOTHING, 2));
+        assertEquals(2, queue.offer(executor, NOTHING, NOTHING, 2));
+        assertEquals(0, queue.offer(executor, NOTHING, NOTHING, 2));
+        executor.runAll();
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * A command its executor rejects straight away is reported as such, and the queue stays usable.
+     */
+    @Test
+    public void synchronousRejectionIsReported() {
+        final CommandQueue queue = new CommandQueue();
+        final AtomicInteger rejected = new AtomicInteger();
+        final Executor rejecting = command->{
+            throw new RejectedExecutionException("Busy");
+        };
+        assertEquals(-1, queue.offer(rejecting, NOTHING, rejected::incrementAndGet, MAXIMUM));
+        assertEquals(1, rejected.get());
+        assertEquals(0, queue.size());
+        final ManualExecutor executor = new ManualExecutor();
+        assertEquals(1, queue.offer(executor, NOTHING, rejected::incrementAndGet, MAXIMUM));
+        assertEquals(1, executor.size());
+        // A later command rejected when its turn comes only runs its callback
+        assertEquals(2, queue.offer(rejecting, NOTHING, rejected::incrementAndGet, MAXIMUM));
+        executor.runAll();
+        assertEquals(2, rejected.get());
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Closing drops the commands which did not start, lets the running one finish and turns new ones away.
+     */
+    @Test
+    public void closeDropsPendingCommands() {
+        final CommandQueue queue = new CommandQueue();
+        final ManualExecutor executor = new ManualExecutor();
+        final AtomicInteger ran = new AtomicInteger();
+        final AtomicInteger dropped = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            queue.offer(executor, ran::incrementAndGet, NOTHING, MAXIMUM);
+        }
+        queue.close(dropped::incrementAndGet);
+        assertEquals(2, dropped.get());
+        assertEquals(0, queue.offer(executor, ran::incrementAndGet, NOTHING, MAXIMUM));
+        executor.runAll();
+        assertEquals(1, ran.get());
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * With a close racing the offers every command is run, dropped or turned away exactly once.
+     */
+    @Test
+    public void closeRacingOffersAccountsForEveryCommand() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 200; round++) {
+                final CommandQueue queue = new CommandQueue();
+                final AtomicInteger ran = new AtomicInteger();
+                final AtomicInteger dropped = new AtomicInteger();
+                final CountDownLatch start = new CountDownLatch(1);
+                final Thread closer = new Thread(()->{
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    queue.close(dropped::incrementAndGet);
+                });
+                closer.start();
+                final int commands = 100;
+                int turnedAway = 0;
+                for (int i = 0; i < commands; i++) {
+                    if (i == round % commands) {
+                        start.countDown();
+                    }
+                    if (queue.offer(pool, ran::incrementAndGet, NOTHING, commands) == 0) {
+                        turnedAway++;
+                    }
+                }
+                closer.join();
+                // Wait for the command which was running at the close to finish
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (queue.size() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+                assertEquals(0, queue.size());
+                assertEquals(commands, ran.get() + dropped.get() + turnedAway);
+            }
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * An executor which queues tasks until the test runs them.
+     */
+    private static final class ManualExecutor implements Executor {
+
+        /**
+         * The tasks which have not run yet, in submission order.
+         */
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        /**
+         * @return the number of tasks which have not run yet.
+         */
+        private int size() {
+            return tasks.size();
+        }
+
+        /**
+         * Runs the oldest queued task.
+         */
+        private void runNext() {
+            tasks.remove(0).run();
+        }
+
+        /**
+         * Runs queued tasks in order until none are left.
+         */
+        private void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+
+        @Override
+        public void execute(@Nonnull final Runnable command) {
+            tasks.add(command);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.enums.HandshakeState;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.enums.ReadyState;
+import org.java_websocket.exceptions.InvalidHandshakeException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A connection which records what the server sends it instead of writing to a socket, for driving {@link GlmServer}
+ * callbacks by hand.
+ *
+ * @author Tyler Bucher
+ */
+final class FakeConnection implements WebSocket {
+
+    /**
+     * The draft the connection negotiated.
+     */
+    @Nullable
+    private final Draft draft;
+
+    /**
+     * The messages sent to the connection, strings and buffers, in send order.
+     */
+    private final List<Object> sent = new ArrayList<>();
+
+    /**
+     * The object attached to the connection.
+     */
+    @Nullable
+    private Object attachment;
+
+    /**
+     * The code the connection was closed with or 0 if it is open.
+     */
+    private int closeCode;
+
+    /**
+     * Creates a connection which negotiated the given draft.
+     *
+     * @param draft the draft of the connection or null for none.
+     */
+    FakeConnection(@Nullable final Draft draft) {
+        this.draft = draft;
+    }
+
+    /**
+     * Runs the server side of a handshake against the drafts of {@link GlmProtocol#drafts()}.
+     *
+     * @param protocol the protocol the client asks for, empty to ask for none.
+     * @return a connection which negotiated the draft.
+     */
+    @Nonnull
+    static FakeConnection speaking(@Nonnull final GlmProtocol protocol) {
+        final Draft draft = GlmProtocol.drafts().get(0).copyInstance();
+        try {
+            if (draft.acceptHandshakeAsServer(handshake(protocol)) != HandshakeState.MATCHED) {
+                throw new IllegalStateException("The server refused the " + protocol + " handshake");
+            }
+        } catch (InvalidHandshakeException e) {
+            throw new IllegalStateException(e);
+        }
+        return new FakeConnection(draft);
+    }
+
+    /**
+     * @param protocol the protocol the client asks for, empty to ask for none.
+     * @return the client side of a handshake.
+     */
+    @Nonnull
+    static ClientHandshake handshake(@Nonnull final GlmProtocol protocol) {
+        final HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.setResourceDescriptor("/");
+        handshake.put("Sec-WebSocket-Version", "13");
+        if (!protocol.getName().isEmpty()) {
+            handshake.put("Sec-WebSocket-Protocol", protocol.getName());
+        }
+        return handshake;
+    }
+
+    /**
+     * @return the messages sent to the connection, strings and buffers, in send order.
+     */
+    @Nonnull
+    List<Object> getSent() {
+        return sent;
+    }
+
+    /**
+     * @return the code the connection was closed with or 0 if it is open.
+     */
+    int getCloseCode() {
+        return closeCode;
+    }
+
+    @Override
+    public void close(final int code, final String message) {
+        closeCode = code;
+    }
+
+    @Override
+    public void close(final int code) {
+        closeCode = code;
+    }
+
+    @Override
+    public void close() {
+        close(1000);
+    }
+
+    @Override
+    public void closeConnection(final int code, final String message) {
+        closeCode = code;
+    }
+
+    @Override
+    public void send(final String text) {
+        sent.add(text);
+    }
+
+    @Override
+    public void send(final ByteBuffer bytes) {
+        sent.add(bytes);
+    }
+
+    @Override
+    public void send(final byte[] bytes) {
+        sent.add(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void sendFrame(final Framedata framedata) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendFrame(final Collection<Framedata> frames) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendPing() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendFragmentedFrame(final Opcode op, final ByteBuffer buffer, final boolean fin) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean hasBufferedData() {
+        return false;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return closeCode == 0;
+    }
+
+    @Override
+    public boolean isClosing() {
+        return false;
+    }
+
+    @Override
+    public boolean isFlushAndClose() {
+        return false;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closeCode != 0;
+    }
+
+    @Override
+    public Draft getDraft() {
+        return draft;
+    }
+
+    @Override
+    public ReadyState getReadyState() {
+        return closeCode == 0 ? ReadyState.OPEN : ReadyState.CLOSED;
+    }
+
+    @Override
+    public String getResourceDescriptor() {
+        return "/";
+    }
+
+    @Override
+    public <T> void setAttachment(final T attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttachment() {
+        return (T) attachment;
+    }
+}
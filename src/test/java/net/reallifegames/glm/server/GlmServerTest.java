@@ -0,0 +1,303 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.reallifegames.glm.api.server.WsServerCommand;
+import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link GlmServer}. The server is never started, its callbacks are driven by hand with
+ * {@link FakeConnection}s.
+ *
+ * @author Tyler Bucher
+ */
+public class GlmServerTest {
+
+    /**
+     * Parses the expected trees of messages.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Messages whose command is not their first field, paired with the command.
+     */
+    private static final String[][] LATE_COMMANDS = {
+            {"{\"x\": 1, \"z\": [1, {\"command\": \"nested\"}], \"command\": \"chunks\"}", "chunks"},
+            {"{\"world\": {\"cmd\": \"nested\"}, \"cmd\": \"chunks\", \"after\": [true, null]}", "chunks"},
+            {"{\"command\": \"ignored\", \"x\": 1.5, \"cmd\": \"chunks\"}", "chunks"},
+            {"{\"x\": \"\\u00e9\\\"\", \"command\": \"chunks\", \"z\": -2}", "chunks"}
+    };
+
+    /**
+     * Commands are found wherever they are in the message, 'cmd' before 'command', nested fields are not commands and
+     * values which are not text are rendered the way {@link JsonNode#asText()} renders them.
+     */
+    @Test
+    public void commandsAreFoundAfterOtherFields() throws IOException {
+        for (final String[] message : LATE_COMMANDS) {
+            assertEquals(message[0], message[1], GlmServer.peekCommand(message[0]));
+        }
+        assertEquals("5", GlmServer.peekCommand("{\"a\": 1, \"command\": 5}"));
+        assertEquals("", GlmServer.peekCommand("{\"command\": {\"cmd\": \"x\"}}"));
+        assertEquals("", GlmServer.peekCommand("{\"command\": [\"x\"]}"));
+    }
+
+    /**
+     * Messages without a top level command field, or which are not objects, have no command.
+     */
+    @Test
+    public void messagesWithoutACommandHaveNone() throws IOException {
+        for (final String message : Arrays.asList("{}", "{\"x\": 1, \"z\": {\"command\": \"nested\"}}",
+                "[{\"command\": \"chunks\"}]", "\"command\"", "42", "null", "")) {
+            assertNull(message, GlmServer.peekCommand(message));
+        }
+    }
+
+    /**
+     * Messages which are not valid json up to their command are refused.
+     */
+    @Test
+    public void malformedMessagesAreRefused() {
+        for (final String message : Arrays.asList("{\"x\": }", "{\"x\": 1, \"command\"", "{\"command\": \"chunks\",",
+                "{command: \"chunks\"}", "{\"x\": [1, 2}, \"command\": \"chunks\"}", "{\"command\": \"chunks")) {
+            try {
+                GlmServer.peekCommand(message);
+                fail("Expected " + message + " to be refused");
+            } catch (IOException expected) {
+                // Refused
+            }
+        }
+    }
+
+    /**
+     * The tokens read while looking for the command are replayed, so the registrar is handed the whole message
+     * whether it arrives as text, as a slice of a heap buffer or in a direct buffer.
+     */
+    @Test
+    public void readTokensAreReplayedIntoTheTree() throws IOException {
+        final RecordingServer.RecordingRegistrar registrar = new RecordingServer.RecordingRegistrar();
+        final RecordingServer server = new RecordingServer(registrar);
+        final FakeConnection connection = open(server);
+        final List<JsonNode> expected = new ArrayList<>();
+        for (final String[] message : LATE_COMMANDS) {
+            final byte[] bytes = message[0].getBytes(StandardCharsets.UTF_8);
+            server.onMessage(connection, message[0]);
+            final ByteBuffer heap = ByteBuffer.allocate(bytes.length + 7);
+            heap.position(3);
+            heap.put(bytes);
+            heap.limit(heap.position()).position(3);
+            server.onMessage(connection, heap.slice());
+            final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).flip();
+            server.onMessage(connection, direct);
+            for (int i = 0; i < 3; i++) {
+                expected.add(MAPPER.readTree(message[0]));
+            }
+        }
+        // Messages without a command are still whole for registrars which handle them
+        server.onMessage(connection, "{\"x\": [1, 2], \"z\": {\"a\": null}}");
+        expected.add(MAPPER.readTree("{\"x\": [1, 2], \"z\": {\"a\": null}}"));
+        assertEquals(expected, registrar.handled);
+        assertTrue(connection.getSent().isEmpty());
+    }
+
+    /**
+     * Malformed messages, messages without a command and unknown commands are answered without reaching the
+     * command registrar's handlers, known commands reach them whole.
+     */
+    @Test
+    public void commandRegistrarSeesOnlyKnownCommands() throws IOException {
+        final List<JsonNode> handled = new ArrayList<>();
+        final CommandRegistrar registrar = new CommandRegistrar() {
+            @Override
+            protected void punishClient(@Nonnull final WebSocket connection, @Nonnull final String command,
+                                        @Nonnull final JsonNode commandNode) {
+                fail("Nothing is rate limited");
+            }
+        };
+        registrar.registerCommand("chunks", new WsServerCommand() {
+            @Override
+            public long getInterval() {
+                return 0;
+            }
+
+            @Override
+            public void handle(@Nonnull final WebSocket connection, @Nonnull final JsonNode commandNode) {
+                handled.add(commandNode);
+            }
+        });
+        final RecordingServer server = new RecordingServer(registrar);
+        final FakeConnection connection = open(server);
+        server.onMessage(connection, "{\"x\": 1, \"command\": ");
+        server.onMessage(connection, "{\"x\": 1}");
+        server.onMessage(connection, "{\"x\": 1, \"cmd\": \"unknown\"}");
+        assertEquals(Arrays.asList("{\"error\": \"Invalid data format\"}", "{\"error\": \"No command node found\"}",
+                "{\"error\": \"Unknown command\"}"), connection.getSent());
+        assertTrue(handled.isEmpty());
+
+        // A message broken after its command is caught by the tree parse
+        connection.getSent().clear();
+        server.onMessage(connection, "{\"cmd\": \"chunks\", \"x\": }");
+        assertEquals(Collections.singletonList("{\"error\": \"Invalid data format\"}"), connection.getSent());
+        assertTrue(handled.isEmpty());
+
+        connection.getSent().clear();
+        server.onMessage(connection, LATE_COMMANDS[1][0]);
+        assertEquals(Collections.singletonList(MAPPER.readTree(LATE_COMMANDS[1][0])), handled);
+        assertTrue(connection.getSent().isEmpty());
+    }
+
+    /**
+     * The count goes up when a connection opens and down when it closes, once however often the close is reported.
+     */
+    @Test
+    public void connectionsAreCountedWhileOpen() {
+        final RecordingServer server = new RecordingServer();
+        final FakeConnection first = open(server);
+        final FakeConnection second = open(server);
+        assertEquals(2, server.getCurrentConnections());
+        assertEquals(2, server.getAcceptedConnections());
+        server.onClose(first, CloseFrame.NORMAL, "", true);
+        assertEquals(1, server.getCurrentConnections());
+        server.onClose(first, CloseFrame.NORMAL, "", true);
+        assertEquals(1, server.getCurrentConnections());
+        server.onClose(second, CloseFrame.GOING_AWAY, "", false);
+        assertEquals(0, server.getCurrentConnections());
+    }
+
+    /**
+     * A connection which fails is uncounted by the close that follows its error.
+     */
+    @Test
+    public void failedConnectionsAreUncounted() {
+        final RecordingServer server = new RecordingServer();
+        final FakeConnection connection = open(server);
+        server.onError(connection, new IOException("Connection reset"));
+        server.onClose(connection, CloseFrame.ABNORMAL_CLOSE, "Connection reset", true);
+        assertEquals(0, server.getCurrentConnections());
+        assertFalse(GlmSession.of(connection).markClosed());
+    }
+
+    /**
+     * Connections past the maximum are closed without a session and never counted, and a freed slot admits the next
+     * connection.
+     */
+    @Test
+    public void connectionsPastTheMaximumAreShed() {
+        final RecordingServer server = new RecordingServer();
+        server.setMaximumConnections(2);
+        final FakeConnection first = open(server);
+        open(server);
+        final FakeConnection shed = open(server);
+        assertNull(GlmSession.of(shed));
+        assertEquals(CloseFrame.TRY_AGAIN_LATER, shed.getCloseCode());
+        assertEquals(2, server.getCurrentConnections());
+        assertEquals(1, server.getRejectedConnections());
+        server.onClose(shed, CloseFrame.TRY_AGAIN_LATER, "Server full", false);
+        assertEquals(2, server.getCurrentConnections());
+
+        server.onClose(first, CloseFrame.NORMAL, "", true);
+        final FakeConnection next = open(server);
+        assertNotNull(GlmSession.of(next));
+        assertEquals(2, server.getCurrentConnections());
+        assertEquals(3, server.getAcceptedConnections());
+    }
+
+    /**
+     * Connections opening at once never push the count past the maximum.
+     */
+    @Test
+    public void concurrentOpensRespectTheMaximum() throws Exception {
+        final RecordingServer server = new RecordingServer();
+        final int maximum = 8;
+        final int connections = 64;
+        server.setMaximumConnections(maximum);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<FakeConnection>> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                opened.add(pool.submit(()->{
+                    start.await();
+                    return open(server);
+                }));
+            }
+            start.countDown();
+            int admitted = 0;
+            for (final Future<FakeConnection> future : opened) {
+                final FakeConnection connection = future.get(10, TimeUnit.SECONDS);
+                if (GlmSession.of(connection) != null) {
+                    admitted++;
+                } else {
+                    assertEquals(CloseFrame.TRY_AGAIN_LATER, connection.getCloseCode());
+                }
+            }
+            assertEquals(maximum, admitted);
+            assertEquals(maximum, server.getCurrentConnections());
+            assertEquals(connections - maximum, server.getRejectedConnections());
+            for (final Future<FakeConnection> future : opened) {
+                server.onClose(future.get(), CloseFrame.NORMAL, "", true);
+            }
+            assertEquals(0, server.getCurrentConnections());
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * @param server the server.
+     * @return a new text connection the server was told opened.
+     */
+    private static FakeConnection open(final RecordingServer server) {
+        final FakeConnection connection = new FakeConnection(null);
+        server.onOpen(connection, FakeConnection.handshake(GlmProtocol.TEXT));
+        return connection;
+    }
+}
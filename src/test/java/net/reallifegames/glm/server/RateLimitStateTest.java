@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RateLimitState}. Every call is made at an explicit time, so no test waits on the clock.
+ *
+ * @author Tyler Bucher
+ */
+public class RateLimitStateTest {
+
+    /**
+     * The time between calls of the tests.
+     */
+    private static final long INTERVAL = 10;
+
+    /**
+     * A burst of calls is allowed back to back, the call after it is throttled.
+     */
+    @Test
+    public void burstIsAllowedBackToBack() {
+        final RateLimitState state = new RateLimitState();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(state.tryAcquire("cmd", INTERVAL, 3, 0));
+        }
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 3, 0));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 3, INTERVAL - 1));
+        // Commands are limited on their own
+        assertTrue(state.tryAcquire("other", INTERVAL, 3, 0));
+        assertEquals(2, state.size());
+    }
+
+    /**
+     * Once the burst is spent one call is allowed per interval, and a burst below 1 counts as 1.
+     */
+    @Test
+    public void callsAreThrottledToOnePerInterval() {
+        final RateLimitState state = new RateLimitState();
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 0, 100));
+        for (long now = 101; now < 100 + INTERVAL; now++) {
+            assertFalse(state.tryAcquire("cmd", INTERVAL, 0, now));
+        }
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 0, 100 + INTERVAL));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 0, 100 + INTERVAL));
+        // Throttled calls take nothing, so the next interval is not pushed back
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 0, 100 + 2 * INTERVAL));
+    }
+
+    /**
+     * Idle time refills the burst, but never past its size.
+     */
+    @Test
+    public void burstRefillsAfterTheInterval() {
+        final RateLimitState state = new RateLimitState();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(state.tryAcquire("cmd", INTERVAL, 3, 0));
+        }
+        // One interval gives back one call
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 3, INTERVAL));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 3, INTERVAL));
+        // A long idle time gives back the whole burst and no more
+        final long later = 1000 * INTERVAL;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(state.tryAcquire("cmd", INTERVAL, 3, later));
+        }
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 3, later));
+    }
+
+    /**
+     * The limit holds while {@link System#nanoTime()} wraps from positive to negative values.
+     */
+    @Test
+    public void limitHoldsAcrossNanoTimeWraparound() {
+        final RateLimitState state = new RateLimitState();
+        final long start = Long.MAX_VALUE - INTERVAL - 5;
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 2, start));
+        // The next arrival time wraps past Long.MAX_VALUE
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 2, start));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 2, start));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 2, start + INTERVAL - 1));
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 2, start + INTERVAL));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 2, start + INTERVAL));
+        // Well after the wrap the burst refills as usual
+        final long wrapped = Long.MIN_VALUE + 100 * INTERVAL;
+        assertTrue(wrapped < start);
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 2, wrapped));
+        assertTrue(state.tryAcquire("cmd", INTERVAL, 2, wrapped));
+        assertFalse(state.tryAcquire("cmd", INTERVAL, 2, wrapped));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RateLimiter}. Every call is made at an explicit time, so no test waits on the clock.
+ *
+ * @author Tyler Bucher
+ */
+public class RateLimiterTest {
+
+    /**
+     * The time between calls of the tests in milliseconds.
+     */
+    private static final long INTERVAL_MILLIS = 50;
+
+    /**
+     * The time between calls of the tests in nanoseconds.
+     */
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+
+    /**
+     * A spent burst is throttled until an interval passes, and every call is counted.
+     */
+    @Test
+    public void callsAreThrottledAndCounted() {
+        final RateLimiter limiter = new RateLimiter();
+        final RateLimitState state = new RateLimitState();
+        final long now = -7 * INTERVAL_NANOS;
+        assertTrue(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 2, now));
+        assertTrue(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 2, now));
+        assertFalse(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 2, now));
+        assertFalse(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 2, now + INTERVAL_NANOS - 1));
+        assertTrue(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 2, now + INTERVAL_NANOS));
+        assertEquals(3, limiter.getAllowedCalls());
+        assertEquals(2, limiter.getThrottledCalls());
+        assertEquals(2, limiter.getThrottledCalls("cmd"));
+        assertEquals(0, limiter.getThrottledCalls("other"));
+    }
+
+    /**
+     * A burst spent right before {@link System#nanoTime()} wraps refills an interval later.
+     */
+    @Test
+    public void intervalsSpanNanoTimeWraparound() {
+        final RateLimiter limiter = new RateLimiter();
+        final RateLimitState state = new RateLimitState();
+        final long now = Long.MAX_VALUE - INTERVAL_NANOS / 2;
+        assertTrue(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 1, now));
+        assertFalse(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 1, now + INTERVAL_NANOS / 2 + 1));
+        assertTrue(limiter.tryAcquire(state, "cmd", INTERVAL_MILLIS, 1, now + INTERVAL_NANOS));
+        assertEquals(1, limiter.getThrottledCalls());
+    }
+
+    /**
+     * Commands without an interval are never throttled and need no state.
+     */
+    @Test
+    public void commandsWithoutAnIntervalAreNotLimited() {
+        final RateLimiter limiter = new RateLimiter();
+        final FakeConnection connection = new FakeConnection(null);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(connection, "cmd", 0, 1));
+        }
+        assertEquals(100, limiter.getAllowedCalls());
+        assertEquals(0, limiter.getTrackedConnections());
+    }
+
+    /**
+     * Each connection has its own state, which is dropped when it closes.
+     */
+    @Test
+    public void stateIsKeptPerConnection() {
+        final RateLimiter limiter = new RateLimiter();
+        final FakeConnection first = new FakeConnection(null);
+        final FakeConnection second = new FakeConnection(null);
+        assertTrue(limiter.tryAcquire(first, "cmd", TimeUnit.HOURS.toMillis(1), 1));
+        assertFalse(limiter.tryAcquire(first, "cmd", TimeUnit.HOURS.toMillis(1), 1));
+        assertTrue(limiter.tryAcquire(second, "cmd", TimeUnit.HOURS.toMillis(1), 1));
+        assertSame(limiter.getState(first), limiter.getState(first));
+        assertNotSame(limiter.getState(first), limiter.getState(second));
+        assertEquals(2, limiter.getTrackedConnections());
+        limiter.remove(first);
+        assertEquals(1, limiter.getTrackedConnections());
+        assertTrue(limiter.tryAcquire(first, "cmd", TimeUnit.HOURS.toMillis(1), 1));
+    }
+}
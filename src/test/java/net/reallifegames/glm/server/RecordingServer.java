@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 Tyler Bucher
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.reallifegames.glm.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.reallifegames.glm.api.server.WsCommandRegistrar;
+import net.reallifegames.glm.api.server.WsServerCommand;
+import org.java_websocket.WebSocket;
+
+import javax.annotation.Nonnull;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A server which is never started and records the commands its registrar is handed, for driving {@link GlmServer}
+ * callbacks by hand.
+ *
+ * @author Tyler Bucher
+ */
+final class RecordingServer extends GlmServer {
+
+    /**
+     * Creates a server with a registrar which records every command.
+     */
+    RecordingServer() {
+        this(new RecordingRegistrar());
+    }
+
+    /**
+     * Creates a server with the given registrar.
+     *
+     * @param registrar the handler for all incoming commands.
+     */
+    RecordingServer(@Nonnull final WsCommandRegistrar registrar) {
+        super(new InetSocketAddress("localhost", 0), registrar);
+    }
+
+    @Override
+    public void onError(final WebSocket conn, final Exception ex) {
+    }
+
+    @Override
+    public void onStart() {
+    }
+
+    /**
+     * A registrar which records the commands it is handed.
+     */
+    static final class RecordingRegistrar implements WsCommandRegistrar {
+
+        /**
+         * The commands handed to the registrar, in order.
+         */
+        final List<JsonNode> handled = new ArrayList<>();
+
+        @Override
+        public boolean registerCommand(@Nonnull final String commandName,
+                                       @Nonnull final WsServerCommand commandHandler) {
+            return false;
+        }
+
+        @Override
+        public void handleCommand(@Nonnull final WebSocket connection, @Nonnull final JsonNode commandNode) {
+            handled.add(commandNode);
+        }
+    }
+}